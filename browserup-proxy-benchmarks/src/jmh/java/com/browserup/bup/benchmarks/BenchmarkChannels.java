@@ -0,0 +1,35 @@
+package com.browserup.bup.benchmarks;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * Creates client channels for benchmarks that run filters outside of a running proxy.
+ */
+final class BenchmarkChannels {
+    private static final InetSocketAddress CLIENT_ADDRESS = new InetSocketAddress("127.0.0.1", 54321);
+
+    private BenchmarkChannels() {
+    }
+
+    /**
+     * Returns a channel whose remote address is an {@link InetSocketAddress}, like a real client connection, since some
+     * filters read the client address from the channel.
+     */
+    static EmbeddedChannel newClientChannel() {
+        return new EmbeddedChannel(new ChannelInboundHandlerAdapter()) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return CLIENT_ADDRESS;
+            }
+        };
+    }
+
+    static ChannelHandlerContext contextOf(EmbeddedChannel channel) {
+        return channel.pipeline().firstContext();
+    }
+}
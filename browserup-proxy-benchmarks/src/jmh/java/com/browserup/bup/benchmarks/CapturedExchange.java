@@ -0,0 +1,149 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.filters.HarCaptureFilter;
+import com.browserup.bup.har.HarStringPool;
+import com.browserup.bup.proxy.CaptureType;
+import de.sstoehr.harreader.model.Har;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A typical POST request to a web application and its HTML response, which can be captured in a HAR by running the
+ * {@link HarCaptureFilter} callbacks in the order the proxy invokes them.
+ */
+final class CapturedExchange {
+    private static final String HOST_AND_PORT = "www.example.com:80";
+
+    private static final InetSocketAddress SERVER_ADDRESS = new InetSocketAddress("93.184.216.34", 80);
+
+    private static final byte[] REQUEST_BODY = "username=browserup&password=secret&remember=true".getBytes(StandardCharsets.UTF_8);
+
+    private static final long FIRST_RESPONSE_DATE = 1_700_000_000_000L;
+
+    private final byte[] responseBody;
+
+    private long decodedExchanges;
+
+    CapturedExchange(int responseSize) {
+        responseBody = new byte[responseSize];
+        for (int i = 0; i < responseBody.length; i++) {
+            responseBody[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    /**
+     * Captures the exchange in the HAR.
+     *
+     * @param har          HAR to add the entry to
+     * @param ctx          client channel context
+     * @param captureTypes data to capture
+     * @param path         path and query of the request URL
+     * @return the filter that captured the exchange
+     */
+    HarCaptureFilter capture(Har har, ChannelHandlerContext ctx, Set<CaptureType> captureTypes, String path) {
+        HttpRequest request = createRequest(path);
+        HarCaptureFilter filter = new HarCaptureFilter(request, ctx, har, "page_1", captureTypes);
+
+        return capture(filter, ctx, request, createResponse());
+    }
+
+    /**
+     * Captures the exchange in the HAR, with header names and values copied to new strings, as the HTTP decoder creates them for each message
+     * received from the network. Like real traffic, each exchange has a unique request ID, response date and entity tag.
+     *
+     * @param har          HAR to add the entry to
+     * @param ctx          client channel context
+     * @param captureTypes data to capture
+     * @param path         path and query of the request URL
+     * @param stringPool   pool that deduplicates the captured strings, or null
+     * @return the filter that captured the exchange
+     */
+    HarCaptureFilter captureDecoded(Har har, ChannelHandlerContext ctx, Set<CaptureType> captureTypes, String path, HarStringPool stringPool) {
+        long exchange = decodedExchanges++;
+
+        HttpRequest request = createRequest(path);
+        request.headers().set("X-Request-Id", String.format("%016x-%08x", exchange * 0x9E3779B97F4A7C15L, exchange));
+        copyHeaders(request.headers());
+        HttpResponse response = createResponse();
+        response.headers()
+                .set(HttpHeaderNames.DATE, DateFormatter.format(new Date(FIRST_RESPONSE_DATE + exchange * 1000)))
+                .set(HttpHeaderNames.ETAG, "\"" + Long.toHexString(exchange * 0xC2B2AE3D27D4EB4FL) + "\"");
+        copyHeaders(response.headers());
+
+        HarCaptureFilter filter = new HarCaptureFilter(request, ctx, har, "page_1", captureTypes,
+                new HarCaptureFilter.Options().setStringPool(stringPool));
+
+        return capture(filter, ctx, request, response);
+    }
+
+    private HarCaptureFilter capture(HarCaptureFilter filter, ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
+        filter.clientToProxyRequest(request);
+        filter.clientToProxyRequest(new DefaultLastHttpContent(Unpooled.wrappedBuffer(REQUEST_BODY)));
+        filter.proxyToServerResolutionStarted(HOST_AND_PORT);
+        filter.proxyToServerResolutionSucceeded(HOST_AND_PORT, SERVER_ADDRESS);
+        filter.proxyToServerConnectionStarted();
+        filter.proxyToServerConnectionSucceeded(ctx);
+        filter.proxyToServerRequestSending();
+        filter.proxyToServerRequestSent();
+        filter.serverToProxyResponseReceiving();
+        filter.serverToProxyResponse(response);
+        filter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.wrappedBuffer(responseBody)));
+        filter.serverToProxyResponseReceived();
+
+        return filter;
+    }
+
+    private static void copyHeaders(HttpHeaders headers) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(headers.entries());
+        headers.clear();
+        for (Map.Entry<String, String> entry : entries) {
+            headers.add(new String(entry.getKey()), new String(entry.getValue()));
+        }
+    }
+
+    private static HttpRequest createRequest(String path) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://" + HOST_AND_PORT + path);
+        request.headers()
+                .set(HttpHeaderNames.HOST, HOST_AND_PORT)
+                .set(HttpHeaderNames.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64) Gecko/20100101 Firefox/128.0")
+                .set(HttpHeaderNames.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                .set(HttpHeaderNames.ACCEPT_LANGUAGE, "en-US,en;q=0.5")
+                .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED)
+                .set(HttpHeaderNames.CONTENT_LENGTH, REQUEST_BODY.length)
+                .set(HttpHeaderNames.COOKIE, "session=0123456789abcdef; theme=dark; tracking=off");
+
+        return request;
+    }
+
+    private HttpResponse createResponse() {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, "text/html; charset=UTF-8")
+                .set(HttpHeaderNames.CONTENT_LENGTH, responseBody.length)
+                .set(HttpHeaderNames.CACHE_CONTROL, "no-cache")
+                .add(HttpHeaderNames.SET_COOKIE, "session=0123456789abcdef; Path=/; HttpOnly")
+                .add(HttpHeaderNames.SET_COOKIE, "theme=dark; Path=/; Max-Age=3600");
+
+        return response;
+    }
+}
@@ -0,0 +1,108 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.mitm.CertificateAndKey;
+import com.browserup.bup.mitm.CertificateInfo;
+import com.browserup.bup.mitm.HostnameCertificateInfoGenerator;
+import com.browserup.bup.mitm.RootCertificateGenerator;
+import com.browserup.bup.mitm.keys.ECKeyGenerator;
+import com.browserup.bup.mitm.keys.KeyGenerator;
+import com.browserup.bup.mitm.keys.RSAKeyGenerator;
+import com.browserup.bup.mitm.manager.ImpersonatingMitmManager;
+import com.browserup.bup.mitm.tools.BouncyCastleSecurityProviderTool;
+import com.browserup.bup.mitm.tools.SecurityProviderTool;
+import com.browserup.bup.mitm.util.MitmConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the cost of impersonating a new hostname with RSA and EC keys: generating the server key pair, creating and signing the
+ * server certificate, and the complete path through the {@link ImpersonatingMitmManager}, including the SslContext. The key pair
+ * reservoir is disabled, so that key generation is included in the manager's cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CertificateGenerationBenchmark {
+    public enum KeyType {
+        RSA(RSAKeyGenerator::new, ImpersonatingMitmManager::builder),
+        EC(ECKeyGenerator::new, ImpersonatingMitmManager::builderWithECC);
+
+        private final Supplier<KeyGenerator> keyGenerator;
+        private final Supplier<ImpersonatingMitmManager.Builder> managerBuilder;
+
+        KeyType(Supplier<KeyGenerator> keyGenerator, Supplier<ImpersonatingMitmManager.Builder> managerBuilder) {
+            this.keyGenerator = keyGenerator;
+            this.managerBuilder = managerBuilder;
+        }
+    }
+
+    @Param
+    public KeyType keyType;
+
+    private KeyGenerator keyGenerator;
+
+    private SecurityProviderTool securityProviderTool;
+
+    private CertificateAndKey rootCertificate;
+
+    private KeyPair serverKeyPair;
+
+    private CertificateInfo certificateInfo;
+
+    private ImpersonatingMitmManager mitmManager;
+
+    private long hostnameCounter;
+
+    @Setup
+    public void setUp() {
+        keyGenerator = keyType.keyGenerator.get();
+        securityProviderTool = new BouncyCastleSecurityProviderTool();
+
+        rootCertificate = RootCertificateGenerator.builder()
+                .keyGenerator(keyType.keyGenerator.get())
+                .build()
+                .load();
+        serverKeyPair = keyGenerator.generate();
+        certificateInfo = new HostnameCertificateInfoGenerator()
+                .generate(Collections.singletonList("www.example.com"), null);
+    }
+
+    /**
+     * Creates a new manager for each iteration, so that the impersonated certificates cached by the previous iteration are released.
+     */
+    @Setup(Level.Iteration)
+    public void setUpMitmManager() {
+        mitmManager = keyType.managerBuilder.get()
+                .serverKeyPairReservoirSize(0)
+                .build();
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() {
+        return keyGenerator.generate();
+    }
+
+    @Benchmark
+    public CertificateAndKey createServerCertificate() {
+        return securityProviderTool.createServerCertificate(certificateInfo, rootCertificate.getCertificate(),
+                rootCertificate.getPrivateKey(), serverKeyPair, MitmConstants.DEFAULT_MESSAGE_DIGEST);
+    }
+
+    @Benchmark
+    public void impersonateNewHostname() {
+        // each hostname is new, so the manager generates a certificate instead of using its cache
+        mitmManager.preWarm(Collections.singletonList("host" + hostnameCounter++ + ".example.com")).join();
+    }
+}
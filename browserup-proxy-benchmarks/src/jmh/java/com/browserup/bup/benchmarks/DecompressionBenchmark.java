@@ -0,0 +1,82 @@
+package com.browserup.bup.benchmarks;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.browserup.bup.util.BrowserUpHttpUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures {@link BrowserUpHttpUtil#decompressGZIPContents(byte[])} and {@link BrowserUpHttpUtil#decompressBrotliContents(byte[])},
+ * which the proxy uses to decompress captured response content, on JSON-like payloads of several sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecompressionBenchmark {
+    private static final String[] WORDS = {"id", "name", "title", "description", "price", "available", "tags", "browserup",
+            "proxy", "request", "response", "header", "content", "true", "false", "null"};
+
+    @Param({"1024", "65536", "1048576"})
+    public int uncompressedSize;
+
+    private byte[] gzipContents;
+
+    private byte[] brotliContents;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] contents = createJsonLikeContents(uncompressedSize);
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(gzipped)) {
+            gzipStream.write(contents);
+        }
+        gzipContents = gzipped.toByteArray();
+
+        Brotli4jLoader.ensureAvailability();
+        brotliContents = Encoder.compress(contents);
+    }
+
+    @Benchmark
+    public byte[] gzip() {
+        return BrowserUpHttpUtil.decompressGZIPContents(gzipContents);
+    }
+
+    @Benchmark
+    public byte[] brotli() {
+        return BrowserUpHttpUtil.decompressBrotliContents(brotliContents);
+    }
+
+    /**
+     * Creates repetitive but not trivially compressible contents, similar to a JSON API response.
+     */
+    private static byte[] createJsonLikeContents(int size) {
+        Random random = new Random(42);
+        StringBuilder contents = new StringBuilder(size + 64);
+        contents.append('[');
+        while (contents.length() < size) {
+            contents.append("{\"").append(WORDS[random.nextInt(WORDS.length)]).append("\":\"")
+                    .append(WORDS[random.nextInt(WORDS.length)]).append('-').append(random.nextInt(100000))
+                    .append("\"},");
+        }
+
+        byte[] bytes = contents.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] sized = new byte[size];
+        System.arraycopy(bytes, 0, sized, 0, size);
+        return sized;
+    }
+}
@@ -0,0 +1,135 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.filters.BlocklistFilter;
+import com.browserup.bup.filters.BrowserUpHttpFilterChain;
+import com.browserup.bup.filters.RequestFilterAdapter;
+import com.browserup.bup.filters.ResponseFilterAdapter;
+import com.browserup.bup.proxy.BlocklistEntry;
+import com.browserup.bup.proxy.UrlRuleIndex;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.littleshoot.proxy.HttpFilters;
+import org.littleshoot.proxy.HttpFiltersAdapter;
+import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-request cost of the {@link BrowserUpHttpFilterChain}: instantiating the filters from the proxy's filter
+ * factories, and dispatching the callbacks of a complete request and response to them. The filter factories are a mix of
+ * filters that override many callbacks, filters that override one callback, and filters that override none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FilterChainBenchmark {
+    private static final UrlRuleIndex<BlocklistEntry> EMPTY_BLOCKLIST = BlocklistFilter.compileBlocklist(Collections.emptyList());
+
+    @Param({"1", "5", "20"})
+    public int filterFactoryCount;
+
+    private BrowserUpProxyServer proxyServer;
+
+    private EmbeddedChannel clientChannel;
+
+    private ChannelHandlerContext ctx;
+
+    private FullHttpRequest request;
+
+    private FullHttpResponse response;
+
+    private BrowserUpHttpFilterChain filterChain;
+
+    @Setup
+    public void setUp() {
+        proxyServer = new BrowserUpProxyServer();
+        for (int i = 0; i < filterFactoryCount; i++) {
+            proxyServer.addLastHttpFilterFactory(createFilterFactory(i));
+        }
+
+        clientChannel = BenchmarkChannels.newClientChannel();
+        ctx = BenchmarkChannels.contextOf(clientChannel);
+
+        request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/index.html", Unpooled.EMPTY_BUFFER);
+        response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+
+        filterChain = new BrowserUpHttpFilterChain(proxyServer, request, ctx);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public BrowserUpHttpFilterChain construct() {
+        return new BrowserUpHttpFilterChain(proxyServer, request, ctx);
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole blackhole) {
+        dispatchRequestAndResponse(filterChain, blackhole);
+    }
+
+    @Benchmark
+    public void constructAndDispatch(Blackhole blackhole) {
+        dispatchRequestAndResponse(new BrowserUpHttpFilterChain(proxyServer, request, ctx), blackhole);
+    }
+
+    private void dispatchRequestAndResponse(HttpFilters filters, Blackhole blackhole) {
+        blackhole.consume(filters.clientToProxyRequest(request));
+        blackhole.consume(filters.proxyToServerRequest(request));
+        filters.proxyToServerRequestSending();
+        filters.proxyToServerRequestSent();
+        filters.serverToProxyResponseReceiving();
+        blackhole.consume(filters.serverToProxyResponse(response));
+        filters.serverToProxyResponseReceived();
+        blackhole.consume(filters.proxyToClientResponse(response));
+    }
+
+    private static HttpFiltersSourceAdapter createFilterFactory(int index) {
+        switch (index % 4) {
+            case 0:
+                return new RequestFilterAdapter.FilterSource((request, contents, messageInfo) -> null, 0);
+            case 1:
+                return new ResponseFilterAdapter.FilterSource((response, contents, messageInfo) -> {
+                }, 0);
+            case 2:
+                return new HttpFiltersSourceAdapter() {
+                    @Override
+                    public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                        return new BlocklistFilter(originalRequest, ctx, EMPTY_BLOCKLIST);
+                    }
+                };
+            default:
+                return new HttpFiltersSourceAdapter() {
+                    @Override
+                    public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                        // overrides no callbacks, so the filter chain does not need to dispatch to it
+                        return new HttpFiltersAdapter(originalRequest, ctx);
+                    }
+                };
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.filters.HarCaptureFilter;
+import com.browserup.bup.proxy.CaptureType;
+import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.AbstractList;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of capturing one POST request and its response in a HAR with the {@link HarCaptureFilter}, for each
+ * combination of {@link CaptureType}s that the REST API and the proxy's convenience methods enable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HarCaptureFilterBenchmark {
+    public enum CaptureTypes {
+        NONE(EnumSet.noneOf(CaptureType.class)),
+        HEADERS(CaptureType.getHeaderCaptureTypes()),
+        COOKIES(CaptureType.getCookieCaptureTypes()),
+        HEADERS_AND_COOKIES(union(CaptureType.getHeaderCaptureTypes(), CaptureType.getCookieCaptureTypes())),
+        CONTENT(CaptureType.getNonBinaryContentCaptureTypes()),
+        ALL_CONTENT(CaptureType.getAllContentCaptureTypes()),
+        ALL(EnumSet.allOf(CaptureType.class));
+
+        private final Set<CaptureType> captureTypes;
+
+        CaptureTypes(Set<CaptureType> captureTypes) {
+            this.captureTypes = captureTypes;
+        }
+
+        private static Set<CaptureType> union(Set<CaptureType> first, Set<CaptureType> second) {
+            EnumSet<CaptureType> union = EnumSet.copyOf(first);
+            union.addAll(second);
+            return union;
+        }
+    }
+
+    @Param
+    public CaptureTypes captureTypes;
+
+    @Param({"16384"})
+    public int responseSize;
+
+    private EmbeddedChannel clientChannel;
+
+    private ChannelHandlerContext ctx;
+
+    private Har har;
+
+    private CapturedExchange exchange;
+
+    @Setup
+    public void setUp() {
+        clientChannel = BenchmarkChannels.newClientChannel();
+        ctx = BenchmarkChannels.contextOf(clientChannel);
+
+        // captured entries are discarded, so that the HAR does not grow for the duration of the benchmark
+        har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(new DiscardingEntryList());
+
+        exchange = new CapturedExchange(responseSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public HarCaptureFilter captureRequestAndResponse() {
+        return exchange.capture(har, ctx, captureTypes.captureTypes, "/search?q=browserup&page=2");
+    }
+
+    /**
+     * An entry list that accepts and immediately discards entries.
+     */
+    private static class DiscardingEntryList extends AbstractList<HarEntry> {
+        @Override
+        public boolean add(HarEntry entry) {
+            return true;
+        }
+
+        @Override
+        public HarEntry get(int index) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.proxy.CaptureType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarLog;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing a HAR to JSON, and parsing it back, with entries captured by the HarCaptureFilter with all capture types
+ * enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HarSerializationBenchmark {
+    @Param({"100", "1000"})
+    public int entryCount;
+
+    @Param({"4096"})
+    public int responseSize;
+
+    private ObjectMapper objectMapper;
+
+    private Har har;
+
+    private byte[] serializedHar;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+
+        har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(new ArrayList<>(entryCount));
+
+        EmbeddedChannel clientChannel = BenchmarkChannels.newClientChannel();
+        CapturedExchange exchange = new CapturedExchange(responseSize);
+        for (int i = 0; i < entryCount; i++) {
+            exchange.capture(har, BenchmarkChannels.contextOf(clientChannel), EnumSet.allOf(CaptureType.class), "/items/" + i + "?view=full");
+        }
+        clientChannel.finishAndReleaseAll();
+
+        serializedHar = objectMapper.writeValueAsBytes(har);
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), har);
+    }
+
+    @Benchmark
+    public byte[] serializeToBytes() throws IOException {
+        return objectMapper.writeValueAsBytes(har);
+    }
+
+    @Benchmark
+    public Har deserialize() throws IOException {
+        return objectMapper.readValue(serializedHar, Har.class);
+    }
+}
@@ -0,0 +1,121 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.har.HarStringPool;
+import com.browserup.bup.proxy.CaptureType;
+import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarLog;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to capture a HAR of many entries whose header names and values were decoded from the network, with and without
+ * deduplicating the captured strings in a {@link HarStringPool}. The retained heap size per HAR entry is reported as a secondary
+ * result. The response content is not captured, so the retained size is dominated by the headers, which include values that are
+ * unique to each exchange, such as the Date, ETag and X-Request-Id headers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HarStringPoolBenchmark {
+    public enum Deduplication {
+        NONE,
+        POOLED
+    }
+
+    @Param
+    public Deduplication deduplication;
+
+    @Param("50000")
+    public int entryCount;
+
+    private final Set<CaptureType> captureTypes = EnumSet.of(CaptureType.REQUEST_HEADERS, CaptureType.REQUEST_COOKIES,
+            CaptureType.RESPONSE_HEADERS, CaptureType.RESPONSE_COOKIES);
+
+    private final CapturedExchange exchange = new CapturedExchange(1024);
+
+    private HarStringPool stringPool;
+
+    private EmbeddedChannel clientChannel;
+
+    /**
+     * Retained heap size of the captured HAR, reported by JMH as a secondary result. JMH sums the sizes of the measurement
+     * iterations, so divide them by the number of iterations to get the size of one iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedSize {
+        public long bytesPerEntry;
+
+        private long heapUsedBefore;
+
+        private Har har;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bytesPerEntry = 0;
+            har = null;
+            heapUsedBefore = retainedHeapSize();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            bytesPerEntry = (retainedHeapSize() - heapUsedBefore) / har.getLog().getEntries().size();
+            har = null;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        stringPool = deduplication == Deduplication.POOLED
+                ? new HarStringPool(HarStringPool.DEFAULT_CAPACITY, HarStringPool.DEFAULT_MAX_STRING_LENGTH)
+                : null;
+        clientChannel = BenchmarkChannels.newClientChannel();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Har captureHar(RetainedSize retainedSize) {
+        Har har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(new ArrayList<>(entryCount));
+
+        for (int i = 0; i < entryCount; i++) {
+            exchange.captureDecoded(har, BenchmarkChannels.contextOf(clientChannel), captureTypes, "/items/" + i, stringPool);
+        }
+
+        retainedSize.har = har;
+
+        return har;
+    }
+
+    private static long retainedHeapSize() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        // collect repeatedly, since a single System.gc() may not collect all unreachable objects
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+}
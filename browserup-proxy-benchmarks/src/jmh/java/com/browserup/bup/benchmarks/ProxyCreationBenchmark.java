@@ -0,0 +1,105 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.client.ClientUtil;
+import org.littleshoot.proxy.impl.ServerGroup;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to create and start many proxies in one JVM, with dedicated Netty event loops per proxy and with event loops shared
+ * by all proxies. The number of threads started by the proxies and the number of live threads are reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProxyCreationBenchmark {
+    public enum EventLoops {
+        DEDICATED,
+        SHARED
+    }
+
+    @Param
+    public EventLoops eventLoops;
+
+    @Param("500")
+    public int proxyCount;
+
+    private ServerGroup sharedServerGroup;
+
+    private List<BrowserUpProxyServer> proxies;
+
+    private int threadsBefore;
+
+    /**
+     * Thread counts after starting the proxies, reported by JMH as secondary results. JMH sums the counts of the measurement
+     * iterations, so divide them by the number of iterations to get the counts of one iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ThreadCounts {
+        public long threadsStarted;
+        public long liveThreads;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            threadsStarted = 0;
+            liveThreads = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        if (eventLoops == EventLoops.SHARED) {
+            sharedServerGroup = ClientUtil.createSharedServerGroup();
+        }
+
+        proxies = new ArrayList<>(proxyCount);
+        threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        for (BrowserUpProxyServer proxy : proxies) {
+            proxy.abort();
+        }
+
+        if (sharedServerGroup != null) {
+            sharedServerGroup.shutdown(false);
+            sharedServerGroup = null;
+        }
+    }
+
+    @Benchmark
+    public List<BrowserUpProxyServer> startProxies(ThreadCounts threadCounts) {
+        for (int i = 0; i < proxyCount; i++) {
+            BrowserUpProxyServer proxy = new BrowserUpProxyServer();
+            if (sharedServerGroup != null) {
+                proxy.setServerGroup(sharedServerGroup);
+            }
+
+            proxy.start();
+            proxies.add(proxy);
+        }
+
+        int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        threadCounts.threadsStarted = threadsAfter - threadsBefore;
+        threadCounts.liveThreads = threadsAfter;
+
+        return proxies;
+    }
+}
@@ -0,0 +1,122 @@
+package com.browserup.bup.benchmarks;
+
+import com.browserup.bup.filters.BlocklistFilter;
+import com.browserup.bup.filters.RewriteUrlFilter;
+import com.browserup.bup.proxy.BlocklistEntry;
+import com.browserup.bup.proxy.RewriteRule;
+import com.browserup.bup.proxy.UrlRuleIndex;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matching a request against large blocklists and rewrite rule sets with the {@link BlocklistFilter} and
+ * {@link RewriteUrlFilter}, both when no rule matches (the common case) and when only the last rule matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlRuleMatchingBenchmark {
+    private static final String UNMATCHED_URL = "http://www.example.com/products/list?category=books&page=3";
+
+    @Param({"10", "100", "1000"})
+    public int ruleCount;
+
+    private EmbeddedChannel clientChannel;
+
+    private ChannelHandlerContext ctx;
+
+    private List<BlocklistEntry> blocklistEntries;
+
+    private UrlRuleIndex<BlocklistEntry> blocklist;
+
+    private UrlRuleIndex<RewriteRule> rewriteRules;
+
+    private String lastBlocklistedUrl;
+
+    private String lastRewrittenUrl;
+
+    @Setup
+    public void setUp() {
+        clientChannel = BenchmarkChannels.newClientChannel();
+        ctx = BenchmarkChannels.contextOf(clientChannel);
+
+        blocklistEntries = new ArrayList<>(ruleCount);
+        List<RewriteRule> rewriteRuleList = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            blocklistEntries.add(new BlocklistEntry("https?://ads" + i + "\\.tracker\\.example\\.net/.*", 404));
+            rewriteRuleList.add(new RewriteRule("http://cdn" + i + "\\.example\\.com/(.*)", "http://mirror" + i + ".example.org/$1"));
+        }
+
+        blocklist = BlocklistFilter.compileBlocklist(blocklistEntries);
+        rewriteRules = RewriteUrlFilter.compileRewriteRules(rewriteRuleList);
+
+        lastBlocklistedUrl = "http://ads" + (ruleCount - 1) + ".tracker.example.net/banner.js";
+        lastRewrittenUrl = "http://cdn" + (ruleCount - 1) + ".example.com/static/app.js";
+    }
+
+    @TearDown
+    public void tearDown() {
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public UrlRuleIndex<BlocklistEntry> compileBlocklist() {
+        UrlRuleIndex<BlocklistEntry> index = BlocklistFilter.compileBlocklist(blocklistEntries);
+        // the index is compiled when it is first used to match a URL
+        index.indexOf(UNMATCHED_URL, "GET", 0);
+        return index;
+    }
+
+    @Benchmark
+    public HttpResponse blocklistNoMatch() {
+        return applyBlocklist(UNMATCHED_URL);
+    }
+
+    @Benchmark
+    public HttpResponse blocklistMatchLastRule() {
+        return applyBlocklist(lastBlocklistedUrl);
+    }
+
+    @Benchmark
+    public HttpRequest rewriteNoMatch() {
+        return applyRewriteRules(UNMATCHED_URL);
+    }
+
+    @Benchmark
+    public HttpRequest rewriteMatchLastRule() {
+        return applyRewriteRules(lastRewrittenUrl);
+    }
+
+    private HttpResponse applyBlocklist(String url) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, url);
+
+        return new BlocklistFilter(request, ctx, blocklist).clientToProxyRequest(request);
+    }
+
+    private HttpRequest applyRewriteRules(String url) {
+        // the rewrite filter modifies the request, so each invocation needs a new request
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, url);
+
+        new RewriteUrlFilter(request, ctx, rewriteRules).clientToProxyRequest(request);
+
+        return request;
+    }
+}
@@ -9,6 +9,7 @@ import com.browserup.bup.proxy.BlocklistEntry;
 import com.browserup.bup.proxy.CaptureType;
 import com.browserup.bup.proxy.auth.AuthType;
 import com.browserup.bup.proxy.dns.AdvancedHostResolver;
+import com.browserup.bup.proxy.metrics.ProxyMetrics;
 import com.browserup.bup.util.HttpStatusClass;
 
 import de.sstoehr.harreader.model.Har;
@@ -182,6 +183,23 @@ public interface BrowserUpProxy {
      */
     EnumSet<CaptureType> getHarCaptureTypes();
 
+    /**
+     * Limits the HARs created after this call to at most maxEntries entries, and to entries of at most maxBytes bytes of estimated
+     * retained size. When a limit is exceeded, the oldest entries are evicted, and pages whose entries have all been evicted are
+     * removed. The numbers of evicted entries and bytes are reported in the "_evictedEntries" and "_evictedBytes" fields of the HAR log.
+     * A limit of 0 disables that limit, so calling this method with two zeros restores unbounded HARs. Limits replace a custom
+     * HAR storage backend, but removing the limits does not.
+     *
+     * The default implementation, for proxies that cannot limit their HARs, throws UnsupportedOperationException.
+     *
+     * @param maxEntries maximum number of entries in a HAR, or 0 for no limit
+     * @param maxBytes maximum estimated retained size of the entries in a HAR in bytes, or 0 for no limit
+     * @throws UnsupportedOperationException if this proxy cannot limit its HARs
+     */
+    default void setHarLimits(int maxEntries, long maxBytes) {
+        throw new UnsupportedOperationException("HAR limits are not supported by " + getClass().getName());
+    }
+
     /**
      * Enables the specified HAR capture types. Does not replace or disable any other capture types that may already be enabled.
      *
@@ -566,6 +584,51 @@ public interface BrowserUpProxy {
      */
     boolean waitForQuiescence(long quietPeriod, long timeout, TimeUnit timeUnit);
 
+    /**
+     * Waits for existing network traffic to URLs matching the specified pattern to stop, and for the specified quietPeriod to elapse.
+     * Traffic to other URLs, e.g. long-polling requests, is ignored. Returns true if there is no matching network traffic for the quiet
+     * period within the specified timeout, otherwise returns false.
+     *
+     * The default implementation, used by proxies that do not track requests by URL (e.g. {@link MitmProxyServer}), waits for all network
+     * traffic to stop, like {@link #waitForQuiescence(long, long, TimeUnit)}.
+     *
+     * @param urlPattern pattern that must match the entire URL of a request for the request to be waited for
+     * @param quietPeriod amount of time after which network traffic will be considered "stopped"
+     * @param timeout maximum amount of time to wait for network traffic to stop
+     * @param timeUnit TimeUnit for the quietPeriod and timeout
+     * @return true if matching network traffic is stopped, otherwise false
+     */
+    default boolean waitForQuiescence(Pattern urlPattern, long quietPeriod, long timeout, TimeUnit timeUnit) {
+        return waitForQuiescence(quietPeriod, timeout, timeUnit);
+    }
+
+    /**
+     * Waits for existing network traffic of the current HAR page to stop, and for the specified quietPeriod to elapse. Requests that were
+     * received while another page was current are ignored. If there is no current page, waits for all network traffic to stop, like
+     * {@link #waitForQuiescence(long, long, TimeUnit)}. The default implementation, used by proxies that do not track requests by page
+     * (e.g. {@link MitmProxyServer}), always waits for all network traffic to stop.
+     *
+     * @param quietPeriod amount of time after which network traffic will be considered "stopped"
+     * @param timeout maximum amount of time to wait for network traffic to stop
+     * @param timeUnit TimeUnit for the quietPeriod and timeout
+     * @return true if the network traffic of the current page is stopped, otherwise false
+     */
+    default boolean waitForCurrentPageQuiescence(long quietPeriod, long timeout, TimeUnit timeUnit) {
+        return waitForQuiescence(quietPeriod, timeout, timeUnit);
+    }
+
+    /**
+     * Returns the live metrics of this proxy: latency histograms of each request phase, and counters of bytes transferred, client
+     * connections, blocked requests and filter exceptions. Metrics are recorded whether or not a HAR is being captured.
+     *
+     * The default implementation, for proxies that do not record metrics, returns new empty metrics.
+     *
+     * @return metrics of this proxy
+     */
+    default ProxyMetrics getMetrics() {
+        return new ProxyMetrics();
+    }
+
     /**
      * Instructs this proxy to route traffic through an upstream proxy.
      *
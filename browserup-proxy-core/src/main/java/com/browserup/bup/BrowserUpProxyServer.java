@@ -15,6 +15,7 @@ import com.browserup.bup.assertion.field.header.HeadersDoNotContainStringAsserti
 import com.browserup.bup.assertion.field.header.HeadersMatchAssertion;
 import com.browserup.bup.assertion.field.status.StatusBelongsToClassAssertion;
 import com.browserup.bup.assertion.field.status.StatusEqualsAssertion;
+import com.browserup.bup.assertion.online.OnlineAssertionRegistry;
 import com.browserup.bup.assertion.model.AssertionEntryResult;
 import com.browserup.bup.assertion.model.AssertionResult;
 import com.browserup.bup.assertion.supplier.CurrentStepHarEntriesSupplier;
@@ -32,6 +33,7 @@ import com.browserup.bup.filters.HttpConnectHarCaptureFilter;
 import com.browserup.bup.filters.HttpsHostCaptureFilter;
 import com.browserup.bup.filters.HttpsOriginalHostCaptureFilter;
 import com.browserup.bup.filters.LatencyFilter;
+import com.browserup.bup.filters.MetricsFilter;
 import com.browserup.bup.filters.RegisterRequestFilter;
 import com.browserup.bup.filters.RequestFilter;
 import com.browserup.bup.filters.RequestFilterAdapter;
@@ -39,10 +41,15 @@ import com.browserup.bup.filters.ResolvedHostnameCacheFilter;
 import com.browserup.bup.filters.ResponseFilter;
 import com.browserup.bup.filters.ResponseFilterAdapter;
 import com.browserup.bup.filters.RewriteUrlFilter;
+import com.browserup.bup.filters.ServerResponseCaptureFilter;
 import com.browserup.bup.filters.UnregisterRequestFilter;
 import com.browserup.bup.filters.WebSocketHandshakeFilter;
 import com.browserup.bup.filters.WebSocketListener;
 import com.browserup.bup.filters.AllowlistFilter;
+import com.browserup.bup.har.BoundedHarStorage;
+import com.browserup.bup.har.HarStorage;
+import com.browserup.bup.har.HarStringPool;
+import com.browserup.bup.har.InMemoryHarStorage;
 import com.browserup.bup.mitm.KeyStoreFileCertificateSource;
 import com.browserup.bup.mitm.TrustSource;
 import com.browserup.bup.mitm.keys.ECKeyGenerator;
@@ -50,12 +57,19 @@ import com.browserup.bup.mitm.keys.RSAKeyGenerator;
 import com.browserup.bup.mitm.manager.ImpersonatingMitmManager;
 import com.browserup.bup.proxy.ActivityMonitor;
 import com.browserup.bup.proxy.BlocklistEntry;
+import com.browserup.bup.proxy.CapturePolicy;
 import com.browserup.bup.proxy.CaptureType;
+import com.browserup.bup.proxy.ChainedProxyRoute;
+import com.browserup.bup.proxy.ChainedProxyRouter;
+import com.browserup.bup.proxy.LatencyRule;
 import com.browserup.bup.proxy.RewriteRule;
+import com.browserup.bup.proxy.UrlRuleIndex;
 import com.browserup.bup.proxy.Allowlist;
 import com.browserup.bup.proxy.auth.AuthType;
 import com.browserup.bup.proxy.dns.AdvancedHostResolver;
 import com.browserup.bup.proxy.dns.DelegatingHostResolver;
+import com.browserup.bup.proxy.metrics.MetricsActivityTracker;
+import com.browserup.bup.proxy.metrics.ProxyMetrics;
 import com.browserup.bup.util.BrowserUpHttpUtil;
 import com.browserup.bup.util.BrowserUpProxyUtil;
 import com.browserup.bup.util.HttpStatusClass;
@@ -74,7 +88,6 @@ import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import org.apache.commons.lang3.StringUtils;
-import org.jspecify.annotations.Nullable;
 import org.littleshoot.proxy.ChainedProxyAdapter;
 import org.littleshoot.proxy.ChainedProxyManager;
 import org.littleshoot.proxy.HttpFilters;
@@ -86,6 +99,7 @@ import org.littleshoot.proxy.MitmManager;
 import org.littleshoot.proxy.extras.SelfSignedSslEngineSource;
 import org.littleshoot.proxy.impl.DefaultHttpProxyServer;
 import org.littleshoot.proxy.impl.ProxyUtils;
+import org.littleshoot.proxy.impl.ServerGroup;
 import org.littleshoot.proxy.impl.ThreadPoolConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,8 +107,6 @@ import org.slf4j.LoggerFactory;
 import javax.net.ssl.SSLEngine;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -114,6 +126,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
 
 /**
  * A LittleProxy-based implementation of {@link BrowserUpProxy}.
@@ -191,14 +204,18 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
     private final int maximumResponseBufferSizeInBytes;
 
     /**
-     * List of rejected URL patterns
+     * Index of rejected URL patterns. The index is immutable, and is replaced with a new index when the blocklist changes. A new index is
+     * only compiled when the next request is matched, so entries that are added one at a time are not recompiled for every entry.
      */
-    private volatile Collection<BlocklistEntry> blocklistEntries = new CopyOnWriteArrayList<>();
+    private final AtomicReference<UrlRuleIndex<BlocklistEntry>> blocklist =
+            new AtomicReference<>(BlocklistFilter.compileBlocklist(Collections.emptyList()));
 
     /**
-     * List of URLs to rewrite
+     * Index of URLs to rewrite. The index is immutable, and is replaced with a new index when the rewrite rules change. A new index is
+     * only compiled when the next request is matched, so rules that are added one at a time are not recompiled for every rule.
      */
-    private volatile CopyOnWriteArrayList<RewriteRule> rewriteRules = new CopyOnWriteArrayList<>();
+    private final AtomicReference<UrlRuleIndex<RewriteRule>> rewriteRules =
+            new AtomicReference<>(RewriteUrlFilter.compileRewriteRules(Collections.emptyList()));
 
     /**
      * The LittleProxy instance that performs all proxy operations.
@@ -210,10 +227,36 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
      */
     private volatile EnumSet<CaptureType> harCaptureTypes = EnumSet.noneOf(CaptureType.class);
 
+    /**
+     * Maximum number of bytes of response content to capture in each HAR entry. Unlimited by default.
+     */
+    private volatile int harResponseContentCaptureLimit = ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE;
+
     /**
      * The current HAR being captured.
      */
     private volatile Har har;
+
+    /**
+     * Creates the entry list of each new HAR. Entries are kept on the heap by default.
+     */
+    private volatile HarStorage harStorage = new InMemoryHarStorage();
+
+    /**
+     * Assertions that are evaluated as HAR entries are completed.
+     */
+    private final OnlineAssertionRegistry onlineAssertions = new OnlineAssertionRegistry();
+
+    /**
+     * Rules that decide the capture types of individual requests.
+     */
+    private final CapturePolicy capturePolicy = new CapturePolicy();
+
+    /**
+     * Pool of canonical strings that deduplicates repeated header names and values of the HAR entries, or null to not deduplicate.
+     */
+    private volatile HarStringPool harStringPool = HarStringPool.getDefault();
+
     /**
      * The current HarPage to which new requests will be associated.
      */
@@ -253,6 +296,11 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
      */
     private volatile int latencyMs;
 
+    /**
+     * Per-host and per-URL latency profiles. The first matching rule overrides {@link #latencyMs} for a request.
+     */
+    private final List<LatencyRule> latencyRules = new CopyOnWriteArrayList<>();
+
     /**
      * Set to true once the HAR capture filter has been added to the filter chain.
      */
@@ -275,9 +323,9 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
     private volatile boolean upstreamProxyHTTPS;
 
     /**
-     * The hosts and addresses that should not be routed through the upstream proxy
+     * Routes requests through the upstream proxy, or directly to the hosts and addresses that should not be routed through it
      */
-    private List<String> upstreamProxyNonProxyHosts;
+    private final ChainedProxyRouter chainedProxyRouter = new ChainedProxyRouter(() -> upstreamProxyAddress);
 
     /**
      * The chained proxy manager that manages upstream proxies.
@@ -311,11 +359,22 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
 
     private final ActivityMonitor activityMonitor = new ActivityMonitor();
 
+    /**
+     * Latency histograms and counters of this proxy. Recorded by the {@link MetricsFilter} and the {@link MetricsActivityTracker},
+     * regardless of whether a HAR is being captured.
+     */
+    private final ProxyMetrics metrics = new ProxyMetrics();
+
     /**
      * The acceptor and worker thread configuration for the Netty thread pools.
      */
     private volatile ThreadPoolConfiguration threadPoolConfiguration;
 
+    /**
+     * The server group providing the Netty event loops, if they are shared with other proxies. Null if this proxy has its own.
+     */
+    private volatile ServerGroup serverGroup;
+
     /**
      * A mapping of hostnames to base64-encoded Basic auth credentials that will be added to the Authorization header for
      * matching requests.
@@ -386,7 +445,8 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
                 .withAddress(clientBindSocket)
                 .withConnectTimeout(connectTimeoutMs)
                 .withIdleConnectionTimeout(idleConnectionTimeoutSec)
-                .withProxyAlias(VIA_HEADER_ALIAS);
+                .withProxyAlias(VIA_HEADER_ALIAS)
+                .plusActivityTracker(new MetricsActivityTracker(metrics));
 
         if (serverBindAddress != null) {
             bootstrap.withNetworkInterface(new InetSocketAddress(serverBindAddress, 0));
@@ -421,13 +481,14 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
             bootstrappedWithDefaultChainedProxy.set(true);
 
             bootstrap.withChainProxyManager((httpRequest, chainedProxies, clientDetails) -> {
-                final InetSocketAddress upstreamProxy = upstreamProxyAddress;
+                final ChainedProxyRoute route = chainedProxyRouter.route(httpRequest);
 
-                if (upstreamProxy != null) {
+                if (route != null) {
+                    final InetSocketAddress upstreamProxy = route.getUpstreamProxy();
 
                     final boolean useEncryption = upstreamProxyHTTPS;
 
-                    if (isNonProxyHost(httpRequest)) {
+                    if (route.isDirect()) {
                         chainedProxies.add(ChainedProxyAdapter.FALLBACK_TO_DIRECT_CONNECTION);
                     } else {
                         chainedProxies.add(new ChainedProxyAdapter() {
@@ -468,7 +529,9 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
             });
         }
 
-        if (threadPoolConfiguration != null) {
+        if (serverGroup != null) {
+            bootstrap.withServerGroup(serverGroup);
+        } else if (threadPoolConfiguration != null) {
             bootstrap.withThreadPoolConfiguration(threadPoolConfiguration);
         }
 
@@ -479,7 +542,8 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new BlocklistFilter(originalRequest, ctx, getBlocklist());
+                UrlRuleIndex<BlocklistEntry> currentBlocklist = blocklist.get();
+                return currentBlocklist.isEmpty() ? null : new BlocklistFilter(originalRequest, ctx, currentBlocklist);
             }
         });
 
@@ -487,35 +551,18 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                 Allowlist currentAllowlist = allowlist.get();
-                return new AllowlistFilter(originalRequest, ctx, isAllowlistEnabled(), currentAllowlist.getStatusCode(), currentAllowlist.getPatterns());
+                if (!currentAllowlist.isEnabled()) {
+                    return null;
+                }
+
+                return new AllowlistFilter(originalRequest, ctx, currentAllowlist);
             }
         });
     }
 
     @CheckReturnValue
     boolean isNonProxyHost(HttpRequest httpRequest) {
-        if (upstreamProxyNonProxyHosts == null) {
-            return false;
-        }
-
-        String host = extractHost(httpRequest);
-
-        // note that we have to transform the wildcard like *.example.com to a valid regex
-        return host != null && upstreamProxyNonProxyHosts.stream()
-                .anyMatch(nph -> host.matches(nph.trim().replace(".", "\\.").replace("*", ".*?")));
-    }
-
-    @Nullable
-    @CheckReturnValue
-    private static String extractHost(HttpRequest httpRequest) {
-        // skip upstream proxy configuration because the host is defined as proxy exception / non-proxy hosts
-        // therefore we need to cast it to URL
-        try {
-            return new URL(httpRequest.uri()).getHost();
-        } catch (MalformedURLException e) {
-            log.debug("The requested URL \"{}\" is not valid: {}", httpRequest.uri(), e.toString());
-            return httpRequest.uri().replaceFirst("(.+):\\d+", "$1");
-        }
+        return chainedProxyRouter.isNonProxyHost(httpRequest);
     }
 
     @Override
@@ -636,7 +683,7 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
 
         // https://github.com/browserup/browserup-proxy/pull/341
         harLog.setPages(new CopyOnWriteArrayList<>());
-        harLog.setEntries(new CopyOnWriteArrayList<>());
+        harLog.setEntries(harStorage.newEntryList(harLog));
 
         this.har = new Har();
         this.har.setLog(harLog);
@@ -649,6 +696,41 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
         return oldHar;
     }
 
+    /**
+     * Sets the storage backend for the entries of HARs created after this call, e.g. a
+     * {@link com.browserup.bup.har.SpillingHarStorage} to write completed entries to disk during very long captures.
+     * The current HAR, if any, is not affected.
+     *
+     * @param harStorage storage backend for HAR entries
+     */
+    public void setHarStorage(HarStorage harStorage) {
+        if (harStorage == null) {
+            throw new IllegalArgumentException("HAR storage cannot be null");
+        }
+
+        this.harStorage = harStorage;
+    }
+
+    public HarStorage getHarStorage() {
+        return harStorage;
+    }
+
+    /**
+     * Sets a {@link BoundedHarStorage} with the specified limits as the storage backend for the entries of HARs created after this call,
+     * replacing any storage set by {@link #setHarStorage(HarStorage)}. If both limits are 0, a {@link BoundedHarStorage} is replaced by
+     * the default {@link InMemoryHarStorage}, and other storage backends are kept.
+     */
+    @Override
+    public void setHarLimits(int maxEntries, long maxBytes) {
+        if (maxEntries == 0 && maxBytes == 0) {
+            if (harStorage instanceof BoundedHarStorage) {
+                setHarStorage(new InMemoryHarStorage());
+            }
+        } else {
+            setHarStorage(new BoundedHarStorage(maxEntries, maxBytes));
+        }
+    }
+
     @Override
     public void setHarCaptureTypes(Set<CaptureType> harCaptureSettings) {
         if (harCaptureSettings == null || harCaptureSettings.isEmpty()) {
@@ -701,6 +783,62 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
         }
     }
 
+    /**
+     * Limits the response content captured in each HAR entry when {@link CaptureType#RESPONSE_CONTENT} or
+     * {@link CaptureType#RESPONSE_BINARY_CONTENT} is enabled. Content beyond the limit is not captured, and the entry's response
+     * content is marked with <code>_truncated</code> and <code>_capturedSize</code> fields. The limit applies to requests
+     * received after it is set.
+     *
+     * @param maxSizeBytes maximum number of bytes of response content to capture, or
+     *                     {@link ServerResponseCaptureFilter#UNLIMITED_CAPTURE_SIZE} to capture the entire response
+     */
+    public void setHarResponseContentCaptureLimit(int maxSizeBytes) {
+        if (maxSizeBytes < 0 && maxSizeBytes != ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE) {
+            throw new IllegalArgumentException("Response content capture limit cannot be negative: " + maxSizeBytes);
+        }
+
+        this.harResponseContentCaptureLimit = maxSizeBytes;
+    }
+
+    public int getHarResponseContentCaptureLimit() {
+        return harResponseContentCaptureLimit;
+    }
+
+    /**
+     * Returns the registry of online assertions, which are evaluated against each HAR entry as soon as it has been captured, instead of
+     * against the whole HAR when the result is requested. Assertions only see the traffic captured while a HAR is being captured.
+     *
+     * @return the online assertions of this proxy
+     */
+    public OnlineAssertionRegistry getOnlineAssertions() {
+        return onlineAssertions;
+    }
+
+    /**
+     * Returns the capture policy, whose rules decide the capture types of the requests they match, e.g. to capture only the content
+     * of JSON API responses. Requests that no rule matches are captured with the capture types of this proxy
+     * (see {@link #setHarCaptureTypes(Set)}).
+     *
+     * @return the capture policy of this proxy
+     */
+    public CapturePolicy getCapturePolicy() {
+        return capturePolicy;
+    }
+
+    /**
+     * Sets the pool of canonical strings used to deduplicate the header names and values, MIME types, status texts and cookie names of
+     * the captured HAR entries. By default, all proxies share {@link HarStringPool#getDefault()}.
+     *
+     * @param harStringPool string pool, or null to not deduplicate strings
+     */
+    public void setHarStringPool(HarStringPool harStringPool) {
+        this.harStringPool = harStringPool;
+    }
+
+    public HarStringPool getHarStringPool() {
+        return harStringPool;
+    }
+
     @Override
     public Har newPage() {
         return newPage(null);
@@ -827,6 +965,34 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
         this.latencyMs = (int) TimeUnit.MILLISECONDS.convert(latency, timeUnit);
     }
 
+    /**
+     * Adds a latency profile for the requests matched by the specified rule. Rules are evaluated in the order they were added, and the
+     * latency of the first matching rule is used instead of the latency set by {@link #setLatency(long, TimeUnit)}.
+     *
+     * @param latencyRule latency rule to add
+     */
+    public void addLatencyRule(LatencyRule latencyRule) {
+        latencyRules.add(latencyRule);
+    }
+
+    /**
+     * Replaces all latency profiles with the specified rules.
+     *
+     * @param latencyRules latency rules, in the order they should be evaluated
+     */
+    public void setLatencyRules(Collection<LatencyRule> latencyRules) {
+        this.latencyRules.clear();
+        this.latencyRules.addAll(latencyRules);
+    }
+
+    public List<LatencyRule> getLatencyRules() {
+        return Collections.unmodifiableList(latencyRules);
+    }
+
+    public void clearLatencyRules() {
+        latencyRules.clear();
+    }
+
     @Override
     public void autoAuthorization(String domain, String username, String password, AuthType authType) {
         switch (authType) {
@@ -897,39 +1063,44 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
 
     @Override
     public void rewriteUrl(String pattern, String replace) {
-        rewriteRules.add(new RewriteRule(pattern, replace));
+        RewriteRule rewriteRule = new RewriteRule(pattern, replace);
+        rewriteRules.updateAndGet(current -> current.withRules(appendRule(current.getRules(), rewriteRule)));
     }
 
     @Override
     public void rewriteUrls(Map<String, String> rewriteRules) {
-        this.rewriteRules = rewriteRules.entrySet().stream()
+        List<RewriteRule> newRewriteRules = rewriteRules.entrySet().stream()
                 .map(rewriteRule -> new RewriteRule(rewriteRule.getKey(), rewriteRule.getValue()))
-                .collect(toCollection(CopyOnWriteArrayList::new));
+                .collect(toList());
+
+        this.rewriteRules.set(RewriteUrlFilter.compileRewriteRules(newRewriteRules));
     }
 
     @Override
     public void clearRewriteRules() {
-        rewriteRules.clear();
+        rewriteRules.set(RewriteUrlFilter.compileRewriteRules(Collections.emptyList()));
     }
 
     @Override
     public void blocklistRequests(String pattern, int responseCode) {
-        blocklistEntries.add(new BlocklistEntry(pattern, responseCode));
+        BlocklistEntry entry = new BlocklistEntry(pattern, responseCode);
+        blocklist.updateAndGet(current -> current.withRules(appendRule(current.getRules(), entry)));
     }
 
     @Override
     public void blocklistRequests(String pattern, int responseCode, String method) {
-        blocklistEntries.add(new BlocklistEntry(pattern, responseCode, method));
+        BlocklistEntry entry = new BlocklistEntry(pattern, responseCode, method);
+        blocklist.updateAndGet(current -> current.withRules(appendRule(current.getRules(), entry)));
     }
 
     @Override
     public void setBlocklist(Collection<BlocklistEntry> blocklist) {
-        this.blocklistEntries = new CopyOnWriteArrayList<>(blocklist);
+        this.blocklist.set(BlocklistFilter.compileBlocklist(blocklist));
     }
 
     @Override
     public Collection<BlocklistEntry> getBlocklist() {
-        return Collections.unmodifiableCollection(blocklistEntries);
+        return blocklist.get().getRules();
     }
 
     @Override
@@ -954,7 +1125,7 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
 
     @Override
     public void clearBlocklist() {
-        blocklistEntries.clear();
+        blocklist.set(BlocklistFilter.compileBlocklist(Collections.emptyList()));
     }
 
     @Override
@@ -1050,6 +1221,26 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
         return activityMonitor.waitForQuiescence(quietPeriod, timeout, timeUnit);
     }
 
+    @Override
+    public boolean waitForQuiescence(Pattern urlPattern, long quietPeriod, long timeout, TimeUnit timeUnit) {
+        return activityMonitor.waitForQuiescence(urlPattern, quietPeriod, timeout, timeUnit);
+    }
+
+    @Override
+    public boolean waitForCurrentPageQuiescence(long quietPeriod, long timeout, TimeUnit timeUnit) {
+        HarPage page = currentHarPage;
+        if (page == null) {
+            return activityMonitor.waitForQuiescence(quietPeriod, timeout, timeUnit);
+        }
+
+        return activityMonitor.waitForPageQuiescence(page.getId(), quietPeriod, timeout, timeUnit);
+    }
+
+    @Override
+    public ProxyMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Instructs this proxy to route traffic through an upstream proxy.
      *
@@ -1095,7 +1286,7 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
 
     @Override
     public void setChainedProxyNonProxyHosts(List<String> upstreamNonProxyHosts) {
-        this.upstreamProxyNonProxyHosts = upstreamNonProxyHosts;
+        chainedProxyRouter.setNonProxyHosts(upstreamNonProxyHosts);
     }
 
     /**
@@ -1111,6 +1302,22 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
         this.threadPoolConfiguration = threadPoolConfiguration;
     }
 
+    /**
+     * Configures the proxy to use the Netty event loops of the specified server group instead of creating its own, so that many proxies
+     * can share one set of threads. Stopping the proxy closes its channels and unregisters it from the server group. Server groups
+     * created by {@link com.browserup.bup.client.ClientUtil#createSharedServerGroup()} keep running when the last proxy is
+     * unregistered. Takes precedence over {@link #setThreadPoolConfiguration(ThreadPoolConfiguration)}.
+     *
+     * @param serverGroup server group to use
+     */
+    public void setServerGroup(ServerGroup serverGroup) {
+        if (isStarted()) {
+            throw new IllegalStateException("Cannot configure server group after proxy has started.");
+        }
+
+        this.serverGroup = serverGroup;
+    }
+
     @Override
     public void addFirstHttpFilterFactory(HttpFiltersSource filterFactory) {
         filterFactories.add(0, filterFactory);
@@ -1173,18 +1380,27 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
     @Override
     public Map<String, String> getRewriteRules() {
         ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
-        rewriteRules.forEach(rewriteRule -> builder.put(rewriteRule.getPattern().pattern(), rewriteRule.getReplace()));
+        rewriteRules.get().getRules().forEach(rewriteRule -> builder.put(rewriteRule.getPattern().pattern(), rewriteRule.getReplace()));
 
         return builder.build();
     }
 
     @Override
     public void removeRewriteRule(String urlPattern) {
-        // normally removing elements from the list we are iterating over would not be possible, but since this is a CopyOnWriteArrayList
-        // the iterator it returns is a "snapshot" of the list that will not be affected by removal (and that does not support removal, either)
-        rewriteRules.stream()
-                .filter(rewriteRule -> rewriteRule.getPattern().pattern().equals(urlPattern))
-                .forEach(rewriteRule -> rewriteRules.remove(rewriteRule));
+        rewriteRules.updateAndGet(current -> current.withRules(current.getRules().stream()
+                .filter(rewriteRule -> !rewriteRule.getPattern().pattern().equals(urlPattern))
+                .collect(toList())));
+    }
+
+    /**
+     * Returns a new list containing the rules followed by the new rule.
+     */
+    private static <T> List<T> appendRule(List<T> rules, T rule) {
+        List<T> newRules = new ArrayList<>(rules.size() + 1);
+        newRules.addAll(rules);
+        newRules.add(rule);
+
+        return newRules;
     }
 
     public boolean isStopped() {
@@ -1518,12 +1734,25 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
     }
 
     /**
-     * Adds the basic BrowserUp-proxy filters, except for the relatively-expensive HAR capture filter.
+     * Adds the basic BrowserUp-proxy filters, except for the relatively-expensive HAR capture filter. Filters whose feature is not
+     * active when a request is received (e.g. an empty blocklist or no additional headers) are not instantiated for that request.
      */
     protected void addBrowserUpFilters() {
+        // the metrics filter is the first filter, so that it also sees requests that are short-circuited by later filters
+        addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+            @Override
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                return new MetricsFilter(originalRequest, ctx, metrics);
+            }
+        });
+
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                if (!WebSocketHandshakeFilter.isWebSocketUpgradeRequest(originalRequest)) {
+                    return null;
+                }
+
                 return new WebSocketHandshakeFilter(originalRequest, ctx, webSocketListeners);
             }
         });
@@ -1538,49 +1767,58 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new RegisterRequestFilter(originalRequest, ctx, activityMonitor);
+                HarPage page = currentHarPage;
+                return new RegisterRequestFilter(originalRequest, ctx, activityMonitor, page == null ? null : page.getId());
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new HttpsOriginalHostCaptureFilter(originalRequest, ctx);
+                // the HTTPS host is only captured from the CONNECT that establishes the tunnel
+                return ProxyUtils.isCONNECT(originalRequest) ? new HttpsOriginalHostCaptureFilter(originalRequest, ctx) : null;
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new AutoBasicAuthFilter(originalRequest, ctx, basicAuthCredentials);
+                return basicAuthCredentials.isEmpty() ? null : new AutoBasicAuthFilter(originalRequest, ctx, basicAuthCredentials);
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new RewriteUrlFilter(originalRequest, ctx, rewriteRules);
+                UrlRuleIndex<RewriteRule> currentRewriteRules = rewriteRules.get();
+                return currentRewriteRules.isEmpty() ? null : new RewriteUrlFilter(originalRequest, ctx, currentRewriteRules);
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-                return new HttpsHostCaptureFilter(originalRequest, ctx);
+                return ProxyUtils.isCONNECT(originalRequest) ? new HttpsHostCaptureFilter(originalRequest, ctx) : null;
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
             public HttpFilters filterRequest(HttpRequest originalRequest) {
-                return new AddHeadersFilter(originalRequest, additionalHeaders);
+                Map<String, String> currentHeaders = additionalHeaders;
+                return currentHeaders.isEmpty() ? null : new AddHeadersFilter(originalRequest, currentHeaders);
             }
         });
 
         addHttpFilterFactory(new HttpFiltersSourceAdapter() {
             @Override
-            public HttpFilters filterRequest(HttpRequest originalRequest) {
-                return new LatencyFilter(originalRequest, latencyMs);
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                int currentLatencyMs = latencyMs;
+                if (currentLatencyMs <= 0 && latencyRules.isEmpty()) {
+                    return null;
+                }
+
+                return new LatencyFilter(originalRequest, ctx, currentLatencyMs, latencyRules);
             }
         });
 
@@ -1630,7 +1868,14 @@ public class BrowserUpProxyServer implements BrowserUpProxy {
                 public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
                     Har har = getOrCreateHar();
                     if (har != null && !ProxyUtils.isCONNECT(originalRequest)) {
-                        return new HarCaptureFilter(originalRequest, ctx, har, getCurrentPageRef(), getHarCaptureTypes());
+                        // the routing decision is only known when the default chained proxy manager is used
+                        return new HarCaptureFilter(originalRequest, ctx, har, getCurrentPageRef(), getHarCaptureTypes(),
+                                new HarCaptureFilter.Options()
+                                        .setMaxResponseContentCaptureSize(harResponseContentCaptureLimit)
+                                        .setChainedProxyRouter(chainedProxyManager == null ? chainedProxyRouter : null)
+                                        .setOnlineAssertions(onlineAssertions)
+                                        .setCapturePolicy(capturePolicy)
+                                        .setStringPool(harStringPool));
                     } else {
                         return null;
                     }
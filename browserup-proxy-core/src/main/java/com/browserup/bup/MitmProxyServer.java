@@ -27,6 +27,7 @@ import com.browserup.bup.proxy.CaptureType;
 import com.browserup.bup.proxy.RewriteRule;
 import com.browserup.bup.proxy.auth.AuthType;
 import com.browserup.bup.proxy.dns.AdvancedHostResolver;
+import com.browserup.bup.proxy.metrics.ProxyMetrics;
 import com.browserup.bup.util.BrowserUpHttpUtil;
 import com.browserup.bup.util.HttpStatusClass;
 import com.google.common.collect.ImmutableMap;
@@ -163,6 +164,11 @@ public class MitmProxyServer implements BrowserUpProxy {
     return mitmProxyManager.getHarCaptureFilterManager().getLastCaptureTypes();
   }
 
+  @Override
+  public void setHarLimits(int maxEntries, long maxBytes) {
+    mitmProxyManager.getHarCaptureFilterManager().setHarLimits(maxEntries, maxBytes);
+  }
+
   @Override
   public void enableHarCaptureTypes(Set<CaptureType> captureTypes) {
     if (captureTypes == null || captureTypes.isEmpty()) return;
@@ -422,6 +428,15 @@ public class MitmProxyServer implements BrowserUpProxy {
     return false;
   }
 
+  /**
+   * Returns a snapshot of the metrics recorded by mitmproxy. Unlike {@link BrowserUpProxyServer#getMetrics()}, the returned metrics are
+   * not updated as traffic flows through the proxy; call this method again to get current metrics.
+   */
+  @Override
+  public ProxyMetrics getMetrics() {
+    return mitmProxyManager.getMetricsManager().getMetrics();
+  }
+
   @Override
   public void setChainedProxy(InetSocketAddress chainedProxyAddress) {
     this.mitmProxyManager.getProxyManager().setChainedProxy(chainedProxyAddress);
@@ -0,0 +1,128 @@
+package com.browserup.bup.assertion.online;
+
+import com.browserup.bup.assertion.HarEntryAssertion;
+import com.browserup.bup.assertion.error.HarEntryAssertionError;
+import com.browserup.bup.assertion.field.content.ContentPassesPredicateAssertion;
+import com.browserup.bup.assertion.field.content.ContentSizePassesPredicateAssertion;
+import com.browserup.bup.assertion.model.AssertionEntryResult;
+import com.browserup.bup.assertion.model.AssertionResult;
+import com.browserup.bup.assertion.model.filter.AssertionUrlFilterInfo;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarRequest;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * An assertion that is evaluated against each HAR entry whose URL matches the assertion's URL pattern, as soon as the proxy has
+ * captured the entry completely. Only the numbers of passed and failed entries and the most recent failures are kept, so the result
+ * is available in constant time, regardless of the number of entries, and remains available after the entries were removed from the
+ * HAR. See {@link OnlineAssertionRegistry}.
+ */
+public class OnlineAssertion {
+    /**
+     * Maximum number of failed entries that are included in the result.
+     */
+    public static final int MAX_RECORDED_FAILURES = 100;
+
+    private final String name;
+    private final Pattern urlPattern;
+    private final HarEntryAssertion assertion;
+    private final boolean requiresResponseContent;
+
+    private final LongAdder passedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    private final Queue<AssertionEntryResult> recentFailures = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recentFailuresSize = new AtomicInteger();
+
+    public OnlineAssertion(String name, Pattern urlPattern, HarEntryAssertion assertion) {
+        this.name = name;
+        this.urlPattern = urlPattern;
+        this.assertion = assertion;
+        this.requiresResponseContent = assertion instanceof ContentPassesPredicateAssertion
+                || assertion instanceof ContentSizePassesPredicateAssertion;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Pattern getUrlPattern() {
+        return urlPattern;
+    }
+
+    /**
+     * @return true if the assertion inspects the response content, which must then be captured even if it is not stored in the HAR
+     */
+    public boolean requiresResponseContent() {
+        return requiresResponseContent;
+    }
+
+    /**
+     * Evaluates the assertion against the entry, if the entry's URL matches the URL pattern of this assertion. Entries without a
+     * captured request URL do not match any URL pattern.
+     *
+     * @param entry completely captured entry
+     */
+    public void evaluate(HarEntry entry) {
+        HarRequest request = entry.getRequest();
+        String url = request != null ? request.getUrl() : null;
+        if (url == null || !urlPattern.matcher(url).matches()) {
+            return;
+        }
+
+        Optional<HarEntryAssertionError> error = assertion.assertion(entry);
+        if (!error.isPresent()) {
+            passedCount.increment();
+            return;
+        }
+
+        failedCount.increment();
+
+        recentFailures.add(new AssertionEntryResult.Builder()
+                .setUrl(url)
+                .setFailed(true)
+                .setMessage(error.get().getMessage())
+                .create());
+
+        // the queue may briefly exceed the limit while failures are recorded concurrently
+        if (recentFailuresSize.incrementAndGet() > MAX_RECORDED_FAILURES && recentFailures.poll() != null) {
+            recentFailuresSize.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the result of all evaluations since the assertion was registered or reset. The requests of the result are the most recent
+     * failed entries, at most {@link #MAX_RECORDED_FAILURES}.
+     */
+    public AssertionResult getResult() {
+        long failed = failedCount.sum();
+        long total = passedCount.sum() + failed;
+
+        return new AssertionResult.Builder()
+                .setFilter(new AssertionUrlFilterInfo(urlPattern.pattern()))
+                .setRequests(new ArrayList<>(recentFailures))
+                .setFailed(failed > 0)
+                .setPassed(failed == 0)
+                .setMessage(String.format("%d passed, %d total", total - failed, total))
+                .create();
+    }
+
+    /**
+     * Discards the results of all previous evaluations.
+     */
+    public void reset() {
+        passedCount.reset();
+        failedCount.reset();
+
+        while (recentFailures.poll() != null) {
+            recentFailuresSize.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.browserup.bup.assertion.online;
+
+import com.browserup.bup.assertion.HarEntryAssertion;
+import com.browserup.bup.assertion.model.AssertionResult;
+import de.sstoehr.harreader.model.HarContent;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Assertions that are registered before the traffic they check is captured, and evaluated by the HAR capture filter as each HAR entry
+ * is completed, instead of walking the HAR when the result is requested. For example, to check that every API response takes at most
+ * 500 ms:
+ * <pre>
+ *     proxy.getOnlineAssertions().register("fast api", Pattern.compile(".*&#47;api&#47;.*"), new ResponseTimeLessThanOrEqualAssertion(500L));
+ *     ...
+ *     AssertionResult result = proxy.getOnlineAssertions().getResult("fast api");
+ * </pre>
+ * Assertions on the response content are evaluated against the captured content even if the HAR does not capture response content.
+ * Results are not reset when a new HAR is created; see {@link #resetResults()}.
+ */
+public class OnlineAssertionRegistry {
+    private final ConcurrentMap<String, OnlineAssertion> assertions = new ConcurrentHashMap<>();
+
+    private volatile boolean requiresResponseContent;
+
+    /**
+     * Registers an assertion that is evaluated against every subsequently completed HAR entry whose URL matches the URL pattern.
+     * An assertion that was previously registered with the same name is replaced, and its results are discarded.
+     *
+     * @param name name of the assertion, used to retrieve its result
+     * @param urlPattern pattern that must match the entire URL of an entry for the assertion to be evaluated against it
+     * @param assertion the assertion
+     * @return the registered assertion
+     */
+    public synchronized OnlineAssertion register(String name, Pattern urlPattern, HarEntryAssertion assertion) {
+        OnlineAssertion onlineAssertion = new OnlineAssertion(name, urlPattern, assertion);
+        assertions.put(name, onlineAssertion);
+        updateRequiresResponseContent();
+
+        return onlineAssertion;
+    }
+
+    /**
+     * Removes the assertion with the specified name.
+     *
+     * @return true if an assertion was removed
+     */
+    public synchronized boolean remove(String name) {
+        boolean removed = assertions.remove(name) != null;
+        updateRequiresResponseContent();
+
+        return removed;
+    }
+
+    /**
+     * Removes all assertions.
+     */
+    public synchronized void clear() {
+        assertions.clear();
+        updateRequiresResponseContent();
+    }
+
+    public boolean isEmpty() {
+        return assertions.isEmpty();
+    }
+
+    /**
+     * @return true if any registered assertion inspects the response content
+     */
+    public boolean requiresResponseContent() {
+        return requiresResponseContent;
+    }
+
+    /**
+     * Returns the accumulated result of the assertion with the specified name. The result is computed from counters, so this method does
+     * not depend on the number of evaluated entries.
+     *
+     * @throws IllegalArgumentException if no assertion is registered with the name
+     */
+    public AssertionResult getResult(String name) {
+        OnlineAssertion assertion = assertions.get(name);
+        if (assertion == null) {
+            throw new IllegalArgumentException("No online assertion registered with name: " + name);
+        }
+
+        return assertion.getResult();
+    }
+
+    /**
+     * @return the accumulated results of all registered assertions, by name
+     */
+    public Map<String, AssertionResult> getResults() {
+        Map<String, AssertionResult> results = new LinkedHashMap<>();
+        assertions.forEach((name, assertion) -> results.put(name, assertion.getResult()));
+
+        return results;
+    }
+
+    /**
+     * Discards the results of all registered assertions, e.g. when a new HAR is created.
+     */
+    public void resetResults() {
+        assertions.values().forEach(OnlineAssertion::reset);
+    }
+
+    /**
+     * Evaluates the registered assertions against a completely captured entry.
+     *
+     * @param entry the completed entry
+     * @param responseContent response content captured only for the assertions, or null if the assertions can use the content of the
+     *                        entry
+     */
+    public void entryCompleted(HarEntry entry, HarContent responseContent) {
+        HarEntry contentEntry = responseContent == null ? entry : createContentEntry(entry, responseContent);
+
+        for (OnlineAssertion assertion : assertions.values()) {
+            assertion.evaluate(assertion.requiresResponseContent() ? contentEntry : entry);
+        }
+    }
+
+    /**
+     * Creates an entry for content assertions, which only read the request URL and the response content, so that the content does not
+     * need to be added to the entry in the HAR.
+     */
+    private static HarEntry createContentEntry(HarEntry entry, HarContent responseContent) {
+        HarResponse response = new HarResponse();
+        response.setContent(responseContent);
+
+        HarEntry contentEntry = new HarEntry();
+        contentEntry.setRequest(entry.getRequest());
+        contentEntry.setResponse(response);
+
+        return contentEntry;
+    }
+
+    private void updateRequiresResponseContent() {
+        requiresResponseContent = assertions.values().stream().anyMatch(OnlineAssertion::requiresResponseContent);
+    }
+}
@@ -1,9 +1,9 @@
 package com.browserup.bup.assertion.supplier;
 
 import com.browserup.bup.assertion.model.filter.AssertionFilterInfo;
+import com.browserup.harreader.filter.HarLogFilter;
 
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import de.sstoehr.harreader.model.Har;
@@ -17,8 +17,7 @@ public class MostRecentHarEntrySupplier extends HarEntriesSupplier {
 
     @Override
     public List<HarEntry> get() {
-        return getHar().getLog().getEntries().stream()
-                .max(Comparator.comparing(HarEntry::getStartedDateTime))
+        return HarLogFilter.findMostRecentEntry(getHar().getLog())
                 .map(Collections::singletonList)
                 .orElse(Collections.emptyList());
     }
@@ -1,9 +1,12 @@
 package com.browserup.bup.client;
 
 import com.browserup.bup.BrowserUpProxy;
+import com.browserup.bup.BrowserUpProxyServer;
 import com.browserup.bup.proxy.dns.AdvancedHostResolver;
 import com.browserup.bup.proxy.dns.NativeCacheManipulatingResolver;
 import com.browserup.bup.proxy.dns.NativeResolver;
+import com.browserup.bup.proxy.dns.NettyDnsResolver;
+import org.littleshoot.proxy.impl.ServerGroup;
 import org.openqa.selenium.Proxy;
 
 import java.net.InetAddress;
@@ -34,6 +37,31 @@ public class ClientUtil {
         return new NativeResolver();
     }
 
+    /**
+     * Creates a {@link NettyDnsResolver} instance that resolves hostnames asynchronously using the platform's name servers, honoring
+     * the TTL of DNS records, that can be used when calling {@link BrowserUpProxy#setHostNameResolver(AdvancedHostResolver)}.
+     * The resolver should be closed when it is no longer used.
+     *
+     * @return a new NettyDnsResolver
+     */
+    public static NettyDnsResolver createNettyDnsResolver() {
+        return new NettyDnsResolver();
+    }
+
+    /**
+     * Creates a {@link ServerGroup} with event loop groups sized to the available processors, that can be shared by many proxies
+     * by calling {@link BrowserUpProxyServer#setServerGroup(ServerGroup)} before starting them. Unlike the server group every proxy
+     * creates by default, the shared server group is not shut down when the last proxy using it is stopped; call
+     * {@link ServerGroup#shutdown(boolean)} when it is no longer used.
+     *
+     * @return a new ServerGroup that is not shut down automatically
+     */
+    public static ServerGroup createSharedServerGroup() {
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        return new ServerGroup("BrowserUpProxySharedGroup", ServerGroup.DEFAULT_INCOMING_ACCEPTOR_THREADS, processors, processors, false);
+    }
+
     /**
      * Creates a Selenium Proxy object from the BrowserUpProxy instance. The BrowserUpProxy must be started. Retrieves the address
      * of the Proxy using {@link #getConnectableAddress()}.
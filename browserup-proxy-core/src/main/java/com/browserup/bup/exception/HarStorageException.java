@@ -0,0 +1,23 @@
+package com.browserup.bup.exception;
+
+/**
+ * Indicates that an error occurred while writing HAR entries to, or reading them from, a HAR storage backend.
+ */
+public class HarStorageException extends RuntimeException {
+    private static final long serialVersionUID = -3419523873106546931L;
+
+    public HarStorageException() {
+    }
+
+    public HarStorageException(String message) {
+        super(message);
+    }
+
+    public HarStorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public HarStorageException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -1,5 +1,7 @@
 package com.browserup.bup.filters;
 
+import com.browserup.bup.proxy.Allowlist;
+import com.browserup.bup.proxy.UrlRuleIndex;
 import com.browserup.bup.util.HttpStatusClass;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
@@ -11,30 +13,49 @@ import io.netty.handler.codec.http.HttpUtil;
 import org.littleshoot.proxy.impl.ProxyUtils;
 
 import java.util.Collection;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 import static java.util.Collections.*;
 
 /**
- * Checks this request against the allowlist, and returns the modified response if the request is not in the allowlist. The filter does not
- * make a defensive copy of the allowlist URLs, so there is no guarantee that the allowlist URLs at the time of construction will contain the
- * same values when the filter is actually invoked, if the URL collection is modified concurrently.
+ * Checks this request against the allowlist, and returns the modified response if the request is not in the allowlist. When the filter
+ * is created from an {@link Allowlist}, the allowlist's compiled pattern index is used; when it is created from a collection of patterns,
+ * the patterns are compiled into an index when the filter is constructed.
  */
 public class AllowlistFilter extends HttpsAwareFiltersAdapter {
     private final boolean allowlistEnabled;
     private final int allowlistResponseCode;
-    private final Collection<Pattern> allowlistUrls;
+    private final UrlRuleIndex<Pattern> allowlistUrls;
 
     public AllowlistFilter(HttpRequest originalRequest,
                            ChannelHandlerContext ctx,
                            boolean allowlistEnabled,
                            int allowlistResponseCode,
                            Collection<Pattern> allowlistUrls) {
+        this(originalRequest, ctx, allowlistEnabled, allowlistResponseCode, compileAllowlist(allowlistUrls));
+    }
+
+    public AllowlistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Allowlist allowlist) {
+        this(originalRequest, ctx, allowlist.isEnabled(), allowlist.getStatusCode(), allowlist.getPatternIndex());
+    }
+
+    private AllowlistFilter(HttpRequest originalRequest,
+                            ChannelHandlerContext ctx,
+                            boolean allowlistEnabled,
+                            int allowlistResponseCode,
+                            UrlRuleIndex<Pattern> allowlistUrls) {
         super(originalRequest, ctx);
 
         this.allowlistEnabled = allowlistEnabled;
         this.allowlistResponseCode = allowlistResponseCode;
-        this.allowlistUrls = allowlistUrls != null ? allowlistUrls : emptyList();
+        this.allowlistUrls = allowlistUrls;
+    }
+
+    private static UrlRuleIndex<Pattern> compileAllowlist(Collection<Pattern> allowlistUrls) {
+        Collection<Pattern> patterns = allowlistUrls != null ? allowlistUrls : emptyList();
+
+        return UrlRuleIndex.compile(patterns, Function.identity());
     }
 
     @Override
@@ -55,7 +76,7 @@ public class AllowlistFilter extends HttpsAwareFiltersAdapter {
 
             String url = getOriginalUrl();
 
-            urlAllowlisted = allowlistUrls.stream().anyMatch(pattern -> pattern.matcher(url).matches());
+            urlAllowlisted = allowlistUrls.findFirst(url, null) != null;
 
             if (!urlAllowlisted) {
                 HttpResponseStatus status;
@@ -8,6 +8,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import com.browserup.bup.proxy.BlocklistEntry;
+import com.browserup.bup.proxy.UrlRuleIndex;
 import com.browserup.bup.util.HttpStatusClass;
 import io.netty.handler.codec.http.HttpUtil;
 
@@ -15,21 +16,31 @@ import java.util.Collection;
 import java.util.Collections;
 
 /**
- * Applies blocklist entries to this request. The filter does not make a defensive copy of the blocklist entries, so there is no guarantee
- * that the blocklist at the time of construction will contain the same values when the filter is actually invoked, if the entries are modified concurrently.
+ * Applies blocklist entries to this request. The blocklist entries are matched using a {@link UrlRuleIndex}, which should be compiled once
+ * when the blocklist changes rather than for every request.
  */
 public class BlocklistFilter extends HttpsAwareFiltersAdapter {
     public static final String BLOCKED_PHRASE = "Request blocked";
-    private final Collection<BlocklistEntry> blocklistedUrls;
+    private final UrlRuleIndex<BlocklistEntry> blocklistedUrls;
 
     public BlocklistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Collection<BlocklistEntry> blocklistedUrls) {
+        this(originalRequest, ctx, compileBlocklist(blocklistedUrls != null ? blocklistedUrls : Collections.emptyList()));
+    }
+
+    public BlocklistFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, UrlRuleIndex<BlocklistEntry> blocklistedUrls) {
         super(originalRequest, ctx);
 
-        if (blocklistedUrls != null) {
-            this.blocklistedUrls = blocklistedUrls;
-        } else {
-            this.blocklistedUrls = Collections.emptyList();
-        }
+        this.blocklistedUrls = blocklistedUrls;
+    }
+
+    /**
+     * Compiles an index of blocklist entries, which can be shared by all BlocklistFilters until the blocklist changes.
+     *
+     * @param blocklistEntries blocklist entries, in matching order
+     * @return compiled index of the blocklist entries
+     */
+    public static UrlRuleIndex<BlocklistEntry> compileBlocklist(Collection<BlocklistEntry> blocklistEntries) {
+        return UrlRuleIndex.compile(blocklistEntries, BlocklistEntry::getUrlPattern, BlocklistEntry::getHttpMethodPattern);
     }
 
     @Override
@@ -38,25 +49,27 @@ public class BlocklistFilter extends HttpsAwareFiltersAdapter {
             HttpRequest httpRequest = (HttpRequest) httpObject;
 
             String url = getOriginalUrl();
+            String method = httpRequest.method().name();
+
+            int index = -1;
+            while ((index = blocklistedUrls.indexOf(url, method, index + 1)) >= 0) {
+                BlocklistEntry entry = blocklistedUrls.getRules().get(index);
 
-            for (BlocklistEntry entry : blocklistedUrls) {
                 if (HttpMethod.CONNECT.equals(httpRequest.method()) && entry.getHttpMethodPattern() == null) {
                     // do not allow CONNECTs to be blocklisted unless a method pattern is explicitly specified
                     continue;
                 }
 
-                if (entry.matches(url, httpRequest.method().name())) {
-                    HttpResponseStatus status;
-                    if(HttpStatusClass.UNKNOWN.equals(HttpStatusClass.valueOf(entry.getStatusCode()))) {
-                        status = new HttpResponseStatus(entry.getStatusCode(), BLOCKED_PHRASE);
-                    } else {
-                        status = HttpResponseStatus.valueOf(entry.getStatusCode());
-                    }
-                    HttpResponse resp = new DefaultFullHttpResponse(httpRequest.protocolVersion(), status);
-                    HttpUtil.setContentLength(resp, 0L);
-
-                    return resp;
+                HttpResponseStatus status;
+                if(HttpStatusClass.UNKNOWN.equals(HttpStatusClass.valueOf(entry.getStatusCode()))) {
+                    status = new HttpResponseStatus(entry.getStatusCode(), BLOCKED_PHRASE);
+                } else {
+                    status = HttpResponseStatus.valueOf(entry.getStatusCode());
                 }
+                HttpResponse resp = new DefaultFullHttpResponse(httpRequest.protocolVersion(), status);
+                HttpUtil.setContentLength(resp, 0L);
+
+                return resp;
             }
         }
 
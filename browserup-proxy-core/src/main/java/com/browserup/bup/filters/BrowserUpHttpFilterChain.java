@@ -9,45 +9,144 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
 
 import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.proxy.metrics.ProxyCounter;
 import org.littleshoot.proxy.HttpFilters;
 import org.littleshoot.proxy.HttpFiltersAdapter;
+import org.littleshoot.proxy.HttpFiltersSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.function.Supplier;
 
 /**
  * The filter "driver" that delegates to all chained filters specified by the proxy server.
+ * <p>
+ * Most filters only override one or two of the {@link HttpFilters} callbacks, so the chain keeps a separate dispatch array for each
+ * callback, containing only the filters that override it. Callbacks that no filter overrides do not iterate over the filters at all.
  */
 public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(BrowserUpHttpFilterChain.class);
 
+    private static final HttpFilters[] NO_FILTERS = new HttpFilters[0];
+
+    private static final Callback[] CALLBACKS = Callback.values();
+
+    /**
+     * Flag of filter classes that implement {@link ModifiedRequestAwareFilter}. Does not overlap the {@link Callback#mask()}s.
+     */
+    private static final int MODIFIED_REQUEST_AWARE = 1 << 31;
+
+    /**
+     * The callbacks each filter class overrides, as a bit mask of {@link Callback#mask()}s, combined with the
+     * {@link #MODIFIED_REQUEST_AWARE} flag, computed once per class. Testing the flag instead of using instanceof avoids
+     * failing interface type checks on every request, which are slow when filters of many different classes are checked.
+     */
+    private static final ClassValue<Integer> FILTER_CLASS_FLAGS = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> filterClass) {
+            int flags = 0;
+            for (Callback callback : CALLBACKS) {
+                if (callback.isOverriddenBy(filterClass)) {
+                    flags |= callback.mask();
+                }
+            }
+
+            if (ModifiedRequestAwareFilter.class.isAssignableFrom(filterClass)) {
+                flags |= MODIFIED_REQUEST_AWARE;
+            }
+
+            return flags;
+        }
+    };
+
     private final BrowserUpProxyServer proxyServer;
 
-    private final List<HttpFilters> filters;
+    private final HttpFilters[] filters;
+
+    /**
+     * For each {@link Callback} (indexed by ordinal), the filters that override the callback, in filter chain order.
+     */
+    private final HttpFilters[][] filtersByCallback;
+
+    /**
+     * The filters that implement {@link ModifiedRequestAwareFilter}, in filter chain order.
+     */
+    private final HttpFilters[] modifiedRequestAwareFilters;
 
     public BrowserUpHttpFilterChain(BrowserUpProxyServer proxyServer, HttpRequest originalRequest, ChannelHandlerContext ctx) {
         super(originalRequest, ctx);
 
         this.proxyServer = proxyServer;
 
-        if (proxyServer.getFilterFactories() != null) {
-            filters = new ArrayList<>(proxyServer.getFilterFactories().size());
+        List<HttpFiltersSource> filterFactories = proxyServer.getFilterFactories();
+        if (filterFactories != null) {
+            List<HttpFilters> filterList = new ArrayList<>(filterFactories.size());
 
             // instantiate all HttpFilters using the proxy's filter factories
             // allow filter factories to avoid adding a filter on a per-request basis by returning a null
             // HttpFilters instance
-            proxyServer.getFilterFactories().stream()
-                    .map(filterFactory -> filterFactory.filterRequest(originalRequest, ctx))
-                    .filter(Objects::nonNull).forEach(filters::add);
+            for (HttpFiltersSource filterFactory : filterFactories) {
+                HttpFilters filter = filterFactory.filterRequest(originalRequest, ctx);
+                if (filter != null) {
+                    filterList.add(filter);
+                }
+            }
+
+            filters = filterList.toArray(NO_FILTERS);
         } else {
-            filters = Collections.emptyList();
+            filters = NO_FILTERS;
+        }
+
+        // look up the flags of each filter once, rather than once per callback
+        int[] filterFlags = new int[filters.length];
+        int flaggedByAny = 0;
+        int flaggedByAll = -1;
+        for (int i = 0; i < filters.length; i++) {
+            filterFlags[i] = FILTER_CLASS_FLAGS.get(filters[i].getClass());
+            flaggedByAny |= filterFlags[i];
+            flaggedByAll &= filterFlags[i];
+        }
+
+        filtersByCallback = new HttpFilters[CALLBACKS.length][];
+        for (Callback callback : CALLBACKS) {
+            filtersByCallback[callback.ordinal()] = filtersWith(callback.mask(), filterFlags, flaggedByAny, flaggedByAll);
+        }
+
+        modifiedRequestAwareFilters = filtersWith(MODIFIED_REQUEST_AWARE, filterFlags, flaggedByAny, flaggedByAll);
+    }
+
+    /**
+     * Returns the filters whose flags include the specified flag. Shares the empty array and the full filter array when no filter
+     * or every filter has the flag, so only flags that some, but not all, filters have need a new array per request.
+     */
+    private HttpFilters[] filtersWith(int flag, int[] filterFlags, int flaggedByAny, int flaggedByAll) {
+        if ((flaggedByAny & flag) == 0) {
+            return NO_FILTERS;
+        }
+
+        if ((flaggedByAll & flag) != 0) {
+            return filters;
+        }
+
+        int count = 0;
+        for (int flags : filterFlags) {
+            if ((flags & flag) != 0) {
+                count++;
+            }
+        }
+
+        HttpFilters[] flaggedFilters = new HttpFilters[count];
+        int index = 0;
+        for (int i = 0; i < filters.length; i++) {
+            if ((filterFlags[i] & flag) != 0) {
+                flaggedFilters[index++] = filters[i];
+            }
         }
+
+        return flaggedFilters;
     }
 
     @Override
@@ -59,10 +158,12 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
             return abortedResponse;
         }
 
-        for (HttpFilters filter : filters) {
+        for (HttpFilters filter : filtersByCallback[Callback.CLIENT_TO_PROXY_REQUEST.ordinal()]) {
             try {
                 HttpResponse filterResponse = filter.clientToProxyRequest(httpObject);
                 if (filterResponse != null) {
+                    countShortCircuit(filter);
+
                     // if we are short-circuiting the response to an HttpRequest, update ModifiedRequestAwareFilter instances
                     // with this (possibly) modified HttpRequest before returning the short-circuit response
                     if (httpObject instanceof HttpRequest) {
@@ -72,7 +173,7 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
                     return filterResponse;
                 }
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
         }
 
@@ -87,14 +188,14 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
 
     @Override
     public HttpResponse proxyToServerRequest(HttpObject httpObject) {
-        for (HttpFilters filter : filters) {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_REQUEST.ordinal()]) {
             try {
                 HttpResponse filterResponse = filter.proxyToServerRequest(httpObject);
                 if (filterResponse != null) {
                     return filterResponse;
                 }
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
         }
 
@@ -103,13 +204,13 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
 
     @Override
     public void proxyToServerRequestSending() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_REQUEST_SENDING.ordinal()]) {
             try {
                 filter.proxyToServerRequestSending();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
 
@@ -117,14 +218,14 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
     public HttpObject serverToProxyResponse(HttpObject httpObject) {
         HttpObject processedHttpObject = httpObject;
 
-        for (HttpFilters filter : filters) {
+        for (HttpFilters filter : filtersByCallback[Callback.SERVER_TO_PROXY_RESPONSE.ordinal()]) {
             try {
                 processedHttpObject = filter.serverToProxyResponse(processedHttpObject);
                 if (processedHttpObject == null) {
                     return null;
                 }
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
         }
 
@@ -133,24 +234,24 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
 
     @Override
     public void serverToProxyResponseTimedOut() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.SERVER_TO_PROXY_RESPONSE_TIMED_OUT.ordinal()]) {
             try {
                 filter.serverToProxyResponseTimedOut();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void serverToProxyResponseReceiving() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.SERVER_TO_PROXY_RESPONSE_RECEIVING.ordinal()]) {
             try {
                 filter.serverToProxyResponseReceiving();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
@@ -158,7 +259,7 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
         InetSocketAddress overrideAddress = null;
         String newServerHostAndPort = resolvingServerHostAndPort;
 
-        for (HttpFilters filter : filters) {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_RESOLUTION_STARTED.ordinal()]) {
             try {
                 InetSocketAddress filterResult = filter.proxyToServerResolutionStarted(newServerHostAndPort);
                 if (filterResult != null) {
@@ -166,7 +267,7 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
                     newServerHostAndPort = filterResult.getHostString() + ":" + filterResult.getPort();
                 }
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
         }
 
@@ -175,105 +276,105 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
 
     @Override
     public void proxyToServerResolutionFailed(String hostAndPort) {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_RESOLUTION_FAILED.ordinal()]) {
             try {
                 filter.proxyToServerResolutionFailed(hostAndPort);
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void proxyToServerResolutionSucceeded(String serverHostAndPort, InetSocketAddress resolvedRemoteAddress) {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_RESOLUTION_SUCCEEDED.ordinal()]) {
             try {
                 filter.proxyToServerResolutionSucceeded(serverHostAndPort, resolvedRemoteAddress);
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
 
         super.proxyToServerResolutionSucceeded(serverHostAndPort, resolvedRemoteAddress);
     }
 
     @Override
     public void proxyToServerConnectionStarted() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_CONNECTION_STARTED.ordinal()]) {
             try {
                 filter.proxyToServerConnectionStarted();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void proxyToServerConnectionSSLHandshakeStarted() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_CONNECTION_SSL_HANDSHAKE_STARTED.ordinal()]) {
             try {
                 filter.proxyToServerConnectionSSLHandshakeStarted();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void proxyToServerConnectionFailed() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_CONNECTION_FAILED.ordinal()]) {
             try {
                 filter.proxyToServerConnectionFailed();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void proxyToServerConnectionSucceeded(ChannelHandlerContext serverCtx) {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_CONNECTION_SUCCEEDED.ordinal()]) {
             try {
                 filter.proxyToServerConnectionSucceeded(serverCtx);
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void proxyToServerRequestSent() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_REQUEST_SENT.ordinal()]) {
             try {
                 filter.proxyToServerRequestSent();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void serverToProxyResponseReceived() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.SERVER_TO_PROXY_RESPONSE_RECEIVED.ordinal()]) {
             try {
                 filter.serverToProxyResponseReceived();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public HttpObject proxyToClientResponse(HttpObject httpObject) {
         HttpObject processedHttpObject = httpObject;
-        for (HttpFilters filter : filters) {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_CLIENT_RESPONSE.ordinal()]) {
             try {
                 processedHttpObject = filter.proxyToClientResponse(processedHttpObject);
                 if (processedHttpObject == null) {
                     return null;
                 }
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
         }
 
@@ -282,24 +383,44 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
 
     @Override
     public void webSocketFrameReceived(Supplier<byte[]> frameBytes, boolean fromClient) {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.WEB_SOCKET_FRAME_RECEIVED.ordinal()]) {
             try {
                 filter.webSocketFrameReceived(frameBytes, fromClient);
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
     }
 
     @Override
     public void proxyToServerConnectionQueued() {
-        filters.forEach(filter -> {
+        for (HttpFilters filter : filtersByCallback[Callback.PROXY_TO_SERVER_CONNECTION_QUEUED.ordinal()]) {
             try {
                 filter.proxyToServerConnectionQueued();
             } catch (RuntimeException e) {
-                log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+                filterThrewException(e);
             }
-        });
+        }
+    }
+
+    /**
+     * Logs an exception thrown by a filter, and counts it in the proxy's metrics.
+     */
+    private void filterThrewException(RuntimeException e) {
+        log.warn("Filter in filter chain threw exception. Filter method may have been aborted.", e);
+
+        proxyServer.getMetrics().increment(ProxyCounter.FILTER_EXCEPTIONS);
+    }
+
+    /**
+     * Counts requests short-circuited by the blocklist or the allowlist in the proxy's metrics.
+     */
+    private void countShortCircuit(HttpFilters filter) {
+        if (filter instanceof BlocklistFilter) {
+            proxyServer.getMetrics().increment(ProxyCounter.BLOCKED_REQUESTS);
+        } else if (filter instanceof AllowlistFilter) {
+            proxyServer.getMetrics().increment(ProxyCounter.ALLOWLIST_REJECTED_REQUESTS);
+        }
     }
 
     /**
@@ -309,14 +430,62 @@ public class BrowserUpHttpFilterChain extends HttpFiltersAdapter {
      * @param modifiedRequest the modified HttpRequest after all filters have finished processing it
      */
     private void updateFiltersWithModifiedResponse(HttpRequest modifiedRequest) {
-        for (HttpFilters filter : filters) {
-            if (filter instanceof ModifiedRequestAwareFilter) {
-                ModifiedRequestAwareFilter requestCaptureFilter = (ModifiedRequestAwareFilter) filter;
-                try {
-                    requestCaptureFilter.setModifiedHttpRequest(modifiedRequest);
-                } catch (RuntimeException e) {
-                    log.warn("ModifiedRequestAwareFilter in filter chain threw exception while setting modified HTTP request.", e);
-                }
+        for (HttpFilters requestCaptureFilter : modifiedRequestAwareFilters) {
+            try {
+                ((ModifiedRequestAwareFilter) requestCaptureFilter).setModifiedHttpRequest(modifiedRequest);
+            } catch (RuntimeException e) {
+                log.warn("ModifiedRequestAwareFilter in filter chain threw exception while setting modified HTTP request.", e);
+            }
+        }
+    }
+
+    /**
+     * The {@link HttpFilters} callbacks the filter chain dispatches to its filters.
+     */
+    private enum Callback {
+        CLIENT_TO_PROXY_REQUEST("clientToProxyRequest", HttpObject.class),
+        PROXY_TO_SERVER_REQUEST("proxyToServerRequest", HttpObject.class),
+        PROXY_TO_SERVER_REQUEST_SENDING("proxyToServerRequestSending"),
+        PROXY_TO_SERVER_REQUEST_SENT("proxyToServerRequestSent"),
+        SERVER_TO_PROXY_RESPONSE("serverToProxyResponse", HttpObject.class),
+        SERVER_TO_PROXY_RESPONSE_TIMED_OUT("serverToProxyResponseTimedOut"),
+        SERVER_TO_PROXY_RESPONSE_RECEIVING("serverToProxyResponseReceiving"),
+        SERVER_TO_PROXY_RESPONSE_RECEIVED("serverToProxyResponseReceived"),
+        PROXY_TO_CLIENT_RESPONSE("proxyToClientResponse", HttpObject.class),
+        PROXY_TO_SERVER_CONNECTION_QUEUED("proxyToServerConnectionQueued"),
+        PROXY_TO_SERVER_RESOLUTION_STARTED("proxyToServerResolutionStarted", String.class),
+        PROXY_TO_SERVER_RESOLUTION_FAILED("proxyToServerResolutionFailed", String.class),
+        PROXY_TO_SERVER_RESOLUTION_SUCCEEDED("proxyToServerResolutionSucceeded", String.class, InetSocketAddress.class),
+        PROXY_TO_SERVER_CONNECTION_STARTED("proxyToServerConnectionStarted"),
+        PROXY_TO_SERVER_CONNECTION_SSL_HANDSHAKE_STARTED("proxyToServerConnectionSSLHandshakeStarted"),
+        PROXY_TO_SERVER_CONNECTION_FAILED("proxyToServerConnectionFailed"),
+        PROXY_TO_SERVER_CONNECTION_SUCCEEDED("proxyToServerConnectionSucceeded", ChannelHandlerContext.class),
+        WEB_SOCKET_FRAME_RECEIVED("webSocketFrameReceived", Supplier.class, boolean.class);
+
+        private final String methodName;
+        private final Class<?>[] parameterTypes;
+
+        Callback(String methodName, Class<?>... parameterTypes) {
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+        }
+
+        /**
+         * Returns the bit of this callback in {@link #FILTER_CLASS_FLAGS}.
+         */
+        int mask() {
+            return 1 << ordinal();
+        }
+
+        /**
+         * Returns true if the filter class overrides the no-op implementation of this callback in {@link HttpFiltersAdapter}.
+         * Filters that do not extend HttpFiltersAdapter, or whose method cannot be found, are assumed to override the callback.
+         */
+        boolean isOverriddenBy(Class<?> filterClass) {
+            try {
+                return filterClass.getMethod(methodName, parameterTypes).getDeclaringClass() != HttpFiltersAdapter.class;
+            } catch (NoSuchMethodException e) {
+                return true;
             }
         }
     }
@@ -3,6 +3,7 @@ package com.browserup.bup.filters;
 import com.google.common.collect.ImmutableList;
 
 import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarContent;
 import de.sstoehr.harreader.model.HarCookie;
 import de.sstoehr.harreader.model.HarEntry;
 import de.sstoehr.harreader.model.HarHeader;
@@ -21,15 +22,23 @@ import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.handler.codec.http.cookie.ClientCookieDecoder;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
+import com.browserup.bup.assertion.online.OnlineAssertionRegistry;
 import com.browserup.bup.exception.UnsupportedCharsetException;
 import com.browserup.bup.filters.support.HttpConnectTiming;
 import com.browserup.bup.filters.util.HarCaptureUtil;
+import com.browserup.bup.har.HarEntryCompletionListener;
+import com.browserup.bup.har.HarStringPool;
+import com.browserup.bup.proxy.CaptureDecision;
+import com.browserup.bup.proxy.CapturePolicy;
 import com.browserup.bup.proxy.CaptureType;
+import com.browserup.bup.proxy.ChainedProxyRoute;
+import com.browserup.bup.proxy.ChainedProxyRouter;
 import com.browserup.bup.util.BrowserUpHttpUtil;
 import org.littleshoot.proxy.impl.ProxyUtils;
 import org.slf4j.Logger;
@@ -41,11 +50,16 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.browserup.bup.util.BrowserUpProxyUtil.getTotalElapsedTimeInMillis;
@@ -53,6 +67,15 @@ import static com.browserup.bup.util.BrowserUpProxyUtil.getTotalElapsedTimeInMil
 public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(HarCaptureFilter.class);
 
+    /**
+     * Headers whose values are usually unique to a request or response, e.g. dates, entity tags, credentials and request IDs. Adding
+     * these values to the string pool would only evict the values that do repeat, so they are not pooled.
+     */
+    private static final Set<String> UNPOOLED_HEADER_VALUES = unpooledHeaderValues("Age", "Authorization", "CF-Ray", "Content-Range",
+            "Cookie", "Date", "ETag", "Expires", "If-Modified-Since", "If-None-Match", "Last-Modified", "Location",
+            "Proxy-Authorization", "Request-Id", "Set-Cookie", "traceparent", "tracestate", "X-Amzn-Trace-Id", "X-Correlation-Id",
+            "X-Request-Id");
+
     /**
      * The currently active HAR at the time the current request is received.
      */
@@ -73,15 +96,26 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
     /**
      * Like requestCaptureFilter above, HarCaptureFilter delegates to responseCaptureFilter to capture response contents. If content capture
-     * is not required for this request, the filter will not be instantiated or invoked.
+     * is not required for this request, the filter will not be instantiated or invoked. Cleared when the response headers show that
+     * no rule captures the content, so that the rest of the response is not passed to it.
      */
-    private final ServerResponseCaptureFilter responseCaptureFilter;
+    private volatile ServerResponseCaptureFilter responseCaptureFilter;
 
     /**
      * The CaptureType data types to capture in this request.
      */
     private final EnumSet<CaptureType> dataToCapture;
 
+    /**
+     * Decides the CaptureType data types to capture in the response, which may depend on the response headers.
+     */
+    private final CaptureDecision captureDecision;
+
+    /**
+     * The CaptureType data types to capture in the response. Decided when the response headers are received.
+     */
+    private volatile EnumSet<CaptureType> responseDataToCapture;
+
     /**
      * Populated by proxyToServerResolutionStarted when DNS resolution starts. If any previous filters already resolved the address, their resolution time
      * will not be included in this time.
@@ -102,6 +136,11 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
      */
     private final InetSocketAddress clientAddress;
 
+    /**
+     * Decides whether the request is routed through the upstream proxy, or null if the routing decision is not known to the proxy.
+     */
+    private final ChainedProxyRouter chainedProxyRouter;
+
     /**
      * Request body size is determined by the actual size of the data the client sends. The filter does not use the Content-Length header to determine request size.
      */
@@ -124,6 +163,24 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
      * that the hostname was resolved and populated in the HAR (if this is not a CONNECT).
      */
     private volatile boolean addressResolved = false;
+
+    /**
+     * Assertions to evaluate when the entry is completed, or null if there are none.
+     */
+    private final OnlineAssertionRegistry onlineAssertions;
+
+    /**
+     * Response content captured only for the online assertions, because the HAR does not capture response content.
+     */
+    private volatile HarContent assertionResponseContent;
+
+    /**
+     * Pool of canonical strings for header names and values, MIME types, status texts and cookie names, which repeat across entries,
+     * or null if the strings are not deduplicated. The values of the {@link #UNPOOLED_HEADER_VALUES} headers are not pooled.
+     */
+    private final HarStringPool stringPool;
+
+    private final AtomicBoolean entryCompleted = new AtomicBoolean();
     
     /**
      * Create a new instance of the HarCaptureFilter that will capture request and response information. If no har is specified in the
@@ -143,6 +200,22 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
      * @param ctx ChannelHandlerContext ctx
      */
     public HarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Har har, String currentPageRef, Set<CaptureType> dataToCapture) {
+        this(originalRequest, ctx, har, currentPageRef, dataToCapture, new Options());
+    }
+
+    /**
+     * Create a new instance of the HarCaptureFilter configured by the specified options, e.g. a limit on the captured response content,
+     * a capture policy or online assertions. See {@link Options} for the defaults.
+     *
+     * @param originalRequest the original HttpRequest from the HttpFiltersSource factory
+     * @param ctx ChannelHandlerContext ctx
+     * @param har a reference to the ProxyServer's current HAR file at the time this request is received
+     * @param currentPageRef the ProxyServer's currentPageRef at the time this request is received from the client
+     * @param dataToCapture the data types to capture for requests that no rule of the capture policy matches
+     * @param options options of the filter
+     */
+    public HarCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, Har har, String currentPageRef, Set<CaptureType> dataToCapture,
+                            Options options) {
         super(originalRequest, ctx);
 
         if (har == null) {
@@ -154,13 +227,19 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         }
 
         this.clientAddress = (InetSocketAddress) ctx.channel().remoteAddress();
+        this.chainedProxyRouter = options.chainedProxyRouter;
+        this.stringPool = options.stringPool;
 
-        if (dataToCapture != null && !dataToCapture.isEmpty()) {
-            this.dataToCapture = EnumSet.copyOf(dataToCapture);
+        CapturePolicy capturePolicy = options.capturePolicy;
+        if (capturePolicy == null || capturePolicy.isEmpty()) {
+            this.captureDecision = CaptureDecision.of(dataToCapture);
         } else {
-            this.dataToCapture = EnumSet.noneOf(CaptureType.class);
+            this.captureDecision = capturePolicy.decide(getHost(originalRequest), getOriginalUrl(), originalRequest.method().name(), dataToCapture);
         }
 
+        this.dataToCapture = captureDecision.getRequestCaptureTypes();
+        this.responseDataToCapture = this.dataToCapture;
+
         // we may need to capture both the request and the response, so set up the request/response filters and delegate to them when
         // the corresponding filter methods are invoked. to save time and memory, only set up the capturing filters when
         // we actually need to capture the data.
@@ -170,8 +249,19 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
             requestCaptureFilter = null;
         }
 
-        if (this.dataToCapture.contains(CaptureType.RESPONSE_CONTENT) || this.dataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT)) {
-            responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, true);
+        OnlineAssertionRegistry onlineAssertions = options.onlineAssertions;
+        this.onlineAssertions = onlineAssertions == null || onlineAssertions.isEmpty() ? null : onlineAssertions;
+
+        boolean assertionsRequireResponseContent = this.onlineAssertions != null && this.onlineAssertions.requiresResponseContent();
+        if (captureDecision.mayCaptureResponseContent() || assertionsRequireResponseContent) {
+            int maxResponseContentCaptureSize = options.maxResponseContentCaptureSize;
+            long maxResponseContentSize = assertionsRequireResponseContent ? -1 : captureDecision.getMaxResponseContentSize();
+            if (maxResponseContentSize >= 0 && (maxResponseContentCaptureSize == ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE
+                    || maxResponseContentSize < maxResponseContentCaptureSize)) {
+                maxResponseContentCaptureSize = (int) Math.min(maxResponseContentSize, Integer.MAX_VALUE);
+            }
+
+            responseCaptureFilter = new ServerResponseCaptureFilter(originalRequest, ctx, true, maxResponseContentCaptureSize);
         } else {
             responseCaptureFilter = null;
         }
@@ -210,6 +300,7 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
             this.harEntry.setResponse(defaultHarResponse);
 
             captureQueryParameters(httpRequest);
+            captureChainedProxyRoute(httpRequest);
             // not capturing user agent: in many cases, it doesn't make sense to capture at the HarLog level, since the proxy could be
             // serving requests from many different clients with various user agents. clients can turn on the REQUEST_HEADERS capture type
             // in order to capture the User-Agent header, if desired.
@@ -274,15 +365,25 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         }
 
         if (httpObject instanceof LastHttpContent) {
-            if (dataToCapture.contains(CaptureType.RESPONSE_CONTENT)) {
+            if (responseDataToCapture.contains(CaptureType.RESPONSE_CONTENT) && responseCaptureFilter != null) {
                 captureResponseContent(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents());
+            } else if (responseCaptureFilter != null && onlineAssertions != null && onlineAssertions.requiresResponseContent()) {
+                captureAssertionResponseContent(responseCaptureFilter.getHttpResponse(), responseCaptureFilter.getFullResponseContents());
             }
 
             harEntry.getResponse().setBodySize((long)(responseBodySize.get()));
+
+            captureResponseReceiveTime();
         }
 
         this.harEntry.setTime(getTotalElapsedTimeInMillis(this.harEntry.getTimings()));
 
+        // the entry is completed here rather than in serverToProxyResponseReceived(), since LittleProxy may invoke that callback after the
+        // client sent its next request on the same connection, on the filter of the next request
+        if (httpObject instanceof LastHttpContent) {
+            entryCompleted();
+        }
+
         return super.serverToProxyResponse(httpObject);
     }
 
@@ -294,12 +395,22 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
             captureResponse(httpResponse);
             harEntry.setTime(getTotalElapsedTimeInMillis(harEntry.getTimings()));
         }
+
+        // a short-circuited response is not received from the server, so it is complete when it has been sent to the client
+        if (!isResponse && httpObject instanceof LastHttpContent) {
+            entryCompleted();
+        }
         return super.proxyToClientResponse(httpObject); 
     }
 
     @Override
     public void serverToProxyResponseTimedOut() {
         isResponse = true;
+
+        if (responseCaptureFilter != null) {
+            responseCaptureFilter.serverToProxyResponseTimedOut();
+        }
+
         // replace any existing HarResponse that was created if the server sent a partial response
         HarResponse response = HarCaptureUtil.createHarResponseForFailure();
         harEntry.setResponse(response);
@@ -330,6 +441,28 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         }
 
         this.harEntry.setTime(getTotalElapsedTimeInMillis(this.harEntry.getTimings()));
+
+        entryCompleted();
+    }
+
+    /**
+     * Notifies the HAR's entry list that this filter will no longer modify the HAR entry, if the list needs to know, and evaluates the
+     * online assertions against the entry.
+     */
+    protected void entryCompleted() {
+        // a timed out response may be followed by the proxy's own error response
+        if (!entryCompleted.compareAndSet(false, true)) {
+            return;
+        }
+
+        List<HarEntry> entries = har.getLog().getEntries();
+        if (entries instanceof HarEntryCompletionListener) {
+            ((HarEntryCompletionListener) entries).entryCompleted(harEntry);
+        }
+
+        if (onlineAssertions != null) {
+            onlineAssertions.entryCompleted(harEntry, assertionResponseContent);
+        }
     }
 
     /**
@@ -354,6 +487,21 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
     //TODO: add unit tests for these utility-like capture() methods
 
+    protected void captureChainedProxyRoute(HttpRequest httpRequest) {
+        if (chainedProxyRouter == null) {
+            return;
+        }
+
+        // the URI of requests inside a MITM'd HTTPS connection is only the path, so route on the host of the connection
+        ChainedProxyRoute route = chainedProxyRouter.route(getHost(httpRequest));
+        if (route != null) {
+            harEntry.setAdditionalField("_chainedProxy", route.toString());
+            if (route.isDirect()) {
+                harEntry.setAdditionalField("_nonProxyHost", route.getNonProxyHost());
+            }
+        }
+    }
+
     protected void captureQueryParameters(HttpRequest httpRequest) {
         // capture query parameters. it is safe to assume the query string is UTF-8, since it "should" be in US-ASCII (a subset of UTF-8),
         // but sometimes does include UTF-8 characters.
@@ -395,7 +543,7 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
         cookies.forEach(cookie -> {
             HarCookie harCookie = new HarCookie();
-            harCookie.setName(cookie.name());
+            harCookie.setName(pooled(cookie.name()));
             harCookie.setValue(cookie.value());
             harEntry.getRequest().getCookies().add(harCookie);
         });
@@ -414,12 +562,39 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
     }
 
     protected void captureHeaders(HttpHeaders headers) {
-        headers.entries().forEach(header -> {
+        captureHeaders(headers, harEntry.getRequest().getHeaders());
+    }
+
+    /**
+     * Adds the headers to the HAR headers. The names and values are read as CharSequences, so that the values found in the string pool
+     * are not copied to a new String first.
+     */
+    private void captureHeaders(HttpHeaders headers, List<HarHeader> harHeaders) {
+        Iterator<Map.Entry<CharSequence, CharSequence>> iterator = headers.iteratorCharSequence();
+        while (iterator.hasNext()) {
+            Map.Entry<CharSequence, CharSequence> header = iterator.next();
+
             HarHeader harHeader = new HarHeader();
-            harHeader.setName(header.getKey());
-            harHeader.setValue(header.getValue());
-            harEntry.getRequest().getHeaders().add(harHeader);
-        });
+            harHeader.setName(pooled(header.getKey()));
+            harHeader.setValue(UNPOOLED_HEADER_VALUES.contains(harHeader.getName())
+                    ? header.getValue().toString() : pooled(header.getValue()));
+            harHeaders.add(harHeader);
+        }
+    }
+
+    private static Set<String> unpooledHeaderValues(String... headerNames) {
+        Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        Collections.addAll(names, headerNames);
+
+        return Collections.unmodifiableSet(names);
+    }
+
+    private String pooled(CharSequence value) {
+        if (value == null) {
+            return null;
+        }
+
+        return stringPool == null ? value.toString() : stringPool.intern(value);
     }
 
     protected void captureRequestContent(HttpRequest httpRequest, byte[] fullMessage) {
@@ -436,7 +611,7 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         HarPostData postData = new HarPostData();
         harEntry.getRequest().setPostData(postData);
 
-        postData.setMimeType(contentType);
+        postData.setMimeType(pooled(contentType));
 
         boolean urlEncoded;
         urlEncoded = contentType.startsWith(HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.toString());
@@ -512,18 +687,60 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         if (!forceBinary && BrowserUpHttpUtil.hasTextualContent(contentType)) {
             String text = BrowserUpHttpUtil.getContentAsString(fullMessage, charset);
             harEntry.getResponse().getContent().setText(text);
-        } else if (dataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT)) {
+        } else if (responseDataToCapture.contains(CaptureType.RESPONSE_BINARY_CONTENT)) {
             harEntry.getResponse().getContent().setText(Base64.getEncoder().encodeToString(fullMessage));
             harEntry.getResponse().getContent().setEncoding("base64");
         }
 
-        harEntry.getResponse().getContent().setSize((long)fullMessage.length);
+        harEntry.getResponse().getContent().setSize(responseCaptureFilter.getFullResponseContentsSize());
+
+        if (responseCaptureFilter.isContentTruncated()) {
+            harEntry.getResponse().getContent().setAdditionalField("_truncated", true);
+            harEntry.getResponse().getContent().setAdditionalField("_capturedSize", fullMessage.length);
+        }
+    }
+
+    /**
+     * Captures the response content for the online assertions, without adding it to the HAR entry. Content that cannot be decoded as
+     * text is only captured with its size.
+     */
+    protected void captureAssertionResponseContent(HttpResponse httpResponse, byte[] fullMessage) {
+        HarContent content = new HarContent();
+        content.setSize(responseCaptureFilter.getFullResponseContentsSize());
+
+        String contentType = httpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        if (contentType == null) {
+            contentType = BrowserUpHttpUtil.UNKNOWN_CONTENT_TYPE;
+        }
+
+        boolean decoded = !responseCaptureFilter.isResponseCompressed() || responseCaptureFilter.isDecompressionSuccessful();
+        if (decoded && BrowserUpHttpUtil.hasTextualContent(contentType)) {
+            try {
+                Charset charset = BrowserUpHttpUtil.readCharsetInContentTypeHeader(contentType);
+                content.setText(BrowserUpHttpUtil.getContentAsString(fullMessage,
+                        charset == null ? BrowserUpHttpUtil.DEFAULT_HTTP_CHARSET : charset));
+            } catch (UnsupportedCharsetException e) {
+                log.debug("Found unsupported character set in Content-Type header '{}' in HTTP response from {}", contentType, originalRequest.uri(), e);
+            }
+        }
+
+        assertionResponseContent = content;
     }
 
     protected void captureResponse(HttpResponse httpResponse) {
+        responseDataToCapture = captureDecision.getResponseCaptureTypes(httpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE),
+                HttpUtil.getContentLength(httpResponse, -1L));
+
+        // the capture filter was created because a rule may capture the content; if no rule does, don't buffer the rest of the response
+        if (responseCaptureFilter != null && !responseDataToCapture.contains(CaptureType.RESPONSE_CONTENT)
+                && (onlineAssertions == null || !onlineAssertions.requiresResponseContent())) {
+            responseCaptureFilter.stopCapturing();
+            responseCaptureFilter = null;
+        }
+
         HarResponse response = new HarResponse();
         response.setStatus(httpResponse.status().code());
-        response.setStatusText(httpResponse.status().reasonPhrase());
+        response.setStatusText(pooled(httpResponse.status().reasonPhrase()));
         response.setHttpVersion(httpResponse.protocolVersion().text());
         harEntry.setResponse(response);
 
@@ -531,11 +748,11 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
         captureResponseMimeType(httpResponse);
 
-        if (dataToCapture.contains(CaptureType.RESPONSE_COOKIES)) {
+        if (responseDataToCapture.contains(CaptureType.RESPONSE_COOKIES)) {
             captureResponseCookies(httpResponse);
         }
 
-        if (dataToCapture.contains(CaptureType.RESPONSE_HEADERS)) {
+        if (responseDataToCapture.contains(CaptureType.RESPONSE_HEADERS)) {
             captureResponseHeaders(httpResponse);
         }
 
@@ -548,7 +765,7 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         String contentType = httpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE);
         // don't set the mimeType to null, since mimeType is a required field
         if (contentType != null) {
-            harEntry.getResponse().getContent().setMimeType(contentType);
+            harEntry.getResponse().getContent().setMimeType(pooled(contentType));
         }
     }
 
@@ -566,7 +783,7 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
             HarCookie harCookie = new HarCookie();
 
-            harCookie.setName(cookie.name());
+            harCookie.setName(pooled(cookie.name()));
             harCookie.setValue(cookie.value());
             // comment is no longer supported in the netty ClientCookieDecoder
             harCookie.setDomain(cookie.domain());
@@ -602,12 +819,8 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
 
     protected void captureResponseHeaders(HttpResponse httpResponse) {
         HttpHeaders headers = httpResponse.headers();
-        headers.entries().forEach(header -> {
-            HarHeader harHeader = new HarHeader();
-            harHeader.setName(header.getKey());
-            harHeader.setValue(header.getValue());
-            harEntry.getResponse().getHeaders().add(harHeader);
-        });
+
+        captureHeaders(headers, harEntry.getResponse().getHeaders());
     }
 
     protected void captureRedirectUrl(HttpResponse httpResponse) {
@@ -716,6 +929,9 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
                     TimeUnit.MILLISECONDS.convert(System.nanoTime() - dnsResolutionStartedNanos, TimeUnit.NANOSECONDS)
             ));
         }
+
+        // the proxy responds with its own error response, so no other callback completes the entry
+        entryCompleted();
     }
 
     @Override
@@ -763,6 +979,9 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
                     TimeUnit.MILLISECONDS.convert(System.nanoTime() - connectionStartedNanos, TimeUnit.NANOSECONDS)
             ));
         }
+
+        // the proxy responds with its own error response, so no other callback completes the entry
+        entryCompleted();
     }
 
     @Override
@@ -820,8 +1039,10 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
         }
     }
 
-    @Override
-    public void serverToProxyResponseReceived() {
+    /**
+     * Populates the 'receive' time, once the last content of the response has been received.
+     */
+    protected void captureResponseReceiveTime() {
         long responseReceivedNanos = System.nanoTime();
 
         // like the wait time, the receive time requires that the serverToProxyResponseReceiving() method be called before this method is invoked.
@@ -835,4 +1056,80 @@ public class HarCaptureFilter extends HttpsAwareFiltersAdapter {
             this.harEntry.getTimings().setReceive(0);
         }
     }
+
+    /**
+     * Options of a {@link HarCaptureFilter}. By default, the entire response content is captured, the route of the request is not recorded,
+     * no online assertions are evaluated, no capture policy is applied, and strings are deduplicated using the
+     * {@link HarStringPool#getDefault() default pool}.
+     */
+    public static class Options {
+        private int maxResponseContentCaptureSize = ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE;
+        private ChainedProxyRouter chainedProxyRouter;
+        private OnlineAssertionRegistry onlineAssertions;
+        private CapturePolicy capturePolicy;
+        private HarStringPool stringPool = HarStringPool.getDefault();
+
+        /**
+         * Captures at most maxResponseContentCaptureSize bytes of response content. Response content beyond the limit is not captured,
+         * and the HAR response content is marked as <code>_truncated</code>.
+         *
+         * @param maxResponseContentCaptureSize maximum number of bytes of response content to capture, or
+         *                                      {@link ServerResponseCaptureFilter#UNLIMITED_CAPTURE_SIZE}
+         * @return this Options object
+         */
+        public Options setMaxResponseContentCaptureSize(int maxResponseContentCaptureSize) {
+            this.maxResponseContentCaptureSize = maxResponseContentCaptureSize;
+            return this;
+        }
+
+        /**
+         * Records whether the request was routed through the upstream proxy in the <code>_chainedProxy</code> field of the HAR entry
+         * ("DIRECT", or the address of the upstream proxy), and the non-proxy host that the request's host matched in the
+         * <code>_nonProxyHost</code> field.
+         *
+         * @param chainedProxyRouter router that decides how the request is routed to the server, or null to not record the route
+         * @return this Options object
+         */
+        public Options setChainedProxyRouter(ChainedProxyRouter chainedProxyRouter) {
+            this.chainedProxyRouter = chainedProxyRouter;
+            return this;
+        }
+
+        /**
+         * Evaluates online assertions against the HAR entry when it is completed. If an assertion inspects the response content, the
+         * content is captured for the assertion even if the HAR does not capture it.
+         *
+         * @param onlineAssertions assertions to evaluate when the entry is completed, or null
+         * @return this Options object
+         */
+        public Options setOnlineAssertions(OnlineAssertionRegistry onlineAssertions) {
+            this.onlineAssertions = onlineAssertions;
+            return this;
+        }
+
+        /**
+         * Decides the data types to capture for the request using a capture policy. The data types passed to the filter apply to requests
+         * that no rule of the policy matches. Request and response content capture filters are only created if the policy may capture
+         * the content of the request.
+         *
+         * @param capturePolicy capture policy to evaluate for the request, or null
+         * @return this Options object
+         */
+        public Options setCapturePolicy(CapturePolicy capturePolicy) {
+            this.capturePolicy = capturePolicy;
+            return this;
+        }
+
+        /**
+         * Deduplicates the header names and values, MIME types, status texts and cookie names of the HAR entry using the specified
+         * string pool.
+         *
+         * @param stringPool pool of canonical strings, or null to not deduplicate strings
+         * @return this Options object
+         */
+        public Options setStringPool(HarStringPool stringPool) {
+            this.stringPool = stringPool;
+            return this;
+        }
+    }
 }
@@ -14,6 +14,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import com.browserup.bup.filters.support.HttpConnectTiming;
 import com.browserup.bup.filters.util.HarCaptureUtil;
+import com.browserup.bup.har.HarEntryCompletionListener;
 import com.browserup.bup.util.HttpUtil;
 import org.littleshoot.proxy.impl.ProxyUtils;
 import org.slf4j.Logger;
@@ -22,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
@@ -165,7 +167,7 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
         }
 
         harEntry.setTime(getTotalElapsedTimeInMillis(harEntry.getTimings()));
-        har.getLog().getEntries().add(harEntry);
+        addCompletedEntry(harEntry);
 
         httpConnectTimes.remove(clientAddress);
     }
@@ -184,7 +186,7 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
         }
 
         harEntry.setTime(getTotalElapsedTimeInMillis(harEntry.getTimings()));
-        har.getLog().getEntries().add(harEntry);
+        addCompletedEntry(harEntry);
 
         httpConnectTimes.remove(clientAddress);
     }
@@ -238,7 +240,7 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
         }
 
         harEntry.setTime(getTotalElapsedTimeInMillis(harEntry.getTimings()));
-        har.getLog().getEntries().add(harEntry);
+        addCompletedEntry(harEntry);
     }
 
     @Override
@@ -373,6 +375,21 @@ public class HttpConnectHarCaptureFilter extends HttpsAwareFiltersAdapter implem
         return harEntry;
     }
 
+    /**
+     * Adds the fully populated entry of a failed CONNECT to the HAR, and notifies the HAR's entry list that the entry is complete, if the list
+     * needs to know. Unlike the entries of the HarCaptureFilter, the entry is not modified after it is added.
+     *
+     * @param harEntry the populated HAR entry
+     */
+    private void addCompletedEntry(HarEntry harEntry) {
+        List<HarEntry> entries = har.getLog().getEntries();
+        entries.add(harEntry);
+
+        if (entries instanceof HarEntryCompletionListener) {
+            ((HarEntryCompletionListener) entries).entryCompleted(harEntry);
+        }
+    }
+
     private void populateServerIpAddress(HarEntry harEntry) {
         // populate the server IP address if it was resolved as part of this request. otherwise, populate the IP address from the cache.
         if (resolvedAddress != null) {
@@ -1,43 +1,95 @@
 package com.browserup.bup.filters;
 
+import com.browserup.bup.filters.support.ResponseDelayHandler;
+import com.browserup.bup.proxy.LatencyRule;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
-import org.littleshoot.proxy.HttpFiltersAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Adds latency to a response before sending it to the client. This filter always adds the specified latency, even if the latency
- * between the proxy and the remote server already exceeds this value.
+ * between the proxy and the remote server already exceeds this value. The latency for a request is taken from the first matching
+ * {@link LatencyRule}, or from the default latency if no rule matches.
+ * <p>
+ * The response is held by a {@link ResponseDelayHandler} on the client channel and released by a task scheduled on the channel's
+ * event loop, so adding latency does not block the event loop or delay responses on other connections.
  */
-public class LatencyFilter extends HttpFiltersAdapter {
-    private static final Logger log = LoggerFactory.getLogger(HttpFiltersAdapter.class);
+public class LatencyFilter extends HttpsAwareFiltersAdapter {
+    private static final Logger log = LoggerFactory.getLogger(LatencyFilter.class);
 
     private final int latencyMs;
 
+    private final Collection<LatencyRule> latencyRules;
+
+    /**
+     * Creates a filter without a channel context, which cannot delay the response on the client channel and so blocks the event loop
+     * for the duration of the latency instead, as earlier versions did.
+     *
+     * @deprecated use {@link #LatencyFilter(HttpRequest, ChannelHandlerContext, int)}, which does not block the event loop
+     */
+    @Deprecated
     public LatencyFilter(HttpRequest originalRequest, int latencyMs) {
-        super(originalRequest);
+        this(originalRequest, null, latencyMs);
+    }
+
+    public LatencyFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, int latencyMs) {
+        this(originalRequest, ctx, latencyMs, Collections.emptyList());
+    }
+
+    public LatencyFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, int latencyMs, Collection<LatencyRule> latencyRules) {
+        super(originalRequest, ctx);
 
         this.latencyMs = latencyMs;
+        this.latencyRules = latencyRules != null ? latencyRules : Collections.emptyList();
     }
 
     @Override
     public HttpObject proxyToClientResponse(HttpObject httpObject) {
         if (httpObject instanceof HttpResponse) {
-            if (latencyMs > 0) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(latencyMs);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-
-                    log.warn("Interrupted while adding latency to response", e);
+            long latency = getLatencyMs();
+            if (latency > 0) {
+                if (ctx != null) {
+                    ResponseDelayHandler.delayNextResponse(ctx, latency);
+                } else {
+                    sleep(latency);
                 }
             }
         }
 
         return super.proxyToClientResponse(httpObject);
     }
+
+    private static void sleep(long latencyMs) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            log.warn("Interrupted while adding latency to response", e);
+        }
+    }
+
+    private long getLatencyMs() {
+        if (latencyRules.isEmpty()) {
+            return latencyMs;
+        }
+
+        String host = getHost(originalRequest);
+        String url = getOriginalUrl();
+
+        for (LatencyRule rule : latencyRules) {
+            if (rule.matches(host, url)) {
+                return rule.getLatencyMs();
+            }
+        }
+
+        return latencyMs;
+    }
 }
@@ -0,0 +1,131 @@
+package com.browserup.bup.filters;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import com.browserup.bup.proxy.metrics.ProxyMetrics;
+import com.browserup.bup.proxy.metrics.RequestPhase;
+import org.littleshoot.proxy.HttpFiltersAdapter;
+import org.littleshoot.proxy.impl.ProxyUtils;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Records the latency of each {@link RequestPhase} of this request in {@link ProxyMetrics}. Unlike {@link HarCaptureFilter}, this filter
+ * does not capture any request or response data, so it is cheap enough to run for every request. It should be the first filter in the
+ * filter chain, so that it sees requests that are short-circuited by other filters.
+ */
+public class MetricsFilter extends HttpFiltersAdapter {
+    private final ProxyMetrics metrics;
+
+    private final boolean connect;
+
+    private volatile long requestReceivedNanos;
+    private volatile long dnsResolutionStartedNanos;
+    private volatile long connectionStartedNanos;
+    private volatile long sslHandshakeStartedNanos;
+    private volatile long sendStartedNanos;
+    private volatile long sendFinishedNanos;
+    private volatile long responseReceiveStartedNanos;
+
+    public MetricsFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, ProxyMetrics metrics) {
+        super(originalRequest, ctx);
+
+        this.metrics = metrics;
+        this.connect = ProxyUtils.isCONNECT(originalRequest);
+    }
+
+    @Override
+    public HttpResponse clientToProxyRequest(HttpObject httpObject) {
+        if (httpObject instanceof HttpRequest) {
+            requestReceivedNanos = System.nanoTime();
+        }
+
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress proxyToServerResolutionStarted(String resolvingServerHostAndPort) {
+        dnsResolutionStartedNanos = System.nanoTime();
+
+        return null;
+    }
+
+    @Override
+    public void proxyToServerResolutionSucceeded(String serverHostAndPort, InetSocketAddress resolvedRemoteAddress) {
+        recordSince(RequestPhase.DNS, dnsResolutionStartedNanos);
+    }
+
+    @Override
+    public void proxyToServerConnectionStarted() {
+        connectionStartedNanos = System.nanoTime();
+    }
+
+    @Override
+    public void proxyToServerConnectionSSLHandshakeStarted() {
+        sslHandshakeStartedNanos = System.nanoTime();
+
+        // the TCP connection is established when the TLS handshake starts
+        recordSince(RequestPhase.CONNECT, connectionStartedNanos);
+    }
+
+    @Override
+    public void proxyToServerConnectionSucceeded(ChannelHandlerContext serverCtx) {
+        if (sslHandshakeStartedNanos > 0L) {
+            recordSince(RequestPhase.TLS, sslHandshakeStartedNanos);
+        } else {
+            recordSince(RequestPhase.CONNECT, connectionStartedNanos);
+        }
+    }
+
+    @Override
+    public void proxyToServerRequestSending() {
+        sendStartedNanos = System.nanoTime();
+    }
+
+    @Override
+    public void proxyToServerRequestSent() {
+        sendFinishedNanos = System.nanoTime();
+
+        recordSince(RequestPhase.SEND, sendStartedNanos);
+    }
+
+    @Override
+    public void serverToProxyResponseReceiving() {
+        responseReceiveStartedNanos = System.nanoTime();
+
+        recordSince(RequestPhase.WAIT, sendFinishedNanos);
+    }
+
+    @Override
+    public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        // the receive phase is recorded here rather than in serverToProxyResponseReceived(), since LittleProxy may invoke that callback
+        // after the client sent its next request on the same connection, on the filter of the next request
+        if (httpObject instanceof LastHttpContent) {
+            recordSince(RequestPhase.RECEIVE, responseReceiveStartedNanos);
+        }
+
+        return httpObject;
+    }
+
+    @Override
+    public HttpObject proxyToClientResponse(HttpObject httpObject) {
+        if (!connect && httpObject instanceof LastHttpContent) {
+            recordSince(RequestPhase.TOTAL, requestReceivedNanos);
+            requestReceivedNanos = 0L;
+        }
+
+        return httpObject;
+    }
+
+    /**
+     * Records the time elapsed since the start of the phase, if the phase was started.
+     */
+    private void recordSince(RequestPhase phase, long phaseStartedNanos) {
+        if (phaseStartedNanos > 0L) {
+            metrics.recordLatency(phase, System.nanoTime() - phaseStartedNanos);
+        }
+    }
+}
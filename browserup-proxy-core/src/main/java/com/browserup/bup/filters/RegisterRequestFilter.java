@@ -4,25 +4,39 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.AttributeKey;
 import com.browserup.bup.proxy.ActivityMonitor;
-import org.littleshoot.proxy.HttpFiltersAdapter;
 
 /**
  * Registers this request with the {@link com.browserup.bup.proxy.ActivityMonitor} when the HttpRequest is received from the client.
+ * The registered activity is stored on the channel, so the {@link UnregisterRequestFilter} can unregister it.
  */
-public class RegisterRequestFilter extends HttpFiltersAdapter {
+public class RegisterRequestFilter extends HttpsAwareFiltersAdapter {
+    public static final String ACTIVITY_ATTRIBUTE_NAME = "activity";
+
     private final ActivityMonitor activityMonitor;
+    private final String pageRef;
 
     public RegisterRequestFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, ActivityMonitor activityMonitor) {
+        this(originalRequest, ctx, activityMonitor, null);
+    }
+
+    /**
+     * @param pageRef id of the current HAR page, or null if there is no current page
+     */
+    public RegisterRequestFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, ActivityMonitor activityMonitor,
+                                 String pageRef) {
         super(originalRequest, ctx);
 
         this.activityMonitor = activityMonitor;
+        this.pageRef = pageRef;
     }
 
     @Override
     public HttpResponse clientToProxyRequest(HttpObject httpObject) {
         if (httpObject instanceof HttpRequest) {
-            activityMonitor.requestStarted();
+            ActivityMonitor.Activity activity = activityMonitor.requestStarted(getOriginalUrl(), pageRef);
+            ctx.channel().attr(AttributeKey.<ActivityMonitor.Activity>valueOf(ACTIVITY_ATTRIBUTE_NAME)).set(activity);
         }
 
         return super.clientToProxyRequest(httpObject);
@@ -7,6 +7,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import com.browserup.bup.util.HttpUtil;
 import com.browserup.bup.proxy.RewriteRule;
+import com.browserup.bup.proxy.UrlRuleIndex;
 import com.browserup.bup.util.BrowserUpHttpUtil;
 import org.littleshoot.proxy.impl.ProxyUtils;
 import org.slf4j.Logger;
@@ -14,27 +15,41 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URISyntaxException;
 import java.util.Collection;
-import java.util.regex.Matcher;
 
 import static java.util.Collections.*;
 
 /**
  * Applies rewrite rules to the specified request. If a rewrite rule matches, the request's URI will be overwritten with the rewritten URI.
- * The filter does not make a defensive copy of the rewrite rule collection, so there is no guarantee
- * that the collection at the time of construction will contain the same values when the filter is actually invoked, if the collection is
- * modified concurrently.
+ * Each matching rule is applied, in order, to the URL produced by the previous matching rule. The rewrite rules are matched using a
+ * {@link UrlRuleIndex}, which should be compiled once when the rewrite rules change rather than for every request.
  */
 public class RewriteUrlFilter extends HttpsAwareFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(RewriteUrlFilter.class);
 
-    private final Collection<RewriteRule> rewriteRules;
+    private final UrlRuleIndex<RewriteRule> rewriteRules;
 
     public RewriteUrlFilter(HttpRequest originalRequest,
                             ChannelHandlerContext ctx,
                             Collection<RewriteRule> rewriteRules) {
+        this(originalRequest, ctx, compileRewriteRules(rewriteRules != null ? rewriteRules : emptyList()));
+    }
+
+    public RewriteUrlFilter(HttpRequest originalRequest,
+                            ChannelHandlerContext ctx,
+                            UrlRuleIndex<RewriteRule> rewriteRules) {
         super(originalRequest, ctx);
 
-        this.rewriteRules = rewriteRules != null ? rewriteRules : emptyList();
+        this.rewriteRules = rewriteRules;
+    }
+
+    /**
+     * Compiles an index of rewrite rules, which can be shared by all RewriteUrlFilters until the rewrite rules change.
+     *
+     * @param rewriteRules rewrite rules, in the order they should be applied
+     * @return compiled index of the rewrite rules
+     */
+    public static UrlRuleIndex<RewriteRule> compileRewriteRules(Collection<RewriteRule> rewriteRules) {
+        return UrlRuleIndex.compile(rewriteRules, RewriteRule::getPattern);
     }
 
     @Override
@@ -51,12 +66,12 @@ public class RewriteUrlFilter extends HttpsAwareFiltersAdapter {
             String rewrittenUrl = originalUrl;
 
             boolean rewroteUri = false;
-            for (RewriteRule rule : rewriteRules) {
-                Matcher matcher = rule.getPattern().matcher(rewrittenUrl);
-                if (matcher.matches()) {
-                    rewrittenUrl = matcher.replaceAll(rule.getReplace());
-                    rewroteUri = true;
-                }
+            int index = -1;
+            // each rule after a matching rule is matched against the rewritten URL
+            while ((index = rewriteRules.indexOf(rewrittenUrl, null, index + 1)) >= 0) {
+                RewriteRule rule = rewriteRules.getRules().get(index);
+                rewrittenUrl = rule.getPattern().matcher(rewrittenUrl).replaceAll(rule.getReplace());
+                rewroteUri = true;
             }
 
             if (rewroteUri) {
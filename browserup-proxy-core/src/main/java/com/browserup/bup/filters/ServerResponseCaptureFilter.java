@@ -1,7 +1,13 @@
 package com.browserup.bup.filters;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
@@ -11,23 +17,37 @@ import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
 import com.browserup.bup.util.BrowserUpHttpUtil;
+import org.brotli.dec.BrotliInputStream;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * This filter captures responses from the server (headers and content). The filter can also decompress contents if desired.
  * The filter can be used in one of three ways: (1) directly, by adding the filter to the filter chain; (2) by subclassing
  * the filter and overriding its filter methods; or (3) by invoking the filter directly from within another filter (see
  * {@link com.browserup.bup.filters.HarCaptureFilter} for an example of the latter).
+ * <p>
+ * Response content is accumulated in a composite buffer as it arrives. When the filter is constructed with a
+ * {@link ChannelHandlerContext}, the composite buffer holds retained slices of the proxy's own (pooled) buffers rather than
+ * copies; the slices are released when the last content is received, when the response times out, when the client
+ * channel closes, or when capturing is stopped using {@link #stopCapturing()}. Gzip-encoded content is decompressed as it arrives. The amount of content captured can be limited using
+ * <code>maxCaptureSize</code>: content beyond the limit is not captured, and {@link #isContentTruncated()} returns true.
  */
 public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
     private static final Logger log = LoggerFactory.getLogger(ServerResponseCaptureFilter.class);
     private static final String BROTLI_COMPRESSION = "br";
 
+    /**
+     * Value of <code>maxCaptureSize</code> indicating that the entire response should be captured.
+     */
+    public static final int UNLIMITED_CAPTURE_SIZE = -1;
+
     /**
      * Populated by serverToProxyResponse() when processing the HttpResponse object
      */
@@ -35,9 +55,40 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
 
     /**
      * Populated by serverToProxyResponse() as it receives HttpContent responses. If the response is chunked, it will
-     * be populated across multiple calls to proxyToServerResponse().
+     * be populated across multiple calls to proxyToServerResponse(). Released when processing the LastHttpContent, after
+     * the contents have been copied to {@link #rawResponseBytes}. Guarded by this.
+     */
+    private CompositeByteBuf rawResponseContents;
+
+    /**
+     * Populated by serverToProxyResponse() if the response is being decompressed as it is received. Guarded by this.
+     */
+    private CompositeByteBuf decompressedResponseContents;
+
+    /**
+     * Decompresses gzip-encoded content as it is received, if decompression is requested. Guarded by this.
+     */
+    private EmbeddedChannel contentDecompressor;
+
+    /**
+     * Total number of bytes decompressed by the {@link #contentDecompressor}, including bytes that were not captured. Guarded by this.
+     */
+    private long decompressedResponseSize;
+
+    /**
+     * Set to true if the content decompressed by the {@link #contentDecompressor} exceeded the maxCaptureSize. Guarded by this.
      */
-    private final ByteArrayOutputStream rawResponseContents = new ByteArrayOutputStream();
+    private boolean decompressedContentTruncated;
+
+    /**
+     * Set to true if the {@link #contentDecompressor} failed to decompress the content. Guarded by this.
+     */
+    private boolean streamingDecompressionFailed;
+
+    /**
+     * Populated when processing the LastHttpContent with the raw (possibly compressed and truncated) response.
+     */
+    private volatile byte[] rawResponseBytes;
 
     /**
      * Populated when processing the LastHttpContent. If the response is compressed and decompression is requested,
@@ -45,6 +96,42 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
      */
     private volatile byte[] fullResponseContents;
 
+    /**
+     * Size of the entire response content, including any content that was not captured because it exceeded the maxCaptureSize.
+     * Decompressed size if decompression was successful.
+     */
+    private volatile long fullResponseContentsSize;
+
+    /**
+     * Total number of raw bytes received from the server, including bytes that were not captured.
+     */
+    private volatile long rawResponseSize;
+
+    /**
+     * Set to true if the raw response exceeded the maxCaptureSize.
+     */
+    private volatile boolean rawContentTruncated;
+
+    /**
+     * Set to true when processing the LastHttpContent if the full response contents exceeded the maxCaptureSize.
+     */
+    private volatile boolean contentTruncated;
+
+    /**
+     * Set once the captured buffers have been released. Guarded by this.
+     */
+    private boolean released;
+
+    /**
+     * Set once the {@link #releaseOnCloseListener} has been added to the client channel. Guarded by this.
+     */
+    private boolean releaseOnCloseRegistered;
+
+    /**
+     * Releases the captured buffers if the client channel closes before the response is complete.
+     */
+    private final ChannelFutureListener releaseOnCloseListener = future -> releaseBuffers();
+
     /**
      * Populated by serverToProxyResponse() when it processes the LastHttpContent object.
      */
@@ -70,16 +157,37 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
      */
     private final boolean decompressEncodedContent;
 
-    public ServerResponseCaptureFilter(HttpRequest originalRequest, boolean decompressEncodedContent) {
-        super(originalRequest);
+    /**
+     * Maximum number of bytes of raw and of decompressed content to capture, or {@link #UNLIMITED_CAPTURE_SIZE}.
+     */
+    private final int maxCaptureSize;
 
-        this.decompressEncodedContent = decompressEncodedContent;
+    public ServerResponseCaptureFilter(HttpRequest originalRequest, boolean decompressEncodedContent) {
+        this(originalRequest, null, decompressEncodedContent, UNLIMITED_CAPTURE_SIZE);
     }
 
     public ServerResponseCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean decompressEncodedContent) {
+        this(originalRequest, ctx, decompressEncodedContent, UNLIMITED_CAPTURE_SIZE);
+    }
+
+    /**
+     * Creates a filter that captures at most maxCaptureSize bytes of the response. If ctx is null, received content is copied
+     * into unpooled buffers instead of being retained.
+     *
+     * @param originalRequest the original HttpRequest from the HttpFiltersSource factory
+     * @param ctx ChannelHandlerContext of the client connection, or null
+     * @param decompressEncodedContent true to decompress gzip- and brotli-encoded content
+     * @param maxCaptureSize maximum number of bytes to capture, or {@link #UNLIMITED_CAPTURE_SIZE}
+     */
+    public ServerResponseCaptureFilter(HttpRequest originalRequest, ChannelHandlerContext ctx, boolean decompressEncodedContent, int maxCaptureSize) {
         super(originalRequest, ctx);
 
+        if (maxCaptureSize < 0 && maxCaptureSize != UNLIMITED_CAPTURE_SIZE) {
+            throw new IllegalArgumentException("Maximum capture size cannot be negative: " + maxCaptureSize);
+        }
+
         this.decompressEncodedContent = decompressEncodedContent;
+        this.maxCaptureSize = maxCaptureSize;
     }
 
     @Override
@@ -94,6 +202,8 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
 
             storeResponseContent(httpContent);
 
+            decompressResponseContent(httpContent);
+
             if (httpContent instanceof LastHttpContent) {
                 LastHttpContent lastContent = (LastHttpContent) httpContent;
                 captureTrailingHeaders(lastContent);
@@ -105,10 +215,40 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
         return super.serverToProxyResponse(httpObject);
     }
 
+    @Override
+    public void serverToProxyResponseTimedOut() {
+        releaseBuffers();
+
+        super.serverToProxyResponseTimedOut();
+    }
+
+    /**
+     * Stops capturing the response content and releases the content captured so far, e.g. once it is known from the response headers
+     * that the content is not needed. The size of the response is still counted, but no content is captured.
+     */
+    public void stopCapturing() {
+        releaseBuffers();
+    }
+
     protected void captureFullResponseContents() {
+        // copy the captured content out of the (possibly pooled) buffers, so that they can be released
+        synchronized (this) {
+            if (released) {
+                // capturing was stopped or the client disconnected, so there is no content to decompress
+                rawResponseBytes = new byte[0];
+                fullResponseContents = rawResponseBytes;
+                fullResponseContentsSize = rawResponseSize;
+                return;
+            }
+
+            rawResponseBytes = getRawResponseContents();
+        }
+
         // start by setting fullResponseContent to the raw, (possibly) compressed byte stream. replace it
         // with the decompressed bytes if decompression is successful.
-        fullResponseContents = getRawResponseContents();
+        fullResponseContents = rawResponseBytes;
+        fullResponseContentsSize = rawResponseSize;
+        contentTruncated = rawContentTruncated;
 
         // if the content is compressed, we need to decompress it. but don't use
         // the netty HttpContentCompressor/Decompressor in the pipeline because we don't actually want it to
@@ -125,32 +265,110 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
             // no compression
             responseCompressed = false;
         }
+
+        releaseBuffers();
     }
 
     protected void decompressContents() {
         if (contentEncoding.equals(HttpHeaderValues.GZIP.toString())) {
-            try {
-                fullResponseContents = BrowserUpHttpUtil.decompressGZIPContents(getRawResponseContents());
-                decompressionSuccessful = true;
-            } catch (RuntimeException e) {
-                log.warn("Failed to decompress response with encoding type {} when decoding request from {}",
-                        contentEncoding, originalRequest.uri(), e);
+            synchronized (this) {
+                if (streamingDecompressionFailed) {
+                    return;
+                }
+
+                if (contentDecompressor != null) {
+                    finishStreamingDecompression();
+                    return;
+                }
             }
+
+            // the content was not decompressed as it arrived, because the content encoding was only specified in a trailing header
+            decompressCapturedContents(HttpHeaderValues.GZIP.toString());
         } else if (contentEncoding.equals(BROTLI_COMPRESSION)) {
-            try {
-                fullResponseContents = BrowserUpHttpUtil.decompressBrotliContents(getRawResponseContents());
-                decompressionSuccessful = true;
-            } catch (RuntimeException e) {
+            // the brotli decoder can only read from a stream, so brotli content is decompressed once it has been received
+            decompressCapturedContents(BROTLI_COMPRESSION);
+        } else {
+            log.warn("Cannot decode unsupported content encoding type {}", contentEncoding);
+        }
+    }
+
+    /**
+     * Flushes the streaming gzip decompressor and replaces the full response contents with the decompressed contents.
+     */
+    private void finishStreamingDecompression() {
+        boolean successful;
+        try {
+            contentDecompressor.finish();
+            addDecompressedOutput();
+            successful = true;
+        } catch (RuntimeException e) {
+            successful = false;
+            streamingDecompressionFailed = true;
+            log.warn("Failed to decompress response with encoding type {} when decoding request from {}",
+                    contentEncoding, originalRequest.uri(), e);
+        }
+
+        // a truncated capture is still useful, but a corrupt stream is not
+        if (successful) {
+            fullResponseContents = toByteArray(decompressedResponseContents);
+            fullResponseContentsSize = decompressedResponseSize;
+            contentTruncated = decompressedContentTruncated;
+            decompressionSuccessful = true;
+        }
+
+        closeContentDecompressor();
+    }
+
+    /**
+     * Decompresses the captured raw content. If the raw content was truncated, the content that could be decompressed before the
+     * end of the captured content is kept.
+     */
+    private void decompressCapturedContents(String encoding) {
+        ByteBuf decompressed = Unpooled.buffer();
+        long decompressedSize = 0;
+        try (InputStream decompressingStream = createDecompressingStream(encoding, new ByteArrayInputStream(rawResponseBytes))) {
+            byte[] decompressBuffer = new byte[BrowserUpHttpUtil.DECOMPRESS_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = decompressingStream.read(decompressBuffer)) > -1) {
+                decompressedSize += bytesRead;
+                decompressed.writeBytes(decompressBuffer, 0, capturableBytes(decompressed.readableBytes(), bytesRead));
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!rawContentTruncated || decompressedSize == 0) {
                 log.warn("Failed to decompress response with encoding type {} when decoding request from {}",
                         contentEncoding, originalRequest.uri(), e);
+                return;
             }
+
+            // expected: the captured content ends before the end of the compressed stream
+        }
+
+        fullResponseContents = BrowserUpHttpUtil.extractReadableBytes(decompressed);
+        fullResponseContentsSize = decompressedSize;
+        contentTruncated = rawContentTruncated || decompressedSize > decompressed.readableBytes();
+        decompressionSuccessful = true;
+    }
+
+    private static InputStream createDecompressingStream(String encoding, InputStream compressedStream) throws IOException {
+        if (BROTLI_COMPRESSION.equals(encoding)) {
+            return new BrotliInputStream(compressedStream);
         } else {
-            log.warn("Cannot decode unsupported content encoding type {}", contentEncoding);
+            return new GZIPInputStream(compressedStream, BrowserUpHttpUtil.DECOMPRESS_BUFFER_SIZE);
         }
     }
 
     protected void captureContentEncoding(HttpResponse httpResponse) {
         contentEncoding = httpResponse.headers().get(HttpHeaderNames.CONTENT_ENCODING);
+
+        if (decompressEncodedContent && HttpHeaderValues.GZIP.toString().equals(contentEncoding)) {
+            synchronized (this) {
+                registerReleaseOnClose();
+
+                if (!released && contentDecompressor == null) {
+                    contentDecompressor = new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP, 0));
+                }
+            }
+        }
     }
 
     protected void captureTrailingHeaders(LastHttpContent lastContent) {
@@ -166,15 +384,168 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
 
     }
 
-    protected void storeResponseContent(HttpContent httpContent) {
+    protected synchronized void storeResponseContent(HttpContent httpContent) {
+        ByteBuf bufferedContent = httpContent.content();
+        int readableBytes = bufferedContent.readableBytes();
+        rawResponseSize += readableBytes;
+
+        registerReleaseOnClose();
+
+        if (released || readableBytes == 0) {
+            return;
+        }
+
+        if (rawResponseContents == null) {
+            rawResponseContents = createCompositeBuffer();
+        }
+
+        int bytesToCapture = capturableBytes(rawResponseContents.readableBytes(), readableBytes);
+        if (bytesToCapture < readableBytes) {
+            rawContentTruncated = true;
+        }
+
+        if (bytesToCapture > 0) {
+            rawResponseContents.addComponent(true, captureSlice(bufferedContent, bytesToCapture));
+        }
+    }
+
+    /**
+     * Feeds the content to the streaming decompressor, and captures the decompressed output. Content beyond the maxCaptureSize
+     * is still decompressed, so that the size of the entire decompressed response is known.
+     */
+    private synchronized void decompressResponseContent(HttpContent httpContent) {
+        if (released || contentDecompressor == null) {
+            return;
+        }
+
         ByteBuf bufferedContent = httpContent.content();
-        byte[] content = BrowserUpHttpUtil.extractReadableBytes(bufferedContent);
+        if (!bufferedContent.isReadable()) {
+            return;
+        }
 
         try {
-            rawResponseContents.write(content);
-        } catch (IOException e) {
-            // can't happen
+            contentDecompressor.writeInbound(bufferedContent.retainedDuplicate());
+            addDecompressedOutput();
+        } catch (RuntimeException e) {
+            log.warn("Failed to decompress response with encoding type {} when decoding request from {}",
+                    contentEncoding, originalRequest.uri(), e);
+
+            // the raw contents will be captured instead
+            streamingDecompressionFailed = true;
+            closeContentDecompressor();
+        }
+    }
+
+    private void addDecompressedOutput() {
+        if (decompressedResponseContents == null) {
+            decompressedResponseContents = createCompositeBuffer();
+        }
+
+        ByteBuf decompressed;
+        while ((decompressed = contentDecompressor.readInbound()) != null) {
+            try {
+                int readableBytes = decompressed.readableBytes();
+                decompressedResponseSize += readableBytes;
+
+                int bytesToCapture = capturableBytes(decompressedResponseContents.readableBytes(), readableBytes);
+                if (bytesToCapture < readableBytes) {
+                    decompressedContentTruncated = true;
+                }
+
+                if (bytesToCapture > 0) {
+                    decompressedResponseContents.addComponent(true, captureSlice(decompressed, bytesToCapture));
+                }
+            } finally {
+                decompressed.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes that can be added to a capture that already contains capturedBytes, without exceeding the maxCaptureSize.
+     */
+    private int capturableBytes(int capturedBytes, int availableBytes) {
+        if (maxCaptureSize == UNLIMITED_CAPTURE_SIZE) {
+            return availableBytes;
+        }
+
+        return Math.max(0, Math.min(availableBytes, maxCaptureSize - capturedBytes));
+    }
+
+    /**
+     * Returns the first length readable bytes of content. When a ChannelHandlerContext is available, this is a retained slice of the
+     * content; otherwise it is an unpooled copy, so it does not need to be released if the response never completes.
+     */
+    private ByteBuf captureSlice(ByteBuf content, int length) {
+        if (ctx != null) {
+            return content.retainedSlice(content.readerIndex(), length);
+        }
+
+        return Unpooled.copiedBuffer(content.slice(content.readerIndex(), length));
+    }
+
+    private CompositeByteBuf createCompositeBuffer() {
+        // allow an unlimited number of components, to avoid consolidating (and copying) the buffers
+        if (ctx == null) {
+            return Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        }
+
+        return ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Releases the retained buffers if the client disconnects before the response is complete. If the channel is already closed,
+     * the buffers are released immediately, so callers must check {@link #released} afterward.
+     */
+    private void registerReleaseOnClose() {
+        if (ctx != null && !releaseOnCloseRegistered) {
+            releaseOnCloseRegistered = true;
+            ctx.channel().closeFuture().addListener(releaseOnCloseListener);
+        }
+    }
+
+    private void closeContentDecompressor() {
+        if (contentDecompressor != null) {
+            contentDecompressor.finishAndReleaseAll();
+            contentDecompressor = null;
+        }
+    }
+
+    /**
+     * Releases all buffers held by this filter. Safe to call more than once, and from any thread.
+     */
+    private synchronized void releaseBuffers() {
+        if (released) {
+            return;
+        }
+
+        released = true;
+
+        if (rawResponseContents != null) {
+            rawResponseContents.release();
+            rawResponseContents = null;
+        }
+
+        if (decompressedResponseContents != null) {
+            decompressedResponseContents.release();
+            decompressedResponseContents = null;
         }
+
+        closeContentDecompressor();
+
+        if (releaseOnCloseRegistered) {
+            ctx.channel().closeFuture().removeListener(releaseOnCloseListener);
+        }
+    }
+
+    private static byte[] toByteArray(ByteBuf buffer) {
+        if (buffer == null) {
+            return new byte[0];
+        }
+
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        return bytes;
     }
 
     public HttpResponse getHttpResponse() {
@@ -196,8 +567,30 @@ public class ServerResponseCaptureFilter extends HttpFiltersAdapter {
      *
      * @return entire response contents, without decompression
      */
-    public byte[] getRawResponseContents() {
-        return rawResponseContents.toByteArray();
+    public synchronized byte[] getRawResponseContents() {
+        if (rawResponseBytes != null) {
+            return rawResponseBytes;
+        }
+
+        return toByteArray(rawResponseContents);
+    }
+
+    /**
+     * Returns the size of the entire response contents, including any content beyond the maxCaptureSize that was not captured.
+     * If the contents were decompressed, this is the decompressed size (or, if the raw contents were truncated and could not
+     * be fully decompressed, the number of bytes that could be decompressed).
+     *
+     * @return size of the entire response contents, in bytes
+     */
+    public long getFullResponseContentsSize() {
+        return fullResponseContentsSize;
+    }
+
+    /**
+     * @return true if the contents returned by {@link #getFullResponseContents()} were truncated to the maxCaptureSize
+     */
+    public boolean isContentTruncated() {
+        return contentTruncated;
     }
 
     public HttpHeaders getTrailingHeaders() {
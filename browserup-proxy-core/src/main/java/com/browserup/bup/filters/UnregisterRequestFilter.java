@@ -4,9 +4,12 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
 import com.browserup.bup.proxy.ActivityMonitor;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 
+import static com.browserup.bup.filters.RegisterRequestFilter.ACTIVITY_ATTRIBUTE_NAME;
+
 /**
  * Unregisters this request with the {@link com.browserup.bup.proxy.ActivityMonitor} when the LastHttpContent is sent to the client.
  */
@@ -22,7 +25,11 @@ public class UnregisterRequestFilter extends HttpFiltersAdapter {
     @Override
     public HttpObject proxyToClientResponse(HttpObject httpObject) {
         if (httpObject instanceof LastHttpContent) {
-            activityMonitor.requestFinished();
+            ActivityMonitor.Activity activity = ctx.channel().attr(AttributeKey.<ActivityMonitor.Activity>valueOf(ACTIVITY_ATTRIBUTE_NAME))
+                    .getAndSet(null);
+            if (activity != null) {
+                activityMonitor.requestFinished(activity);
+            }
         }
 
         return super.proxyToClientResponse(httpObject);
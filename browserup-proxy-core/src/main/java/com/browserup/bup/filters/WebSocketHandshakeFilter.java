@@ -120,7 +120,13 @@ public class WebSocketHandshakeFilter extends HttpsAwareFiltersAdapter {
         }
     }
 
-    private static boolean isWebSocketUpgradeRequest(HttpRequest request) {
+    /**
+     * Returns true if the request asks to upgrade the connection to a WebSocket connection.
+     *
+     * @param request HTTP request
+     * @return true if this is a WebSocket upgrade request
+     */
+    public static boolean isWebSocketUpgradeRequest(HttpRequest request) {
         return request.headers().contains(HttpHeaderNames.CONNECTION, "Upgrade", true)
                 && request.headers().contains(HttpHeaderNames.UPGRADE, "websocket", true);
     }
@@ -0,0 +1,157 @@
+package com.browserup.bup.filters.support;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back outbound operations (writes, flushes, and closes) on a client channel for a period of time, without blocking the channel's
+ * event loop. The held operations are released in their original order by a task scheduled on the channel's event loop, so other
+ * connections served by the same event loop are not affected by the delay.
+ * <p>
+ * A single handler is installed per client channel by {@link #delayNextResponse(ChannelHandlerContext, long)}. If another delay is
+ * requested while a delay is already in progress (e.g. for a pipelined response), the new delay begins when the previously-held
+ * operations have been released.
+ * <p>
+ * All state is confined to the channel's event loop.
+ */
+public class ResponseDelayHandler extends ChannelOutboundHandlerAdapter {
+    public static final String HANDLER_NAME = "responseDelay";
+
+    /**
+     * Operations waiting for the current delay to elapse. A {@link Delay} in the queue starts a new delay when it is reached.
+     */
+    private final Queue<Runnable> heldOperations = new ArrayDeque<>();
+
+    private ChannelHandlerContext ctx;
+
+    private boolean holding;
+
+    /**
+     * Delays every outbound operation on the client channel that occurs after this call, until the specified delay has elapsed.
+     * This method may be called from any thread; the operations that follow it in the channel's event loop are held in order.
+     *
+     * @param clientCtx the ChannelHandlerContext of the client-to-proxy connection
+     * @param delayMs delay in milliseconds
+     */
+    public static void delayNextResponse(ChannelHandlerContext clientCtx, long delayMs) {
+        EventExecutor executor = clientCtx.channel().eventLoop();
+
+        Runnable delayTask = () -> {
+            // the client connection's handler is removed from the pipeline when the connection is closed
+            if (clientCtx.isRemoved()) {
+                return;
+            }
+
+            getOrInstallHandler(clientCtx).delay(delayMs);
+        };
+
+        // writes from other threads are queued on the channel's event loop, so queuing the delay ahead of them keeps them in order
+        if (executor.inEventLoop()) {
+            delayTask.run();
+        } else {
+            executor.execute(delayTask);
+        }
+    }
+
+    private static ResponseDelayHandler getOrInstallHandler(ChannelHandlerContext clientCtx) {
+        ChannelPipeline pipeline = clientCtx.pipeline();
+
+        ResponseDelayHandler handler = (ResponseDelayHandler) pipeline.get(HANDLER_NAME);
+        if (handler == null) {
+            handler = new ResponseDelayHandler();
+
+            // install the handler in front of the client connection's handler, so that all of its writes pass through this handler
+            pipeline.addBefore(clientCtx.name(), HANDLER_NAME, handler);
+        }
+
+        return handler;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (holding) {
+            heldOperations.add(() -> ctx.write(msg, promise));
+        } else {
+            ctx.write(msg, promise);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (holding) {
+            heldOperations.add(ctx::flush);
+        } else {
+            ctx.flush();
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        // the connection may be closed immediately after the response is written, so the close must wait for the held response
+        if (holding) {
+            heldOperations.add(() -> ctx.close(promise));
+        } else {
+            ctx.close(promise);
+        }
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) {
+        if (holding) {
+            heldOperations.add(() -> ctx.disconnect(promise));
+        } else {
+            ctx.disconnect(promise);
+        }
+    }
+
+    private void delay(long delayMs) {
+        if (holding) {
+            heldOperations.add(new Delay(delayMs));
+        } else {
+            startDelay(delayMs);
+        }
+    }
+
+    private void startDelay(long delayMs) {
+        holding = true;
+
+        ctx.executor().schedule(this::release, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replays held operations in order, stopping if a queued {@link Delay} starts a new delay.
+     */
+    private void release() {
+        holding = false;
+
+        Runnable operation;
+        while (!holding && (operation = heldOperations.poll()) != null) {
+            operation.run();
+        }
+    }
+
+    private class Delay implements Runnable {
+        private final long delayMs;
+
+        Delay(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void run() {
+            startDelay(delayMs);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.browserup.bup.har;
+
+import de.sstoehr.harreader.model.HarContent;
+import de.sstoehr.harreader.model.HarCookie;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarHeader;
+import de.sstoehr.harreader.model.HarLog;
+import de.sstoehr.harreader.model.HarPage;
+import de.sstoehr.harreader.model.HarPostData;
+import de.sstoehr.harreader.model.HarPostDataParam;
+import de.sstoehr.harreader.model.HarQueryParam;
+import de.sstoehr.harreader.model.HarRequest;
+import de.sstoehr.harreader.model.HarResponse;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * A list of {@link HarEntry} objects that holds at most a maximum number of entries, or entries of at most a maximum estimated
+ * retained size, whichever limit is reached first. When an entry is added, or a completed entry grows beyond the limits, the oldest
+ * entries are evicted. The most recently added entry is never evicted, even if it exceeds the size limit on its own.
+ * <p>
+ * The retained size of an entry is estimated from the lengths of its strings, such as URLs, headers and captured content, when the
+ * entry is added and again when the proxy reports that the entry is complete (see {@link HarEntryCompletionListener}).
+ * <p>
+ * If the list is created for a {@link HarLog}, pages whose entries have all been evicted are removed from the log, except for the
+ * most recent page, and the numbers of evicted entries and bytes are published as the {@value #EVICTED_ENTRIES_FIELD} and
+ * {@value #EVICTED_BYTES_FIELD} fields of the log.
+ * <p>
+ * Since entries are evicted from the head of the list, indexes of entries change as entries are added. Iterators and streams
+ * operate on a snapshot of the list. Entries cannot be removed from the list explicitly, and null entries are not permitted.
+ */
+public class BoundedHarEntryList extends AbstractList<HarEntry> implements RandomAccess, HarEntryCompletionListener {
+    /**
+     * Name of the custom HAR log field holding the number of evicted entries.
+     */
+    public static final String EVICTED_ENTRIES_FIELD = "_evictedEntries";
+
+    /**
+     * Name of the custom HAR log field holding the estimated retained size of the evicted entries, in bytes.
+     */
+    public static final String EVICTED_BYTES_FIELD = "_evictedBytes";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Estimated size of a HAR entry without its strings: the entry, request, response, content, cache and timings objects.
+     */
+    private static final long ENTRY_OVERHEAD = 512;
+
+    /**
+     * Estimated size of a String object and its backing array, without the characters.
+     */
+    private static final long STRING_OVERHEAD = 40;
+
+    /**
+     * Estimated size of a name/value object, e.g. a header, without its strings.
+     */
+    private static final long NAME_VALUE_OVERHEAD = 24;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final HarLog harLog;
+
+    // the entries are kept in a ring buffer, starting at head. guarded by this.
+    private HarEntry[] ring = new HarEntry[INITIAL_CAPACITY];
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private String[] pagerefs = new String[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    // the number of entries with each page reference, guarded by this
+    private final Map<String, Integer> pageEntryCounts = new HashMap<>();
+
+    // positions of the entries that are being captured, counted from the first entry ever added. guarded by this.
+    private final Map<HarEntry, Long> inProgressPositions = new IdentityHashMap<>();
+
+    // guarded by this
+    private long retainedBytes;
+    private long evictedEntries;
+    private long evictedBytes;
+
+    /**
+     * Creates a list that is not associated with a HAR log.
+     *
+     * @param maxEntries maximum number of entries, or 0 for no limit
+     * @param maxBytes maximum estimated retained size of the entries in bytes, or 0 for no limit
+     */
+    public BoundedHarEntryList(int maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, null);
+    }
+
+    /**
+     * Creates a list for the entries of the specified HAR log, whose pages are kept consistent with the entries of the list.
+     *
+     * @param maxEntries maximum number of entries, or 0 for no limit
+     * @param maxBytes maximum estimated retained size of the entries in bytes, or 0 for no limit
+     * @param harLog the log that holds this list, or null
+     */
+    public BoundedHarEntryList(int maxEntries, long maxBytes, HarLog harLog) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum number of HAR entries cannot be negative: " + maxEntries);
+        }
+
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Maximum size of HAR entries cannot be negative: " + maxBytes);
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.harLog = harLog;
+
+        if (harLog != null) {
+            publishEvictionCounters();
+        }
+    }
+
+    @Override
+    public synchronized boolean add(HarEntry entry) {
+        Objects.requireNonNull(entry, "HAR entry cannot be null");
+
+        if (size == ring.length) {
+            grow();
+        }
+
+        int slot = slot(size);
+        long entrySize = estimateRetainedSize(entry);
+        ring[slot] = entry;
+        sizes[slot] = entrySize;
+        pagerefs[slot] = entry.getPageref();
+        size++;
+
+        retainedBytes += entrySize;
+        pageEntryCounts.merge(String.valueOf(entry.getPageref()), 1, Integer::sum);
+        inProgressPositions.put(entry, evictedEntries + size - 1);
+
+        evictOldestEntries();
+
+        return true;
+    }
+
+    @Override
+    public synchronized HarEntry get(int index) {
+        Objects.checkIndex(index, size);
+
+        return ring[slot(index)];
+    }
+
+    @Override
+    public synchronized HarEntry set(int index, HarEntry entry) {
+        Objects.requireNonNull(entry, "HAR entry cannot be null");
+        Objects.checkIndex(index, size);
+
+        int slot = slot(index);
+        HarEntry previousEntry = ring[slot];
+        inProgressPositions.remove(previousEntry);
+        decrementPageEntryCount(pagerefs[slot]);
+
+        long entrySize = estimateRetainedSize(entry);
+        retainedBytes += entrySize - sizes[slot];
+        ring[slot] = entry;
+        sizes[slot] = entrySize;
+        pagerefs[slot] = entry.getPageref();
+        pageEntryCounts.merge(String.valueOf(entry.getPageref()), 1, Integer::sum);
+
+        evictOldestEntries();
+
+        return previousEntry;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized Object[] toArray() {
+        Object[] entries = new Object[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = ring[slot(i)];
+        }
+
+        return entries;
+    }
+
+    @Override
+    public Iterator<HarEntry> iterator() {
+        return snapshot().iterator();
+    }
+
+    @Override
+    public Spliterator<HarEntry> spliterator() {
+        return Spliterators.spliterator(toArray(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Updates the estimated size of the completed entry, which now includes its response, and evicts the oldest entries if the list
+     * exceeds the size limit.
+     */
+    @Override
+    public synchronized void entryCompleted(HarEntry entry) {
+        Long position = inProgressPositions.remove(entry);
+        if (position == null || position < evictedEntries) {
+            return;
+        }
+
+        int slot = slot((int) (position - evictedEntries));
+        long entrySize = estimateRetainedSize(entry);
+        retainedBytes += entrySize - sizes[slot];
+        sizes[slot] = entrySize;
+
+        evictOldestEntries();
+    }
+
+    /**
+     * @return the number of entries evicted from this list so far
+     */
+    public synchronized long getEvictedEntries() {
+        return evictedEntries;
+    }
+
+    /**
+     * @return the estimated retained size of the entries evicted from this list so far, in bytes
+     */
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * @return the estimated retained size of the entries in this list, in bytes
+     */
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Estimates the number of bytes retained by a HAR entry, from the number of characters in its strings and the number of its
+     * headers, cookies and parameters. Strings are assumed to use one byte per character.
+     *
+     * @param entry the entry
+     * @return estimated retained size in bytes
+     */
+    public static long estimateRetainedSize(HarEntry entry) {
+        long size = ENTRY_OVERHEAD + stringSize(entry.getPageref()) + stringSize(entry.getServerIPAddress())
+                + stringSize(entry.getConnection()) + stringSize(entry.getComment());
+
+        HarRequest request = entry.getRequest();
+        if (request != null) {
+            size += stringSize(request.getUrl()) + stringSize(request.getHttpVersion()) + stringSize(request.getComment());
+            size += headersSize(request.getHeaders()) + cookiesSize(request.getCookies());
+
+            List<HarQueryParam> queryString = request.getQueryString();
+            if (queryString != null) {
+                for (HarQueryParam param : queryString) {
+                    size += NAME_VALUE_OVERHEAD + stringSize(param.getName()) + stringSize(param.getValue());
+                }
+            }
+
+            HarPostData postData = request.getPostData();
+            if (postData != null) {
+                size += stringSize(postData.getMimeType()) + stringSize(postData.getText());
+
+                List<HarPostDataParam> params = postData.getParams();
+                if (params != null) {
+                    for (HarPostDataParam param : params) {
+                        size += NAME_VALUE_OVERHEAD + stringSize(param.getName()) + stringSize(param.getValue());
+                    }
+                }
+            }
+        }
+
+        HarResponse response = entry.getResponse();
+        if (response != null) {
+            size += stringSize(response.getStatusText()) + stringSize(response.getHttpVersion())
+                    + stringSize(response.getRedirectURL()) + stringSize(response.getComment());
+            size += headersSize(response.getHeaders()) + cookiesSize(response.getCookies());
+
+            HarContent content = response.getContent();
+            if (content != null) {
+                size += stringSize(content.getMimeType()) + stringSize(content.getText()) + stringSize(content.getEncoding());
+            }
+        }
+
+        return size;
+    }
+
+    private static long headersSize(List<HarHeader> headers) {
+        long size = 0;
+        if (headers != null) {
+            for (HarHeader header : headers) {
+                size += NAME_VALUE_OVERHEAD + stringSize(header.getName()) + stringSize(header.getValue());
+            }
+        }
+
+        return size;
+    }
+
+    private static long cookiesSize(List<HarCookie> cookies) {
+        long size = 0;
+        if (cookies != null) {
+            for (HarCookie cookie : cookies) {
+                size += NAME_VALUE_OVERHEAD + stringSize(cookie.getName()) + stringSize(cookie.getValue())
+                        + stringSize(cookie.getPath()) + stringSize(cookie.getDomain());
+            }
+        }
+
+        return size;
+    }
+
+    private static long stringSize(String string) {
+        return string == null ? 0 : STRING_OVERHEAD + string.length();
+    }
+
+    private List<HarEntry> snapshot() {
+        Object[] entries = toArray();
+
+        return Arrays.asList(Arrays.copyOf(entries, entries.length, HarEntry[].class));
+    }
+
+    private int slot(int index) {
+        return (head + index) % ring.length;
+    }
+
+    private void grow() {
+        int capacity = ring.length * 2;
+        if (maxEntries > 0) {
+            // an entry is added before the oldest entry is evicted
+            capacity = Math.max(Math.min(capacity, maxEntries + 1), size + 1);
+        }
+
+        HarEntry[] newRing = new HarEntry[capacity];
+        long[] newSizes = new long[capacity];
+        String[] newPagerefs = new String[capacity];
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            newRing[i] = ring[slot];
+            newSizes[i] = sizes[slot];
+            newPagerefs[i] = pagerefs[slot];
+        }
+
+        ring = newRing;
+        sizes = newSizes;
+        pagerefs = newPagerefs;
+        head = 0;
+    }
+
+    private void evictOldestEntries() {
+        long evictedBefore = evictedEntries;
+
+        while (size > 1 && ((maxEntries > 0 && size > maxEntries) || (maxBytes > 0 && retainedBytes > maxBytes))) {
+            HarEntry entry = ring[head];
+            long entrySize = sizes[head];
+            String pageref = pagerefs[head];
+
+            ring[head] = null;
+            pagerefs[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+
+            inProgressPositions.remove(entry);
+            retainedBytes -= entrySize;
+            evictedEntries++;
+            evictedBytes += entrySize;
+
+            if (decrementPageEntryCount(pageref)) {
+                removePage(pageref);
+            }
+        }
+
+        if (harLog != null && evictedEntries != evictedBefore) {
+            publishEvictionCounters();
+        }
+    }
+
+    /**
+     * @return true if the page no longer has any entries
+     */
+    private boolean decrementPageEntryCount(String pageref) {
+        return pageEntryCounts.computeIfPresent(String.valueOf(pageref), (key, count) -> count > 1 ? count - 1 : null) == null;
+    }
+
+    /**
+     * Removes the page with the specified reference from the log, unless it is the most recent page, which may still get entries.
+     */
+    private void removePage(String pageref) {
+        if (harLog == null || pageref == null) {
+            return;
+        }
+
+        List<HarPage> pages = harLog.getPages();
+        if (pages == null || pages.isEmpty()) {
+            return;
+        }
+
+        HarPage mostRecentPage = pages.get(pages.size() - 1);
+        pages.removeIf(page -> page != mostRecentPage && pageref.equals(page.getId()));
+    }
+
+    private void publishEvictionCounters() {
+        harLog.setAdditionalField(EVICTED_ENTRIES_FIELD, evictedEntries);
+        harLog.setAdditionalField(EVICTED_BYTES_FIELD, evictedBytes);
+    }
+}
@@ -0,0 +1,53 @@
+package com.browserup.bup.har;
+
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+
+import java.util.List;
+
+/**
+ * A {@link HarStorage} for always-on proxies, which caps the memory used by each HAR. Each HAR gets its own
+ * {@link BoundedHarEntryList}, which evicts the oldest entries once the HAR holds more than a maximum number of entries, or entries
+ * of more than a maximum estimated retained size, and removes the pages whose entries have all been evicted.
+ */
+public class BoundedHarStorage implements HarStorage {
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /**
+     * Creates a storage for HARs with the specified limits. At least one limit should be positive.
+     *
+     * @param maxEntries maximum number of entries of each HAR, or 0 for no limit
+     * @param maxBytes maximum estimated retained size of the entries of each HAR in bytes, or 0 for no limit
+     */
+    public BoundedHarStorage(int maxEntries, long maxBytes) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum number of HAR entries cannot be negative: " + maxEntries);
+        }
+
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Maximum size of HAR entries cannot be negative: " + maxBytes);
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public List<HarEntry> newEntryList() {
+        return new BoundedHarEntryList(maxEntries, maxBytes);
+    }
+
+    @Override
+    public List<HarEntry> newEntryList(HarLog harLog) {
+        return new BoundedHarEntryList(maxEntries, maxBytes, harLog);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,16 @@
+package com.browserup.bup.har;
+
+import de.sstoehr.harreader.model.HarEntry;
+
+/**
+ * Implemented by HAR entry lists that need to know when an entry has been completely captured, e.g. to move it off the heap.
+ * The HAR capture filters notify the entry list of their HAR if it implements this interface.
+ */
+public interface HarEntryCompletionListener {
+    /**
+     * Called when the proxy will no longer modify the specified entry, which was previously added to this list.
+     *
+     * @param entry the completed entry
+     */
+    void entryCompleted(HarEntry entry);
+}
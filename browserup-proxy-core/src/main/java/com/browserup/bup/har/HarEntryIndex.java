@@ -0,0 +1,327 @@
+package com.browserup.bup.har;
+
+import com.browserup.bup.util.HttpStatusClass;
+import de.sstoehr.harreader.model.HarEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Secondary indexes over the entries of a {@link HarEntryList}, used to find entries by URL pattern and status class without
+ * running the URL pattern against every entry. Entries are indexed when the proxy reports that they are complete, since their URL
+ * and status are not known when they are added to the list. The indexes are:
+ * <ul>
+ *     <li>the positions of the entries of each host</li>
+ *     <li>the positions of the entries of each host and first path segment (see {@link UrlPatternKeys#pathPrefixOf(String)})</li>
+ *     <li>the positions of the entries of each {@link HttpStatusClass}</li>
+ *     <li>for each position, the latest start time of the indexed entries at or before that position, which allows the search for
+ *     the most recent entry to stop as soon as no earlier entry can be more recent</li>
+ * </ul>
+ * Entries that have not been indexed (entries that are still being captured, entries that the proxy never reports as complete, and
+ * entries that were replaced using {@link HarEntryList#set(int, HarEntry)}) are always candidates. Candidates are always checked
+ * against the URL pattern and status class, so the indexes only need to contain a superset of the matching entries.
+ */
+final class HarEntryIndex {
+    private final HarEntryList entries;
+
+    /**
+     * Positions of the indexed entries. All fields are guarded by this.
+     */
+    private final BitSet indexed = new BitSet();
+
+    private final Map<String, IntList> byHost = new HashMap<>();
+
+    private final Map<String, IntList> byPathPrefix = new HashMap<>();
+
+    private final Map<HttpStatusClass, IntList> byStatusClass = new EnumMap<>(HttpStatusClass.class);
+
+    /**
+     * Element i is the latest start time of the indexed entries at positions 0..i, or Long.MIN_VALUE if there are none. Positions
+     * at or above latestStartedLength have the same value as the last element.
+     */
+    private long[] latestStarted = new long[32];
+
+    private int latestStartedLength;
+
+    HarEntryIndex(HarEntryList entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Indexes the completed entry. Completed entries are usually among the most recently added ones, so unindexed positions are
+     * searched from the end of the list.
+     */
+    synchronized void entryCompleted(HarEntry entry) {
+        for (int position = indexed.previousClearBit(entries.size() - 1); position >= 0;
+             position = indexed.previousClearBit(position - 1)) {
+            if (entries.get(position) == entry) {
+                index(position, entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the entry at the specified position from the indexes, so that it is always a candidate. Its position is not removed
+     * from the key lists, which only makes it a candidate for more queries than necessary.
+     */
+    synchronized void entryReplaced(int position) {
+        indexed.clear(position);
+    }
+
+    /**
+     * Returns the entries whose URL matches the pattern and whose status belongs to the status class, in list order.
+     *
+     * @param urlPattern  pattern the entire URL must match, or null to match any URL
+     * @param statusClass class the response status must belong to, or null to match any status
+     */
+    List<HarEntry> findEntries(Pattern urlPattern, HttpStatusClass statusClass) {
+        int size = entries.size();
+        EntryMatcher matcher = new EntryMatcher(urlPattern, statusClass);
+
+        BitSet candidates;
+        synchronized (this) {
+            candidates = candidates(size, matcher);
+        }
+
+        List<HarEntry> matches = new ArrayList<>();
+        if (candidates == null) {
+            for (int position = 0; position < size; position++) {
+                HarEntry entry = entries.get(position);
+                if (matcher.matches(entry)) {
+                    matches.add(entry);
+                }
+            }
+        } else {
+            for (int position = candidates.nextSetBit(0); position >= 0; position = candidates.nextSetBit(position + 1)) {
+                HarEntry entry = entries.get(position);
+                if (matcher.matches(entry)) {
+                    matches.add(entry);
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Returns the entry with the latest start time whose URL matches the pattern. If several entries have the same start time, the
+     * first one in list order is returned.
+     *
+     * @param urlPattern pattern the entire URL must match, or null to match any URL
+     */
+    Optional<HarEntry> findMostRecent(Pattern urlPattern) {
+        int size = entries.size();
+        EntryMatcher matcher = new EntryMatcher(urlPattern, null);
+
+        // the candidates are collected under the lock, and checked against the URL pattern outside it
+        BitSet indexedPositions;
+        BitSet candidates;
+        long[] latestStartedSnapshot;
+        synchronized (this) {
+            indexedPositions = (BitSet) indexed.clone();
+            candidates = candidates(size, matcher);
+            latestStartedSnapshot = Arrays.copyOf(latestStarted, Math.min(latestStartedLength, size));
+        }
+
+        HarEntry mostRecent = null;
+        int mostRecentPosition = -1;
+        long mostRecentStarted = Long.MIN_VALUE;
+
+        // unindexed entries may have any start time, so all of them are checked
+        for (int position = indexedPositions.nextClearBit(0); position < size; position = indexedPositions.nextClearBit(position + 1)) {
+            HarEntry entry = entries.get(position);
+            if (matcher.matches(entry) && (mostRecent == null || startedMillis(entry) > mostRecentStarted)) {
+                mostRecent = entry;
+                mostRecentPosition = position;
+                mostRecentStarted = startedMillis(entry);
+            }
+        }
+
+        BitSet indexedCandidates = candidates != null ? candidates : indexedPositions;
+        for (int position = indexedCandidates.previousSetBit(size - 1); position >= 0;
+             position = indexedCandidates.previousSetBit(position - 1)) {
+            if (mostRecent != null && latestStartedAt(latestStartedSnapshot, position) < mostRecentStarted) {
+                // no entry at or before this position started later than the most recent match
+                break;
+            }
+
+            if (!indexedPositions.get(position)) {
+                continue;
+            }
+
+            HarEntry entry = entries.get(position);
+            if (!matcher.matches(entry)) {
+                continue;
+            }
+
+            long started = startedMillis(entry);
+            if (mostRecent == null || started > mostRecentStarted || (started == mostRecentStarted && position < mostRecentPosition)) {
+                mostRecent = entry;
+                mostRecentPosition = position;
+                mostRecentStarted = started;
+            }
+        }
+
+        return Optional.ofNullable(mostRecent);
+    }
+
+    /**
+     * Returns the positions below size that may match: the indexed positions selected by the most selective index that applies to
+     * the query, and all unindexed positions. Returns null if no index applies, i.e. if every position is a candidate.
+     */
+    private BitSet candidates(int size, EntryMatcher matcher) {
+        IntList selected = null;
+
+        if (matcher.keys.getPathPrefix() != null) {
+            selected = byPathPrefix.getOrDefault(matcher.keys.getPathPrefix(), IntList.EMPTY);
+        } else if (matcher.keys.getHost() != null) {
+            selected = byHost.getOrDefault(matcher.keys.getHost(), IntList.EMPTY);
+        }
+
+        if (matcher.statusClass != null) {
+            IntList byStatus = byStatusClass.getOrDefault(matcher.statusClass, IntList.EMPTY);
+            if (selected == null || byStatus.size < selected.size) {
+                selected = byStatus;
+            }
+        }
+
+        if (selected == null) {
+            return null;
+        }
+
+        BitSet candidates = new BitSet(size);
+        for (int i = 0; i < selected.size; i++) {
+            int position = selected.values[i];
+            if (position < size && indexed.get(position)) {
+                candidates.set(position);
+            }
+        }
+
+        // unindexed positions
+        BitSet unindexed = (BitSet) indexed.clone();
+        unindexed.flip(0, size);
+        unindexed.clear(size, Math.max(size, unindexed.length()));
+        candidates.or(unindexed);
+
+        return candidates;
+    }
+
+    private void index(int position, HarEntry entry) {
+        String url = entry.getRequest() != null ? entry.getRequest().getUrl() : null;
+        if (url != null) {
+            String host = UrlPatternKeys.hostOf(url);
+            if (host != null) {
+                byHost.computeIfAbsent(host, key -> new IntList()).add(position);
+                byPathPrefix.computeIfAbsent(UrlPatternKeys.pathPrefixOf(url), key -> new IntList()).add(position);
+            }
+        }
+
+        Integer status = statusOf(entry);
+        if (status != null) {
+            byStatusClass.computeIfAbsent(HttpStatusClass.valueOf(status), key -> new IntList()).add(position);
+        }
+
+        updateLatestStarted(position, startedMillis(entry));
+
+        indexed.set(position);
+    }
+
+    private void updateLatestStarted(int position, long started) {
+        if (position >= latestStartedLength) {
+            if (position >= latestStarted.length) {
+                latestStarted = Arrays.copyOf(latestStarted, Math.max(latestStarted.length * 2, position + 1));
+            }
+
+            long previous = latestStartedLength > 0 ? latestStarted[latestStartedLength - 1] : Long.MIN_VALUE;
+            Arrays.fill(latestStarted, latestStartedLength, position + 1, previous);
+            latestStartedLength = position + 1;
+        }
+
+        // the values are non-decreasing, so the update stops at the first position that is already at least as late
+        for (int i = position; i < latestStartedLength && latestStarted[i] < started; i++) {
+            latestStarted[i] = started;
+        }
+    }
+
+    private static long latestStartedAt(long[] latestStarted, int position) {
+        if (latestStarted.length == 0) {
+            return Long.MIN_VALUE;
+        }
+
+        return latestStarted[Math.min(position, latestStarted.length - 1)];
+    }
+
+    private static Integer statusOf(HarEntry entry) {
+        return entry.getResponse() != null ? entry.getResponse().getStatus() : null;
+    }
+
+    private static long startedMillis(HarEntry entry) {
+        return entry.getStartedDateTime() != null ? entry.getStartedDateTime().getTime() : Long.MIN_VALUE;
+    }
+
+    /**
+     * Checks entries against a URL pattern, after checking the literal the pattern requires, and a status class.
+     */
+    private static class EntryMatcher {
+        private final Pattern urlPattern;
+        private final UrlPatternKeys keys;
+        private final HttpStatusClass statusClass;
+
+        EntryMatcher(Pattern urlPattern, HttpStatusClass statusClass) {
+            this.urlPattern = urlPattern;
+            this.keys = urlPattern != null ? UrlPatternKeys.of(urlPattern) : UrlPatternKeys.NONE;
+            this.statusClass = statusClass;
+        }
+
+        boolean matches(HarEntry entry) {
+            if (statusClass != null) {
+                Integer status = statusOf(entry);
+                if (status == null || !statusClass.contains(status)) {
+                    return false;
+                }
+            }
+
+            if (urlPattern == null) {
+                return true;
+            }
+
+            String url = entry.getRequest() != null ? entry.getRequest().getUrl() : null;
+            if (url == null) {
+                return false;
+            }
+
+            String literal = keys.getRequiredLiteral();
+            if (literal != null && !url.contains(literal)) {
+                return false;
+            }
+
+            return urlPattern.matcher(url).matches();
+        }
+    }
+
+    /**
+     * A growable list of positions.
+     */
+    private static class IntList {
+        static final IntList EMPTY = new IntList();
+
+        int[] values = new int[8];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.browserup.bup.har;
+
+import com.browserup.bup.util.HttpStatusClass;
+import de.sstoehr.harreader.model.HarEntry;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * A concurrent, append-mostly list of {@link HarEntry} objects, used as the entry list of HARs captured by the proxy.
+ * Unlike a {@link java.util.concurrent.CopyOnWriteArrayList}, which copies its entire backing array on every add, appending
+ * an entry is lock-free and never copies previously-added entries.
+ * <p>
+ * Entries are stored in a fixed directory of chunks whose sizes double (32, 64, 128, ...), so an entry never moves once it
+ * has been added. Iterators are snapshots of the entries present when the iterator was created: they never throw
+ * {@link java.util.ConcurrentModificationException} and do not reflect entries added after they were created.
+ * <p>
+ * Entries cannot be removed from the list, and null entries are not permitted. Replacing an entry using
+ * {@link #set(int, HarEntry)} is supported.
+ * <p>
+ * When the proxy reports that an entry is complete (see {@link HarEntryCompletionListener}), the entry is indexed by host, path
+ * prefix, status class and start time. {@link #findEntries(Pattern, HttpStatusClass)} and {@link #findMostRecent(Pattern)} use
+ * these indexes to narrow down the entries they check against the URL pattern.
+ */
+public class HarEntryList extends AbstractList<HarEntry> implements RandomAccess, HarEntryCompletionListener {
+    /**
+     * The first chunk holds 2^FIRST_CHUNK_SHIFT entries. Each subsequent chunk is twice as large as the previous one.
+     */
+    private static final int FIRST_CHUNK_SHIFT = 5;
+    private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_SHIFT;
+
+    /**
+     * Enough chunks to address every non-negative int index (after offsetting the index by FIRST_CHUNK_SIZE).
+     */
+    private static final int MAX_CHUNKS = Integer.SIZE - 1 - FIRST_CHUNK_SHIFT;
+
+    /**
+     * The maximum number of entries this list can hold.
+     */
+    static final int MAX_SIZE = Integer.MAX_VALUE - FIRST_CHUNK_SIZE;
+
+    /**
+     * The number of times a reader busy-waits for an unpublished entry before yielding.
+     */
+    private static final int MAX_SPINS = 64;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<HarEntry>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    /**
+     * The number of slots claimed by writers. A slot is claimed before its entry is written, so readers that find an empty
+     * slot below this index wait briefly for the writer to publish it.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final HarEntryIndex entryIndex = new HarEntryIndex(this);
+
+    public HarEntryList() {
+    }
+
+    /**
+     * Creates a new list containing the specified entries, in iteration order.
+     *
+     * @param entries entries to add to the new list
+     */
+    public HarEntryList(Iterable<HarEntry> entries) {
+        entries.forEach(this::add);
+    }
+
+    @Override
+    public boolean add(HarEntry entry) {
+        Objects.requireNonNull(entry, "HAR entry cannot be null");
+
+        int index;
+        do {
+            index = size.get();
+            if (index >= MAX_SIZE) {
+                throw new IllegalStateException("HAR entry list cannot hold more than " + MAX_SIZE + " entries");
+            }
+        } while (!size.compareAndSet(index, index + 1));
+
+        int position = index + FIRST_CHUNK_SIZE;
+        int highestBit = 31 - Integer.numberOfLeadingZeros(position);
+
+        getOrCreateChunk(highestBit - FIRST_CHUNK_SHIFT).set(position - (1 << highestBit), entry);
+
+        return true;
+    }
+
+    @Override
+    public HarEntry get(int index) {
+        checkIndex(index, size.get());
+
+        return awaitEntry(index);
+    }
+
+    @Override
+    public HarEntry set(int index, HarEntry entry) {
+        Objects.requireNonNull(entry, "HAR entry cannot be null");
+        checkIndex(index, size.get());
+
+        // make sure the original writer has published its entry, so that it does not overwrite this one
+        awaitEntry(index);
+
+        int position = index + FIRST_CHUNK_SIZE;
+        int highestBit = 31 - Integer.numberOfLeadingZeros(position);
+
+        HarEntry previous = chunks.get(highestBit - FIRST_CHUNK_SHIFT).getAndSet(position - (1 << highestBit), entry);
+
+        entryIndex.entryReplaced(index);
+
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void entryCompleted(HarEntry entry) {
+        entryIndex.entryCompleted(entry);
+    }
+
+    /**
+     * Returns the entries whose request URL matches the pattern, in list order.
+     *
+     * @param urlPattern pattern the entire URL must match
+     * @return the matching entries, or an empty list if none match
+     */
+    public List<HarEntry> findEntries(Pattern urlPattern) {
+        return entryIndex.findEntries(Objects.requireNonNull(urlPattern, "URL pattern cannot be null"), null);
+    }
+
+    /**
+     * Returns the entries whose request URL matches the pattern and whose response status belongs to the status class, in list
+     * order.
+     *
+     * @param urlPattern  pattern the entire URL must match, or null to match any URL
+     * @param statusClass class the response status must belong to, or null to match any status
+     * @return the matching entries, or an empty list if none match
+     */
+    public List<HarEntry> findEntries(Pattern urlPattern, HttpStatusClass statusClass) {
+        return entryIndex.findEntries(urlPattern, statusClass);
+    }
+
+    /**
+     * Returns the most recently started entry whose request URL matches the pattern. If several entries started at the same time,
+     * the first of them in list order is returned.
+     *
+     * @param urlPattern pattern the entire URL must match, or null to match any URL
+     * @return the most recent matching entry, or an empty Optional if none match
+     */
+    public Optional<HarEntry> findMostRecent(Pattern urlPattern) {
+        return entryIndex.findMostRecent(urlPattern);
+    }
+
+    @Override
+    public Iterator<HarEntry> iterator() {
+        return new SnapshotIterator(size.get());
+    }
+
+    @Override
+    public Spliterator<HarEntry> spliterator() {
+        int snapshotSize = size.get();
+
+        return Spliterators.spliterator(new SnapshotIterator(snapshotSize), snapshotSize, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    @Override
+    public void forEach(Consumer<? super HarEntry> action) {
+        Objects.requireNonNull(action);
+
+        int snapshotSize = size.get();
+        for (int i = 0; i < snapshotSize; i++) {
+            action.accept(awaitEntry(i));
+        }
+    }
+
+    /**
+     * Returns the entry at the specified index, waiting for a concurrent writer to publish it if the slot has been claimed
+     * but not yet written. The window between claiming and writing a slot is only a few instructions long.
+     */
+    private HarEntry awaitEntry(int index) {
+        int position = index + FIRST_CHUNK_SIZE;
+        int highestBit = 31 - Integer.numberOfLeadingZeros(position);
+        int chunkIndex = highestBit - FIRST_CHUNK_SHIFT;
+        int offset = position - (1 << highestBit);
+
+        int spins = 0;
+
+        AtomicReferenceArray<HarEntry> chunk;
+        while ((chunk = chunks.get(chunkIndex)) == null) {
+            spins = backOff(spins);
+        }
+
+        HarEntry entry;
+        while ((entry = chunk.get(offset)) == null) {
+            spins = backOff(spins);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Busy-waits briefly, then yields, so that a writer that was descheduled between claiming and writing its slot can run
+     * even when there are fewer cores than threads.
+     */
+    private static int backOff(int spins) {
+        if (spins < MAX_SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+
+        return spins + 1;
+    }
+
+    private AtomicReferenceArray<HarEntry> getOrCreateChunk(int chunkIndex) {
+        AtomicReferenceArray<HarEntry> chunk = chunks.get(chunkIndex);
+        if (chunk != null) {
+            return chunk;
+        }
+
+        AtomicReferenceArray<HarEntry> newChunk = new AtomicReferenceArray<>(FIRST_CHUNK_SIZE << chunkIndex);
+        if (chunks.compareAndSet(chunkIndex, null, newChunk)) {
+            return newChunk;
+        }
+
+        // another writer created the chunk first
+        return chunks.get(chunkIndex);
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private class SnapshotIterator implements Iterator<HarEntry> {
+        private final int snapshotSize;
+        private int cursor;
+
+        SnapshotIterator(int snapshotSize) {
+            this.snapshotSize = snapshotSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < snapshotSize;
+        }
+
+        @Override
+        public HarEntry next() {
+            if (cursor >= snapshotSize) {
+                throw new NoSuchElementException();
+            }
+
+            return awaitEntry(cursor++);
+        }
+    }
+}
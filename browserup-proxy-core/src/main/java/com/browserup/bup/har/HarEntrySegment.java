@@ -0,0 +1,141 @@
+package com.browserup.bup.har;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An append-only file of serialized HAR entries, written and read through memory-mapped regions of a fixed size. A record may
+ * span regions. The file is deleted when the segment is closed. On most Unix-like systems, the file is unlinked as soon as it
+ * is opened, so it is not left behind if the JVM exits abnormally.
+ * <p>
+ * Appends are serialized. Reads may run concurrently with appends and with each other; a record must not be read until the
+ * {@link #append(byte[])} call that wrote it has returned and its offset has been safely published to the reading thread.
+ */
+final class HarEntrySegment implements Closeable {
+    static final int DEFAULT_REGION_SIZE = 16 * 1024 * 1024;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final int regionSize;
+
+    /**
+     * The mapped regions of the file, in order. Regions are never modified through these buffers directly, only through
+     * duplicates, so that concurrent readers do not share a position.
+     */
+    private final List<MappedByteBuffer> regions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of bytes appended. Guarded by this.
+     */
+    private long size;
+
+    private volatile boolean closed;
+
+    HarEntrySegment(Path file, int regionSize) throws IOException {
+        if (regionSize < 1) {
+            throw new IllegalArgumentException("Region size must be at least 1 byte");
+        }
+
+        this.file = file;
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Appends the record to the end of the segment.
+     *
+     * @param record bytes to append
+     * @return the offset of the record in the segment
+     * @throws IOException if a new region cannot be mapped
+     */
+    synchronized long append(byte[] record) throws IOException {
+        ensureOpen();
+
+        long offset = size;
+        int written = 0;
+        while (written < record.length) {
+            long position = offset + written;
+            int regionOffset = (int) (position % regionSize);
+            int length = Math.min(record.length - written, regionSize - regionOffset);
+
+            ByteBuffer region = getOrMapRegion(Math.toIntExact(position / regionSize)).duplicate();
+            region.position(regionOffset);
+            region.put(record, written, length);
+
+            written += length;
+        }
+
+        size += record.length;
+
+        return offset;
+    }
+
+    /**
+     * Reads a record previously written by {@link #append(byte[])}.
+     *
+     * @param offset offset returned by {@link #append(byte[])}
+     * @param length length of the record
+     * @return the record
+     */
+    byte[] read(long offset, int length) {
+        ensureOpen();
+
+        byte[] record = new byte[length];
+        int read = 0;
+        while (read < length) {
+            long position = offset + read;
+            int regionOffset = (int) (position % regionSize);
+            int regionLength = Math.min(length - read, regionSize - regionOffset);
+
+            ByteBuffer region = regions.get(Math.toIntExact(position / regionSize)).duplicate();
+            region.position(regionOffset);
+            region.get(record, read, regionLength);
+
+            read += regionLength;
+        }
+
+        return record;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Closes and deletes the segment file. The mapped memory is released when the regions are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        regions.clear();
+        channel.close();
+    }
+
+    private MappedByteBuffer getOrMapRegion(int regionIndex) throws IOException {
+        // regions are only mapped by append(), one at a time and in order
+        if (regionIndex < regions.size()) {
+            return regions.get(regionIndex);
+        }
+
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, (long) regionIndex * regionSize, regionSize);
+        regions.add(region);
+
+        return region;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("HAR entry segment has been closed: " + file);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.browserup.bup.har;
+
+import de.sstoehr.harreader.model.HarEntry;
+
+import java.util.Date;
+
+/**
+ * The fields of a {@link HarEntry} that are kept in memory by a {@link SpillingHarEntryList} after the entry has been written
+ * to disk, so that entries can be found without reading them back.
+ */
+public final class HarEntrySummary {
+    private final String pageref;
+    private final String url;
+    private final long startedDateTime;
+    private final int status;
+
+    HarEntrySummary(String pageref, String url, Date startedDateTime, int status) {
+        this.pageref = pageref;
+        this.url = url;
+        this.startedDateTime = startedDateTime != null ? startedDateTime.getTime() : Long.MIN_VALUE;
+        this.status = status;
+    }
+
+    static HarEntrySummary of(HarEntry entry) {
+        String url = entry.getRequest() != null ? entry.getRequest().getUrl() : null;
+        Integer status = entry.getResponse() != null ? entry.getResponse().getStatus() : null;
+
+        return new HarEntrySummary(entry.getPageref(), url, entry.getStartedDateTime(), status != null ? status : 0);
+    }
+
+    public String getPageref() {
+        return pageref;
+    }
+
+    /**
+     * @return the request URL, or null if the entry has no request
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the time the request was started, or null if the entry has no start time
+     */
+    public Date getStartedDateTime() {
+        return startedDateTime != Long.MIN_VALUE ? new Date(startedDateTime) : null;
+    }
+
+    /**
+     * @return the HTTP status of the response, or 0 if the entry has no response
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    long getStartedDateTimeMillis() {
+        return startedDateTime;
+    }
+}
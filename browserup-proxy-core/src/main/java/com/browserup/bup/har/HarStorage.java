@@ -0,0 +1,35 @@
+package com.browserup.bup.har;
+
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+
+import java.util.List;
+
+/**
+ * Creates the lists that hold the entries of the HARs captured by {@link com.browserup.bup.BrowserUpProxyServer}. A new list
+ * is created each time a new HAR is started.
+ *
+ * @see InMemoryHarStorage
+ * @see SpillingHarStorage
+ * @see BoundedHarStorage
+ */
+public interface HarStorage {
+    /**
+     * Creates the entry list for a new HAR. The list must be safe for concurrent use, and must support {@link List#add(Object)},
+     * {@link List#get(int)} and {@link List#set(int, Object)}.
+     *
+     * @return a new, empty entry list
+     */
+    List<HarEntry> newEntryList();
+
+    /**
+     * Creates the entry list for a new HAR whose log is already initialized, apart from its entries. Storages that remove entries
+     * use the log to keep the pages of the HAR consistent with its entries. By default, the log is ignored.
+     *
+     * @param harLog log of the new HAR, which will hold the returned list
+     * @return a new, empty entry list
+     */
+    default List<HarEntry> newEntryList(HarLog harLog) {
+        return newEntryList();
+    }
+}
@@ -0,0 +1,146 @@
+package com.browserup.bup.har;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of canonical strings, which deduplicates the strings that repeat across the entries of a HAR, such as header names,
+ * common header values, MIME types and status texts. Without deduplication, every entry holds its own copies of these strings, which can
+ * account for a large part of the retained size of a long capture.
+ * <p>
+ * The pool is a fixed-size table indexed by the hash of the string: a string that collides with a different pooled string replaces
+ * it, so the pool never grows beyond its capacity, and strings that repeat often stay in the pool while unique values, e.g. session
+ * identifiers, pass through it. The pool references its strings weakly, so it does not keep the strings of discarded HARs alive.
+ * Lookups do not lock and accept any {@link CharSequence}, so header values can be looked up without first converting them to a
+ * new String.
+ * <p>
+ * This class is thread-safe.
+ */
+public class HarStringPool {
+    /**
+     * Default number of strings in the pool.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Default length of the longest string added to the pool. Longer strings are rarely repeated.
+     */
+    public static final int DEFAULT_MAX_STRING_LENGTH = 256;
+
+    private static final HarStringPool DEFAULT_POOL = new HarStringPool(DEFAULT_CAPACITY, DEFAULT_MAX_STRING_LENGTH);
+
+    private final AtomicReferenceArray<WeakReference<String>> table;
+
+    private final int mask;
+
+    private final int maxStringLength;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a pool of at most capacity strings, rounded up to a power of two.
+     *
+     * @param capacity maximum number of strings in the pool
+     * @param maxStringLength length of the longest string to add to the pool
+     */
+    public HarStringPool(int capacity, int maxStringLength) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+
+        if (maxStringLength < 0) {
+            throw new IllegalArgumentException("Maximum string length cannot be negative: " + maxStringLength);
+        }
+
+        int tableSize = Integer.highestOneBit(capacity);
+        if (tableSize < capacity) {
+            tableSize <<= 1;
+        }
+
+        this.table = new AtomicReferenceArray<>(tableSize);
+        this.mask = tableSize - 1;
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * @return the pool shared by all proxies, unless they were configured with their own pool
+     */
+    public static HarStringPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Returns the canonical string with the same characters as the specified character sequence: the pooled string, if the pool
+     * contains it, or else a string that is added to the pool.
+     *
+     * @param value characters to look up
+     * @return a string equal to value, or null if value is null
+     */
+    public String intern(CharSequence value) {
+        if (value == null) {
+            return null;
+        }
+
+        int length = value.length();
+        if (length > maxStringLength) {
+            return value.toString();
+        }
+
+        // AsciiString and String use different hash codes, so hash the characters to find the same slot for both
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        // spread the higher bits, since only the lower bits select the slot
+        int index = (hash ^ (hash >>> 16)) & mask;
+
+        WeakReference<String> reference = table.get(index);
+        if (reference != null) {
+            String pooled = reference.get();
+            if (pooled != null && pooled.contentEquals(value)) {
+                hits.increment();
+                return pooled;
+            }
+        }
+
+        misses.increment();
+
+        String string = value.toString();
+        table.set(index, new WeakReference<>(string));
+
+        return string;
+    }
+
+    public int getCapacity() {
+        return table.length();
+    }
+
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    /**
+     * @return the number of lookups that returned a pooled string
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups of strings that were not pooled, excluding strings longer than the maximum length
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Removes all strings from the pool.
+     */
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.browserup.bup.har;
+
+import de.sstoehr.harreader.model.HarEntry;
+
+import java.util.List;
+
+/**
+ * The default {@link HarStorage}, which keeps all HAR entries on the heap in a {@link HarEntryList}.
+ */
+public class InMemoryHarStorage implements HarStorage {
+    @Override
+    public List<HarEntry> newEntryList() {
+        return new HarEntryList();
+    }
+}
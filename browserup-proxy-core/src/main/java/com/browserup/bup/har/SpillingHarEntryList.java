@@ -0,0 +1,306 @@
+package com.browserup.bup.har;
+
+import com.browserup.bup.exception.HarStorageException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.sstoehr.harreader.model.HarEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * A list of {@link HarEntry} objects that moves completed entries off the heap. Entries are kept in memory while they are being
+ * captured. When the proxy reports that an entry is complete (see {@link HarEntryCompletionListener}), the entry is serialized to
+ * an append-only, memory-mapped segment file, and only a {@link HarEntrySummary} of it is kept in memory.
+ * <p>
+ * {@link #get(int)} reads completed entries back from the segment file, so each call returns a new copy of the entry, and
+ * changes made to a completed entry returned by this list are not saved. Use {@link #set(int, HarEntry)} to replace an entry.
+ * {@link #select(Predicate)} and {@link #findMostRecent(Predicate)} find entries using the summaries, without reading
+ * non-matching entries.
+ * <p>
+ * The segment file is deleted when the list is closed, or when the list is garbage collected. Entries cannot be removed from
+ * the list, and null entries are not permitted.
+ */
+public class SpillingHarEntryList extends AbstractList<HarEntry> implements RandomAccess, HarEntryCompletionListener, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SpillingHarEntryList.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final HarEntrySegment segment;
+
+    private final Cleaner.Cleanable cleanable;
+
+    /**
+     * Each slot holds either a {@link HarEntry} that is still in memory, or the {@link StoredEntry} of an entry that was written
+     * to the segment. Guarded by this.
+     */
+    private final List<Object> slots = new ArrayList<>();
+
+    /**
+     * Indexes of the entries that are being captured and have not yet been written to the segment. Guarded by this.
+     */
+    private final Map<HarEntry, Integer> inProgressIndexes = new IdentityHashMap<>();
+
+    /**
+     * Creates a list that writes completed entries to the specified segment file.
+     *
+     * @param segmentFile file to write completed entries to. The file will be created if it does not exist, and will be deleted when
+     *                    the list is closed.
+     */
+    public SpillingHarEntryList(Path segmentFile) {
+        this(segmentFile, HarEntrySegment.DEFAULT_REGION_SIZE);
+    }
+
+    SpillingHarEntryList(Path segmentFile, int regionSize) {
+        try {
+            this.segment = new HarEntrySegment(segmentFile, regionSize);
+        } catch (IOException e) {
+            throw new HarStorageException("Unable to create HAR entry segment file: " + segmentFile, e);
+        }
+
+        this.cleanable = CLEANER.register(this, new SegmentCloser(segment));
+    }
+
+    @Override
+    public synchronized boolean add(HarEntry entry) {
+        Objects.requireNonNull(entry, "HAR entry cannot be null");
+
+        inProgressIndexes.put(entry, slots.size());
+        slots.add(entry);
+
+        return true;
+    }
+
+    @Override
+    public HarEntry get(int index) {
+        Object slot;
+        synchronized (this) {
+            slot = slots.get(index);
+        }
+
+        if (slot instanceof HarEntry) {
+            return (HarEntry) slot;
+        }
+
+        return ((StoredEntry) slot).read(segment);
+    }
+
+    /**
+     * Replaces the entry at the specified index. The replacement is kept in memory.
+     */
+    @Override
+    public HarEntry set(int index, HarEntry entry) {
+        Objects.requireNonNull(entry, "HAR entry cannot be null");
+
+        Object previousSlot;
+        synchronized (this) {
+            previousSlot = slots.set(index, entry);
+
+            if (previousSlot instanceof HarEntry) {
+                inProgressIndexes.remove(previousSlot);
+            }
+        }
+
+        if (previousSlot instanceof HarEntry) {
+            return (HarEntry) previousSlot;
+        }
+
+        return ((StoredEntry) previousSlot).read(segment);
+    }
+
+    @Override
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Writes the entry to the segment file and removes it from memory. If the entry cannot be written, it is kept in memory.
+     */
+    @Override
+    public void entryCompleted(HarEntry entry) {
+        Integer index;
+        synchronized (this) {
+            index = inProgressIndexes.get(entry);
+        }
+
+        if (index == null) {
+            return;
+        }
+
+        StoredEntry storedEntry;
+        try {
+            byte[] serializedEntry = OBJECT_MAPPER.writeValueAsBytes(entry);
+            long offset = segment.append(serializedEntry);
+
+            storedEntry = new StoredEntry(HarEntrySummary.of(entry), offset, serializedEntry.length);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to write HAR entry to segment file {}. Entry will be kept in memory.", segment.getFile(), e);
+
+            return;
+        }
+
+        synchronized (this) {
+            // the entry may have been replaced while it was being written
+            if (inProgressIndexes.remove(entry, index) && slots.get(index) == entry) {
+                slots.set(index, storedEntry);
+            }
+        }
+    }
+
+    /**
+     * Returns the summary of the entry at the specified index.
+     *
+     * @param index index of the entry
+     * @return summary of the entry
+     */
+    public HarEntrySummary getSummary(int index) {
+        Object slot;
+        synchronized (this) {
+            slot = slots.get(index);
+        }
+
+        return summarize(slot);
+    }
+
+    /**
+     * Returns a read-through view of the entries whose summaries match the predicate, in list order. The view contains the
+     * entries that matched when this method was called; entries are read from the segment file each time they are accessed.
+     *
+     * @param predicate predicate to test each entry's summary against
+     * @return matching entries
+     */
+    public List<HarEntry> select(Predicate<HarEntrySummary> predicate) {
+        Object[] snapshot = snapshot();
+
+        int[] indexes = new int[snapshot.length];
+        int matches = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            if (predicate.test(summarize(snapshot[i]))) {
+                indexes[matches++] = i;
+            }
+        }
+
+        return new SelectedEntries(indexes, matches);
+    }
+
+    /**
+     * Returns the entry with the latest start time among the entries whose summaries match the predicate.
+     *
+     * @param predicate predicate to test each entry's summary against
+     * @return the most recent matching entry, or an empty Optional if no entries match
+     */
+    public Optional<HarEntry> findMostRecent(Predicate<HarEntrySummary> predicate) {
+        Object[] snapshot = snapshot();
+
+        int mostRecentIndex = -1;
+        long mostRecentStartedDateTime = Long.MIN_VALUE;
+        for (int i = 0; i < snapshot.length; i++) {
+            HarEntrySummary summary = summarize(snapshot[i]);
+            if (predicate.test(summary) && (mostRecentIndex < 0 || summary.getStartedDateTimeMillis() >= mostRecentStartedDateTime)) {
+                mostRecentIndex = i;
+                mostRecentStartedDateTime = summary.getStartedDateTimeMillis();
+            }
+        }
+
+        return mostRecentIndex < 0 ? Optional.empty() : Optional.of(get(mostRecentIndex));
+    }
+
+    /**
+     * Deletes the segment file. Entries that were written to the segment file can no longer be read.
+     */
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    private synchronized Object[] snapshot() {
+        return slots.toArray();
+    }
+
+    private static HarEntrySummary summarize(Object slot) {
+        if (slot instanceof HarEntry) {
+            return HarEntrySummary.of((HarEntry) slot);
+        }
+
+        return ((StoredEntry) slot).summary;
+    }
+
+    /**
+     * The location and summary of an entry that was written to the segment.
+     */
+    private static final class StoredEntry {
+        private final HarEntrySummary summary;
+        private final long offset;
+        private final int length;
+
+        StoredEntry(HarEntrySummary summary, long offset, int length) {
+            this.summary = summary;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        HarEntry read(HarEntrySegment segment) {
+            try {
+                return OBJECT_MAPPER.readValue(segment.read(offset, length), HarEntry.class);
+            } catch (IOException e) {
+                throw new HarStorageException("Unable to read HAR entry from segment file: " + segment.getFile(), e);
+            }
+        }
+    }
+
+    /**
+     * Closes the segment when the list is closed or becomes unreachable. Must not refer to the list.
+     */
+    private static final class SegmentCloser implements Runnable {
+        private final HarEntrySegment segment;
+
+        SegmentCloser(HarEntrySegment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public void run() {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Unable to delete HAR entry segment file: {}", segment.getFile(), e);
+            }
+        }
+    }
+
+    private class SelectedEntries extends AbstractList<HarEntry> implements RandomAccess {
+        private final int[] indexes;
+        private final int size;
+
+        SelectedEntries(int[] indexes, int size) {
+            this.indexes = indexes;
+            this.size = size;
+        }
+
+        @Override
+        public HarEntry get(int index) {
+            Objects.checkIndex(index, size);
+
+            return SpillingHarEntryList.this.get(indexes[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
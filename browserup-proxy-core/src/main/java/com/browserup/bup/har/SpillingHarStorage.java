@@ -0,0 +1,85 @@
+package com.browserup.bup.har;
+
+import com.browserup.bup.exception.HarStorageException;
+import de.sstoehr.harreader.model.HarEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A {@link HarStorage} for very long captures, which writes completed HAR entries to disk instead of keeping them on the heap.
+ * Each HAR gets its own {@link SpillingHarEntryList}, backed by a new segment file in the storage directory, so starting a new
+ * HAR rotates the segment. The segment of the previous HAR is kept, so that the HAR returned when a new HAR is started can
+ * still be read; older segments are closed and deleted when the segment is rotated. A segment that is not rotated out is
+ * deleted once the HAR that uses it is no longer referenced.
+ */
+public class SpillingHarStorage implements HarStorage {
+    private static final String SEGMENT_FILE_PREFIX = "har-entries-";
+    private static final String SEGMENT_FILE_SUFFIX = ".segment";
+
+    private final Path directory;
+
+    /**
+     * Entry lists of the current and the previous HAR. Guarded by this.
+     */
+    private SpillingHarEntryList currentEntryList;
+    private SpillingHarEntryList previousEntryList;
+
+    /**
+     * Creates a storage that writes segment files to a new temporary directory.
+     */
+    public SpillingHarStorage() {
+        try {
+            this.directory = Files.createTempDirectory("browserup-har");
+        } catch (IOException e) {
+            throw new HarStorageException("Unable to create temporary directory for HAR entry segment files", e);
+        }
+
+        this.directory.toFile().deleteOnExit();
+    }
+
+    /**
+     * Creates a storage that writes segment files to the specified directory. The directory is created if it does not exist.
+     *
+     * @param directory directory for segment files
+     */
+    public SpillingHarStorage(File directory) {
+        try {
+            this.directory = Files.createDirectories(directory.toPath());
+        } catch (IOException e) {
+            throw new HarStorageException("Unable to create directory for HAR entry segment files: " + directory, e);
+        }
+    }
+
+    @Override
+    public List<HarEntry> newEntryList() {
+        Path segmentFile;
+        try {
+            segmentFile = Files.createTempFile(directory, SEGMENT_FILE_PREFIX, SEGMENT_FILE_SUFFIX);
+        } catch (IOException e) {
+            throw new HarStorageException("Unable to create HAR entry segment file in directory: " + directory, e);
+        }
+
+        SpillingHarEntryList entryList = new SpillingHarEntryList(segmentFile);
+
+        SpillingHarEntryList rotatedEntryList;
+        synchronized (this) {
+            rotatedEntryList = previousEntryList;
+            previousEntryList = currentEntryList;
+            currentEntryList = entryList;
+        }
+
+        if (rotatedEntryList != null) {
+            rotatedEntryList.close();
+        }
+
+        return entryList;
+    }
+
+    public File getDirectory() {
+        return directory.toFile();
+    }
+}
@@ -0,0 +1,347 @@
+package com.browserup.bup.har;
+
+import com.browserup.bup.util.RegexUtil;
+
+import java.util.regex.Pattern;
+
+/**
+ * The index keys that every URL matched by a URL pattern must have, as far as they can be determined from the pattern text: the
+ * host, the host and first path segment (the "path prefix"), and a literal string that every matching URL must contain. Keys that
+ * cannot be determined are null.
+ * <p>
+ * Keys are only determined for patterns that start with a literal http or https scheme (e.g. "^https?://www\.example\.com/api/.*")
+ * and have no flags or top-level alternation. The host is determined only if it is followed by a literal port separator, slash or
+ * question mark, or by the end of the pattern; the path segment is determined only if it is followed by a literal slash or question
+ * mark, or by the end of the pattern.
+ */
+final class UrlPatternKeys {
+    /**
+     * Scheme prefixes that match exactly "http://" and/or "https://".
+     */
+    private static final String[] SCHEME_PREFIXES = {
+            "http://", "https://", "https?://", "http(s)?://", "(https?)://", "(http|https)://", "(https|http)://",
+            "(?:https?)://", "(?:http|https)://", "(?:https|http)://", "http(?:s)?://"
+    };
+
+    static final UrlPatternKeys NONE = new UrlPatternKeys(null, null, null);
+
+    private final String host;
+    private final String pathPrefix;
+    private final String requiredLiteral;
+
+    private UrlPatternKeys(String host, String pathPrefix, String requiredLiteral) {
+        this.host = host;
+        this.pathPrefix = pathPrefix;
+        this.requiredLiteral = requiredLiteral;
+    }
+
+    /**
+     * @return the host of every URL matched by the pattern, or null if it cannot be determined
+     */
+    String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the path prefix (see {@link #pathPrefixOf(String)}) of every URL matched by the pattern, or null if it cannot be
+     * determined
+     */
+    String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    /**
+     * @return a literal string that every URL matched by the pattern contains, or null if none can be determined
+     */
+    String getRequiredLiteral() {
+        return requiredLiteral;
+    }
+
+    static UrlPatternKeys of(Pattern urlPattern) {
+        if (urlPattern.flags() != 0) {
+            return NONE;
+        }
+
+        String literal = RegexUtil.requiredLiteral(urlPattern);
+
+        String regex = urlPattern.pattern();
+        if (hasTopLevelAlternation(regex)) {
+            return new UrlPatternKeys(null, null, literal);
+        }
+
+        int i = regex.startsWith("^") ? 1 : 0;
+        int afterScheme = -1;
+        for (String prefix : SCHEME_PREFIXES) {
+            if (regex.startsWith(prefix, i)) {
+                afterScheme = i + prefix.length();
+                break;
+            }
+        }
+
+        if (afterScheme < 0) {
+            return new UrlPatternKeys(null, null, literal);
+        }
+
+        // the host: literal host characters, followed by a literal ':', '/' or '?', or the end of the pattern
+        StringBuilder host = new StringBuilder();
+        i = afterScheme;
+        char terminator;
+        while (true) {
+            if (isEnd(regex, i)) {
+                terminator = 0;
+                break;
+            }
+
+            int next = nextLiteral(regex, i);
+            if (next < 0) {
+                return new UrlPatternKeys(null, null, literal);
+            }
+
+            char c = literalAt(regex, i);
+            i = next;
+
+            if (c == ':' || c == '/' || c == '?') {
+                terminator = c;
+                break;
+            }
+
+            if (!isHostCharacter(c)) {
+                return new UrlPatternKeys(null, null, literal);
+            }
+
+            host.append(c);
+        }
+
+        if (host.length() == 0) {
+            return new UrlPatternKeys(null, null, literal);
+        }
+
+        if (terminator == ':') {
+            // skip a port made of digits, then expect the path or query
+            i = skipPort(regex, i);
+            if (isEnd(regex, i)) {
+                terminator = 0;
+            } else {
+                int next = nextLiteral(regex, i);
+                terminator = next < 0 ? ':' : literalAt(regex, i);
+                i = next;
+            }
+
+            if (terminator != 0 && terminator != '/' && terminator != '?') {
+                return new UrlPatternKeys(host.toString(), null, literal);
+            }
+        }
+
+        if (terminator != '/') {
+            // no path
+            return new UrlPatternKeys(host.toString(), host + "/", literal);
+        }
+
+        // the first path segment: literal characters, followed by a literal '/' or '?', or the end of the pattern
+        StringBuilder segment = new StringBuilder();
+        while (!isEnd(regex, i)) {
+            int next = nextLiteral(regex, i);
+            if (next < 0) {
+                return new UrlPatternKeys(host.toString(), null, literal);
+            }
+
+            char c = literalAt(regex, i);
+            if (c == '/' || c == '?') {
+                break;
+            }
+
+            if (c == '#') {
+                return new UrlPatternKeys(host.toString(), null, literal);
+            }
+
+            segment.append(c);
+            i = next;
+        }
+
+        return new UrlPatternKeys(host.toString(), host + "/" + segment, literal);
+    }
+
+    /**
+     * Returns the host of the URL, without the port, or null if the URL has no scheme.
+     */
+    static String hostOf(String url) {
+        int authorityStart = url.indexOf("://");
+        if (authorityStart < 0) {
+            return null;
+        }
+        authorityStart += 3;
+
+        int authorityEnd = authorityEnd(url, authorityStart);
+
+        // user info is not removed, so that the host is always the text a URL pattern's host literal would have matched
+        int hostEnd;
+        if (authorityStart < authorityEnd && url.charAt(authorityStart) == '[') {
+            // IPv6 literal
+            int bracket = url.indexOf(']', authorityStart);
+            hostEnd = bracket < 0 || bracket >= authorityEnd ? authorityEnd : bracket + 1;
+        } else {
+            int colon = url.indexOf(':', authorityStart);
+            hostEnd = colon < 0 || colon >= authorityEnd ? authorityEnd : colon;
+        }
+
+        return url.substring(authorityStart, hostEnd);
+    }
+
+    /**
+     * Returns the host of the URL followed by a slash and the first segment of the URL's path (e.g. "www.example.com/api" for
+     * "https://www.example.com:8443/api/items?id=1"), or null if the URL has no scheme. The segment is empty if the URL has no path.
+     */
+    static String pathPrefixOf(String url) {
+        String host = hostOf(url);
+        if (host == null) {
+            return null;
+        }
+
+        int pathStart = authorityEnd(url, url.indexOf("://") + 3);
+        if (pathStart >= url.length() || url.charAt(pathStart) != '/') {
+            return host + "/";
+        }
+
+        int segmentEnd = pathStart + 1;
+        while (segmentEnd < url.length() && "/?#".indexOf(url.charAt(segmentEnd)) < 0) {
+            segmentEnd++;
+        }
+
+        return host + url.substring(pathStart, segmentEnd);
+    }
+
+    private static int authorityEnd(String url, int authorityStart) {
+        int end = authorityStart;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+
+        return end;
+    }
+
+    private static boolean isHostCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_';
+    }
+
+    private static boolean isEnd(String regex, int i) {
+        return i == regex.length() || (i == regex.length() - 1 && regex.charAt(i) == '$');
+    }
+
+    private static boolean isQuantifier(char c) {
+        return c == '?' || c == '*' || c == '+' || c == '{';
+    }
+
+    /**
+     * Returns the index following the literal character at index i, or -1 if the element at index i is not a literal character, or
+     * is quantified.
+     */
+    private static int nextLiteral(String regex, int i) {
+        char c = regex.charAt(i);
+
+        int next;
+        if (c == '\\') {
+            if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                return -1;
+            }
+            next = i + 2;
+        } else if ("[](){}.*+?^$|".indexOf(c) >= 0) {
+            return -1;
+        } else {
+            next = i + 1;
+        }
+
+        if (next < regex.length() && isQuantifier(regex.charAt(next))) {
+            return -1;
+        }
+
+        return next;
+    }
+
+    private static char literalAt(String regex, int i) {
+        return regex.charAt(i) == '\\' ? regex.charAt(i + 1) : regex.charAt(i);
+    }
+
+    /**
+     * Skips a sequence of digits, "\d" and "[0-9]" elements, each of which may be quantified.
+     */
+    private static int skipPort(String regex, int i) {
+        while (i < regex.length()) {
+            if (Character.isDigit(regex.charAt(i))) {
+                i++;
+            } else if (regex.startsWith("\\d", i)) {
+                i += 2;
+            } else if (regex.startsWith("[0-9]", i)) {
+                i += 5;
+            } else {
+                return i;
+            }
+
+            if (i < regex.length() && isQuantifier(regex.charAt(i))) {
+                if (regex.charAt(i) == '{') {
+                    int end = regex.indexOf('}', i);
+                    i = end < 0 ? regex.length() : end + 1;
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        return i;
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? regex.length() : end + 2;
+                } else {
+                    i += 2;
+                }
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == '|' && depth == 0) {
+                    return true;
+                }
+                i++;
+            }
+        }
+
+        return false;
+    }
+
+    private static int skipCharacterClass(String regex, int i) {
+        int j = i + 1;
+        if (j < regex.length() && regex.charAt(j) == '^') {
+            j++;
+        }
+
+        // a ']' at the start of a class is a literal
+        if (j < regex.length() && regex.charAt(j) == ']') {
+            j++;
+        }
+
+        while (j < regex.length()) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j += 2;
+            } else if (c == '[') {
+                j = skipCharacterClass(regex, j);
+            } else if (c == ']') {
+                return j + 1;
+            } else {
+                j++;
+            }
+        }
+
+        return regex.length();
+    }
+}
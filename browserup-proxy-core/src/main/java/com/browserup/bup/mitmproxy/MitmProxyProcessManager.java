@@ -47,6 +47,7 @@ public class MitmProxyProcessManager {
   private HttpConnectCaptureAddOn httpConnectCaptureAddOn = new HttpConnectCaptureAddOn();
   private RewriteUrlAddOn rewriteUrlAddOn = new RewriteUrlAddOn();
   private LatencyAddOn latencyAddOn = new LatencyAddOn();
+  private MetricsAddOn metricsAddOn = new MetricsAddOn();
   private InitFlowAddOn initFlowAddOn = new InitFlowAddOn();
 
   private AddonsManagerClient addonsManagerClient = new AddonsManagerClient(addonsManagerApiPort);
@@ -59,6 +60,7 @@ public class MitmProxyProcessManager {
   private AdditionalHeadersManager additionalHeadersManager = new AdditionalHeadersManager(addonsManagerClient, this);
   private RewriteUrlManager rewriteUrlManager = new RewriteUrlManager(addonsManagerClient, this);
   private LatencyManager latencyManager = new LatencyManager(addonsManagerClient, this);
+  private MetricsManager metricsManager = new MetricsManager(addonsManagerClient, this);
 
   private Integer proxyPort = 0;
 
@@ -103,16 +105,22 @@ public class MitmProxyProcessManager {
     this.mitmProxyLoggingLevel = mitmProxyLoggingLevel;
   }
 
+  /**
+   * Pushes the configuration that was set before the proxy was started, or that was set before the proxy was restarted, to the addons
+   * manager in a single batch.
+   */
   private void configureProxy() {
-    harCaptureFilterManager.setHarCaptureTypes(harCaptureFilterManager.getLastCaptureTypes());
-    authBasicFilterManager.getCredentials().forEach((key, value) -> authBasicFilterManager.authAuthorization(key, value));
-    additionalHeadersManager.addHeaders(additionalHeadersManager.getAllHeaders());
-    rewriteUrlManager.rewriteUrls(rewriteUrlManager.getRewriteRulesMap());
-    latencyManager.setLatency(latencyManager.getLatencyMs(), TimeUnit.MILLISECONDS);
-    proxyManager.setConnectionIdleTimeout(proxyManager.getConnectionIdleTimeoutSeconds());
-    proxyManager.setDnsResolvingDelayMs(proxyManager.getDnsResolutionDelayMs());
-    proxyManager.setChainedProxyAuthorization(proxyManager.getUpstreamProxyCredentials());
-    proxyManager.setChainedProxyNonProxyHosts(proxyManager.getUpstreamNonProxyHosts());
+    ConfigurationBatch batch = new ConfigurationBatch();
+    harCaptureFilterManager.appendConfiguration(batch);
+    authBasicFilterManager.appendConfiguration(batch);
+    additionalHeadersManager.appendConfiguration(batch);
+    rewriteUrlManager.appendConfiguration(batch);
+    latencyManager.appendConfiguration(batch);
+    proxyManager.appendConfiguration(batch);
+    allowListManager.appendConfiguration(batch);
+    blockListManager.appendConfiguration(batch);
+
+    addonsManagerClient.applyConfiguration(batch);
   }
 
   public Integer getProxyPort() {
@@ -150,6 +158,7 @@ public class MitmProxyProcessManager {
             authBasicFilterAddOn,
             additionalHeadersAddOn,
             latencyAddOn,
+            metricsAddOn,
     };
     return Arrays.asList(addonsArray);
   }
@@ -325,6 +334,10 @@ public class MitmProxyProcessManager {
     return latencyManager;
   }
 
+  public MetricsManager getMetricsManager() {
+    return metricsManager;
+  }
+
   public int getAddonsManagerApiPort() {
     return addonsManagerApiPort;
   }
@@ -0,0 +1,17 @@
+package com.browserup.bup.mitmproxy.addons;
+
+public class MetricsAddOn extends AbstractAddon {
+  private static final String METRICS_ADDON_FILE = "metrics.py";
+
+  @Override
+  public String[] getCommandParams() {
+    return new String[]{
+            "-s", getAddOnFilePath()
+    };
+  }
+
+  @Override
+  public String getAddOnFileName() {
+    return METRICS_ADDON_FILE;
+  }
+}
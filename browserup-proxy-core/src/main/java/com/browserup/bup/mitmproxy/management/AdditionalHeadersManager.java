@@ -84,6 +84,15 @@ public class AdditionalHeadersManager {
                         Void.class);
     }
 
+    public void appendConfiguration(ConfigurationBatch batch) {
+        List<Pair<String, String>> params = headers.entrySet()
+                .stream()
+                .map(e -> of(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+
+        batch.add("additional_headers", "add_headers", params);
+    }
+
     public Map<String, String> getAllHeaders() {
         return ImmutableMap.copyOf(headers);
     }
@@ -1,9 +1,11 @@
 package com.browserup.bup.mitmproxy.management;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -11,11 +13,19 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class AddonsManagerClient {
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    /**
+     * HTTP/1.1 client, so that requests are sent over persistent connections to the addons manager instead of attempting an HTTP/2
+     * upgrade. Concurrent asynchronous requests use additional pooled connections.
+     */
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private final int port;
@@ -35,6 +45,47 @@ public class AddonsManagerClient {
                 responseClass);
     }
 
+    /**
+     * Applies a batch of add-on operations in a single request. See {@link ConfigurationBatch}.
+     */
+    public void applyConfiguration(ConfigurationBatch batch) {
+        try {
+            applyConfigurationAsync(batch).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to apply configuration batch", e.getCause());
+        }
+    }
+
+    /**
+     * Applies a batch of add-on operations in a single request, without waiting for the response. See {@link ConfigurationBatch}.
+     */
+    public CompletableFuture<Void> applyConfigurationAsync(ConfigurationBatch batch) {
+        String serializedBatch;
+        try {
+            serializedBatch = objectMapper.writeValueAsString(batch);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Couldn't serialize configuration batch", e);
+        }
+
+        // unlike single operations, a batch that was not applied must not be ignored, since none of its operations took effect
+        return sendPutAsync("batch", "apply", serializedBatch)
+                .thenAccept(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Configuration batch was rejected with status " + response.statusCode() + ": "
+                                + new String(response.body(), StandardCharsets.UTF_8));
+                    }
+                });
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> sendPutAsync(String addOnPath, String operation, String requestBodyAsJson) {
+        HttpRequest request = buildRequest(addOnPath, operation, List.of(),
+                requestBuilder -> requestBuilder
+                        .method("PUT", HttpRequest.BodyPublishers.ofString(requestBodyAsJson))
+                        .header("Content-Type", "application/json; charset=utf-8"));
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
     public <T> T getRequestToAddonsManager(String addOnPath,
                                         String operation,
                                         List<Pair<String, String>> queryParams,
@@ -45,25 +96,31 @@ public class AddonsManagerClient {
                 responseClass);
     }
 
+    /**
+     * Sends a GET request to the addons manager and returns the response body as a stream, so that large responses can be parsed
+     * while they are received. The caller must close the stream.
+     */
+    public InputStream getStreamFromAddonsManager(String addOnPath,
+                                                  String operation,
+                                                  List<Pair<String, String>> queryParams) {
+        return send(addOnPath, operation, queryParams,
+                requestBuilder -> requestBuilder
+                        .method("GET", HttpRequest.BodyPublishers.noBody()),
+                HttpResponse.BodyHandlers.ofInputStream()).body();
+    }
+
     private <T> T requestToAddonsManager(String addOnPath,
                                         String operation,
                                         List<Pair<String, String>> queryParams,
                                         Consumer<HttpRequest.Builder> requestConfigurer,
                                         Class<T> responseClass) {
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(buildRequestUrl(addOnPath, operation, queryParams));
+        HttpResponse<byte[]> response = send(addOnPath, operation, queryParams, requestConfigurer,
+                HttpResponse.BodyHandlers.ofByteArray());
 
-        requestConfigurer.accept(requestBuilder);
-
-        HttpRequest request = requestBuilder.build();
-
-        HttpResponse<byte[]> response;
-        try {
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
-        } catch (IOException | InterruptedException ex) {
-            throw new RuntimeException("Failed to request manager API", ex);
-        }
+        return parseResponse(response, responseClass);
+    }
 
+    private <T> T parseResponse(HttpResponse<byte[]> response, Class<T> responseClass) {
         if (responseClass.equals(Void.class)) {
             return null;
         }
@@ -80,6 +137,30 @@ public class AddonsManagerClient {
         }
     }
 
+    private <B> HttpResponse<B> send(String addOnPath,
+                                     String operation,
+                                     List<Pair<String, String>> queryParams,
+                                     Consumer<HttpRequest.Builder> requestConfigurer,
+                                     HttpResponse.BodyHandler<B> bodyHandler) {
+        try {
+            return httpClient.send(buildRequest(addOnPath, operation, queryParams, requestConfigurer), bodyHandler);
+        } catch (IOException | InterruptedException ex) {
+            throw new RuntimeException("Failed to request manager API", ex);
+        }
+    }
+
+    private HttpRequest buildRequest(String addOnPath,
+                                     String operation,
+                                     List<Pair<String, String>> queryParams,
+                                     Consumer<HttpRequest.Builder> requestConfigurer) {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(buildRequestUrl(addOnPath, operation, queryParams));
+
+        requestConfigurer.accept(requestBuilder);
+
+        return requestBuilder.build();
+    }
+
     private URI buildRequestUrl(String addOnPath, String operation, List<Pair<String, String>> queryParams) {
         String uri = String.format("http://localhost:%d/%s/%s", port, addOnPath, operation);
         if (!queryParams.isEmpty()) {
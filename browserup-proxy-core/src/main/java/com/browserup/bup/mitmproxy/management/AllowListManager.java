@@ -25,11 +25,35 @@ public class AllowListManager {
         this.mitmProxyManager = mitmProxyManager;
     }
 
-    public void allowlistRequests(Collection<String> urlPatterns, int statusCode) {
-        this.allowlist.set(new Allowlist(urlPatterns, statusCode));
+    public synchronized void allowlistRequests(Collection<String> urlPatterns, int statusCode) {
+        Allowlist previousAllowlist = this.allowlist.getAndSet(new Allowlist(urlPatterns, statusCode));
 
         if (!mitmProxyManager.isRunning()) return;
 
+        List<String> previousPatterns = patternsOf(previousAllowlist);
+        List<String> newPatterns = new ArrayList<>(urlPatterns);
+
+        // patterns added to an allowlist with the same status code are sent as a difference
+        if (previousAllowlist.isEnabled() && previousAllowlist.getStatusCode() == statusCode
+                && newPatterns.size() >= previousPatterns.size()
+                && newPatterns.subList(0, previousPatterns.size()).equals(previousPatterns)) {
+            ConfigurationBatch batch = new ConfigurationBatch();
+            newPatterns.subList(previousPatterns.size(), newPatterns.size())
+                    .forEach(urlPattern -> batch.add("allowlist", "add_allowlist_pattern", List.of(
+                            of("urlPattern", valueOf(urlPattern))
+                    )));
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                addonsManagerClient.applyConfiguration(batch);
+                return;
+            } catch (RuntimeException e) {
+                // the mitmproxy allowlist is unchanged, so fall through to replace it with the complete allowlist
+            }
+        }
+
         addonsManagerClient.
                 getRequestToAddonsManager(
                         "allowlist",
@@ -51,23 +75,21 @@ public class AllowListManager {
                 throw new IllegalStateException("Allowlist is disabled. Cannot add patterns to a disabled allowlist.");
             }
             int statusCode = currentAllowlist.getStatusCode();
-            List<String> newPatterns = currentAllowlist.getPatterns().stream()
-                    .map(Pattern::pattern)
-                    .collect(toCollection(() -> new ArrayList<>(currentAllowlist.getPatterns().size() + 1)));
+            List<String> newPatterns = patternsOf(currentAllowlist);
             newPatterns.add(urlPattern);
 
             Allowlist newAllowlist = new Allowlist(newPatterns, statusCode);
             allowlistUpdated = this.allowlist.compareAndSet(currentAllowlist, newAllowlist);
-
-            addonsManagerClient.
-                    getRequestToAddonsManager(
-                            "allowlist",
-                            "add_allowlist_pattern",
-                            List.of(
-                                of("urlPattern", valueOf(urlPattern))
-                            ),
-                            Void.class);
         }
+
+        addonsManagerClient.
+                getRequestToAddonsManager(
+                        "allowlist",
+                        "add_allowlist_pattern",
+                        List.of(
+                            of("urlPattern", valueOf(urlPattern))
+                        ),
+                        Void.class);
     }
 
     public void enableEmptyAllowlist(int statusCode) {
@@ -98,6 +120,30 @@ public class AllowListManager {
                         Void.class);
     }
 
+    public void appendConfiguration(ConfigurationBatch batch) {
+        Allowlist currentAllowlist = allowlist.get();
+        if (!currentAllowlist.isEnabled()) {
+            return;
+        }
+
+        if (currentAllowlist.getPatterns().isEmpty()) {
+            batch.add("allowlist", "enable_empty_allowlist", List.of(
+                    of("statusCode", valueOf(currentAllowlist.getStatusCode()))
+            ));
+        } else {
+            batch.add("allowlist", "allowlist_requests", List.of(
+                    of("urlPatterns", valueOf(patternsOf(currentAllowlist))),
+                    of("statusCode", valueOf(currentAllowlist.getStatusCode()))
+            ));
+        }
+    }
+
+    private static List<String> patternsOf(Allowlist allowlist) {
+        return allowlist.getPatterns().stream()
+                .map(Pattern::pattern)
+                .collect(toCollection(() -> new ArrayList<>(allowlist.getPatterns().size() + 1)));
+    }
+
     public int getAllowlistStatusCode() {
         return allowlist.get().getStatusCode();
     }
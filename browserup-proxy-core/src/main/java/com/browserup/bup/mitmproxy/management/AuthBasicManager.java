@@ -48,6 +48,13 @@ public class AuthBasicManager {
                         Void.class);
     }
 
+    public void appendConfiguration(ConfigurationBatch batch) {
+        credentials.forEach((domain, base64EncodedCredentials) -> batch.add("auth_basic", "auth_authorization", List.of(
+                of("domain", valueOf(domain)),
+                of("base64EncodedCredentials", valueOf(base64EncodedCredentials))
+        )));
+    }
+
     public Map<String, String> getCredentials() {
         return credentials;
     }
@@ -2,13 +2,14 @@ package com.browserup.bup.mitmproxy.management;
 
 import com.browserup.bup.mitmproxy.MitmProxyProcessManager;
 import com.browserup.bup.proxy.BlocklistEntry;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
 
 import static java.lang.String.valueOf;
 import static org.apache.commons.lang3.tuple.Pair.of;
@@ -19,13 +20,18 @@ public class BlockListManager {
 
     private volatile Collection<BlocklistEntry> blocklistEntries = new CopyOnWriteArrayList<>();
 
+    /**
+     * False if pushing the blocklist to mitmproxy failed, in which case the mitmproxy blocklist may differ from {@link #blocklistEntries}
+     * and the next update must replace it instead of sending a difference. Guarded by this.
+     */
+    private boolean blocklistInSync = true;
 
     public BlockListManager(AddonsManagerClient addonsManagerClient, MitmProxyProcessManager mitmProxyManager) {
         this.addonsManagerClient = addonsManagerClient;
         this.mitmProxyManager = mitmProxyManager;
     }
 
-    public void blocklistRequests(String urlPattern, int statusCode) {
+    public synchronized void blocklistRequests(String urlPattern, int statusCode) {
         if (!mitmProxyManager.isRunning()) return;
 
         blocklistEntries.add(new BlocklistEntry(urlPattern, statusCode));
@@ -41,7 +47,7 @@ public class BlockListManager {
                         Void.class);
     }
 
-    public void blocklistRequests(String urlPattern, int statusCode, String httpMethodPattern) {
+    public synchronized void blocklistRequests(String urlPattern, int statusCode, String httpMethodPattern) {
         if (!mitmProxyManager.isRunning()) return;
 
         blocklistEntries.add(new BlocklistEntry(urlPattern, statusCode, httpMethodPattern));
@@ -58,34 +64,99 @@ public class BlockListManager {
                         Void.class);
     }
 
-    public void setBlocklist(Collection<BlocklistEntry> blocklist) {
+    /**
+     * Replaces the blocklist. The new blocklist is sent to mitmproxy as a difference to the current blocklist if possible, and only
+     * becomes the current blocklist once mitmproxy applied it. If sending the difference fails, the complete blocklist is sent instead.
+     */
+    public synchronized void setBlocklist(Collection<BlocklistEntry> blocklist) {
         if (!mitmProxyManager.isRunning()) return;
 
-        this.blocklistEntries = new CopyOnWriteArrayList<>(blocklist);
+        List<BlocklistEntry> newBlocklist = new ArrayList<>(blocklist);
 
-        String serializedBlockList;
-        try {
-            serializedBlockList = new ObjectMapper().writeValueAsString(blocklist);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Couldn't serialize block list", e);
+        ConfigurationBatch batch = new ConfigurationBatch();
+        if (blocklistInSync) {
+            appendBlocklistUpdate(batch, new ArrayList<>(blocklistEntries), newBlocklist);
+        } else {
+            batch.addWithBody("blocklist", "set_block_list", newBlocklist);
         }
-        addonsManagerClient.
-                putRequestToAddonsManager(
-                        "blocklist",
-                        "set_block_list",
-                        serializedBlockList,
-                        Void.class);
+
+        if (!batch.isEmpty()) {
+            try {
+                addonsManagerClient.applyConfiguration(batch);
+            } catch (RuntimeException e) {
+                blocklistInSync = false;
+
+                ConfigurationBatch replacement = new ConfigurationBatch();
+                replacement.addWithBody("blocklist", "set_block_list", newBlocklist);
+                addonsManagerClient.applyConfiguration(replacement);
+            }
+        }
+
+        this.blocklistEntries = new CopyOnWriteArrayList<>(newBlocklist);
+        this.blocklistInSync = true;
+    }
+
+    public void appendConfiguration(ConfigurationBatch batch) {
+        if (!blocklistEntries.isEmpty()) {
+            batch.addWithBody("blocklist", "set_block_list", new ArrayList<>(blocklistEntries));
+        }
+    }
+
+    /**
+     * Appends the operations that turn the previous blocklist into the new one. Since entries are matched in order, the new blocklist
+     * is only sent as a difference if it consists of entries of the previous blocklist in their previous order, followed by new entries.
+     * Otherwise, or if the difference is not smaller than the new blocklist, the new blocklist replaces the previous one.
+     */
+    static void appendBlocklistUpdate(ConfigurationBatch batch, List<BlocklistEntry> previousBlocklist, List<BlocklistEntry> newBlocklist) {
+        List<BlocklistEntry> removedEntries = new ArrayList<>();
+        int keptEntries = 0;
+        for (BlocklistEntry entry : previousBlocklist) {
+            if (keptEntries < newBlocklist.size() && isSameEntry(entry, newBlocklist.get(keptEntries))) {
+                keptEntries++;
+            } else {
+                removedEntries.add(entry);
+            }
+        }
+        List<BlocklistEntry> addedEntries = newBlocklist.subList(keptEntries, newBlocklist.size());
+
+        if (removedEntries.isEmpty() && addedEntries.isEmpty()) {
+            return;
+        }
+
+        // entries are removed by value, which is ambiguous if the previous blocklist contains equal entries
+        boolean removalsAreUnambiguous = removedEntries.stream()
+                .allMatch(removed -> previousBlocklist.stream().filter(entry -> isSameEntry(entry, removed)).count() == 1);
+
+        if (!removalsAreUnambiguous || removedEntries.size() + addedEntries.size() >= newBlocklist.size()) {
+            batch.addWithBody("blocklist", "set_block_list", new ArrayList<>(newBlocklist));
+            return;
+        }
+
+        if (!removedEntries.isEmpty()) {
+            batch.addWithBody("blocklist", "remove_block_list_entries", removedEntries);
+        }
+        if (!addedEntries.isEmpty()) {
+            batch.addWithBody("blocklist", "add_block_list_entries", new ArrayList<>(addedEntries));
+        }
+    }
+
+    private static boolean isSameEntry(BlocklistEntry entry, BlocklistEntry otherEntry) {
+        return entry.getStatusCode() == otherEntry.getStatusCode()
+                && entry.getUrlPattern().pattern().equals(otherEntry.getUrlPattern().pattern())
+                && Objects.equals(patternOf(entry.getHttpMethodPattern()), patternOf(otherEntry.getHttpMethodPattern()));
+    }
+
+    private static String patternOf(Pattern pattern) {
+        return pattern == null ? null : pattern.pattern();
     }
 
     public Collection<BlocklistEntry> getBlocklist() {
         return Collections.unmodifiableCollection(blocklistEntries);
     }
 
-    public void clearBlockList() {
+    public synchronized void clearBlockList() {
         if (!mitmProxyManager.isRunning()) return;
 
-        blocklistEntries.clear();
-
         this.setBlocklist(Collections.emptyList());
     }
 
@@ -0,0 +1,82 @@
+package com.browserup.bup.mitmproxy.management;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A list of add-on operations that the addons manager applies in a single request. The addons manager rejects the batch before
+ * applying any operation if one of the operations does not exist. If an operation fails, either with an error or a non-2xx status,
+ * the operations that were already applied are rolled back and the batch is rejected with the status of the failed operation, so
+ * the batch is either applied completely or not at all.
+ * <p>
+ * Each operation corresponds to a request that could also be sent separately with
+ * {@link AddonsManagerClient#getRequestToAddonsManager(String, String, List, Class)} or
+ * {@link AddonsManagerClient#putRequestToAddonsManager(String, String, String, Class)}.
+ */
+public class ConfigurationBatch {
+    private final List<Operation> operations = new ArrayList<>();
+
+    /**
+     * Adds an operation that takes query parameters.
+     */
+    public ConfigurationBatch add(String addOnPath, String operation, List<Pair<String, String>> params) {
+        operations.add(new Operation(addOnPath, operation, params, null));
+        return this;
+    }
+
+    /**
+     * Adds an operation that takes a JSON request body. The body is serialized as part of the batch.
+     */
+    public ConfigurationBatch addWithBody(String addOnPath, String operation, Object body) {
+        operations.add(new Operation(addOnPath, operation, Collections.emptyList(), body));
+        return this;
+    }
+
+    public List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public static class Operation {
+        private final String addon;
+        private final String operation;
+        private final List<List<String>> params;
+        private final Object body;
+
+        private Operation(String addon, String operation, List<Pair<String, String>> params, Object body) {
+            this.addon = addon;
+            this.operation = operation;
+            // serialized as [name, value] arrays to keep the order of the parameters
+            this.params = params.stream()
+                    .map(param -> Arrays.asList(param.getKey(), param.getValue()))
+                    .collect(Collectors.toList());
+            this.body = body;
+        }
+
+        public String getAddon() {
+            return addon;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public List<List<String>> getParams() {
+            return params;
+        }
+
+        public Object getBody() {
+            return body;
+        }
+    }
+}
@@ -3,12 +3,17 @@ package com.browserup.bup.mitmproxy.management;
 import com.browserup.bup.mitmproxy.MitmProxyProcessManager;
 import com.browserup.bup.proxy.CaptureType;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 import static java.lang.String.valueOf;
@@ -16,15 +21,32 @@ import static java.util.Collections.emptyList;
 import static org.apache.commons.lang3.tuple.Pair.of;
 
 import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarEntry;
 import de.sstoehr.harreader.model.HarLog;
 
 public class HarCaptureManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(HarCaptureManager.class);
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader HAR_READER = OBJECT_MAPPER.readerFor(Har.class);
+    private static final ObjectReader HAR_ENTRIES_HEADER_READER = OBJECT_MAPPER.readerFor(HarEntriesHeader.class);
+    private static final ObjectReader HAR_ENTRY_LINE_READER = OBJECT_MAPPER.readerFor(HarEntryLine.class);
+
     private final AddonsManagerClient addonsManagerClient;
     private final MitmProxyProcessManager mitmProxyManager;
     private EnumSet<CaptureType> lastCaptureTypes = EnumSet.noneOf(CaptureType.class);
 
+    private int maxEntries;
+    private long maxBytes;
+
+    // the HAR entries as of the last incremental transfer from mitmproxy, guarded by this. entries are numbered from the first
+    // entry of the HAR, including the entries that mitmproxy evicted from a bounded HAR, so firstEntryIndex is the number of the
+    // first entry in the list.
+    private String harId;
+    private long cursor;
+    private long firstEntryIndex;
+    private final List<HarEntry> entries = new ArrayList<>();
+
     public HarCaptureManager(AddonsManagerClient addonsManagerClient, MitmProxyProcessManager mitmProxyManager) {
         this.addonsManagerClient = addonsManagerClient;
         this.mitmProxyManager = mitmProxyManager;
@@ -34,19 +56,96 @@ public class HarCaptureManager {
         return getHar(false);
     }
 
+    /**
+     * Returns the current HAR. Unless the HAR is cleaned, only the entries that were added or may have changed since the previous call
+     * are transferred from mitmproxy: entries that already have a response are kept locally and are not transferred again.
+     *
+     * @param cleanHar if true, a new HAR is started after returning the current one
+     * @return the current HAR, or null if mitmproxy is not running or there is no HAR
+     */
     public Har getHar(Boolean cleanHar) {
         if (!mitmProxyManager.isRunning()) return null;
 
-        HarResponse response = addonsManagerClient.
-                getRequestToAddonsManager(
+        if (Boolean.TRUE.equals(cleanHar)) {
+            HarResponse response = addonsManagerClient.
+                    getRequestToAddonsManager(
+                            "har",
+                            "get_har",
+                            List.of(
+                                of("cleanHar", valueOf(cleanHar))
+                            ),
+                            HarResponse.class);
+            LOGGER.info("Parsing HAR from file: {}", response.path);
+            return parseHar(response.path);
+        }
+
+        return getHarIncrementally();
+    }
+
+    private synchronized Har getHarIncrementally() {
+        try (InputStream entries = addonsManagerClient.
+                getStreamFromAddonsManager(
                         "har",
-                        "get_har",
+                        "get_har_entries",
                         List.of(
-                            of("cleanHar", valueOf(cleanHar))
-                        ),
-                        HarResponse.class);
-        LOGGER.info("Parsing HAR from file: {}", response.path);
-        return parseHar(response.path);
+                            of("harId", harId),
+                            of("since", valueOf(cursor))
+                        ));
+             JsonParser parser = HAR_ENTRIES_HEADER_READER.createParser(entries)) {
+            return mergeHarEntries(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read HAR entries from mitmproxy", e);
+        }
+    }
+
+    /**
+     * Merges the newline-delimited JSON response of the get_har_entries operation into the locally maintained HAR. The first line
+     * contains the HAR log without entries, followed by one line for every entry starting at the index the HAR log was requested since.
+     * Entries before the returned cursor have a response and will not change anymore.
+     */
+    private Har mergeHarEntries(JsonParser parser) throws IOException {
+        HarEntriesHeader header = HAR_ENTRIES_HEADER_READER.readValue(parser);
+        if (header == null || !header.isExists()) {
+            harId = header == null ? null : header.getHarId();
+            cursor = 0;
+            firstEntryIndex = 0;
+            entries.clear();
+            return null;
+        }
+
+        if (!header.getHarId().equals(harId)) {
+            firstEntryIndex = 0;
+            entries.clear();
+        }
+
+        // drop the entries that mitmproxy evicted from a bounded HAR since the previous transfer
+        entries.subList(0, (int) Math.min(Math.max(header.getEvicted() - firstEntryIndex, 0), entries.size())).clear();
+        firstEntryIndex = Math.max(header.getEvicted(), firstEntryIndex);
+
+        // the entries after the previous cursor may have changed, so they are always replaced
+        entries.subList((int) Math.min(Math.max(header.getSince() - firstEntryIndex, 0), entries.size()), entries.size()).clear();
+
+        try (MappingIterator<HarEntryLine> lines = HAR_ENTRY_LINE_READER.readValues(parser)) {
+            while (lines.hasNextValue()) {
+                HarEntry entry = lines.nextValue().getEntry();
+                // entries of a cleaned HAR that are still waiting for their response are not reported
+                if (entry != null) {
+                    patchHarEntry(entry);
+                    entries.add(entry);
+                }
+            }
+        }
+
+        harId = header.getHarId();
+        cursor = header.getCursor();
+
+        // callers get their own entry list, since the entries after the cursor are replaced by the next call
+        HarLog log = header.getLog();
+        log.setEntries(new ArrayList<>(entries));
+
+        Har har = new Har();
+        har.setLog(log);
+        return har;
     }
 
     public Har newHar() {
@@ -122,30 +221,9 @@ public class HarCaptureManager {
         File harFile = new File(filePath);
 
         try {
-            Har har = new ObjectMapper().readerFor(Har.class).readValue(harFile);
-
-            // mitmproxy writes HAR which does not follow specification: some mandatory fields are not initialized
-            // thus it is needed to go through the object and patch to make sure it matches specification
-            Optional.ofNullable(har).map(Har::getLog).map(HarLog::getEntries).ifPresent(es -> es.forEach(e -> {
-                de.sstoehr.harreader.model.HarRequest request = e.getRequest();
-                if (request.getUrl() == null) {
-                    request.setUrl("");
-                }
-                de.sstoehr.harreader.model.HarResponse response = e.getResponse();
-                if (response.getRedirectURL() == null) {
-                    response.setRedirectURL("");
-                }
-                de.sstoehr.harreader.model.HarTiming timings = e.getTimings();
-                if (timings.getSend() == null) {
-                    timings.setSend(0);
-                }
-                if (timings.getWait() == null) {
-                    timings.setWait(0);
-                }
-                if (timings.getReceive() == null) {
-                    timings.setReceive(0);
-                }
-            }));
+            Har har = HAR_READER.readValue(harFile);
+
+            Optional.ofNullable(har).map(Har::getLog).map(HarLog::getEntries).ifPresent(es -> es.forEach(HarCaptureManager::patchHarEntry));
 
             return har;
         } catch (IOException e) {
@@ -153,6 +231,29 @@ public class HarCaptureManager {
         }
     }
 
+    // mitmproxy writes HAR which does not follow specification: some mandatory fields are not initialized
+    // thus it is needed to go through the object and patch to make sure it matches specification
+    private static void patchHarEntry(HarEntry e) {
+        de.sstoehr.harreader.model.HarRequest request = e.getRequest();
+        if (request.getUrl() == null) {
+            request.setUrl("");
+        }
+        de.sstoehr.harreader.model.HarResponse response = e.getResponse();
+        if (response.getRedirectURL() == null) {
+            response.setRedirectURL("");
+        }
+        de.sstoehr.harreader.model.HarTiming timings = e.getTimings();
+        if (timings.getSend() == null) {
+            timings.setSend(0);
+        }
+        if (timings.getWait() == null) {
+            timings.setWait(0);
+        }
+        if (timings.getReceive() == null) {
+            timings.setReceive(0);
+        }
+    }
+
     public void setHarCaptureTypes(EnumSet<CaptureType> captureTypes) {
         lastCaptureTypes = captureTypes;
 
@@ -168,10 +269,132 @@ public class HarCaptureManager {
                         Void.class);
     }
 
+    /**
+     * Limits the HARs that mitmproxy creates after this call. See {@link com.browserup.bup.BrowserUpProxy#setHarLimits(int, long)}.
+     */
+    public void setHarLimits(int maxEntries, long maxBytes) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum number of HAR entries cannot be negative: " + maxEntries);
+        }
+
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Maximum size of HAR entries cannot be negative: " + maxBytes);
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        if (!mitmProxyManager.isRunning()) return;
+
+        addonsManagerClient.
+                getRequestToAddonsManager(
+                        "har",
+                        "set_har_limits",
+                        harLimitsParams(),
+                        Void.class);
+    }
+
+    public void appendConfiguration(ConfigurationBatch batch) {
+        batch.add("har", "set_har_capture_types", List.of(
+                of("captureTypes", valueOf(lastCaptureTypes))
+        ));
+        batch.add("har", "set_har_limits", harLimitsParams());
+    }
+
+    private List<Pair<String, String>> harLimitsParams() {
+        return List.of(
+                of("maxEntries", valueOf(maxEntries)),
+                of("maxBytes", valueOf(maxBytes))
+        );
+    }
+
     public EnumSet<CaptureType> getLastCaptureTypes() {
         return lastCaptureTypes;
     }
 
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HarEntriesHeader {
+        private String harId;
+        private boolean exists;
+        private long since;
+        private long cursor;
+        private long evicted;
+        private HarLog log;
+
+        public String getHarId() {
+            return harId;
+        }
+
+        public void setHarId(String harId) {
+            this.harId = harId;
+        }
+
+        public boolean isExists() {
+            return exists;
+        }
+
+        public void setExists(boolean exists) {
+            this.exists = exists;
+        }
+
+        public long getSince() {
+            return since;
+        }
+
+        public void setSince(long since) {
+            this.since = since;
+        }
+
+        public long getCursor() {
+            return cursor;
+        }
+
+        public void setCursor(long cursor) {
+            this.cursor = cursor;
+        }
+
+        /**
+         * @return the number of entries that were evicted from the start of a bounded HAR, which is also the index of its first entry
+         */
+        public long getEvicted() {
+            return evicted;
+        }
+
+        public void setEvicted(long evicted) {
+            this.evicted = evicted;
+        }
+
+        public HarLog getLog() {
+            return log;
+        }
+
+        public void setLog(HarLog log) {
+            this.log = log;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HarEntryLine {
+        private long index;
+        private HarEntry entry;
+
+        public long getIndex() {
+            return index;
+        }
+
+        public void setIndex(long index) {
+            this.index = index;
+        }
+
+        public HarEntry getEntry() {
+            return entry;
+        }
+
+        public void setEntry(HarEntry entry) {
+            this.entry = entry;
+        }
+    }
+
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class HarResponse {
         private String path;
@@ -34,6 +34,12 @@ public class LatencyManager {
                         Void.class);
     }
 
+    public void appendConfiguration(ConfigurationBatch batch) {
+        batch.add("latency", "set_latency", List.of(
+                of("latency", valueOf(latencyMs))
+        ));
+    }
+
     public int getLatencyMs() {
         return latencyMs;
     }
@@ -0,0 +1,107 @@
+package com.browserup.bup.mitmproxy.management;
+
+import com.browserup.bup.mitmproxy.MitmProxyProcessManager;
+import com.browserup.bup.proxy.metrics.ProxyCounter;
+import com.browserup.bup.proxy.metrics.ProxyMetrics;
+import com.browserup.bup.proxy.metrics.RequestPhase;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+
+public class MetricsManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsManager.class);
+
+    private final AddonsManagerClient addonsManagerClient;
+    private final MitmProxyProcessManager mitmProxyManager;
+
+    public MetricsManager(AddonsManagerClient addonsManagerClient, MitmProxyProcessManager mitmProxyManager) {
+        this.addonsManagerClient = addonsManagerClient;
+        this.mitmProxyManager = mitmProxyManager;
+    }
+
+    /**
+     * Returns a snapshot of the metrics recorded by the mitmproxy metrics add-on. The metrics are recorded by mitmproxy, so every call
+     * returns a new {@link ProxyMetrics} instance.
+     *
+     * @return metrics recorded since mitmproxy was started, or empty metrics if mitmproxy is not running
+     */
+    public ProxyMetrics getMetrics() {
+        ProxyMetrics metrics = new ProxyMetrics();
+
+        if (!mitmProxyManager.isRunning()) return metrics;
+
+        MetricsResponse response = addonsManagerClient.
+                getRequestToAddonsManager(
+                        "metrics",
+                        "get_metrics",
+                        emptyList(),
+                        MetricsResponse.class);
+
+        response.getHistograms().forEach((phaseName, histogram) -> {
+            try {
+                metrics.getHistogram(RequestPhase.valueOf(phaseName)).add(histogram.getBucketCounts(), histogram.getSumNanos());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring invalid histogram of phase {} reported by metrics add-on", phaseName, e);
+            }
+        });
+
+        response.getCounters().forEach((counterName, value) -> {
+            try {
+                metrics.add(ProxyCounter.valueOf(counterName), value);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring unknown counter {} reported by metrics add-on", counterName);
+            }
+        });
+
+        return metrics;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class MetricsResponse {
+        private Map<String, HistogramResponse> histograms = Collections.emptyMap();
+        private Map<String, Long> counters = Collections.emptyMap();
+
+        public Map<String, HistogramResponse> getHistograms() {
+            return histograms;
+        }
+
+        public void setHistograms(Map<String, HistogramResponse> histograms) {
+            this.histograms = histograms;
+        }
+
+        public Map<String, Long> getCounters() {
+            return counters;
+        }
+
+        public void setCounters(Map<String, Long> counters) {
+            this.counters = counters;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class HistogramResponse {
+        private long[] bucketCounts = new long[0];
+        private long sumNanos;
+
+        public long[] getBucketCounts() {
+            return bucketCounts;
+        }
+
+        public void setBucketCounts(long[] bucketCounts) {
+            this.bucketCounts = bucketCounts;
+        }
+
+        public long getSumNanos() {
+            return sumNanos;
+        }
+
+        public void setSumNanos(long sumNanos) {
+            this.sumNanos = sumNanos;
+        }
+    }
+}
@@ -132,6 +132,21 @@ public class ProxyManager {
                         Void.class);
     }
 
+    public void appendConfiguration(ConfigurationBatch batch) {
+        batch.add("proxy_manager", "set_connection_timeout_idle", List.of(
+                        of("idleSeconds", valueOf(connectionIdleTimeoutSeconds))
+                ))
+                .add("proxy_manager", "set_dns_resolving_delay_ms", List.of(
+                        of("delayMs", valueOf(dnsResolutionDelayMs))
+                ))
+                .add("proxy_manager", "set_upstream_proxy_authorization", List.of(
+                        of("credentials", valueOf(upstreamProxyCredentials))
+                ))
+                .add("proxy_manager", "set_chained_proxy_non_proxy_hosts", List.of(
+                        of("nonProxyHosts", valueOf(upstreamNonProxyHosts))
+                ));
+    }
+
     public Boolean callHealthCheck() {
         String result;
         try {
@@ -89,6 +89,14 @@ public class RewriteUrlManager {
                         Void.class);
     }
 
+    public void appendConfiguration(ConfigurationBatch batch) {
+        List<Pair<String, String>> params = rewriteRules.stream()
+                .map(rewriteRule -> Pair.of(rewriteRule.getPattern().pattern(), rewriteRule.getReplace()))
+                .collect(Collectors.toList());
+
+        batch.add("rewrite_url", "rewrite_urls", params);
+    }
+
     public CopyOnWriteArrayList<RewriteRule> getRewriteRules() {
         return rewriteRules;
     }
@@ -1,56 +1,140 @@
 package com.browserup.bup.proxy;
 
-import com.google.common.util.concurrent.Monitor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * Tracks active and total requests on a proxy, and provides a mechanism to wait for active requests to finish.
  * See {@link com.browserup.bup.proxy.ActivityMonitor#waitForQuiescence(long, long, java.util.concurrent.TimeUnit)}.
+ * <p>
+ * Request accounting only uses atomic operations, so the I/O threads never block on each other. Waiters are represented by
+ * {@link CompletableFuture}s that are completed from a single timer thread shared by all monitors. The timer thread only evaluates a
+ * waiter when its quiet period may have elapsed, when its timeout can no longer be met, or when a request it is waiting for finishes.
+ * <p>
+ * Waiters can be scoped to a subset of requests, e.g. to ignore long-polling requests that would otherwise never allow the proxy to
+ * become quiet. See {@link #whenQuiet(Predicate, long, long, TimeUnit)}.
  */
 public class ActivityMonitor {
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("quiescence-timer")
+            .setDaemon(true)
+            .build());
+
     private final AtomicInteger activeRequests = new AtomicInteger(0);
-    private final AtomicInteger totalRequests = new AtomicInteger(0);
+    private final LongAdder totalRequests = new LongAdder();
+
+    private volatile long lastRequestFinishedNanos = System.nanoTime();
+
+    /**
+     * Requests that have started but not finished yet. Used to determine the active requests of scoped waiters, which may have started
+     * before the waiter was registered.
+     */
+    private final Set<Activity> activities = ConcurrentHashMap.newKeySet();
+
+    private final Set<Waiter> waiters = new CopyOnWriteArraySet<>();
+
+    /**
+     * Registers a request that was received from the client, without tracking it for scoped waiters. Requests registered with this method
+     * are only waited for by unscoped waiters.
+     *
+     * @deprecated use {@link #requestStarted(String, String)}, so that the request is also tracked for scoped waiters
+     */
+    @Deprecated
+    public void requestStarted() {
+        activeRequests.incrementAndGet();
+        totalRequests.increment();
+    }
+
+    /**
+     * Unregisters a request that was registered with {@link #requestStarted()} when the response has been sent to the client.
+     *
+     * @deprecated use {@link #requestFinished(Activity)}
+     */
+    @Deprecated
+    public void requestFinished() {
+        lastRequestFinishedNanos = System.nanoTime();
+
+        requestInactive();
+    }
+
+    /**
+     * Registers a request that was received from the client.
+     *
+     * @param url full URL of the request
+     * @param pageRef id of the HAR page that was current when the request was received, or null if there was no current page
+     * @return the activity to pass to {@link #requestFinished(Activity)} when the response has been sent to the client
+     */
+    public Activity requestStarted(String url, String pageRef) {
+        Activity activity = new Activity(url, pageRef);
+
+        activities.add(activity);
+        activeRequests.incrementAndGet();
+        totalRequests.increment();
 
-    private final AtomicLong lastRequestFinishedNanos = new AtomicLong(System.nanoTime());
+        return activity;
+    }
 
-    private final Monitor monitor = new Monitor();
+    /**
+     * Unregisters a request when the response has been sent to the client.
+     *
+     * @param activity activity returned by {@link #requestStarted(String, String)}
+     */
+    public void requestFinished(Activity activity) {
+        // publish the finish time before the request stops being active, so that a waiter that no longer sees the request as active is
+        // guaranteed to see its finish time
+        long now = System.nanoTime();
+        lastRequestFinishedNanos = now;
 
-    private final Monitor.Guard requestNotActive = new Monitor.Guard(monitor) {
-        @Override
-        public boolean isSatisfied() {
-            return activeRequests.get() == 0;
+        List<Waiter> scopedWaiters = Collections.emptyList();
+        if (!waiters.isEmpty()) {
+            scopedWaiters = new ArrayList<>();
+            for (Waiter waiter : waiters) {
+                if (waiter.scope != null && waiter.scope.test(activity)) {
+                    waiter.scopedRequestFinished(now);
+                    scopedWaiters.add(waiter);
+                }
+            }
         }
-    };
 
-    private final Monitor.Guard requestActive = new Monitor.Guard(monitor) {
-        @Override
-        public boolean isSatisfied() {
-            return activeRequests.get() > 0;
+        if (!activities.remove(activity)) {
+            // already unregistered
+            return;
         }
-    };
 
-    public void requestStarted() {
-        int previousCount = activeRequests.getAndIncrement();
-        totalRequests.incrementAndGet();
-        if (previousCount == 0) {
-            // previously there were no active requests, but now there are -- signal to any waitForQuiescence threads that they need to
-            // begin waiting again
-            monitor.enter();
-            monitor.leave();
+        requestInactive();
+
+        // scoped waiters need to determine whether the finished request was the last one they were waiting for
+        for (Waiter waiter : scopedWaiters) {
+            timer.execute(waiter::evaluate);
         }
     }
 
-    public void requestFinished() {
+    private void requestInactive() {
         int newCount = activeRequests.decrementAndGet();
-        lastRequestFinishedNanos.set(System.nanoTime());
 
+        // unscoped waiters only need to be woken up when the proxy becomes idle
         if (newCount == 0) {
-            // there are no active requests, so signal to any waitForQuiescence threads that they can begin waiting for their quietPeriod
-            monitor.enter();
-            monitor.leave();
+            for (Waiter waiter : waiters) {
+                if (waiter.scope == null) {
+                    timer.execute(waiter::evaluate);
+                }
+            }
         }
     }
 
@@ -59,66 +143,186 @@ public class ActivityMonitor {
     }
 
     public int getTotalRequests() {
-        return totalRequests.get();
+        return totalRequests.intValue();
     }
 
+    /**
+     * Waits for existing requests to finish, and for the specified quietPeriod to elapse. See
+     * {@link com.browserup.bup.BrowserUpProxy#waitForQuiescence(long, long, TimeUnit)}.
+     *
+     * @param quietPeriod amount of time after which network traffic will be considered "stopped"
+     * @param timeout maximum amount of time to wait for network traffic to stop
+     * @param timeUnit TimeUnit for the quietPeriod and timeout
+     * @return true if network traffic is stopped, otherwise false
+     */
     public boolean waitForQuiescence(long quietPeriod, long timeout, TimeUnit timeUnit) {
-        // the minRequestFinishTime is the earliest possible time the current or last request "could" finish. if there is no active
-        // request, this is simply the lastRequestFinishedNanos time. if there is an active request, it is "now". this helps avoid waiting
-        // for quiescence if there is an active request and the timeout is less than the quietPeriod.
-        long minRequestFinishTime;
-        if (activeRequests.get() == 0) {
-            if (timeUnit.convert(System.nanoTime() - lastRequestFinishedNanos.get(), TimeUnit.NANOSECONDS) >= quietPeriod) {
-                return true;
-            } else {
-                minRequestFinishTime = lastRequestFinishedNanos.get();
-            }
-        } else {
-            minRequestFinishTime = System.nanoTime();
+        return whenQuiet(null, quietPeriod, timeout, timeUnit).join();
+    }
+
+    /**
+     * Waits for existing requests whose URL matches the specified pattern to finish, and for the specified quietPeriod to elapse without
+     * any matching request finishing. Requests that do not match the pattern are ignored.
+     *
+     * @param urlPattern pattern that must match the entire URL of a request for the request to be waited for
+     * @param quietPeriod amount of time after which network traffic will be considered "stopped"
+     * @param timeout maximum amount of time to wait for network traffic to stop
+     * @param timeUnit TimeUnit for the quietPeriod and timeout
+     * @return true if matching network traffic is stopped, otherwise false
+     */
+    public boolean waitForQuiescence(Pattern urlPattern, long quietPeriod, long timeout, TimeUnit timeUnit) {
+        return whenQuiet(activity -> urlPattern.matcher(activity.getUrl()).matches(), quietPeriod, timeout, timeUnit).join();
+    }
+
+    /**
+     * Waits for existing requests that were received while the specified HAR page was current to finish, and for the specified
+     * quietPeriod to elapse without any such request finishing. Requests of other pages are ignored.
+     *
+     * @param pageRef id of the HAR page
+     * @param quietPeriod amount of time after which network traffic will be considered "stopped"
+     * @param timeout maximum amount of time to wait for network traffic to stop
+     * @param timeUnit TimeUnit for the quietPeriod and timeout
+     * @return true if the network traffic of the page is stopped, otherwise false
+     */
+    public boolean waitForPageQuiescence(String pageRef, long quietPeriod, long timeout, TimeUnit timeUnit) {
+        return whenQuiet(activity -> pageRef.equals(activity.getPageRef()), quietPeriod, timeout, timeUnit).join();
+    }
+
+    /**
+     * Returns a future that is completed with true when no request in the specified scope is active, and no request in the scope has
+     * finished for the quietPeriod. The future is completed with false as soon as the quietPeriod can no longer elapse within the timeout.
+     * <p>
+     * The time the last request of a scope finished is not known for requests that finished before this method was called. For scoped
+     * waiters, the time the last request of any scope finished is used instead, so a scoped waiter may wait up to one quietPeriod longer
+     * than strictly necessary.
+     *
+     * @param scope requests to wait for, or null to wait for all requests
+     * @param quietPeriod amount of time after which network traffic will be considered "stopped"
+     * @param timeout maximum amount of time to wait for network traffic to stop
+     * @param timeUnit TimeUnit for the quietPeriod and timeout
+     * @return future that is completed with true if network traffic in the scope is stopped, otherwise with false
+     */
+    public CompletableFuture<Boolean> whenQuiet(Predicate<Activity> scope, long quietPeriod, long timeout, TimeUnit timeUnit) {
+        long quietPeriodNanos = timeUnit.toNanos(quietPeriod);
+        long now = System.nanoTime();
+
+        // fast path: nothing to wait for
+        if (scope == null && activeRequests.get() == 0 && now - lastRequestFinishedNanos >= quietPeriodNanos) {
+            return CompletableFuture.completedFuture(true);
         }
 
-        // record the maximum time we can wait until (the current time + the timeout), which will allow us to avoid waiting for
-        // quiescence if it is not possible to satisfy the quietPeriod before the waitUntil time elapses
-        long waitUntil = System.nanoTime() + TimeUnit.NANOSECONDS.convert(timeout, timeUnit);
+        Waiter waiter = new Waiter(scope, quietPeriodNanos, now + timeUnit.toNanos(timeout));
+        waiters.add(waiter);
+        waiter.future.whenComplete((quiet, e) -> waiters.remove(waiter));
 
-        while (minRequestFinishTime + TimeUnit.NANOSECONDS.convert(quietPeriod, timeUnit) <= waitUntil) {
-            // the maximum amount of time we can wait for active requests to finish that will still allow us to wait for quiescence
-            // for the quietPeriod.
-            long maxWaitTimeForActiveRequests = waitUntil - System.nanoTime() - TimeUnit.NANOSECONDS.convert(quietPeriod, timeUnit);
+        // the time the last request in scope finished is unknown, so assume it was the last request that finished before the waiter was
+        // registered. this must be read after registering the waiter, otherwise a request finishing concurrently could be missed.
+        waiter.scopedRequestFinished(lastRequestFinishedNanos);
 
-            // wait for active requests to finish
-            boolean success = monitor.enterWhenUninterruptibly(requestNotActive, maxWaitTimeForActiveRequests, TimeUnit.NANOSECONDS);
+        timer.execute(waiter::evaluate);
 
-            if (!success) {
-                // timed out waiting for active requests to finish
-                return false;
-            }
+        return waiter.future;
+    }
 
-            monitor.leave();
+    /**
+     * A request that is tracked by the monitor.
+     */
+    public static class Activity {
+        private final String url;
+        private final String pageRef;
 
-            // the time needed to monitor for new active requests is whenever the last request finished + the quiet period. this may be less
-            // than the actual quiet period if no requests were active when entering waitForQuiescence, but the quietPeriod has not yet elapsed
-            // since the last request.
-            long waitForNewRequests = lastRequestFinishedNanos.get() - System.nanoTime() + TimeUnit.NANOSECONDS.convert(quietPeriod, timeUnit);
+        private Activity(String url, String pageRef) {
+            this.url = url;
+            this.pageRef = pageRef;
+        }
+
+        public String getUrl() {
+            return url;
+        }
 
-            // if the quietPeriod has already elapsed since the last request, no need to wait any longer
-            if (waitForNewRequests < 0) {
-                return true;
+        public String getPageRef() {
+            return pageRef;
+        }
+    }
+
+    /**
+     * A pending quiescence wait. Evaluations only run on the timer thread.
+     */
+    private class Waiter {
+        private final Predicate<Activity> scope;
+        private final long quietPeriodNanos;
+        private final long deadlineNanos;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private final AtomicLong lastScopedRequestFinishedNanos = new AtomicLong();
+        private ScheduledFuture<?> nextEvaluation;
+
+        private Waiter(Predicate<Activity> scope, long quietPeriodNanos, long deadlineNanos) {
+            this.scope = scope;
+            this.quietPeriodNanos = quietPeriodNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Records the finish time of a request in scope, unless a later finish time was already recorded. May be called from any thread.
+         */
+        private void scopedRequestFinished(long finishedNanos) {
+            lastScopedRequestFinishedNanos.accumulateAndGet(finishedNanos, (current, finished) -> finished - current > 0 ? finished : current);
+        }
+
+        private void evaluate() {
+            if (future.isDone()) {
+                return;
             }
 
-            // wait for new requests to come in. if a new request comes in, the loop will restart, waiting for active requests to complete.
-            boolean requestsActive = monitor.enterWhenUninterruptibly(requestActive, waitForNewRequests, TimeUnit.NANOSECONDS);
+            if (nextEvaluation != null) {
+                nextEvaluation.cancel(false);
+                nextEvaluation = null;
+            }
+
+            long now = System.nanoTime();
 
-            if (requestsActive) {
-                // a request became active, so we need to wait for all requests to finish again
-                monitor.leave();
+            // the finish time must be read after the active requests, see requestFinished()
+            boolean active = isActive();
+            long quietFrom = scope == null ? lastRequestFinishedNanos : lastScopedRequestFinishedNanos.get();
 
-                continue;
+            if (active) {
+                // the earliest time an active request could finish is now, so the quietPeriod cannot elapse before now + quietPeriod
+                long latestFinish = deadlineNanos - quietPeriodNanos;
+                if (now - latestFinish > 0) {
+                    future.complete(false);
+                } else {
+                    // re-evaluated earlier when the request finishes
+                    schedule(latestFinish - now);
+                }
             } else {
-                return true;
+                long quietUntil = quietFrom + quietPeriodNanos;
+                if (now - quietUntil >= 0) {
+                    future.complete(true);
+                } else if (quietUntil - deadlineNanos > 0) {
+                    future.complete(false);
+                } else {
+                    schedule(quietUntil - now);
+                }
+            }
+        }
+
+        private boolean isActive() {
+            if (scope == null) {
+                return activeRequests.get() > 0;
+            }
+
+            for (Activity activity : activities) {
+                if (scope.test(activity)) {
+                    return true;
+                }
             }
+
+            return false;
         }
 
-        return false;
+        private void schedule(long delayNanos) {
+            // the extra nanosecond guarantees that the quiet period has fully elapsed when the timer fires
+            nextEvaluation = timer.schedule(this::evaluate, delayNanos + 1, TimeUnit.NANOSECONDS);
+        }
     }
 }
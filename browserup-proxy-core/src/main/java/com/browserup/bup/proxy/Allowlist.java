@@ -5,7 +5,7 @@ import com.google.common.collect.ImmutableList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
@@ -15,6 +15,7 @@ import java.util.regex.Pattern;
  */
 public class Allowlist {
     private final List<Pattern> patterns;
+    private final UrlRuleIndex<Pattern> patternIndex;
     private final int statusCode;
     private final boolean enabled;
 
@@ -28,6 +29,7 @@ public class Allowlist {
      */
     public Allowlist() {
         this.patterns = Collections.emptyList();
+        this.patternIndex = UrlRuleIndex.compile(patterns, Function.identity());
         this.statusCode = -1;
         this.enabled = false;
     }
@@ -39,6 +41,7 @@ public class Allowlist {
      */
     public Allowlist(int statusCode) {
         this.patterns = Collections.emptyList();
+        this.patternIndex = UrlRuleIndex.compile(patterns, Function.identity());
         this.statusCode = statusCode;
         this.enabled = true;
     }
@@ -60,6 +63,8 @@ public class Allowlist {
             this.patterns = builder.build();
         }
 
+        this.patternIndex = UrlRuleIndex.compile(this.patterns, Function.identity());
+
         this.statusCode = statusCode;
 
         this.enabled = true;
@@ -79,6 +84,13 @@ public class Allowlist {
         return this.patterns;
     }
 
+    /**
+     * @return compiled index of the allowlist patterns
+     */
+    public UrlRuleIndex<Pattern> getPatternIndex() {
+        return patternIndex;
+    }
+
     /**
      * @return HTTP status code returned by the allowlist, or -1 if the allowlist is disabled
      */
@@ -98,6 +110,6 @@ public class Allowlist {
             return false;
         }
 
-        return getPatterns().stream().map(pattern -> pattern.matcher(url)).anyMatch(Matcher::matches);
+        return patternIndex.findFirst(url, null) != null;
     }
 }
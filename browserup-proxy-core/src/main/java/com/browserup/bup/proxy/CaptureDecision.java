@@ -0,0 +1,103 @@
+package com.browserup.bup.proxy;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The outcome of evaluating a {@link CapturePolicy} against a request. The capture types of the request are known when the decision
+ * is made; the capture types of the response may depend on rules with response conditions, which are evaluated when the response
+ * headers are received. The sets returned by this class must not be modified.
+ */
+public class CaptureDecision {
+    /**
+     * Matching rules with response conditions, in order, which take precedence over the fallback capture types if they match the
+     * response.
+     */
+    private final List<CaptureRule> responseConditionalRules;
+
+    /**
+     * Capture types of the first matching rule without response conditions, or the default capture types if there is no such rule.
+     */
+    private final EnumSet<CaptureType> fallbackCaptureTypes;
+
+    CaptureDecision(List<CaptureRule> responseConditionalRules, EnumSet<CaptureType> fallbackCaptureTypes) {
+        this.responseConditionalRules = responseConditionalRules;
+        this.fallbackCaptureTypes = fallbackCaptureTypes;
+    }
+
+    /**
+     * Creates a decision that applies the specified capture types to the request and the response.
+     *
+     * @param captureTypes capture types, or null to capture only basic information
+     * @return capture decision
+     */
+    public static CaptureDecision of(Set<CaptureType> captureTypes) {
+        return new CaptureDecision(Collections.emptyList(), CapturePolicy.toEnumSet(captureTypes));
+    }
+
+    /**
+     * @return the capture types that apply to the request
+     */
+    public EnumSet<CaptureType> getRequestCaptureTypes() {
+        return responseConditionalRules.isEmpty() ? fallbackCaptureTypes : responseConditionalRules.get(0).captureTypes();
+    }
+
+    /**
+     * Evaluates the response conditions of the matching rules against a response.
+     *
+     * @param contentType Content-Type header of the response, or null
+     * @param contentLength Content-Length of the response, or -1 if the length is unknown
+     * @return the capture types that apply to the response
+     */
+    public EnumSet<CaptureType> getResponseCaptureTypes(String contentType, long contentLength) {
+        for (CaptureRule rule : responseConditionalRules) {
+            if (rule.matchesResponse(contentType, contentLength)) {
+                return rule.captureTypes();
+            }
+        }
+
+        return fallbackCaptureTypes;
+    }
+
+    /**
+     * @return true if the response content may need to be captured, depending on the response
+     */
+    public boolean mayCaptureResponseContent() {
+        if (capturesResponseContent(fallbackCaptureTypes)) {
+            return true;
+        }
+
+        return responseConditionalRules.stream().map(CaptureRule::captureTypes).anyMatch(CaptureDecision::capturesResponseContent);
+    }
+
+    /**
+     * Returns the maximum number of bytes of response content that may need to be captured: responses of unknown length match the
+     * maximum response size of a rule, but their content is only captured up to that size.
+     *
+     * @return maximum response content size, or -1 if the content size is not limited by the rules
+     */
+    public long getMaxResponseContentSize() {
+        if (capturesResponseContent(fallbackCaptureTypes)) {
+            return -1;
+        }
+
+        long maxResponseContentSize = 0;
+        for (CaptureRule rule : responseConditionalRules) {
+            if (capturesResponseContent(rule.captureTypes())) {
+                if (rule.getMaxResponseSize() < 0) {
+                    return -1;
+                }
+
+                maxResponseContentSize = Math.max(maxResponseContentSize, rule.getMaxResponseSize());
+            }
+        }
+
+        return maxResponseContentSize;
+    }
+
+    private static boolean capturesResponseContent(Set<CaptureType> captureTypes) {
+        return captureTypes.contains(CaptureType.RESPONSE_CONTENT) || captureTypes.contains(CaptureType.RESPONSE_BINARY_CONTENT);
+    }
+}
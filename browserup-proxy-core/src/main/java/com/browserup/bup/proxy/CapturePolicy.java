@@ -0,0 +1,102 @@
+package com.browserup.bup.proxy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides per request which {@link CaptureType}s are captured in the HAR, using an ordered list of {@link CaptureRule}s. The first
+ * rule that matches a request decides its capture types; requests that no rule matches are captured with the capture types of the
+ * proxy. For example, to capture the content of JSON API responses only, and to capture the headers of one in ten other requests:
+ * <pre>
+ *     proxy.setHarCaptureTypes(EnumSet.noneOf(CaptureType.class));
+ *     proxy.getCapturePolicy().addRule(CaptureRule.builder()
+ *             .urlPattern(".*&#47;api&#47;.*")
+ *             .mimeType("application/json")
+ *             .captureTypes(CaptureType.RESPONSE_HEADERS, CaptureType.RESPONSE_CONTENT)
+ *             .build());
+ *     proxy.getCapturePolicy().addRule(CaptureRule.builder()
+ *             .sampleRate(10)
+ *             .captureTypes(CaptureType.getHeaderCaptureTypes())
+ *             .build());
+ * </pre>
+ * The policy is evaluated once per request, when the HAR capture filter for the request is created, so requests that do not need
+ * their content captured do not buffer it. Since the request is captured before the response is received, the request capture types
+ * of a request are those of the first rule whose URL, host and method conditions match it, even if the rule's response conditions
+ * then do not match the response.
+ */
+public class CapturePolicy {
+    /**
+     * The rules, as an immutable list. Changes replace the list, so that requests are always evaluated against a consistent set of
+     * rules. Writes are guarded by this.
+     */
+    private volatile List<CaptureRule> rules = Collections.emptyList();
+
+    /**
+     * Adds a rule, which is evaluated after the existing rules.
+     *
+     * @param rule capture rule to add
+     */
+    public synchronized void addRule(CaptureRule rule) {
+        List<CaptureRule> newRules = new ArrayList<>(rules);
+        newRules.add(rule);
+
+        rules = List.copyOf(newRules);
+    }
+
+    /**
+     * Replaces all rules.
+     *
+     * @param rules capture rules, in the order they should be evaluated
+     */
+    public synchronized void setRules(Collection<CaptureRule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    public List<CaptureRule> getRules() {
+        return rules;
+    }
+
+    public synchronized void clearRules() {
+        rules = Collections.emptyList();
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Evaluates the rules against a request. Rules whose request conditions match are sampled, so this method must be called once per
+     * request.
+     *
+     * @param host hostname of the request, without the port
+     * @param url full URL of the request
+     * @param method HTTP method of the request
+     * @param defaultCaptureTypes capture types of requests that no rule matches
+     * @return the capture decision for the request
+     */
+    public CaptureDecision decide(String host, String url, String method, Set<CaptureType> defaultCaptureTypes) {
+        List<CaptureRule> responseConditionalRules = new ArrayList<>();
+
+        for (CaptureRule rule : rules) {
+            if (!rule.matchesRequest(host, url, method) || !rule.sample()) {
+                continue;
+            }
+
+            if (!rule.hasResponseConditions()) {
+                return new CaptureDecision(responseConditionalRules, rule.captureTypes());
+            }
+
+            responseConditionalRules.add(rule);
+        }
+
+        return new CaptureDecision(responseConditionalRules, toEnumSet(defaultCaptureTypes));
+    }
+
+    static EnumSet<CaptureType> toEnumSet(Set<CaptureType> captureTypes) {
+        return captureTypes == null || captureTypes.isEmpty() ? EnumSet.noneOf(CaptureType.class) : EnumSet.copyOf(captureTypes);
+    }
+}
@@ -0,0 +1,301 @@
+package com.browserup.bup.proxy;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A rule of a {@link CapturePolicy}, which decides the {@link CaptureType}s captured in the HAR for the requests it matches. A rule
+ * matches requests by any combination of URL pattern, host, HTTP method, response MIME type and maximum response size, and can sample
+ * only every Nth matching request. Rules are created using {@link #builder()}:
+ * <pre>
+ *     CaptureRule.builder()
+ *             .urlPattern(".*&#47;api&#47;.*")
+ *             .mimeType("application/json")
+ *             .maxResponseSize(1024 * 1024)
+ *             .captureTypes(CaptureType.getAllContentCaptureTypes())
+ *             .build();
+ * </pre>
+ * The MIME type and maximum response size are response conditions: they are evaluated when the response headers are received. A
+ * response without a Content-Length header matches the maximum response size, but at most that many bytes of its content are
+ * captured.
+ */
+public class CaptureRule {
+    private final String host;
+    private final Pattern urlPattern;
+    private final String method;
+    private final String mimeType;
+    private final long maxResponseSize;
+    private final int sampleRate;
+    private final EnumSet<CaptureType> captureTypes;
+
+    private final AtomicLong matchedRequests = new AtomicLong();
+
+    private CaptureRule(Builder builder) {
+        this.host = builder.host;
+        this.urlPattern = builder.urlPattern;
+        this.method = builder.method;
+        this.mimeType = builder.mimeType;
+        this.maxResponseSize = builder.maxResponseSize;
+        this.sampleRate = builder.sampleRate;
+        this.captureTypes = builder.captureTypes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Determines if the request conditions of this rule match a request. Does not sample the request.
+     *
+     * @param requestHost hostname of the request, without the port
+     * @param url full URL of the request
+     * @param requestMethod HTTP method of the request
+     * @return true if the request matches the URL pattern, host and method of this rule
+     */
+    public boolean matchesRequest(String requestHost, String url, String requestMethod) {
+        if (urlPattern != null && (url == null || !urlPattern.matcher(url).matches())) {
+            return false;
+        }
+
+        if (host != null && !matchesHost(requestHost)) {
+            return false;
+        }
+
+        return method == null || method.equalsIgnoreCase(requestMethod);
+    }
+
+    /**
+     * Counts a request that matches the request conditions of this rule, and determines if the rule applies to it.
+     *
+     * @return true if the request is one of every {@link #getSampleRate()} matching requests
+     */
+    public boolean sample() {
+        return sampleRate == 1 || matchedRequests.getAndIncrement() % sampleRate == 0;
+    }
+
+    /**
+     * @return true if this rule has conditions that can only be evaluated when the response is received
+     */
+    public boolean hasResponseConditions() {
+        return mimeType != null || maxResponseSize >= 0;
+    }
+
+    /**
+     * Determines if the response conditions of this rule match a response.
+     *
+     * @param contentType Content-Type header of the response, or null
+     * @param contentLength Content-Length of the response, or -1 if the length is unknown
+     * @return true if the response matches the MIME type and maximum response size of this rule
+     */
+    public boolean matchesResponse(String contentType, long contentLength) {
+        if (maxResponseSize >= 0 && contentLength > maxResponseSize) {
+            return false;
+        }
+
+        if (mimeType == null) {
+            return true;
+        }
+
+        if (contentType == null) {
+            return false;
+        }
+
+        int parametersIndex = contentType.indexOf(';');
+        String responseMimeType = (parametersIndex < 0 ? contentType : contentType.substring(0, parametersIndex)).trim();
+
+        if (mimeType.endsWith("/*")) {
+            // keep the '/' so that "image/*" does not match "imagery/png"
+            String typePrefix = mimeType.substring(0, mimeType.length() - 1);
+            return responseMimeType.regionMatches(true, 0, typePrefix, 0, typePrefix.length());
+        }
+
+        return mimeType.equalsIgnoreCase(responseMimeType);
+    }
+
+    private boolean matchesHost(String requestHost) {
+        if (requestHost == null) {
+            return false;
+        }
+
+        if (host.startsWith("*.")) {
+            // keep the leading '.' so that "*.example.com" does not match "badexample.com"
+            String domainSuffix = host.substring(1);
+            return requestHost.length() > domainSuffix.length()
+                    && requestHost.regionMatches(true, requestHost.length() - domainSuffix.length(), domainSuffix, 0, domainSuffix.length());
+        }
+
+        return host.equalsIgnoreCase(requestHost);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public Pattern getUrlPattern() {
+        return urlPattern;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return the maximum response size in bytes, or -1 if the rule matches responses of any size
+     */
+    public long getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return a copy of the capture types applied to the requests this rule matches
+     */
+    public EnumSet<CaptureType> getCaptureTypes() {
+        return EnumSet.copyOf(captureTypes);
+    }
+
+    EnumSet<CaptureType> captureTypes() {
+        return captureTypes;
+    }
+
+    /**
+     * A Builder for {@link CaptureRule}s. A rule without any conditions matches all requests.
+     */
+    public static class Builder {
+        private String host;
+        private Pattern urlPattern;
+        private String method;
+        private String mimeType;
+        private long maxResponseSize = -1;
+        private int sampleRate = 1;
+        private EnumSet<CaptureType> captureTypes = EnumSet.noneOf(CaptureType.class);
+
+        /**
+         * Matches requests to the specified host.
+         *
+         * @param host hostname to match, e.g. "www.example.com" or "*.example.com"
+         * @return Builder
+         */
+        public Builder host(String host) {
+            if (host == null || host.isEmpty()) {
+                throw new IllegalArgumentException("Host cannot be null or empty");
+            }
+
+            this.host = host.toLowerCase(Locale.US);
+            return this;
+        }
+
+        /**
+         * Matches requests whose full URL matches the specified regular expression.
+         *
+         * @param urlPattern URL pattern to match
+         * @return Builder
+         */
+        public Builder urlPattern(String urlPattern) {
+            this.urlPattern = Pattern.compile(urlPattern);
+            return this;
+        }
+
+        /**
+         * Matches requests with the specified HTTP method, e.g. "GET".
+         *
+         * @param method HTTP method to match
+         * @return Builder
+         */
+        public Builder method(String method) {
+            if (method == null || method.isEmpty()) {
+                throw new IllegalArgumentException("Method cannot be null or empty");
+            }
+
+            this.method = method;
+            return this;
+        }
+
+        /**
+         * Matches responses with the specified MIME type, ignoring parameters such as the charset. A MIME type ending with "/*",
+         * e.g. "image/*", matches all subtypes.
+         *
+         * @param mimeType MIME type to match
+         * @return Builder
+         */
+        public Builder mimeType(String mimeType) {
+            if (mimeType == null || mimeType.isEmpty()) {
+                throw new IllegalArgumentException("MIME type cannot be null or empty");
+            }
+
+            this.mimeType = mimeType;
+            return this;
+        }
+
+        /**
+         * Matches responses whose Content-Length is at most the specified size.
+         *
+         * @param maxResponseSize maximum response size in bytes
+         * @return Builder
+         */
+        public Builder maxResponseSize(long maxResponseSize) {
+            if (maxResponseSize < 0) {
+                throw new IllegalArgumentException("Maximum response size cannot be negative");
+            }
+
+            this.maxResponseSize = maxResponseSize;
+            return this;
+        }
+
+        /**
+         * Applies the rule to only one of every sampleRate requests that match its conditions; the other requests are decided by the
+         * following rules.
+         *
+         * @param sampleRate number of matching requests per sampled request
+         * @return Builder
+         */
+        public Builder sampleRate(int sampleRate) {
+            if (sampleRate < 1) {
+                throw new IllegalArgumentException("Sample rate must be at least 1");
+            }
+
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * The capture types applied to the requests the rule matches. They replace the capture types of the proxy for these requests,
+         * so a rule without capture types only captures the basic information of matching requests.
+         *
+         * @param captureTypes capture types to apply
+         * @return Builder
+         */
+        public Builder captureTypes(Collection<CaptureType> captureTypes) {
+            this.captureTypes = captureTypes.isEmpty() ? EnumSet.noneOf(CaptureType.class) : EnumSet.copyOf(captureTypes);
+            return this;
+        }
+
+        /**
+         * The capture types applied to the requests the rule matches. See {@link #captureTypes(Collection)}.
+         *
+         * @param captureTypes capture types to apply
+         * @return Builder
+         */
+        public Builder captureTypes(CaptureType... captureTypes) {
+            this.captureTypes = EnumSet.noneOf(CaptureType.class);
+            for (CaptureType captureType : captureTypes) {
+                this.captureTypes.add(captureType);
+            }
+            return this;
+        }
+
+        public CaptureRule build() {
+            return new CaptureRule(this);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.browserup.bup.proxy;
+
+import java.net.InetSocketAddress;
+
+/**
+ * The route of a request when the proxy is chained to an upstream proxy: either through the upstream proxy, or directly to the server
+ * because the request's host matches a non-proxy host.
+ */
+public class ChainedProxyRoute {
+    private final String host;
+    private final InetSocketAddress upstreamProxy;
+    private final String nonProxyHost;
+
+    private ChainedProxyRoute(String host, InetSocketAddress upstreamProxy, String nonProxyHost) {
+        this.host = host;
+        this.upstreamProxy = upstreamProxy;
+        this.nonProxyHost = nonProxyHost;
+    }
+
+    /**
+     * @param host          host of the request
+     * @param upstreamProxy address of the upstream proxy the request is routed through
+     * @return a route through the upstream proxy
+     */
+    public static ChainedProxyRoute throughUpstreamProxy(String host, InetSocketAddress upstreamProxy) {
+        return new ChainedProxyRoute(host, upstreamProxy, null);
+    }
+
+    /**
+     * @param host         host of the request
+     * @param nonProxyHost the non-proxy host that the host matches
+     * @return a direct route to the server
+     */
+    public static ChainedProxyRoute direct(String host, String nonProxyHost) {
+        return new ChainedProxyRoute(host, null, nonProxyHost);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return true if the request bypasses the upstream proxy
+     */
+    public boolean isDirect() {
+        return upstreamProxy == null;
+    }
+
+    /**
+     * @return address of the upstream proxy the request is routed through, or null if the request bypasses the upstream proxy
+     */
+    public InetSocketAddress getUpstreamProxy() {
+        return upstreamProxy;
+    }
+
+    /**
+     * @return the non-proxy host that the request's host matches, or null if the request is routed through the upstream proxy
+     */
+    public String getNonProxyHost() {
+        return nonProxyHost;
+    }
+
+    @Override
+    public String toString() {
+        return isDirect() ? "DIRECT" : upstreamProxy.getHostString() + ":" + upstreamProxy.getPort();
+    }
+}
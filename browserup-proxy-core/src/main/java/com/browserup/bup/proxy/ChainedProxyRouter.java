@@ -0,0 +1,115 @@
+package com.browserup.bup.proxy;
+
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Decides whether requests are routed through the upstream proxy the proxy is chained to, or directly to the server because their
+ * host is a non-proxy host. The non-proxy hosts are compiled once into a {@link NonProxyHostMatcher} when they are set, rather than
+ * on every request.
+ */
+public class ChainedProxyRouter {
+    private final Supplier<InetSocketAddress> upstreamProxyAddress;
+
+    private volatile NonProxyHostMatcher nonProxyHosts = NonProxyHostMatcher.compile(null);
+
+    /**
+     * @param upstreamProxyAddress supplies the current address of the upstream proxy, or null if there is no upstream proxy
+     */
+    public ChainedProxyRouter(Supplier<InetSocketAddress> upstreamProxyAddress) {
+        this.upstreamProxyAddress = upstreamProxyAddress;
+    }
+
+    /**
+     * Sets the hosts that should not be routed through the upstream proxy (see {@link NonProxyHostMatcher} for their format).
+     *
+     * @param nonProxyHosts non-proxy hosts, or null if all hosts should be routed through the upstream proxy
+     */
+    public void setNonProxyHosts(Collection<String> nonProxyHosts) {
+        this.nonProxyHosts = NonProxyHostMatcher.compile(nonProxyHosts);
+    }
+
+    public NonProxyHostMatcher getNonProxyHosts() {
+        return nonProxyHosts;
+    }
+
+    /**
+     * Returns true if the request's host matches a non-proxy host.
+     */
+    public boolean isNonProxyHost(HttpRequest httpRequest) {
+        NonProxyHostMatcher matcher = nonProxyHosts;
+
+        return !matcher.isEmpty() && matcher.matches(getHost(httpRequest));
+    }
+
+    /**
+     * Returns the route of the request, or null if there is no upstream proxy.
+     */
+    public ChainedProxyRoute route(HttpRequest httpRequest) {
+        return route(getHost(httpRequest));
+    }
+
+    /**
+     * Returns the route of requests to the specified host, or null if there is no upstream proxy. Use this method when the request's
+     * URI does not contain the host, e.g. for requests inside a MITM'd HTTPS connection, whose URI is only the path.
+     *
+     * @param host hostname of the server, without port
+     */
+    public ChainedProxyRoute route(String host) {
+        InetSocketAddress upstreamProxy = upstreamProxyAddress.get();
+        if (upstreamProxy == null) {
+            return null;
+        }
+
+        String nonProxyHost = nonProxyHosts.findMatchingNonProxyHost(host);
+
+        return nonProxyHost != null ? ChainedProxyRoute.direct(host, nonProxyHost)
+                : ChainedProxyRoute.throughUpstreamProxy(host, upstreamProxy);
+    }
+
+    /**
+     * Returns the host of the request's URI, without port. The URI is either an absolute URL, or the host and port of an HTTP CONNECT.
+     */
+    static String getHost(HttpRequest httpRequest) {
+        String uri = httpRequest.uri();
+
+        int schemeEnd = uri.indexOf("://");
+        if (schemeEnd < 0) {
+            return stripPort(uri);
+        }
+
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < uri.length() && "/?#".indexOf(uri.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+
+        int hostStart = uri.lastIndexOf('@', authorityEnd - 1) + 1;
+        String hostAndPort = uri.substring(Math.max(hostStart, authorityStart), authorityEnd);
+
+        return stripPort(hostAndPort);
+    }
+
+    private static String stripPort(String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        if (colon <= 0 || colon == hostAndPort.length() - 1 || hostAndPort.endsWith("]")) {
+            return hostAndPort;
+        }
+
+        for (int i = colon + 1; i < hostAndPort.length(); i++) {
+            if (!Character.isDigit(hostAndPort.charAt(i))) {
+                return hostAndPort;
+            }
+        }
+
+        // an IPv6 address without brackets has colons, but no port
+        if (!hostAndPort.startsWith("[") && hostAndPort.indexOf(':') != colon) {
+            return hostAndPort;
+        }
+
+        return hostAndPort.substring(0, colon);
+    }
+}
@@ -0,0 +1,98 @@
+package com.browserup.bup.proxy;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A latency profile for a subset of requests, consisting of either a hostname or a regular expression to match the URL, and the
+ * latency to add to matching responses. Hostnames may begin with a "*." wildcard, which matches any subdomain of the remaining
+ * domain (but not the domain itself).
+ */
+public class LatencyRule {
+    private final String host;
+    private final Pattern urlPattern;
+    private final long latencyMs;
+
+    private LatencyRule(String host, Pattern urlPattern, long latencyMs) {
+        if (latencyMs < 0) {
+            throw new IllegalArgumentException("Latency cannot be negative");
+        }
+
+        this.host = host;
+        this.urlPattern = urlPattern;
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * Creates a new LatencyRule which will match requests to the specified host.
+     *
+     * @param host hostname to match, e.g. "www.example.com" or "*.example.com"
+     * @param latency latency to add to responses from the host
+     * @param timeUnit TimeUnit for the latency
+     * @return latency rule for the host
+     */
+    public static LatencyRule forHost(String host, long latency, TimeUnit timeUnit) {
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException("Host cannot be null or empty");
+        }
+
+        return new LatencyRule(host.toLowerCase(Locale.US), null, TimeUnit.MILLISECONDS.convert(latency, timeUnit));
+    }
+
+    /**
+     * Creates a new LatencyRule which will match requests whose full URL matches the specified regular expression.
+     *
+     * @param urlPattern URL pattern to match
+     * @param latency latency to add to responses for matching URLs
+     * @param timeUnit TimeUnit for the latency
+     * @return latency rule for the URL pattern
+     */
+    public static LatencyRule forUrlPattern(String urlPattern, long latency, TimeUnit timeUnit) {
+        return new LatencyRule(null, Pattern.compile(urlPattern), TimeUnit.MILLISECONDS.convert(latency, timeUnit));
+    }
+
+    /**
+     * Determines if this LatencyRule matches a request.
+     *
+     * @param requestHost hostname of the request, without the port
+     * @param url full URL of the request
+     * @return true if the request matches this LatencyRule
+     */
+    public boolean matches(String requestHost, String url) {
+        if (urlPattern != null) {
+            return url != null && urlPattern.matcher(url).matches();
+        }
+
+        if (requestHost == null) {
+            return false;
+        }
+
+        if (host.startsWith("*.")) {
+            // keep the leading '.' so that "*.example.com" does not match "badexample.com"
+            String domainSuffix = host.substring(1);
+            return requestHost.length() > domainSuffix.length()
+                    && requestHost.regionMatches(true, requestHost.length() - domainSuffix.length(), domainSuffix, 0, domainSuffix.length());
+        }
+
+        return host.equalsIgnoreCase(requestHost);
+    }
+
+    /**
+     * @return the hostname this rule matches, or null if this rule matches a URL pattern
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the URL pattern this rule matches, or null if this rule matches a hostname
+     */
+    public Pattern getUrlPattern() {
+        return urlPattern;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+}
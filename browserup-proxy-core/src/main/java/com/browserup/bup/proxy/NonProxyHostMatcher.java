@@ -0,0 +1,223 @@
+package com.browserup.bup.proxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An immutable, compiled set of non-proxy hosts (also called proxy exceptions): hosts that should be connected to directly instead of
+ * through the upstream proxy. Each non-proxy host is a host name or address, in which '*' matches any sequence of characters, e.g.
+ * "*.example.com" or "192.168.*". Hosts are matched case-insensitively.
+ * <p>
+ * Non-proxy hosts without wildcards, and non-proxy hosts whose only wildcard is a leading '*', are compiled into a trie of reversed
+ * host names, so that a host is matched against all of them in a single pass over the host. Other wildcard patterns are matched
+ * one by one without regular expressions. Since the same hosts are requested over and over, the matching non-proxy host of each host
+ * is cached, up to {@link #MAX_CACHED_HOSTS} hosts.
+ */
+public class NonProxyHostMatcher {
+    /**
+     * The maximum number of hosts whose matching non-proxy host is cached.
+     */
+    public static final int MAX_CACHED_HOSTS = 10_000;
+
+    private static final NonProxyHostMatcher EMPTY = new NonProxyHostMatcher(Collections.emptyList());
+
+    private final List<String> nonProxyHosts;
+
+    private final Node reversedHosts = new Node();
+
+    private final List<WildcardPattern> wildcardPatterns = new ArrayList<>();
+
+    private final Cache<String, Optional<String>> matchingNonProxyHosts = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_HOSTS)
+            .build();
+
+    private NonProxyHostMatcher(Collection<String> nonProxyHosts) {
+        List<String> compiled = new ArrayList<>(nonProxyHosts.size());
+
+        for (String nonProxyHost : nonProxyHosts) {
+            if (nonProxyHost == null || nonProxyHost.trim().isEmpty()) {
+                continue;
+            }
+
+            String trimmed = nonProxyHost.trim();
+            compiled.add(trimmed);
+
+            String pattern = trimmed.toLowerCase(Locale.ROOT);
+            int lastWildcard = pattern.lastIndexOf('*');
+            if (lastWildcard < 0) {
+                reversedHosts.insert(pattern).exactMatch = trimmed;
+            } else if (lastWildcard == 0) {
+                reversedHosts.insert(pattern.substring(1)).suffixMatch = trimmed;
+            } else {
+                wildcardPatterns.add(new WildcardPattern(pattern, trimmed));
+            }
+        }
+
+        this.nonProxyHosts = Collections.unmodifiableList(compiled);
+    }
+
+    /**
+     * Compiles the non-proxy hosts.
+     *
+     * @param nonProxyHosts non-proxy hosts, or null if there are none
+     * @return the compiled non-proxy hosts
+     */
+    public static NonProxyHostMatcher compile(Collection<String> nonProxyHosts) {
+        if (nonProxyHosts == null || nonProxyHosts.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new NonProxyHostMatcher(nonProxyHosts);
+    }
+
+    /**
+     * @return the compiled non-proxy hosts, trimmed, without blank entries
+     */
+    public List<String> getNonProxyHosts() {
+        return nonProxyHosts;
+    }
+
+    public boolean isEmpty() {
+        return nonProxyHosts.isEmpty();
+    }
+
+    /**
+     * Returns true if the host matches any of the non-proxy hosts.
+     *
+     * @param host host name or address, without port
+     */
+    public boolean matches(String host) {
+        return findMatchingNonProxyHost(host) != null;
+    }
+
+    /**
+     * Returns the non-proxy host that the host matches, as it was specified when compiling this matcher, or null if the host does not
+     * match any non-proxy host. If the host matches several non-proxy hosts, an exact match is preferred over the longest matching
+     * leading-wildcard pattern, which is preferred over any other wildcard pattern.
+     *
+     * @param host host name or address, without port
+     */
+    public String findMatchingNonProxyHost(String host) {
+        if (host == null || isEmpty()) {
+            return null;
+        }
+
+        String normalizedHost = host.toLowerCase(Locale.ROOT);
+
+        Optional<String> cached = matchingNonProxyHosts.getIfPresent(normalizedHost);
+        if (cached == null) {
+            cached = Optional.ofNullable(match(normalizedHost));
+            matchingNonProxyHosts.put(normalizedHost, cached);
+        }
+
+        return cached.orElse(null);
+    }
+
+    private String match(String host) {
+        // walk the trie from the last character of the host, remembering the longest suffix pattern that matched
+        Node node = reversedHosts;
+        String longestSuffixMatch = node.suffixMatch;
+
+        for (int i = host.length() - 1; i >= 0 && node != null; i--) {
+            node = node.children.get(host.charAt(i));
+            if (node != null && node.suffixMatch != null) {
+                longestSuffixMatch = node.suffixMatch;
+            }
+        }
+
+        if (node != null && node.exactMatch != null) {
+            return node.exactMatch;
+        }
+
+        if (longestSuffixMatch != null) {
+            return longestSuffixMatch;
+        }
+
+        for (WildcardPattern wildcardPattern : wildcardPatterns) {
+            if (wildcardPattern.matches(host)) {
+                return wildcardPattern.nonProxyHost;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A node of the trie of reversed non-proxy hosts.
+     */
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+
+        /**
+         * The non-proxy host that matches hosts equal to the path to this node.
+         */
+        String exactMatch;
+
+        /**
+         * The leading-wildcard non-proxy host that matches hosts ending with the path to this node.
+         */
+        String suffixMatch;
+
+        /**
+         * Returns the node for the reversed string, creating nodes as needed.
+         */
+        Node insert(String string) {
+            Node node = this;
+            for (int i = string.length() - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(string.charAt(i), c -> new Node());
+            }
+
+            return node;
+        }
+    }
+
+    /**
+     * A pattern in which '*' matches any sequence of characters.
+     */
+    private static class WildcardPattern {
+        final String nonProxyHost;
+
+        /**
+         * The literal parts between the wildcards. The first part is empty if the pattern starts with a wildcard, and the last part is
+         * empty if the pattern ends with a wildcard.
+         */
+        final String[] parts;
+
+        WildcardPattern(String pattern, String nonProxyHost) {
+            this.nonProxyHost = nonProxyHost;
+            this.parts = pattern.split("\\*", -1);
+        }
+
+        boolean matches(String host) {
+            String first = parts[0];
+            String last = parts[parts.length - 1];
+
+            if (host.length() < first.length() + last.length() || !host.startsWith(first) || !host.endsWith(last)) {
+                return false;
+            }
+
+            // match the middle parts left to right, as early as possible, between the first and last parts
+            int position = first.length();
+            int end = host.length() - last.length();
+            for (int i = 1; i < parts.length - 1; i++) {
+                int found = host.indexOf(parts[i], position);
+                if (found < 0 || found + parts[i].length() > end) {
+                    return false;
+                }
+
+                position = found + parts[i].length();
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.browserup.bup.proxy;
+
+import com.browserup.bup.util.RegexUtil;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable, compiled index of URL-matching rules, such as {@link BlocklistEntry}, {@link RewriteRule}, or the patterns of an
+ * {@link Allowlist}. Each rule consists of a regular expression that must match the entire URL and, optionally, a regular
+ * expression that must match the HTTP method.
+ * <p>
+ * Instead of running every rule's regular expression against every URL, the index extracts a literal string from each URL
+ * pattern that any matching URL must contain (e.g. "www.example.com/" from "https?://www\.example\.com/.*"), and finds the
+ * literals contained in a URL in a single pass over the URL. Method patterns that are simple alternations of method names
+ * (e.g. "GET|POST") are indexed by method. Only the rules selected by the indexes, and the rules that could not be indexed,
+ * are checked against their regular expressions.
+ * <p>
+ * Rules are matched in the order in which they were supplied. Since the index is immutable, changes to a rule set should be
+ * made by creating a new index (e.g. using {@link #withRules(Collection)}) and replacing the reference to the old index. The
+ * literal and method indexes are only compiled when the index is first used to match a URL, so creating an index is cheap.
+ *
+ * @param <T> type of the rules in the index
+ */
+public class UrlRuleIndex<T> {
+    private final List<T> rules;
+
+    private final Function<? super T, Pattern> urlPatternFunction;
+    private final Function<? super T, Pattern> httpMethodPatternFunction;
+
+    /**
+     * The compiled index, or null until the index is first used to match a URL. Compiled lazily, so that a rule set that is built up
+     * one rule at a time is only compiled once, rather than once for every rule.
+     */
+    private volatile CompiledRules compiledRules;
+
+    private UrlRuleIndex(Collection<? extends T> rules,
+                         Function<? super T, Pattern> urlPatternFunction,
+                         Function<? super T, Pattern> httpMethodPatternFunction) {
+        this.rules = ImmutableList.copyOf(rules);
+        this.urlPatternFunction = urlPatternFunction;
+        this.httpMethodPatternFunction = httpMethodPatternFunction;
+    }
+
+    /**
+     * Creates an index of the specified rules. The index is compiled when it is first used to match a URL.
+     *
+     * @param rules rules to index, in matching order
+     * @param urlPatternFunction function returning the URL pattern of a rule
+     * @param httpMethodPatternFunction function returning the HTTP method pattern of a rule, or null if the rule matches all methods
+     * @param <T> type of the rules
+     * @return a new index of the rules
+     */
+    public static <T> UrlRuleIndex<T> compile(Collection<? extends T> rules,
+                                              Function<? super T, Pattern> urlPatternFunction,
+                                              Function<? super T, Pattern> httpMethodPatternFunction) {
+        return new UrlRuleIndex<>(rules, urlPatternFunction, httpMethodPatternFunction);
+    }
+
+    /**
+     * Creates an index of the specified rules, which match all HTTP methods. The index is compiled when it is first used to match a URL.
+     *
+     * @param rules rules to index, in matching order
+     * @param urlPatternFunction function returning the URL pattern of a rule
+     * @param <T> type of the rules
+     * @return a new index of the rules
+     */
+    public static <T> UrlRuleIndex<T> compile(Collection<? extends T> rules, Function<? super T, Pattern> urlPatternFunction) {
+        return new UrlRuleIndex<>(rules, urlPatternFunction, rule -> null);
+    }
+
+    /**
+     * Creates a new index of the specified rules, using the same pattern functions as this index. The new index is compiled when it is
+     * first used to match a URL, so replacing an index repeatedly without matching any URL in between is cheap.
+     *
+     * @param newRules rules to index, in matching order
+     * @return a new index of the rules
+     */
+    public UrlRuleIndex<T> withRules(Collection<? extends T> newRules) {
+        return new UrlRuleIndex<>(newRules, urlPatternFunction, httpMethodPatternFunction);
+    }
+
+    /**
+     * @return the rules in this index, in matching order
+     */
+    public List<T> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Returns the first rule that matches the URL and HTTP method.
+     *
+     * @param url URL to match
+     * @param httpMethod HTTP method to match, or null to match only rules that do not have an HTTP method pattern
+     * @return the first matching rule, or null if no rule matches
+     */
+    public T findFirst(String url, String httpMethod) {
+        int index = indexOf(url, httpMethod, 0);
+
+        return index >= 0 ? rules.get(index) : null;
+    }
+
+    /**
+     * Returns the index of the first rule, at or after fromIndex, that matches the URL and HTTP method.
+     *
+     * @param url URL to match
+     * @param httpMethod HTTP method to match, or null to match only rules that do not have an HTTP method pattern
+     * @param fromIndex index of the first rule to consider
+     * @return the index of the first matching rule in {@link #getRules()}, or -1 if no rule matches
+     */
+    public int indexOf(String url, String httpMethod, int fromIndex) {
+        if (fromIndex >= rules.size()) {
+            return -1;
+        }
+
+        return compiledRules().indexOf(url, httpMethod, fromIndex);
+    }
+
+    private CompiledRules compiledRules() {
+        CompiledRules result = compiledRules;
+        if (result == null) {
+            synchronized (this) {
+                result = compiledRules;
+                if (result == null) {
+                    result = new CompiledRules(rules, urlPatternFunction, httpMethodPatternFunction);
+                    compiledRules = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the method names matched by an HTTP method pattern consisting only of alternated method names (e.g. "GET|POST"),
+     * or null if the pattern contains anything else.
+     */
+    static Set<String> httpMethodNames(Pattern httpMethodPattern) {
+        if (httpMethodPattern.flags() != 0) {
+            return null;
+        }
+
+        Set<String> httpMethods = new HashSet<>();
+        for (String alternative : httpMethodPattern.pattern().split("\\|", -1)) {
+            if (alternative.isEmpty() || !alternative.chars().allMatch(c -> (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))) {
+                return null;
+            }
+
+            httpMethods.add(alternative);
+        }
+
+        return httpMethods;
+    }
+
+    /**
+     * The literal and HTTP method indexes of a rule set.
+     */
+    private static class CompiledRules {
+        private final Pattern[] urlPatterns;
+
+        /**
+         * HTTP method patterns of rules whose method pattern could not be indexed. Null for all other rules.
+         */
+        private final Pattern[] httpMethodPatterns;
+
+        /**
+         * Rules whose URL pattern does not contain an indexable literal, and must always be checked.
+         */
+        private final BitSet unindexedRules = new BitSet();
+
+        private final LiteralMatcher literalMatcher = new LiteralMatcher();
+
+        /**
+         * Rules that may match each HTTP method named in an indexed method pattern.
+         */
+        private final Map<String, BitSet> rulesByHttpMethod = new HashMap<>();
+
+        /**
+         * Rules that may match HTTP methods that are not named in any indexed method pattern.
+         */
+        private final BitSet rulesForOtherHttpMethods = new BitSet();
+
+        /**
+         * Rules that do not have an HTTP method pattern.
+         */
+        private final BitSet rulesForAnyHttpMethod = new BitSet();
+
+        private <T> CompiledRules(List<T> rules,
+                                  Function<? super T, Pattern> urlPatternFunction,
+                                  Function<? super T, Pattern> httpMethodPatternFunction) {
+            int size = rules.size();
+            this.urlPatterns = new Pattern[size];
+            this.httpMethodPatterns = new Pattern[size];
+
+            BitSet regexHttpMethodRules = new BitSet();
+
+            for (int i = 0; i < size; i++) {
+                T rule = rules.get(i);
+
+                urlPatterns[i] = urlPatternFunction.apply(rule);
+
+                String literal = RegexUtil.requiredLiteral(urlPatterns[i]);
+                if (literal == null) {
+                    unindexedRules.set(i);
+                } else {
+                    literalMatcher.add(literal, i);
+                }
+
+                Pattern httpMethodPattern = httpMethodPatternFunction.apply(rule);
+                if (httpMethodPattern == null) {
+                    rulesForAnyHttpMethod.set(i);
+                    continue;
+                }
+
+                Set<String> httpMethods = httpMethodNames(httpMethodPattern);
+                if (httpMethods == null) {
+                    httpMethodPatterns[i] = httpMethodPattern;
+                    regexHttpMethodRules.set(i);
+                } else {
+                    for (String httpMethod : httpMethods) {
+                        rulesByHttpMethod.computeIfAbsent(httpMethod, method -> new BitSet()).set(i);
+                    }
+                }
+            }
+
+            literalMatcher.build();
+
+            rulesForOtherHttpMethods.or(rulesForAnyHttpMethod);
+            rulesForOtherHttpMethods.or(regexHttpMethodRules);
+            rulesByHttpMethod.values().forEach(methodRules -> methodRules.or(rulesForOtherHttpMethods));
+        }
+
+        int indexOf(String url, String httpMethod, int fromIndex) {
+            BitSet candidates = (BitSet) unindexedRules.clone();
+            literalMatcher.findLiterals(url, candidates);
+            candidates.and(rulesForHttpMethod(httpMethod));
+
+            for (int i = candidates.nextSetBit(Math.max(fromIndex, 0)); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                Pattern httpMethodPattern = httpMethodPatterns[i];
+                if (httpMethodPattern != null && !httpMethodPattern.matcher(httpMethod).matches()) {
+                    continue;
+                }
+
+                if (urlPatterns[i].matcher(url).matches()) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        private BitSet rulesForHttpMethod(String httpMethod) {
+            if (httpMethod == null) {
+                return rulesForAnyHttpMethod;
+            }
+
+            return rulesByHttpMethod.getOrDefault(httpMethod, rulesForOtherHttpMethods);
+        }
+    }
+
+    /**
+     * An Aho-Corasick automaton that finds all of the indexed literals contained in a string in a single pass.
+     */
+    private static class LiteralMatcher {
+        private static final int[] NO_RULES = new int[0];
+
+        private final Node root = new Node();
+
+        void add(String literal, int ruleIndex) {
+            Node node = root;
+            for (int i = 0; i < literal.length(); i++) {
+                node = node.children.computeIfAbsent(literal.charAt(i), c -> new Node());
+            }
+
+            node.rules = Arrays.copyOf(node.rules, node.rules.length + 1);
+            node.rules[node.rules.length - 1] = ruleIndex;
+        }
+
+        /**
+         * Computes the failure and output links of every node. Must be called after all literals have been added.
+         */
+        void build() {
+            Queue<Node> queue = new ArrayDeque<>();
+
+            root.failure = root;
+            for (Node child : root.children.values()) {
+                child.failure = root;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+
+                for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                    char c = entry.getKey();
+                    Node child = entry.getValue();
+
+                    Node failure = node.failure;
+                    while (failure != root && !failure.children.containsKey(c)) {
+                        failure = failure.failure;
+                    }
+
+                    child.failure = failure.children.getOrDefault(c, root);
+                    child.output = child.failure.rules.length > 0 ? child.failure : child.failure.output;
+
+                    queue.add(child);
+                }
+            }
+        }
+
+        /**
+         * Sets the bit of every rule whose literal is contained in the text.
+         */
+        void findLiterals(String text, BitSet rules) {
+            if (root.children.isEmpty()) {
+                return;
+            }
+
+            Node node = root;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+
+                Node next;
+                while ((next = node.children.get(c)) == null && node != root) {
+                    node = node.failure;
+                }
+
+                node = next != null ? next : root;
+
+                for (Node match = node.rules.length > 0 ? node : node.output; match != null; match = match.output) {
+                    for (int ruleIndex : match.rules) {
+                        rules.set(ruleIndex);
+                    }
+                }
+            }
+        }
+
+        private static class Node {
+            private final Map<Character, Node> children = new HashMap<>(4);
+
+            private int[] rules = NO_RULES;
+
+            /**
+             * The node for the longest proper suffix of this node's string that is also a prefix of an indexed literal.
+             */
+            private Node failure;
+
+            /**
+             * The nearest node along the failure links that completes at least one literal.
+             */
+            private Node output;
+        }
+    }
+}
@@ -1,96 +1,183 @@
 package com.browserup.bup.proxy.dns;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
 
 /**
  * Base class that provides host name remapping capabilities for AdvancedHostResolvers. Subclasses must implement {@link #resolveRemapped(String)}
  * instead of {@link com.browserup.bup.proxy.dns.HostResolver#resolve(String)}, which takes the remapped host as the input parameter.
+ * <p>
+ * In addition to exact host names, original hosts may be wildcard patterns of the form "*.example.com", which remap every host that ends
+ * with ".example.com" (but not "example.com" itself). A remapping of the exact host takes precedence over wildcard remappings, and the
+ * wildcard remapping with the longest suffix takes precedence over shorter ones. For example, with the remappings
+ * "*.staging.example.com" to "127.0.0.1" and "*.example.com" to "10.0.0.1", "api.staging.example.com" is remapped to "127.0.0.1".
+ * <p>
+ * The remappings are kept in a forward map, a reverse index from each remapped host to its original hosts, and a trie of the labels of
+ * the wildcard patterns, all of which are updated in place, so that the cost of a change is proportional to the number of remappings it
+ * changes rather than to the total number of remappings. Changes are serialized and counted: lookups do not take a lock, and are
+ * repeated if a change was made while they were running, so that every change (including the replacement of all remappings by
+ * {@link #remapHosts(Map)}) becomes visible to lookups atomically.
  */
 public abstract class AbstractHostNameRemapper implements AdvancedHostResolver {
     /**
-     * Host name remappings, maintained as a reference to an ImmutableMap. The ImmutableMap type is specified explicitly because ImmutableMap
-     * guarantees the iteration order of the map's entries. Specifying ImmutableMap also makes clear that the underlying map will never change,
-     * and that any modifications to the host name remappings will result in an entirely new map.
-     *
-     * The current implementation does not actually use any of the special features of AtomicReference, but it does rely on synchronizing on
-     * the AtomicReference when performing write operations. It could be replaced by a volatile reference to a Map and separate lock object.
+     * The number of times a lookup is repeated without a lock because a change was made while it was running, before the lookup is
+     * made while holding off changes.
+     */
+    private static final int MAX_OPTIMISTIC_READS = 3;
+
+    private static final String WILDCARD_PREFIX = "*.";
+
+    /**
+     * Serializes changes to the host name remappings. All of the following fields are modified only while holding this monitor.
+     */
+    private final Object writeMonitor = new Object();
+
+    /**
+     * Incremented before and after each change to the host name remappings, so that it is odd while a change is being made.
      */
-    private final AtomicReference<ImmutableMap<String, String>> remappedHostNames = new AtomicReference<>(ImmutableMap.of());
+    private volatile long writeVersion;
 
+    /**
+     * Remappings of exact host names, by original host.
+     */
+    private final ConcurrentMap<String, Remapping> exactRemappings = new ConcurrentHashMap<>();
+
+    /**
+     * Wildcard remappings, in a trie of the labels of the wildcard patterns' suffixes, starting with the last label.
+     */
+    private final WildcardNode wildcardRemappings = new WildcardNode();
+
+    private volatile int wildcardRemappingCount;
+
+    /**
+     * All remappings, in the order in which they are applied.
+     */
+    private final NavigableMap<Long, Remapping> remappingsInOrder = new ConcurrentSkipListMap<>();
+
+    /**
+     * The original hosts of each remapped host, in the order in which their remappings are applied.
+     */
+    private final ConcurrentMap<String, NavigableMap<Long, String>> originalHostnames = new ConcurrentHashMap<>();
+
+    private long lastSequence;
+
+    /**
+     * The result of {@link #getHostRemappings()}, or null if the remappings changed since it was last built.
+     */
+    private volatile ImmutableMap<String, String> hostRemappings = ImmutableMap.of();
+
+    /**
+     * Replaces the host remappings with the specified remappings, which are applied in the order specified by the Map's iterator.
+     * Remappings that are already defined with the same remapped host and in the same relative order are kept; other remappings are
+     * removed or replaced. Since the remappings are ordered by a sequence number, the cost of the change is proportional to the number
+     * of specified remappings and removed remappings, not to the number of remappings that are kept.
+     *
+     * @param hostRemappings Map of {@code <original hostname, remapped hostname>}
+     */
     @Override
     public void remapHosts(Map<String, String> hostRemappings) {
-        synchronized (remappedHostNames) {
-            ImmutableMap<String, String> newRemappings = ImmutableMap.copyOf(hostRemappings);
+        write(() -> {
+            long previousLastSequence = lastSequence;
 
-            remappedHostNames.set(newRemappings);
-        }
-    }
+            // the sequence of the last kept or added remapping. a previous remapping can only be kept if its sequence is greater, since
+            // it is applied after that remapping.
+            long lastAppliedSequence = 0;
 
-    @Override
-    public void remapHost(String originalHost, String remappedHost) {
-        synchronized (remappedHostNames) {
-            Map<String, String> currentHostRemappings = remappedHostNames.get();
+            // the sequence of the last kept previous remapping. all previous remappings before it were kept, removed or replaced.
+            long lastKeptSequence = 0;
 
-            // use a LinkedHashMap to build the new remapping, to avoid duplicate key issues if the originalHost is already in the map
-            Map<String, String> builderMap = Maps.newLinkedHashMap(currentHostRemappings);
-            builderMap.remove(originalHost);
-            builderMap.put(originalHost, remappedHost);
+            for (Map.Entry<String, String> hostRemapping : hostRemappings.entrySet()) {
+                Remapping existing = findRemapping(hostRemapping.getKey());
+                if (existing != null && existing.sequence > lastAppliedSequence && existing.remappedHost.equals(hostRemapping.getValue())) {
+                    // the previous remappings between the last kept remapping and this one are not specified, or specified later
+                    removeRemappings(lastKeptSequence, existing.sequence);
 
-            ImmutableMap<String, String> newRemappings = ImmutableMap.copyOf(builderMap);
+                    lastAppliedSequence = existing.sequence;
+                    lastKeptSequence = existing.sequence;
+                    continue;
+                }
 
-            remappedHostNames.set(newRemappings);
-        }
+                if (existing != null) {
+                    remove(existing);
+                }
+
+                lastAppliedSequence = add(hostRemapping.getKey(), hostRemapping.getValue()).sequence;
+            }
+
+            // the previous remappings after the last kept remapping were not specified, since specified ones were replaced
+            removeRemappings(lastKeptSequence, previousLastSequence + 1);
+        });
     }
 
     @Override
-    public void removeHostRemapping(String originalHost) {
-        synchronized (remappedHostNames) {
-            Map<String, String> currentHostRemappings = remappedHostNames.get();
-            if (currentHostRemappings.containsKey(originalHost)) {
-                // use a LinkedHashMap to build the new remapping, to take advantage of the remove() method
-                Map<String, String> builderMap = Maps.newLinkedHashMap(currentHostRemappings);
-                builderMap.remove(originalHost);
+    public void remapHost(String originalHost, String remappedHost) {
+        write(() -> {
+            Remapping existing = findRemapping(originalHost);
+            if (existing != null) {
+                remove(existing);
+            }
 
-                ImmutableMap<String, String> newRemappings = ImmutableMap.copyOf(builderMap);
+            add(originalHost, remappedHost);
+        });
+    }
 
-                remappedHostNames.set(newRemappings);
+    @Override
+    public void removeHostRemapping(String originalHost) {
+        synchronized (writeMonitor) {
+            if (findRemapping(originalHost) != null) {
+                write(() -> remove(findRemapping(originalHost)));
             }
         }
     }
 
     @Override
     public void clearHostRemappings() {
-        synchronized (remappedHostNames) {
-            remappedHostNames.set(ImmutableMap.of());
-        }
+        write(() -> {
+            exactRemappings.clear();
+            wildcardRemappings.children.clear();
+            wildcardRemappingCount = 0;
+            remappingsInOrder.clear();
+            originalHostnames.clear();
+        });
     }
 
     @Override
     public Map<String, String> getHostRemappings() {
-        return remappedHostNames.get();
+        ImmutableMap<String, String> remappings = hostRemappings;
+        if (remappings != null) {
+            return remappings;
+        }
+
+        synchronized (writeMonitor) {
+            if (hostRemappings == null) {
+                ImmutableMap.Builder<String, String> builder = ImmutableMap.builderWithExpectedSize(remappingsInOrder.size());
+                remappingsInOrder.values().forEach(remapping -> builder.put(remapping.originalHost, remapping.remappedHost));
+
+                hostRemappings = builder.build();
+            }
+
+            return hostRemappings;
+        }
     }
 
     @Override
     public Collection<String> getOriginalHostnames(String remappedHost) {
-        //TODO: implement this using a reverse mapping multimap that is guarded by the same lock as remappedHostNames, since this method will likely be called
-        // very often when forging certificates
-        List<String> originalHostnames;
-
-        Map<String, String> currentRemappings = remappedHostNames.get();
-        originalHostnames = currentRemappings.entrySet().stream()
-                .filter(entry -> entry.getValue().equals(remappedHost))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        return read(() -> {
+            NavigableMap<Long, String> originalHosts = originalHostnames.get(remappedHost);
 
-        return originalHostnames;
+            return originalHosts == null ? Collections.<String>emptyList() : ImmutableList.copyOf(originalHosts.values());
+        });
     }
 
     /**
@@ -101,7 +188,7 @@ public abstract class AbstractHostNameRemapper implements AdvancedHostResolver {
      * @return a remapped host, or the original host if no mapping exists
      */
     public String applyRemapping(String originalHost) {
-        String remappedHost = remappedHostNames.get().get(originalHost);
+        String remappedHost = read(() -> findRemappedHost(originalHost));
 
         if (remappedHost != null) {
             return remappedHost;
@@ -131,4 +218,176 @@ public abstract class AbstractHostNameRemapper implements AdvancedHostResolver {
 
         return resolveRemapped(remappedHost);
     }
+
+    private void write(Runnable change) {
+        synchronized (writeMonitor) {
+            writeVersion++;
+            try {
+                change.run();
+            } finally {
+                hostRemappings = null;
+                writeVersion++;
+            }
+        }
+    }
+
+    private <T> T read(Supplier<T> lookup) {
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_READS; attempt++) {
+            long version = writeVersion;
+            if ((version & 1) != 0) {
+                // a change is being made
+                break;
+            }
+
+            T result = lookup.get();
+
+            if (writeVersion == version) {
+                return result;
+            }
+        }
+
+        synchronized (writeMonitor) {
+            return lookup.get();
+        }
+    }
+
+    /**
+     * Returns the host that the original host is remapped to by an exact or wildcard remapping, or null if it is not remapped.
+     */
+    private String findRemappedHost(String originalHost) {
+        Remapping remapping = exactRemappings.get(originalHost);
+        if (remapping != null) {
+            return remapping.remappedHost;
+        }
+
+        if (wildcardRemappingCount == 0) {
+            return null;
+        }
+
+        // walk the trie from the last label of the host, remembering the deepest wildcard remapping that leaves at least one label
+        WildcardNode node = wildcardRemappings;
+        Remapping longestMatch = null;
+        int end = originalHost.length();
+        int dot;
+        while ((dot = originalHost.lastIndexOf('.', end - 1)) > 0) {
+            node = node.children.get(originalHost.substring(dot + 1, end));
+            if (node == null) {
+                break;
+            }
+
+            if (node.remapping != null) {
+                longestMatch = node.remapping;
+            }
+
+            end = dot;
+        }
+
+        return longestMatch != null ? longestMatch.remappedHost : null;
+    }
+
+    /**
+     * Returns the remapping whose original host (exact host or wildcard pattern) is the specified original host, or null if there is none.
+     */
+    private Remapping findRemapping(String originalHost) {
+        if (isWildcardPattern(originalHost)) {
+            WildcardNode node = findWildcardNode(originalHost, false);
+            return node != null ? node.remapping : null;
+        }
+
+        return exactRemappings.get(originalHost);
+    }
+
+    private Remapping add(String originalHost, String remappedHost) {
+        Remapping remapping = new Remapping(originalHost, remappedHost, ++lastSequence);
+
+        if (isWildcardPattern(originalHost)) {
+            findWildcardNode(originalHost, true).remapping = remapping;
+            wildcardRemappingCount++;
+        } else {
+            exactRemappings.put(originalHost, remapping);
+        }
+
+        remappingsInOrder.put(remapping.sequence, remapping);
+        originalHostnames.computeIfAbsent(remappedHost, key -> new ConcurrentSkipListMap<>()).put(remapping.sequence, originalHost);
+
+        return remapping;
+    }
+
+    private void remove(Remapping remapping) {
+        if (isWildcardPattern(remapping.originalHost)) {
+            // the node is left in the trie; nodes are only removed when all remappings are cleared
+            findWildcardNode(remapping.originalHost, false).remapping = null;
+            wildcardRemappingCount--;
+        } else {
+            exactRemappings.remove(remapping.originalHost);
+        }
+
+        remappingsInOrder.remove(remapping.sequence);
+
+        NavigableMap<Long, String> originalHosts = originalHostnames.get(remapping.remappedHost);
+        originalHosts.remove(remapping.sequence);
+        if (originalHosts.isEmpty()) {
+            originalHostnames.remove(remapping.remappedHost);
+        }
+    }
+
+    /**
+     * Removes the remappings whose sequence is between the specified sequences, exclusive.
+     */
+    private void removeRemappings(long fromSequence, long toSequence) {
+        if (toSequence - fromSequence > 1) {
+            new ArrayList<>(remappingsInOrder.subMap(fromSequence, false, toSequence, false).values()).forEach(this::remove);
+        }
+    }
+
+    /**
+     * Returns the trie node of the wildcard pattern, or null if it does not exist and create is false.
+     */
+    private WildcardNode findWildcardNode(String wildcardPattern, boolean create) {
+        String suffix = wildcardPattern.substring(WILDCARD_PREFIX.length());
+
+        WildcardNode node = wildcardRemappings;
+        int end = suffix.length();
+        while (end > 0 && node != null) {
+            int dot = suffix.lastIndexOf('.', end - 1);
+            String label = suffix.substring(dot + 1, end);
+
+            node = create ? node.children.computeIfAbsent(label, key -> new WildcardNode()) : node.children.get(label);
+            end = Math.max(dot, 0);
+        }
+
+        return node;
+    }
+
+    private static boolean isWildcardPattern(String originalHost) {
+        return originalHost.startsWith(WILDCARD_PREFIX) && originalHost.length() > WILDCARD_PREFIX.length();
+    }
+
+    private static class Remapping {
+        final String originalHost;
+        final String remappedHost;
+
+        /**
+         * The position of the remapping in the order in which the remappings are applied.
+         */
+        final long sequence;
+
+        Remapping(String originalHost, String remappedHost, long sequence) {
+            this.originalHost = originalHost;
+            this.remappedHost = remappedHost;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A node of the trie of wildcard remappings, which is reached from the root by the labels of a suffix, starting with the last label.
+     */
+    private static class WildcardNode {
+        final ConcurrentMap<String, WildcardNode> children = new ConcurrentHashMap<>();
+
+        /**
+         * The remapping of hosts that end with a dot followed by the suffix of this node, or null if there is none.
+         */
+        volatile Remapping remapping;
+    }
 }
@@ -13,7 +13,8 @@ public interface AdvancedHostResolver extends HostResolver {
     /**
      * Replaces the host remappings in the existing list of remappings (if any) with the specified remappings. The remappings will be
      * applied in the order specified by the Map's iterator.
-     * <b>Note:</b> The original hostnames must exactly match the requested hostname. It is not a domain or regular expression match.
+     * <b>Note:</b> The original hostnames must exactly match the requested hostname. It is not a domain or regular expression match,
+     * although resolvers extending {@link AbstractHostNameRemapper} also accept wildcard patterns such as "*.example.com".
      *
      * @param hostRemappings Map of {@code <original hostname, remapped hostname>}
      */
@@ -24,7 +25,8 @@ public interface AdvancedHostResolver extends HostResolver {
      * remappings are applied. If there is already a remapping for the specified originalHost, it will be removed before
      * the new remapping is added to the end of the host remapping list (and will therefore be the last remapping applied).
      *
-     * @param originalHost Original host to remap. Must exactly match the requested hostname (not a domain or regular expression match).
+     * @param originalHost Original host to remap. Must exactly match the requested hostname (not a domain or regular expression match),
+     *                     or be a wildcard pattern such as "*.example.com" if the resolver extends {@link AbstractHostNameRemapper}.
      * @param remappedHost hostname that will replace originalHost
      */
     void remapHost(String originalHost, String remappedHost);
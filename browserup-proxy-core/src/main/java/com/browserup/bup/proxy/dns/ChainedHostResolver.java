@@ -1,15 +1,24 @@
 package com.browserup.bup.proxy.dns;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 import static java.util.Collections.*;
 
@@ -32,13 +41,35 @@ import static java.util.Collections.*;
  *     <li>{@link com.browserup.bup.proxy.dns.AdvancedHostResolver#setPositiveDNSCacheTimeout(int, java.util.concurrent.TimeUnit)}</li>
  *     <li>{@link com.browserup.bup.proxy.dns.AdvancedHostResolver#clearDNSCache()}</li>
  * </ul>
+ * {@link #resolve(String)} usually does not take a lock. The chain's configuration is an immutable snapshot that is replaced atomically
+ * when it changes, and write methods are serialized and counted: if a write method runs while a lookup is in progress, the lookup is
+ * repeated, so that its result never reflects a partially applied write. Only if write methods keep interrupting a lookup, the lookup is
+ * made while holding a read lock, which holds off write methods but not other lookups.
+ * <p>
+ * By default, resolvers are queried one after another until one of them returns addresses. In racing mode (see {@link #setRacing(boolean)}),
+ * all resolvers are queried concurrently and the first addresses returned by any resolver are used, so that a slow resolver does not delay
+ * lookups that another resolver can answer. The lookups of each resolver are counted in its {@link ResolverStatistics}.
  */
 public class ChainedHostResolver implements AdvancedHostResolver {
-    private final List<? extends AdvancedHostResolver> resolvers;
+    /**
+     * The number of times a lookup is repeated without a lock because a write method ran concurrently, before the lookup is made while
+     * holding off write methods.
+     */
+    private static final int MAX_OPTIMISTIC_LOOKUPS = 2;
+
+    private volatile Chain chain;
 
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final Lock readLock = readWriteLock.readLock();
-    private final Lock writeLock = readWriteLock.writeLock();
+    /**
+     * The write lock serializes write methods and configuration changes. The read lock is only held by lookups that were repeatedly
+     * interrupted by write methods.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Incremented before and after each write method, so that it is odd while a write method is running. Only modified while holding
+     * the write lock.
+     */
+    private volatile long writeVersion;
 
     /**
      * Creates a ChainedHostResolver that applies {@link com.browserup.bup.proxy.dns.AdvancedHostResolver} methods to the specified resolvers
@@ -47,11 +78,23 @@ public class ChainedHostResolver implements AdvancedHostResolver {
      * @param resolvers resolvers to invoke, in the order specified by the collection's iterator
      */
     public ChainedHostResolver(Collection<? extends AdvancedHostResolver> resolvers) {
-        if (resolvers == null) {
-            this.resolvers = emptyList();
-        } else {
-            this.resolvers = ImmutableList.copyOf(resolvers);
-        }
+        this(resolvers, false);
+    }
+
+    /**
+     * Creates a ChainedHostResolver that applies {@link com.browserup.bup.proxy.dns.AdvancedHostResolver} methods to the specified resolvers
+     * in the order specified by the collection's iterator.
+     *
+     * @param resolvers resolvers to invoke, in the order specified by the collection's iterator
+     * @param racing    true to query the resolvers concurrently when resolving a host (see {@link #setRacing(boolean)})
+     */
+    public ChainedHostResolver(Collection<? extends AdvancedHostResolver> resolvers, boolean racing) {
+        List<? extends AdvancedHostResolver> resolverList = resolvers == null ? emptyList() : ImmutableList.copyOf(resolvers);
+
+        ImmutableList.Builder<ResolverStatistics> statistics = ImmutableList.builder();
+        resolverList.forEach(resolver -> statistics.add(new ResolverStatistics(resolver)));
+
+        this.chain = new Chain(statistics.build(), racing);
     }
 
     /**
@@ -61,121 +104,256 @@ public class ChainedHostResolver implements AdvancedHostResolver {
      * @return resolvers used by this ChainedHostResolver
      */
     public Collection<? extends AdvancedHostResolver> getResolvers() {
-        return ImmutableList.copyOf(resolvers);
+        return chain.resolvers;
     }
 
-    @Override
-    public void remapHosts(Map<String, String> hostRemappings) {
+    /**
+     * Returns the lookup statistics of the resolvers used by this ChainedHostResolver, in the order in which the resolvers are queried.
+     *
+     * @return lookup statistics of each resolver
+     */
+    public List<ResolverStatistics> getStatistics() {
+        return chain.statistics;
+    }
+
+    /**
+     * @return true if the resolvers are queried concurrently when resolving a host
+     */
+    public boolean isRacing() {
+        return chain.racing;
+    }
+
+    /**
+     * Sets whether the resolvers are queried concurrently when resolving a host. When racing, {@link #resolve(String)} returns the first
+     * non-empty result returned by any resolver, and the lookups of the other resolvers are cancelled. Lookups that do not fit into the
+     * bounded pool of racing threads are made by the calling thread. When not racing, the resolvers are queried one after another,
+     * and the first non-empty result is returned.
+     *
+     * @param racing true to query the resolvers concurrently
+     */
+    public void setRacing(boolean racing) {
+        Lock writeLock = lock.writeLock();
         writeLock.lock();
         try {
-            resolvers.forEach(resolver -> resolver.remapHosts(hostRemappings));
+            chain = new Chain(chain.statistics, racing);
         } finally {
             writeLock.unlock();
         }
     }
 
+    @Override
+    public void remapHosts(Map<String, String> hostRemappings) {
+        write(resolver -> resolver.remapHosts(hostRemappings));
+    }
+
     @Override
     public void remapHost(String originalHost, String remappedHost) {
-        writeLock.lock();
-        try {
-            resolvers.forEach(resolver -> resolver.remapHost(originalHost, remappedHost));
-        } finally {
-            writeLock.unlock();
-        }
+        write(resolver -> resolver.remapHost(originalHost, remappedHost));
     }
 
     @Override
     public void removeHostRemapping(String originalHost) {
-        writeLock.lock();
-        try {
-            resolvers.forEach(resolver -> resolver.removeHostRemapping(originalHost));
-        } finally {
-            writeLock.unlock();
-        }
+        write(resolver -> resolver.removeHostRemapping(originalHost));
     }
 
     @Override
     public void clearHostRemappings() {
-        writeLock.lock();
-        try {
-            resolvers.forEach(AdvancedHostResolver::clearHostRemappings);
-        } finally {
-            writeLock.unlock();
-        }
+        write(AdvancedHostResolver::clearHostRemappings);
     }
 
     @Override
     public Map<String, String> getHostRemappings() {
-        readLock.lock();
-        try {
-            if (resolvers.isEmpty()) {
-                return emptyMap();
-            } else {
-                return resolvers.get(0).getHostRemappings();
-            }
-        } finally {
-            readLock.unlock();
+        List<AdvancedHostResolver> resolvers = chain.resolvers;
+        if (resolvers.isEmpty()) {
+            return emptyMap();
+        } else {
+            return resolvers.get(0).getHostRemappings();
         }
     }
 
     @Override
     public Collection<String> getOriginalHostnames(String remappedHost) {
-        readLock.lock();
-        try {
-            if (resolvers.isEmpty()) {
-                return emptyList();
-            } else {
-                return resolvers.get(0).getOriginalHostnames(remappedHost);
-            }
-        } finally {
-            readLock.unlock();
+        List<AdvancedHostResolver> resolvers = chain.resolvers;
+        if (resolvers.isEmpty()) {
+            return emptyList();
+        } else {
+            return resolvers.get(0).getOriginalHostnames(remappedHost);
         }
     }
 
     @Override
     public void clearDNSCache() {
-        writeLock.lock();
-        try {
-            resolvers.forEach(AdvancedHostResolver::clearDNSCache);
-        } finally {
-            writeLock.unlock();
-        }
+        write(AdvancedHostResolver::clearDNSCache);
     }
 
     @Override
     public void setPositiveDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
-        writeLock.lock();
+        write(resolver -> resolver.setPositiveDNSCacheTimeout(timeout, timeUnit));
+    }
+
+    @Override
+    public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+        write(resolver -> resolver.setNegativeDNSCacheTimeout(timeout, timeUnit));
+    }
+
+    @Override
+    public Collection<InetAddress> resolve(String host) {
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_LOOKUPS; attempt++) {
+            long version = writeVersion;
+            if ((version & 1) != 0) {
+                // a write method is running
+                break;
+            }
+
+            Collection<InetAddress> results = resolve(chain, host);
+
+            if (writeVersion == version) {
+                return results;
+            }
+        }
+
+        // write methods keep running concurrently, so resolve the host while holding them off. other lookups are not held off.
+        Lock readLock = lock.readLock();
+        readLock.lock();
         try {
-            resolvers.forEach(resolver -> resolver.setPositiveDNSCacheTimeout(timeout, timeUnit));
+            return resolve(chain, host);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
-    @Override
-    public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+    private void write(Consumer<AdvancedHostResolver> operation) {
+        Lock writeLock = lock.writeLock();
         writeLock.lock();
         try {
-            resolvers.forEach(resolver -> resolver.setNegativeDNSCacheTimeout(timeout, timeUnit));
+            writeVersion++;
+            try {
+                chain.resolvers.forEach(operation);
+            } finally {
+                writeVersion++;
+            }
         } finally {
             writeLock.unlock();
         }
     }
 
-    @Override
-    public Collection<InetAddress> resolve(String host) {
-        readLock.lock();
+    private static Collection<InetAddress> resolve(Chain chain, String host) {
+        if (chain.racing && chain.statistics.size() > 1) {
+            return race(chain, host);
+        }
+
+        // attempt to resolve the host using all resolvers. returns the results from the first successful resolution.
+        for (ResolverStatistics statistics : chain.statistics) {
+            Collection<InetAddress> results = resolve(statistics, host);
+            if (!results.isEmpty()) {
+                return results;
+            }
+        }
+
+        // no resolvers returned results
+        return emptyList();
+    }
+
+    /**
+     * Queries all resolvers concurrently, and returns the first non-empty result, or an empty list if no resolver returned addresses.
+     * Exceptions thrown by a resolver are treated as empty results. Once the result is known, the remaining lookups are cancelled.
+     */
+    private static Collection<InetAddress> race(Chain chain, String host) {
+        CompletableFuture<Collection<InetAddress>> firstResults = new CompletableFuture<>();
+        AtomicInteger pendingLookups = new AtomicInteger(chain.statistics.size());
+
+        List<Future<?>> lookups = new ArrayList<>(chain.statistics.size());
         try {
-            // attempt to resolve the host using all resolvers. returns the results from the first successful resolution.
-            return resolvers.stream()
-                    .map(resolver -> resolver.resolve(host))
-                    .filter(results -> !results.isEmpty())
-                    .findFirst()
-                    .orElse(emptyList());
-
-            // no resolvers returned results
+            for (ResolverStatistics statistics : chain.statistics) {
+                if (firstResults.isDone()) {
+                    // a lookup made by this thread because the pool was saturated already returned addresses
+                    break;
+                }
+
+                lookups.add(RacingExecutorHolder.EXECUTOR.submit(() -> {
+                    Collection<InetAddress> results;
+                    try {
+                        results = resolve(statistics, host);
+                    } catch (RuntimeException e) {
+                        results = emptyList();
+                    }
+
+                    if (!results.isEmpty()) {
+                        firstResults.complete(results);
+                    } else if (pendingLookups.decrementAndGet() == 0) {
+                        firstResults.complete(emptyList());
+                    }
+                }));
+            }
+
+            return firstResults.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return emptyList();
+        } catch (ExecutionException e) {
+            // firstResults is never completed exceptionally
+            return emptyList();
         } finally {
-            readLock.unlock();
+            lookups.forEach(lookup -> lookup.cancel(true));
+        }
+    }
+
+    private static Collection<InetAddress> resolve(ResolverStatistics statistics, String host) {
+        long start = System.nanoTime();
+
+        Collection<InetAddress> results;
+        try {
+            results = statistics.getResolver().resolve(host);
+        } catch (RuntimeException e) {
+            statistics.lookupFailed(System.nanoTime() - start);
+            throw e;
+        }
+
+        statistics.lookupCompleted(!results.isEmpty(), System.nanoTime() - start);
+
+        return results;
+    }
+
+    /**
+     * The configuration of the chain. Replaced, never modified.
+     */
+    private static class Chain {
+        final List<AdvancedHostResolver> resolvers;
+        final List<ResolverStatistics> statistics;
+        final boolean racing;
+
+        Chain(List<ResolverStatistics> statistics, boolean racing) {
+            this.statistics = statistics;
+            this.resolvers = statistics.stream()
+                    .map(ResolverStatistics::getResolver)
+                    .collect(ImmutableList.toImmutableList());
+            this.racing = racing;
+        }
+    }
+
+    /**
+     * Holds the executor that queries resolvers in racing mode, so that it is only created if racing mode is used. The number of threads
+     * and queued lookups is bounded. If both are exhausted, lookups are made by the calling thread.
+     */
+    private static class RacingExecutorHolder {
+        private static final int MAX_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+        private static final int MAX_QUEUED_LOOKUPS = 256;
+
+        static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+        private static ThreadPoolExecutor createExecutor() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(MAX_QUEUED_LOOKUPS),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("chained-host-resolver-%d")
+                            .setDaemon(true)
+                            .build(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+
+            return executor;
         }
     }
 }
@@ -0,0 +1,218 @@
+package com.browserup.bup.proxy.dns;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.resolver.dns.DefaultDnsCnameCache;
+import io.netty.resolver.dns.DnsNameResolver;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.resolver.dns.DnsServerAddressStreamProviders;
+import io.netty.resolver.dns.SequentialDnsServerAddressStreamProvider;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.IDN;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link com.browserup.bup.proxy.dns.AdvancedHostResolver} that resolves hostnames asynchronously using Netty's {@link DnsNameResolver},
+ * instead of the JVM's blocking {@link InetAddress#getAllByName(String)}. Unlike the {@link NativeCacheManipulatingResolver}, it does not
+ * depend on JVM internals to manipulate the DNS cache:
+ * <ul>
+ *     <li>Successful lookups are cached for the TTL of the DNS records, limited by the positive cache timeout, if set.</li>
+ *     <li>Failed lookups are cached for the negative cache timeout, which defaults to 10 seconds.</li>
+ *     <li>Concurrent lookups of the same hostname are coalesced into a single DNS query.</li>
+ * </ul>
+ * The resolver queries the name servers configured for the platform (e.g. in /etc/resolv.conf), or the specified name servers, in order.
+ * Entries in the hosts file (e.g. /etc/hosts) are resolved without a query. The resolver uses its own I/O thread, which is released when
+ * the resolver is closed.
+ */
+public class NettyDnsResolver extends AbstractHostNameRemapper implements AdvancedHostResolver, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(NettyDnsResolver.class);
+
+    /**
+     * The default time to wait for a response to a DNS query.
+     */
+    public static final long DEFAULT_QUERY_TIMEOUT_MS = 5000;
+
+    private final EventLoopGroup eventLoopGroup;
+
+    private final DnsNameResolver resolver;
+
+    private final TtlDnsCache cache = new TtlDnsCache();
+
+    private final DefaultDnsCnameCache cnameCache = new DefaultDnsCnameCache();
+
+    /**
+     * Lookups that have been sent and have not completed yet, by hostname.
+     */
+    private final ConcurrentMap<String, CompletableFuture<List<InetAddress>>> inFlightLookups = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a resolver that queries the platform's name servers.
+     */
+    public NettyDnsResolver() {
+        this(Collections.emptyList(), DEFAULT_QUERY_TIMEOUT_MS);
+    }
+
+    /**
+     * Creates a resolver that queries the specified name servers, in order.
+     *
+     * @param nameServers name servers to query, or an empty list to query the platform's name servers
+     */
+    public NettyDnsResolver(List<InetSocketAddress> nameServers) {
+        this(nameServers, DEFAULT_QUERY_TIMEOUT_MS);
+    }
+
+    /**
+     * Creates a resolver that queries the specified name servers, in order.
+     *
+     * @param nameServers        name servers to query, or an empty list to query the platform's name servers
+     * @param queryTimeoutMillis time to wait for a response to a DNS query
+     */
+    public NettyDnsResolver(List<InetSocketAddress> nameServers, long queryTimeoutMillis) {
+        this.eventLoopGroup = new MultiThreadIoEventLoopGroup(1, new DefaultThreadFactory("browserup-dns", true),
+                NioIoHandler.newFactory());
+
+        DnsNameResolverBuilder builder = new DnsNameResolverBuilder(eventLoopGroup.next())
+                .datagramChannelType(NioDatagramChannel.class)
+                .resolveCache(cache)
+                .cnameCache(cnameCache)
+                .queryTimeoutMillis(queryTimeoutMillis);
+
+        if (nameServers.isEmpty()) {
+            builder.nameServerProvider(DnsServerAddressStreamProviders.platformDefault());
+        } else {
+            builder.nameServerProvider(new SequentialDnsServerAddressStreamProvider(nameServers));
+        }
+
+        this.resolver = builder.build();
+    }
+
+    @Override
+    public void clearDNSCache() {
+        cache.clear();
+        cnameCache.clear();
+    }
+
+    /**
+     * Sets the maximum time to cache successful lookups. Lookups are cached for the TTL of their DNS records, or for the timeout, whichever
+     * is shorter. A timeout of -1 caches successful lookups forever, regardless of their TTL, and a timeout of 0 disables caching.
+     * The timeout applies to lookups that complete after it is set.
+     */
+    @Override
+    public void setPositiveDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+        cache.setPositiveTimeout(timeout, timeUnit);
+    }
+
+    /**
+     * Sets the time to cache failed lookups. A timeout of -1 caches failed lookups forever, and a timeout of 0 disables caching.
+     * The timeout applies to lookups that complete after it is set.
+     */
+    @Override
+    public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+        cache.setNegativeTimeout(timeout, timeUnit);
+    }
+
+    @Override
+    public Collection<InetAddress> resolveRemapped(String remappedHost) {
+        List<InetAddress> cachedAddresses = cache.getAddresses(cacheKey(remappedHost));
+        if (cachedAddresses != null) {
+            return cachedAddresses;
+        }
+
+        try {
+            return resolveRemappedAsync(remappedHost).get();
+        } catch (ExecutionException e) {
+            log.debug("Unable to resolve {}", remappedHost, e.getCause());
+
+            return Collections.emptyList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Applies the host name remappings to the specified host, and resolves the remapped host asynchronously.
+     *
+     * @param host host to resolve
+     * @return a future that completes with the resolved addresses, or exceptionally if the host cannot be resolved
+     */
+    public CompletableFuture<List<InetAddress>> resolveAsync(String host) {
+        return resolveRemappedAsync(applyRemapping(host));
+    }
+
+    /**
+     * Resolves the remapped host asynchronously. If the host is already being resolved, returns the future of the lookup in progress.
+     *
+     * @param remappedHost remapped hostname to resolve
+     * @return a future that completes with the resolved addresses, or exceptionally if the host cannot be resolved
+     */
+    public CompletableFuture<List<InetAddress>> resolveRemappedAsync(String remappedHost) {
+        CompletableFuture<List<InetAddress>> lookup = new CompletableFuture<>();
+
+        CompletableFuture<List<InetAddress>> inFlightLookup = inFlightLookups.putIfAbsent(remappedHost, lookup);
+        if (inFlightLookup != null) {
+            return inFlightLookup;
+        }
+
+        resolver.resolveAll(remappedHost).addListener(future -> {
+            if (!future.isSuccess()) {
+                // the DnsNameResolver does not cache every failed lookup (e.g. most NXDOMAIN responses), so cache the failure here,
+                // before the next lookup of the host can start
+                cache.cache(cacheKey(remappedHost), null, future.cause(), null);
+            }
+
+            inFlightLookups.remove(remappedHost, lookup);
+
+            if (future.isSuccess()) {
+                @SuppressWarnings("unchecked")
+                List<InetAddress> addresses = (List<InetAddress>) future.getNow();
+                lookup.complete(addresses);
+            } else {
+                lookup.completeExceptionally(future.cause());
+            }
+        });
+
+        return lookup;
+    }
+
+    /**
+     * Closes the resolver and releases its I/O thread. Lookups after the resolver is closed fail.
+     */
+    @Override
+    public void close() {
+        resolver.close();
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the hostname under which the DnsNameResolver caches the lookups of the host.
+     */
+    private static String cacheKey(String host) {
+        try {
+            String hostname = IDN.toASCII(host);
+            if (host.endsWith(".") && !hostname.endsWith(".")) {
+                hostname += ".";
+            }
+
+            return hostname;
+        } catch (IllegalArgumentException e) {
+            return host;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.browserup.bup.proxy.dns;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the lookups a {@link ChainedHostResolver} made using one of its resolvers: how many lookups returned addresses (hits),
+ * returned no addresses (misses) or threw an exception (failures), and how long they took.
+ */
+public class ResolverStatistics {
+    private final AdvancedHostResolver resolver;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+
+    ResolverStatistics(AdvancedHostResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    void lookupCompleted(boolean hit, long latencyNanos) {
+        if (hit) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+
+        totalLatencyNanos.add(latencyNanos);
+    }
+
+    void lookupFailed(long latencyNanos) {
+        failures.increment();
+        totalLatencyNanos.add(latencyNanos);
+    }
+
+    /**
+     * @return the resolver these statistics are for
+     */
+    public AdvancedHostResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * @return the number of lookups made using the resolver
+     */
+    public long getLookups() {
+        return hits.sum() + misses.sum() + failures.sum();
+    }
+
+    /**
+     * @return the number of lookups that returned addresses
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that returned no addresses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of lookups that threw an exception
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the total time spent in lookups, in milliseconds
+     */
+    public long getTotalLatencyMs() {
+        return TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.sum());
+    }
+
+    /**
+     * @return the average time a lookup took, in milliseconds, or 0 if no lookups were made
+     */
+    public double getAverageLatencyMs() {
+        long lookups = getLookups();
+        if (lookups == 0) {
+            return 0;
+        }
+
+        return totalLatencyNanos.sum() / (double) lookups / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "ResolverStatistics{" +
+                "resolver=" + resolver +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", failures=" + getFailures() +
+                ", averageLatencyMs=" + getAverageLatencyMs() +
+                '}';
+    }
+}
@@ -0,0 +1,212 @@
+package com.browserup.bup.proxy.dns;
+
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.dns.DnsRecord;
+import io.netty.resolver.dns.DnsCache;
+import io.netty.resolver.dns.DnsCacheEntry;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DNS cache of the {@link NettyDnsResolver}. Successful lookups are cached until the earliest TTL of the host's address records
+ * expires, limited by the positive cache timeout. Failed lookups are cached for the negative cache timeout; since the DnsNameResolver
+ * does not cache every failed lookup, the {@link NettyDnsResolver} also records the failures it receives. A timeout of -1 caches
+ * lookups forever, and a timeout of 0 disables caching. Expired lookups are removed when they are next looked up.
+ */
+final class TtlDnsCache implements DnsCache {
+    /**
+     * The default negative cache timeout, which is the same as the JVM's default.
+     */
+    static final int DEFAULT_NEGATIVE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * A positive timeout that does not limit the TTL of address records.
+     */
+    private static final long RECORD_TTL = Long.MAX_VALUE;
+
+    private static final long ETERNAL = -1;
+
+    private final ConcurrentMap<String, CachedLookup> lookups = new ConcurrentHashMap<>();
+
+    private volatile long positiveTimeoutNanos = RECORD_TTL;
+
+    private volatile long negativeTimeoutNanos = TimeUnit.SECONDS.toNanos(DEFAULT_NEGATIVE_TIMEOUT_SECONDS);
+
+    void setPositiveTimeout(int timeout, TimeUnit timeUnit) {
+        positiveTimeoutNanos = timeout < 0 ? ETERNAL : timeUnit.toNanos(timeout);
+    }
+
+    void setNegativeTimeout(int timeout, TimeUnit timeUnit) {
+        negativeTimeoutNanos = timeout < 0 ? ETERNAL : timeUnit.toNanos(timeout);
+    }
+
+    /**
+     * Returns the cached addresses of the host, an empty list if a failed lookup of the host is cached, or null if the host is not cached.
+     */
+    List<InetAddress> getAddresses(String hostname) {
+        CachedLookup lookup = getLookup(hostname);
+        if (lookup == null) {
+            return null;
+        }
+
+        if (lookup.failed) {
+            return Collections.emptyList();
+        }
+
+        List<InetAddress> addresses = new ArrayList<>(lookup.entries.size());
+        for (Entry entry : lookup.entries) {
+            addresses.add(entry.address);
+        }
+
+        return addresses;
+    }
+
+    @Override
+    public void clear() {
+        lookups.clear();
+    }
+
+    @Override
+    public boolean clear(String hostname) {
+        return lookups.remove(hostname) != null;
+    }
+
+    @Override
+    public List<? extends DnsCacheEntry> get(String hostname, DnsRecord[] additionals) {
+        // like Netty's default cache, lookups with additional records (e.g. EDNS client subnet) are not cached
+        if (!isEmpty(additionals)) {
+            return null;
+        }
+
+        CachedLookup lookup = getLookup(hostname);
+
+        return lookup != null ? lookup.entries : null;
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, InetAddress address, long originalTtl, EventLoop loop) {
+        Entry entry = new Entry(address, null);
+
+        long timeout = positiveTimeoutNanos;
+        if (timeout == 0 || !isEmpty(additionals)) {
+            return entry;
+        }
+
+        boolean eternal = timeout == ETERNAL;
+        long ttlNanos = eternal ? 0 : Math.min(TimeUnit.SECONDS.toNanos(Math.max(originalTtl, 0)), timeout);
+        if (!eternal && ttlNanos == 0) {
+            return entry;
+        }
+
+        lookups.compute(hostname, (key, existing) -> {
+            long now = System.nanoTime();
+
+            // a lookup caches each of its addresses in turn, so add the address to the entries cached by the same lookup
+            if (existing == null || existing.failed || existing.isExpired(now)) {
+                return new CachedLookup(Collections.singletonList(entry), false, eternal, now + ttlNanos);
+            }
+
+            List<Entry> entries = new ArrayList<>(existing.entries.size() + 1);
+            entries.addAll(existing.entries);
+            entries.add(entry);
+
+            // the lookup expires when its earliest address record expires
+            long expiresAt;
+            if (existing.eternal) {
+                expiresAt = now + ttlNanos;
+            } else if (eternal) {
+                expiresAt = existing.expiresAt;
+            } else {
+                expiresAt = existing.expiresAt - (now + ttlNanos) < 0 ? existing.expiresAt : now + ttlNanos;
+            }
+
+            return new CachedLookup(Collections.unmodifiableList(entries), false, eternal && existing.eternal, expiresAt);
+        });
+
+        return entry;
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, Throwable cause, EventLoop loop) {
+        Entry entry = new Entry(null, cause);
+
+        long timeout = negativeTimeoutNanos;
+        if (timeout == 0 || !isEmpty(additionals)) {
+            return entry;
+        }
+
+        boolean eternal = timeout == ETERNAL;
+        lookups.put(hostname, new CachedLookup(Collections.singletonList(entry), true, eternal, System.nanoTime() + (eternal ? 0 : timeout)));
+
+        return entry;
+    }
+
+    private CachedLookup getLookup(String hostname) {
+        CachedLookup lookup = lookups.get(hostname);
+        if (lookup == null) {
+            return null;
+        }
+
+        if (lookup.isExpired(System.nanoTime())) {
+            lookups.remove(hostname, lookup);
+            return null;
+        }
+
+        return lookup;
+    }
+
+    private static boolean isEmpty(DnsRecord[] additionals) {
+        return additionals == null || additionals.length == 0;
+    }
+
+    /**
+     * The cached result of looking up a host: either its addresses, or the cause of the failed lookup.
+     */
+    private static final class CachedLookup {
+        final List<Entry> entries;
+        final boolean failed;
+        final boolean eternal;
+
+        /**
+         * The System.nanoTime() at which the lookup expires, unless it is eternal.
+         */
+        final long expiresAt;
+
+        CachedLookup(List<Entry> entries, boolean failed, boolean eternal, long expiresAt) {
+            this.entries = entries;
+            this.failed = failed;
+            this.eternal = eternal;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return !eternal && now - expiresAt >= 0;
+        }
+    }
+
+    private static final class Entry implements DnsCacheEntry {
+        private final InetAddress address;
+        private final Throwable cause;
+
+        Entry(InetAddress address, Throwable cause) {
+            this.address = address;
+            this.cause = cause;
+        }
+
+        @Override
+        public InetAddress address() {
+            return address;
+        }
+
+        @Override
+        public Throwable cause() {
+            return cause;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.browserup.bup.proxy.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, using the log-linear bucket layout of HdrHistogram: every power of two is split into
+ * {@value #SUB_BUCKET_COUNT} linear sub-buckets, so that any recorded value is reported with a relative error of at most 12.5%,
+ * regardless of its magnitude. Recording a value increments a single bucket and does not allocate, so histograms can be updated from
+ * Netty event loop threads.
+ * <p>
+ * Values from 0 to 7 have a bucket of their own. A value <i>v</i> greater than 7, whose highest bit is bit <i>e</i>, is recorded in bucket
+ * {@code (e - 2) * 8 + ((v >>> (e - 3)) & 7)}. The mitmproxy metrics add-on (metrics.py) uses the same layout, so that its histograms can
+ * be added to a LatencyHistogram using {@link #add(long[], long)}.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of linear sub-buckets each power of two is split into.
+     */
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets needed to record any non-negative long value.
+     */
+    public static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Records a latency. Negative latencies, which can be caused by callbacks arriving out of order, are recorded as 0.
+     *
+     * @param latencyNanos latency in nanoseconds
+     */
+    public void record(long latencyNanos) {
+        long value = Math.max(latencyNanos, 0L);
+
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param latency  latency
+     * @param timeUnit unit of the latency
+     */
+    public void record(long latency, TimeUnit timeUnit) {
+        record(timeUnit.toNanos(latency));
+    }
+
+    /**
+     * Adds bucket counts recorded elsewhere using the same bucket layout to this histogram.
+     *
+     * @param bucketCounts counts of the buckets, starting with bucket 0. May be shorter than {@link #BUCKET_COUNT}.
+     * @param sumNanos     sum of the values counted in bucketCounts, in nanoseconds
+     * @throws IllegalArgumentException if bucketCounts has more than {@link #BUCKET_COUNT} buckets
+     */
+    public void add(long[] bucketCounts, long sumNanos) {
+        if (bucketCounts.length > BUCKET_COUNT) {
+            throw new IllegalArgumentException("Expected at most " + BUCKET_COUNT + " buckets, but got " + bucketCounts.length);
+        }
+
+        for (int i = 0; i < bucketCounts.length; i++) {
+            if (bucketCounts[i] != 0) {
+                buckets.addAndGet(i, bucketCounts[i]);
+                count.add(bucketCounts[i]);
+            }
+        }
+
+        this.sumNanos.add(sumNanos);
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of the recorded latencies, in nanoseconds
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Returns a copy of the bucket counts. Buckets are copied one at a time, so a copy made while latencies are being recorded may
+     * not include all latencies recorded before the copy was made.
+     *
+     * @return the count of each bucket, starting with bucket 0
+     */
+    public long[] getBucketCounts() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = buckets.get(i);
+        }
+
+        return bucketCounts;
+    }
+
+    /**
+     * Returns the value at the specified percentile, i.e. the highest value equivalent to the value of the recorded latency below which
+     * the specified percentage of the recorded latencies fall.
+     *
+     * @param percentile percentile, between 0 and 100
+     * @return value at the percentile in nanoseconds, or 0 if no latencies were recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] bucketCounts = getBucketCounts();
+
+        long totalCount = 0;
+        for (long bucketCount : bucketCounts) {
+            totalCount += bucketCount;
+        }
+
+        if (totalCount == 0) {
+            return 0L;
+        }
+
+        double clampedPercentile = Math.min(Math.max(percentile, 0.0), 100.0);
+        long countAtPercentile = Math.max(1L, (long) Math.ceil(clampedPercentile / 100.0 * totalCount));
+
+        long cumulativeCount = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            cumulativeCount += bucketCounts[i];
+            if (cumulativeCount >= countAtPercentile) {
+                return highestEquivalentValue(i);
+            }
+        }
+
+        return highestEquivalentValue(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the index of the bucket the value is recorded in.
+     *
+     * @param value non-negative value
+     * @return bucket index
+     */
+    public static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + (int) ((value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * @param bucketIndex index of a bucket
+     * @return the lowest value recorded in the bucket
+     */
+    public static long lowestEquivalentValue(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+
+        int highestBit = bucketIndex / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = bucketIndex % SUB_BUCKET_COUNT;
+
+        return (SUB_BUCKET_COUNT + subBucket) << (highestBit - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param bucketIndex index of a bucket
+     * @return the highest value recorded in the bucket
+     */
+    public static long highestEquivalentValue(int bucketIndex) {
+        if (bucketIndex >= BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        return lowestEquivalentValue(bucketIndex + 1) - 1;
+    }
+}
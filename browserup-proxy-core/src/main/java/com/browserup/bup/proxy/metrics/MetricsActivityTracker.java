@@ -0,0 +1,50 @@
+package com.browserup.bup.proxy.metrics;
+
+import org.littleshoot.proxy.ActivityTrackerAdapter;
+import org.littleshoot.proxy.FlowContext;
+import org.littleshoot.proxy.FullFlowContext;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Records the bytes transferred and the client connections of a LittleProxy server in {@link ProxyMetrics}. Register it using
+ * {@link org.littleshoot.proxy.HttpProxyServerBootstrap#plusActivityTracker(org.littleshoot.proxy.ActivityTracker)}.
+ */
+public class MetricsActivityTracker extends ActivityTrackerAdapter {
+    private final ProxyMetrics metrics;
+
+    public MetricsActivityTracker(ProxyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void bytesReceivedFromClient(FlowContext flowContext, int numberOfBytes) {
+        metrics.add(ProxyCounter.CLIENT_BYTES_RECEIVED, numberOfBytes);
+    }
+
+    @Override
+    public void bytesSentToClient(FlowContext flowContext, int numberOfBytes) {
+        metrics.add(ProxyCounter.CLIENT_BYTES_SENT, numberOfBytes);
+    }
+
+    @Override
+    public void bytesSentToServer(FullFlowContext flowContext, int numberOfBytes) {
+        metrics.add(ProxyCounter.SERVER_BYTES_SENT, numberOfBytes);
+    }
+
+    @Override
+    public void bytesReceivedFromServer(FullFlowContext flowContext, int numberOfBytes) {
+        metrics.add(ProxyCounter.SERVER_BYTES_RECEIVED, numberOfBytes);
+    }
+
+    @Override
+    public void clientConnected(FlowContext flowContext) {
+        metrics.increment(ProxyCounter.CLIENT_CONNECTIONS);
+        metrics.increment(ProxyCounter.ACTIVE_CLIENT_CONNECTIONS);
+    }
+
+    @Override
+    public void clientDisconnected(FlowContext flowContext, SSLSession sslSession) {
+        metrics.decrement(ProxyCounter.ACTIVE_CLIENT_CONNECTIONS);
+    }
+}
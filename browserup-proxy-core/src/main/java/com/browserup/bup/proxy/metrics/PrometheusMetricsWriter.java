@@ -0,0 +1,96 @@
+package com.browserup.bup.proxy.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link ProxyMetrics} in the Prometheus text exposition format (version 0.0.4). Request phase latencies are written as a single
+ * histogram, {@code browserup_proxy_request_phase_seconds}, labeled by phase. Since the buckets of a {@link LatencyHistogram} do not line
+ * up with the Prometheus bucket bounds, the count of a Prometheus bucket includes the whole histogram bucket its bound falls in, and may
+ * therefore include latencies up to 12.5% higher than the bound.
+ */
+public class PrometheusMetricsWriter {
+    /**
+     * The Content-Type of the Prometheus text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String METRIC_PREFIX = "browserup_proxy_";
+
+    private static final String PHASE_HISTOGRAM_NAME = METRIC_PREFIX + "request_phase_seconds";
+
+    /**
+     * Upper bounds of the Prometheus histogram buckets, in seconds.
+     */
+    private static final double[] BUCKET_BOUNDS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+
+    private static final int[] BUCKET_BOUND_INDEXES = new int[BUCKET_BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS_SECONDS.length; i++) {
+            BUCKET_BOUND_INDEXES[i] = LatencyHistogram.bucketIndex((long) (BUCKET_BOUNDS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    private PrometheusMetricsWriter() {
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format.
+     *
+     * @param metrics metrics to write
+     * @return the metrics in the Prometheus text exposition format
+     */
+    public static String write(ProxyMetrics metrics) {
+        StringBuilder text = new StringBuilder(4096);
+
+        text.append("# HELP ").append(PHASE_HISTOGRAM_NAME).append(" Time spent in each phase of proxied requests.\n");
+        text.append("# TYPE ").append(PHASE_HISTOGRAM_NAME).append(" histogram\n");
+        for (RequestPhase phase : RequestPhase.values()) {
+            writeHistogram(text, phase.name().toLowerCase(Locale.US), metrics.getHistogram(phase));
+        }
+
+        for (ProxyCounter counter : ProxyCounter.values()) {
+            String name = METRIC_PREFIX + counter.getMetricName();
+
+            text.append("# HELP ").append(name).append(' ').append(counter.getHelp()).append('\n');
+            text.append("# TYPE ").append(name).append(counter.isGauge() ? " gauge\n" : " counter\n");
+            text.append(name).append(' ').append(metrics.get(counter)).append('\n');
+        }
+
+        return text.toString();
+    }
+
+    private static void writeHistogram(StringBuilder text, String phase, LatencyHistogram histogram) {
+        // read the buckets once, so that the cumulative counts and the total count are consistent
+        long[] bucketCounts = histogram.getBucketCounts();
+
+        long cumulativeCount = 0;
+        int bucketIndex = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_SECONDS.length; i++) {
+            for (; bucketIndex <= BUCKET_BOUND_INDEXES[i]; bucketIndex++) {
+                cumulativeCount += bucketCounts[bucketIndex];
+            }
+
+            writeBucket(text, phase, Double.toString(BUCKET_BOUNDS_SECONDS[i]), cumulativeCount);
+        }
+
+        for (; bucketIndex < bucketCounts.length; bucketIndex++) {
+            cumulativeCount += bucketCounts[bucketIndex];
+        }
+
+        writeBucket(text, phase, "+Inf", cumulativeCount);
+
+        text.append(PHASE_HISTOGRAM_NAME).append("_sum{phase=\"").append(phase).append("\"} ")
+                .append(histogram.getSumNanos() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+        text.append(PHASE_HISTOGRAM_NAME).append("_count{phase=\"").append(phase).append("\"} ")
+                .append(cumulativeCount).append('\n');
+    }
+
+    private static void writeBucket(StringBuilder text, String phase, String upperBound, long cumulativeCount) {
+        text.append(PHASE_HISTOGRAM_NAME).append("_bucket{phase=\"").append(phase).append("\",le=\"").append(upperBound).append("\"} ")
+                .append(cumulativeCount).append('\n');
+    }
+}
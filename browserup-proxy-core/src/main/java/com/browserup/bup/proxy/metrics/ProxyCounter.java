@@ -0,0 +1,48 @@
+package com.browserup.bup.proxy.metrics;
+
+/**
+ * Counters recorded in {@link ProxyMetrics}. Each counter is exposed as a Prometheus metric named {@code browserup_proxy_} followed by
+ * {@link #getMetricName()}.
+ */
+public enum ProxyCounter {
+    CLIENT_BYTES_RECEIVED("client_bytes_received_total", "Bytes received from clients.", false),
+    CLIENT_BYTES_SENT("client_bytes_sent_total", "Bytes sent to clients.", false),
+    SERVER_BYTES_SENT("server_bytes_sent_total", "Bytes sent to servers.", false),
+    SERVER_BYTES_RECEIVED("server_bytes_received_total", "Bytes received from servers.", false),
+    CLIENT_CONNECTIONS("client_connections_total", "Client connections accepted.", false),
+    ACTIVE_CLIENT_CONNECTIONS("active_client_connections", "Client connections currently open.", true),
+    BLOCKED_REQUESTS("blocked_requests_total", "Requests short-circuited by the blocklist.", false),
+    ALLOWLIST_REJECTED_REQUESTS("allowlist_rejected_requests_total", "Requests short-circuited because they did not match the allowlist.", false),
+    FILTER_EXCEPTIONS("filter_exceptions_total", "Exceptions thrown by filters in the filter chain.", false);
+
+    private final String metricName;
+    private final String help;
+    private final boolean gauge;
+
+    ProxyCounter(String metricName, String help, boolean gauge) {
+        this.metricName = metricName;
+        this.help = help;
+        this.gauge = gauge;
+    }
+
+    /**
+     * @return the name of the metric, without the {@code browserup_proxy_} prefix
+     */
+    public String getMetricName() {
+        return metricName;
+    }
+
+    /**
+     * @return a description of the metric
+     */
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * @return true if the value can decrease, false if the value only ever increases
+     */
+    public boolean isGauge() {
+        return gauge;
+    }
+}
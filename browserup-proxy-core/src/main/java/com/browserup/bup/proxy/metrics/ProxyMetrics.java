@@ -0,0 +1,80 @@
+package com.browserup.bup.proxy.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live metrics of a proxy: a {@link LatencyHistogram} for each {@link RequestPhase}, and the {@link ProxyCounter}s. All methods are
+ * thread-safe and lock-free. Metrics are recorded independently of HAR capture, so they are available even when no HAR is being
+ * captured.
+ */
+public class ProxyMetrics {
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+    private static final ProxyCounter[] COUNTERS = ProxyCounter.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private final LongAdder[] counters = new LongAdder[COUNTERS.length];
+
+    public ProxyMetrics() {
+        for (RequestPhase phase : PHASES) {
+            histograms[phase.ordinal()] = new LatencyHistogram();
+        }
+
+        for (ProxyCounter counter : COUNTERS) {
+            counters[counter.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the latency of a request phase.
+     *
+     * @param phase        request phase
+     * @param latencyNanos latency in nanoseconds
+     */
+    public void recordLatency(RequestPhase phase, long latencyNanos) {
+        histograms[phase.ordinal()].record(latencyNanos);
+    }
+
+    /**
+     * @param phase request phase
+     * @return the histogram of the latencies of the request phase
+     */
+    public LatencyHistogram getHistogram(RequestPhase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Increments the counter by one.
+     *
+     * @param counter counter to increment
+     */
+    public void increment(ProxyCounter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * Decrements the counter by one. Only gauges, such as {@link ProxyCounter#ACTIVE_CLIENT_CONNECTIONS}, should be decremented.
+     *
+     * @param counter counter to decrement
+     */
+    public void decrement(ProxyCounter counter) {
+        counters[counter.ordinal()].decrement();
+    }
+
+    /**
+     * Adds the value to the counter.
+     *
+     * @param counter counter to add to
+     * @param value   value to add
+     */
+    public void add(ProxyCounter counter, long value) {
+        counters[counter.ordinal()].add(value);
+    }
+
+    /**
+     * @param counter counter
+     * @return the current value of the counter
+     */
+    public long get(ProxyCounter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+}
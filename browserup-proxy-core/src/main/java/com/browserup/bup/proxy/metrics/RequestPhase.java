@@ -0,0 +1,43 @@
+package com.browserup.bup.proxy.metrics;
+
+/**
+ * Phases of a proxied request whose latencies are recorded in {@link ProxyMetrics}. The phases correspond to the HAR timings. Connection
+ * phases ({@link #DNS}, {@link #CONNECT} and {@link #TLS}) are only recorded for requests that open a new connection to the server.
+ */
+public enum RequestPhase {
+    /**
+     * Resolving the server's host name.
+     */
+    DNS,
+
+    /**
+     * Opening the TCP connection to the server.
+     */
+    CONNECT,
+
+    /**
+     * The TLS handshake with the server.
+     */
+    TLS,
+
+    /**
+     * Sending the request to the server.
+     */
+    SEND,
+
+    /**
+     * Waiting for the server to start responding, after the request was sent.
+     */
+    WAIT,
+
+    /**
+     * Receiving the response from the server.
+     */
+    RECEIVE,
+
+    /**
+     * The time from receiving the request from the client to sending the end of the response to the client. Not recorded for CONNECT
+     * requests.
+     */
+    TOTAL
+}
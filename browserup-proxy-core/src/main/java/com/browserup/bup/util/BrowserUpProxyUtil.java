@@ -4,6 +4,7 @@ import com.google.common.base.Suppliers;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import com.browserup.bup.har.SpillingHarEntryList;
 import com.browserup.bup.mitm.exception.UncheckedIOException;
 
 import de.sstoehr.harreader.model.Har;
@@ -73,9 +74,15 @@ public class BrowserUpProxyUtil {
 
         // copy every entry and page in the HarLog that matches a pageRefToCopy. since getEntries() and getPages() return
         // lists, we are guaranteed that we will iterate through the pages and entries in the proper order
-        har.getLog().getEntries().stream()
-                .filter(entry -> pageRefsToCopy.contains(entry.getPageref()))
-                .forEach(entry -> logCopy.getEntries().add(entry));
+        if (har.getLog().getEntries() instanceof SpillingHarEntryList) {
+            // don't read entries that were written to disk back onto the heap; the copy reads them through
+            logCopy.setEntries(((SpillingHarEntryList) har.getLog().getEntries()).select(
+                    summary -> pageRefsToCopy.contains(summary.getPageref())));
+        } else {
+            har.getLog().getEntries().stream()
+                    .filter(entry -> pageRefsToCopy.contains(entry.getPageref()))
+                    .forEach(entry -> logCopy.getEntries().add(entry));
+        }
 
         har.getLog().getPages().stream()
                 .filter(page -> pageRefsToCopy.contains(page.getId()))
@@ -0,0 +1,222 @@
+package com.browserup.bup.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Utility class to analyze regular expressions, e.g. to determine what every string matched by a {@link Pattern} must contain.
+ */
+public final class RegexUtil {
+    private RegexUtil() {
+    }
+
+    /**
+     * Returns the longest literal string that every string matched by the pattern must contain, or null if no such literal can be
+     * determined. Only the top-level sequence of the pattern is considered: groups, character classes, escape sequences,
+     * quantified elements, and anything following them are skipped, and no literal is determined for patterns containing a
+     * top-level alternation or flags.
+     */
+    public static String requiredLiteral(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return null;
+        }
+
+        String regex = pattern.pattern();
+        int length = regex.length();
+
+        StringBuilder run = new StringBuilder();
+        String longest = "";
+
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+
+            if (c == '\\' && i + 1 < length && regex.charAt(i + 1) == 'Q') {
+                int end = regex.indexOf("\\E", i + 2);
+                run.append(regex, i + 2, end < 0 ? length : end);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '\\' && i + 1 < length && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                run.append(regex.charAt(i + 1));
+                i += 2;
+            } else if (c == '|') {
+                // a top-level alternation means no literal is required by every match
+                return null;
+            } else if (c == '(' && i + 2 < length && regex.charAt(i + 1) == '?' && isFlag(regex.charAt(i + 2))) {
+                // embedded flags (e.g. case-insensitivity) may change how the remaining literals match
+                return null;
+            } else if (c == '\\' || c == '[' || c == '(' || c == '.' || c == '^' || c == '$'
+                    || c == '?' || c == '*' || c == '+' || c == '{') {
+                longest = longer(longest, run);
+                run.setLength(0);
+
+                i = skipQuantifier(regex, skipElement(regex, i));
+                continue;
+            } else {
+                run.append(c);
+                i++;
+            }
+
+            // a quantifier applies to the last literal character only, which may then be absent or repeated
+            if (i < length && isQuantifier(regex.charAt(i))) {
+                run.setLength(Math.max(run.length() - 1, 0));
+                longest = longer(longest, run);
+                run.setLength(0);
+
+                i = skipQuantifier(regex, i);
+            }
+        }
+
+        longest = longer(longest, run);
+
+        return longest.isEmpty() ? null : longest;
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        return run.length() > longest.length() ? run.toString() : longest;
+    }
+
+    private static boolean isFlag(char c) {
+        return c == '-' || "idmsuxU".indexOf(c) >= 0;
+    }
+
+    private static boolean isQuantifier(char c) {
+        return c == '?' || c == '*' || c == '+' || c == '{';
+    }
+
+    /**
+     * Returns the index following the element that starts at index i, which is not a literal character.
+     */
+    private static int skipElement(String regex, int i) {
+        switch (regex.charAt(i)) {
+            case '\\':
+                return skipEscape(regex, i);
+            case '[':
+                return skipCharacterClass(regex, i);
+            case '(':
+                return skipGroup(regex, i);
+            case '{':
+                // a quantifier with nothing to quantify; skipQuantifier will handle it
+                return i;
+            case '?':
+            case '*':
+            case '+':
+                return i;
+            default:
+                return i + 1;
+        }
+    }
+
+    /**
+     * Skips an escape sequence starting with a backslash. Since an escape sequence followed by a letter or digit may not end
+     * where it appears to (e.g. octal and hexadecimal escapes), any letters and digits following it are skipped as well.
+     */
+    private static int skipEscape(String regex, int i) {
+        int length = regex.length();
+        int j = i + 1;
+        if (j >= length) {
+            return length;
+        }
+
+        char escaped = regex.charAt(j++);
+        if (escaped == 'Q') {
+            int end = regex.indexOf("\\E", j);
+            return end < 0 ? length : end + 2;
+        }
+
+        if (!Character.isLetterOrDigit(escaped)) {
+            return j;
+        }
+
+        if (escaped == 'c') {
+            return Math.min(j + 1, length);
+        }
+
+        if (j < length && (regex.charAt(j) == '{' || regex.charAt(j) == '<')) {
+            int end = regex.indexOf(regex.charAt(j) == '{' ? '}' : '>', j);
+            return end < 0 ? length : end + 1;
+        }
+
+        while (j < length && Character.isLetterOrDigit(regex.charAt(j))) {
+            j++;
+        }
+
+        return j;
+    }
+
+    private static int skipCharacterClass(String regex, int i) {
+        int length = regex.length();
+        int j = i + 1;
+
+        if (j < length && regex.charAt(j) == '^') {
+            j++;
+        }
+
+        // a ']' at the start of a class is a literal
+        if (j < length && regex.charAt(j) == ']') {
+            j++;
+        }
+
+        while (j < length) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j = skipEscape(regex, j);
+            } else if (c == '[') {
+                j = skipCharacterClass(regex, j);
+            } else if (c == ']') {
+                return j + 1;
+            } else {
+                j++;
+            }
+        }
+
+        return length;
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int length = regex.length();
+        int depth = 0;
+        int j = i;
+
+        while (j < length) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j = skipEscape(regex, j);
+            } else if (c == '[') {
+                j = skipCharacterClass(regex, j);
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return j + 1;
+                }
+
+                j++;
+            }
+        }
+
+        return length;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        int length = regex.length();
+        if (i >= length) {
+            return i;
+        }
+
+        char c = regex.charAt(i);
+        if (c == '?' || c == '*' || c == '+') {
+            i++;
+        } else if (c == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? length : end + 1;
+        } else {
+            return i;
+        }
+
+        // reluctant and possessive quantifiers
+        if (i < length && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+
+        return i;
+    }
+}
@@ -1,11 +1,15 @@
 package com.browserup.harreader.filter;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import com.browserup.bup.har.HarEntryList;
+import com.browserup.bup.har.SpillingHarEntryList;
+import com.browserup.bup.util.HttpStatusClass;
 import de.sstoehr.harreader.model.HarEntry;
 import de.sstoehr.harreader.model.HarLog;
 
@@ -21,6 +25,14 @@ public final class HarLogFilter {
      * @return <code>HarEntry</code> for the most recently requested URL.
      */
     public static Optional<HarEntry> findMostRecentEntry(HarLog log) {
+        if (log.getEntries() instanceof SpillingHarEntryList) {
+            return ((SpillingHarEntryList) log.getEntries()).findMostRecent(summary -> true);
+        }
+
+        if (log.getEntries() instanceof HarEntryList) {
+            return ((HarEntryList) log.getEntries()).findMostRecent(null);
+        }
+
         return log.getEntries().stream().max(Comparator.comparing(HarEntry::getStartedDateTime));
     }
 
@@ -47,6 +59,17 @@ public final class HarLogFilter {
      * pattern.
      */
     public static Optional<HarEntry> findMostRecentEntry(HarLog log, Pattern urlPattern) {
+        // avoid reading entries that were written to disk unless they match
+        if (log.getEntries() instanceof SpillingHarEntryList) {
+            return ((SpillingHarEntryList) log.getEntries()).findMostRecent(
+                    summary -> summary.getUrl() != null && urlPattern.matcher(summary.getUrl()).matches());
+        }
+
+        // narrow down the entries to check using the indexes of the live HAR
+        if (log.getEntries() instanceof HarEntryList) {
+            return ((HarEntryList) log.getEntries()).findMostRecent(urlPattern);
+        }
+
         return findEntries(log, urlPattern).stream().max(Comparator.comparing(HarEntry::getStartedDateTime));
     }
 
@@ -73,8 +96,38 @@ public final class HarLogFilter {
      * pattern, or an empty list if none match.
      */
     public static List<HarEntry> findEntries(HarLog log, Pattern urlPattern) {
+        // avoid reading entries that were written to disk unless they match
+        if (log.getEntries() instanceof SpillingHarEntryList) {
+            return new ArrayList<>(((SpillingHarEntryList) log.getEntries()).select(
+                    summary -> summary.getUrl() != null && urlPattern.matcher(summary.getUrl()).matches()));
+        }
+
+        // narrow down the entries to check using the indexes of the live HAR
+        if (log.getEntries() instanceof HarEntryList) {
+            return ((HarEntryList) log.getEntries()).findEntries(urlPattern);
+        }
+
         return log.getEntries().stream()
                 .filter(e -> urlPattern.matcher(e.getRequest().getUrl()).matches())
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Search the entire log for entries whose request URL matches the given <code>urlPattern</code> and whose response status
+     * belongs to the given <code>statusClass</code>.
+     *
+     * @param urlPattern  Regular expression match of URL to find (see {@link #findEntries(HarLog, Pattern)}).
+     * @param statusClass Class the response status must belong to.
+     * @return A list of <code>HarEntry</code> for any requests whose URL matches the given <code>urlPattern</code>
+     * pattern and whose response status belongs to the given class, or an empty list if none match.
+     */
+    public static List<HarEntry> findEntries(HarLog log, Pattern urlPattern, HttpStatusClass statusClass) {
+        if (log.getEntries() instanceof HarEntryList) {
+            return ((HarEntryList) log.getEntries()).findEntries(urlPattern, statusClass);
+        }
+
+        return findEntries(log, urlPattern).stream()
+                .filter(e -> e.getResponse() != null && statusClass.contains(e.getResponse().getStatus()))
+                .collect(Collectors.toList());
+    }
 }
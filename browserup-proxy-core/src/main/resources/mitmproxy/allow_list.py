@@ -61,17 +61,27 @@ class AllowListResource:
     def on_add_allowlist_pattern(self, req, resp):
         url_pattern = req.get_param('urlPattern')
 
-        if not hasattr(self.allow_list_addon.allow_list, "status_code") \
-                or not hasattr(self.allow_list_addon.allow_list, "url_patterns"):
+        if not self.allow_list_addon.is_allowlist_enabled():
             raise falcon.HTTPBadRequest("Allowlist is disabled. Cannot add patterns to a disabled allowlist.")
 
-        self.allow_list_addon.allow_list["url_patterns"].append(url_pattern)
+        try:
+            url_pattern_compiled = self.parse_regexp(url_pattern)
+        except re.error:
+            raise falcon.HTTPBadRequest("Invalid regexp patterns")
+
+        # the allowlist is replaced rather than modified, so that requests being filtered concurrently see a consistent allowlist
+        self.allow_list_addon.allow_list = {
+            "status_code": self.allow_list_addon.allow_list["status_code"],
+            "url_patterns": self.allow_list_addon.allow_list["url_patterns"] + [url_pattern_compiled]
+        }
 
     def on_enable_empty_allowlist(self, req, resp):
         status_code = req.get_param('statusCode')
 
-        self.allow_list_addon.allow_list["url_patterns"] = []
-        self.allow_list_addon.allow_list["status_code"] = status_code
+        self.allow_list_addon.allow_list = {
+            "status_code": status_code,
+            "url_patterns": []
+        }
 
     def on_disable_allowlist(self, req, resp):
         self.allow_list_addon.allow_list = {}
@@ -60,16 +60,33 @@ class BlockListResource:
         except re.error:
             raise falcon.HTTPBadRequest("Invalid regexp patterns")
 
-        self.block_list_addon.block_list.append({
+        # the list is replaced rather than modified, so that requests being filtered concurrently see a consistent list
+        self.block_list_addon.block_list = self.block_list_addon.block_list + [{
             "status_code": status_code,
             "url_pattern": url_pattern_compiled,
             "http_method_pattern": http_method_pattern_compiled
-        })
+        }]
 
     def on_set_block_list(self, req, resp):
-        self.block_list_addon.block_list = []
+        self.block_list_addon.block_list = self.parse_block_list_items(json.loads(req.bounded_stream.read()))
 
-        blocklist = json.loads(req.bounded_stream.read())
+    def on_add_block_list_entries(self, req, resp):
+        self.block_list_addon.block_list = self.block_list_addon.block_list + \
+                                           self.parse_block_list_items(json.loads(req.bounded_stream.read()))
+
+    def on_remove_block_list_entries(self, req, resp):
+        block_list = list(self.block_list_addon.block_list)
+
+        for removed_item in self.parse_block_list_items(json.loads(req.bounded_stream.read())):
+            for bl_item in block_list:
+                if self.is_same_block_list_item(bl_item, removed_item):
+                    block_list.remove(bl_item)
+                    break
+
+        self.block_list_addon.block_list = block_list
+
+    def parse_block_list_items(self, blocklist):
+        block_list_items = []
 
         for bl_item in blocklist:
             try:
@@ -83,7 +100,7 @@ class BlockListResource:
                     'Blocklisting url pattern: {}, status code: {}, method pattern: {}'.
                         format(bl_item['urlPattern'], bl_item['statusCode'], bl_item['httpMethodPattern']))
 
-                self.block_list_addon.block_list.append({
+                block_list_items.append({
                     "status_code": bl_item['statusCode'],
                     "url_pattern": url_pattern_compiled,
                     "http_method_pattern": http_method_pattern_compiled
@@ -91,6 +108,17 @@ class BlockListResource:
             except re.error:
                 raise falcon.HTTPBadRequest("Invalid regexp patterns")
 
+        return block_list_items
+
+    @staticmethod
+    def is_same_block_list_item(item, other_item):
+        def pattern_of(compiled_pattern):
+            return compiled_pattern.pattern if compiled_pattern is not None else None
+
+        return str(item['status_code']) == str(other_item['status_code']) and \
+            pattern_of(item['url_pattern']) == pattern_of(other_item['url_pattern']) and \
+            pattern_of(item['http_method_pattern']) == pattern_of(other_item['http_method_pattern'])
+
     def parse_regexp(self, raw_regexp):
         if not raw_regexp.startswith('^'):
             raw_regexp = '^' + raw_regexp
@@ -1,9 +1,16 @@
+import copy
+import io
+import json
+import socket
+import threading
 import falcon
 import _thread
 
 from mitmproxy import ctx
 
-from wsgiref.simple_server import make_server
+from http.server import BaseHTTPRequestHandler
+from socketserver import ThreadingMixIn
+from wsgiref.simple_server import make_server, ServerHandler, WSGIRequestHandler, WSGIServer
 
 initialized = False
 
@@ -55,12 +62,196 @@ def get_resources():
     return resources
 
 
+class BatchRequest:
+    """
+    Stands in for a falcon request when an operation of a batch is dispatched to a resource.
+    """
+
+    def __init__(self, params, body):
+        self.params = params
+        self.bounded_stream = io.BytesIO(json.dumps(body).encode('utf-8') if body is not None else b'')
+
+    def get_param(self, name):
+        return self.params.get(name)
+
+
+class BatchResponse:
+    """
+    Stands in for a falcon response when an operation of a batch is dispatched to a resource, so that the status of each operation can
+    be checked.
+    """
+
+    def __init__(self):
+        self.status = falcon.HTTP_200
+        self.text = None
+        self.content_type = None
+
+
+class BatchResource:
+    """
+    Applies a batch of resource operations in a single request. The batch is rejected before any operation runs if it contains an
+    operation that does not exist. Otherwise the operations run in order, and if one of them raises an error or responds with a
+    non-2xx status, the state of the affected add-ons and the mitmproxy options is restored and that status is returned, so a batch is
+    either applied completely or not at all.
+
+    Request body: {"operations": [{"addon": "<addon path>", "operation": "<method name>", "params": [[name, value], ...], "body": ...}]}
+    """
+
+    def __init__(self, resources):
+        self.resources = {r.addon_path(): r for r in resources}
+
+    def addon_path(self):
+        return "batch"
+
+    def on_put(self, req, resp, method_name):
+        getattr(self, "on_" + method_name)(req, resp)
+
+    def on_apply(self, req, resp):
+        operations = json.loads(req.bounded_stream.read() or '{}').get('operations', [])
+
+        for operation in operations:
+            resource = self.resources.get(operation.get('addon'))
+            if resource is None or not hasattr(resource, "on_" + str(operation.get('operation'))):
+                raise falcon.HTTPBadRequest(description="Unknown operation: {}/{}".format(
+                    operation.get('addon'), operation.get('operation')))
+
+        affected_resources = {self.resources[o['addon']] for o in operations}
+        snapshot = self.take_snapshot(affected_resources)
+
+        for index, operation in enumerate(operations):
+            params = {k: v for k, v in operation.get('params', [])}
+            operation_resp = BatchResponse()
+            try:
+                self.resources[operation['addon']].on_get(BatchRequest(params, operation.get('body')), operation_resp,
+                                                          operation['operation'])
+            except Exception as e:
+                self.restore_snapshot(snapshot)
+                ctx.log.warn('Failed to apply operation {} of configuration batch, changes were rolled back: {}'.format(index, e))
+                if isinstance(e, falcon.HTTPError):
+                    raise
+                raise falcon.HTTPBadRequest(description="Operation {} ({}/{}) failed: {}".format(
+                    index, operation['addon'], operation['operation'], e))
+
+            # most resources report a failure by setting the status instead of raising an error
+            if not str(operation_resp.status).startswith('2'):
+                self.restore_snapshot(snapshot)
+                ctx.log.warn('Operation {} of configuration batch failed with status {}, changes were rolled back'.format(
+                    index, operation_resp.status))
+                resp.status = operation_resp.status
+                resp.content_type = falcon.MEDIA_JSON
+                resp.text = json.dumps({
+                    "index": index,
+                    "addon": operation['addon'],
+                    "operation": operation['operation'],
+                    "status": str(operation_resp.status),
+                    "body": operation_resp.text
+                })
+                return
+
+        resp.status = falcon.HTTP_200
+        resp.text = json.dumps({"applied": len(operations)})
+
+    @staticmethod
+    def take_snapshot(resources):
+        # the configuration of an add-on is held in containers and plain values of the add-on object referenced by its resource
+        objects = []
+        for resource in resources:
+            for value in vars(resource).values():
+                if hasattr(value, '__dict__') and value not in objects:
+                    objects.append(value)
+
+        object_states = [(o, {k: BatchResource.copy_value(v) for k, v in vars(o).items()}) for o in objects]
+        options = {k: getattr(ctx.options, k) for k in ctx.options.keys()}
+        return object_states, options
+
+    @staticmethod
+    def copy_value(value):
+        # containers are copied deeply, so nested configuration is restored as well. Other values are kept by reference, since they are
+        # either immutable or objects, like other add-ons, whose identity must be preserved
+        if not isinstance(value, (dict, list, set, tuple)):
+            return value
+        try:
+            return copy.deepcopy(value)
+        except Exception:
+            return copy.copy(value)
+
+    @staticmethod
+    def restore_snapshot(snapshot):
+        object_states, options = snapshot
+        for o, state in object_states:
+            # replace the state wholesale, so attributes added by the failed operation are removed as well
+            vars(o).clear()
+            vars(o).update(state)
+        changed_options = {k: v for k, v in options.items() if getattr(ctx.options, k) != v}
+        if changed_options:
+            ctx.options.update(**changed_options)
+
+
+class KeepAliveServerHandler(ServerHandler):
+    http_version = "1.1"
+
+    def cleanup_headers(self):
+        super().cleanup_headers()
+        # without a content length the client can only detect the end of the response when the connection is closed
+        if 'Content-Length' not in self.headers:
+            self.headers['Connection'] = 'close'
+            self.request_handler.close_connection = True
+
+
+class KeepAliveRequestHandler(WSGIRequestHandler):
+    """
+    Serves multiple requests over a persistent HTTP/1.1 connection, so that clients do not need to connect for every request.
+    Requests of all connections are processed one at a time, because the resources are not thread-safe.
+    """
+    protocol_version = "HTTP/1.1"
+    timeout = 60
+    request_lock = threading.Lock()
+
+    handle = BaseHTTPRequestHandler.handle
+
+    def handle_one_request(self):
+        try:
+            self.raw_requestline = self.rfile.readline(65537)
+        except socket.timeout:
+            self.close_connection = True
+            return
+
+        if not self.raw_requestline:
+            self.close_connection = True
+            return
+
+        if len(self.raw_requestline) > 65536:
+            self.requestline = ''
+            self.request_version = ''
+            self.command = ''
+            self.send_error(414)
+            return
+
+        if not self.parse_request():
+            return
+
+        # the body is read completely, so that the next request can be read even if the resource ignores the body
+        body = self.rfile.read(int(self.headers.get('Content-Length') or 0))
+
+        with self.request_lock:
+            handler = KeepAliveServerHandler(io.BytesIO(body), self.wfile, self.get_stderr(), self.get_environ(),
+                                             multithread=True)
+            handler.request_handler = self
+            handler.run(self.server.get_app())
+
+
+class ThreadingWSGIServer(ThreadingMixIn, WSGIServer):
+    daemon_threads = True
+
+
 def start_falcon(resources):
     app = falcon.App()
     for resource in resources:
         app.add_route("/" + resource.addon_path() + "/{method_name}", resource)
+    app.add_route("/batch/{method_name}", BatchResource(resources))
 
-    with make_server('', ctx.options.addons_management_port, app) as httpd:
+    with make_server('', ctx.options.addons_management_port, app,
+                     server_class=ThreadingWSGIServer, handler_class=KeepAliveRequestHandler) as httpd:
         print('Starting REST API management on port: {}'.format(ctx.options.addons_management_port))
         httpd.serve_forever()
 
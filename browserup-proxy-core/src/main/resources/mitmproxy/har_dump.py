@@ -2,6 +2,7 @@ import json
 import base64
 import typing
 import tempfile
+import uuid
 
 from datetime import datetime
 from datetime import timezone
@@ -31,6 +32,9 @@ DEFAULT_PAGE_TITLE = "Default"
 
 REQUEST_SUBMITTED_FLAG = "_request_submitted"
 
+EVICTED_ENTRIES_FIELD = "_evictedEntries"
+EVICTED_BYTES_FIELD = "_evictedBytes"
+
 class HarCaptureTypes(Enum):
     REQUEST_HEADERS = auto()
     REQUEST_COOKIES = auto()
@@ -109,6 +113,14 @@ class HarDumpAddonResource:
             "json": filtered_har
         }, ensure_ascii=False)
 
+    def on_get_har_entries(self, req, resp):
+        har_id = req.get_param('harId')
+        since = req.get_param_as_int('since', default=0)
+
+        resp.status = falcon.HTTP_200
+        resp.content_type = 'application/x-ndjson'
+        resp.text = '\n'.join(self.harDumpAddOn.get_har_entries(har_id, since))
+
     def on_new_har(self, req, resp):
         page_ref = req.get_param('pageRef')
         page_title = req.get_param('pageTitle')
@@ -179,12 +191,28 @@ class HarDumpAddonResource:
         self.harDumpAddOn.har_capture_types = capture_types_parsed
         resp.status = falcon.HTTP_200
 
+    def on_set_har_limits(self, req, resp):
+        try:
+            max_entries = int(req.get_param('maxEntries') or 0)
+            max_bytes = int(req.get_param('maxBytes') or 0)
+        except ValueError:
+            raise falcon.HTTPBadRequest(description="Invalid HAR limits")
+
+        if max_entries < 0 or max_bytes < 0:
+            raise falcon.HTTPBadRequest(description="HAR limits cannot be negative")
+
+        self.harDumpAddOn.set_har_limits(max_entries, max_bytes)
+        resp.status = falcon.HTTP_200
+
 
 class HarDumpAddOn:
 
     def __init__(self):
         self.num = 0
         self.har = None
+        # identifies the current HAR across mitmproxy restarts, so clients know when to discard entries they received before
+        self.har_id_prefix = uuid.uuid4().hex
+        self.har_count = 0
         self.har_page_count = 0
         self.har_capture_types = []
         self.current_har_page = None
@@ -194,6 +222,15 @@ class HarDumpAddOn:
         self.send_finished_nanos = 0
         self.response_receive_started_nanos = 0
         self.http_connect_timings = {}
+        # the limits for new HARs, and the limits and eviction state of the current HAR. a limit of 0 disables the limit.
+        self.har_max_entries = 0
+        self.har_max_bytes = 0
+        self.max_entries = 0
+        self.max_bytes = 0
+        self.evicted_entries = 0
+        self.evicted_bytes = 0
+        self.retained_bytes = 0
+        self.har_entry_sizes = {}
 
     def get_har_entry(self, flow):
         return flow.request.har_entry
@@ -225,6 +262,58 @@ class HarDumpAddOn:
 
         return har_copy
 
+    def filter_har_entry_for_report(self, entry):
+        if not self.is_har_entry_submitted(entry):
+            return entry
+        if not self.har_entry_has_response(entry):
+            return None
+        entry_copy = dict(entry)
+        del entry_copy[REQUEST_SUBMITTED_FLAG]
+        self.har_entry_clear_request(entry_copy)
+        return entry_copy
+
+    def get_har_id(self):
+        return '{}-{}'.format(self.har_id_prefix, self.har_count)
+
+    def get_har_entries(self, har_id, since):
+        """
+            Returns newline-delimited JSON: a header line with the HAR log without its entries, followed by one line for each
+            entry starting at index 'since'. Entries before the returned cursor have a response, so they will not change anymore
+            and do not need to be sent again. If the HAR was replaced since 'har_id' was returned, all entries are sent.
+            Entries are indexed from the first entry of the HAR, including the 'evicted' entries that were removed from the start
+            of a bounded HAR, so the entries are sent from the first remaining entry if 'since' was evicted.
+        """
+        har = self.har
+        if har is None:
+            return [json.dumps({"harId": self.get_har_id(), "exists": False})]
+
+        if har_id != self.get_har_id():
+            since = 0
+
+        evicted = self.evicted_entries
+        start = max(since - evicted, 0)
+        entries = har['log']['entries'][start:]
+        cursor = start
+        while cursor - start < len(entries) and self.har_entry_has_response(entries[cursor - start]):
+            cursor += 1
+
+        log = {k: v for k, v in har['log'].items() if k != 'entries'}
+        lines = [json.dumps({
+            "harId": self.get_har_id(),
+            "exists": True,
+            "since": evicted + start,
+            "cursor": evicted + cursor,
+            "evicted": evicted,
+            "log": log
+        }, ensure_ascii=False)]
+        for index, entry in enumerate(entries, evicted + start):
+            lines.append(json.dumps({
+                "index": index,
+                "entry": self.filter_har_entry_for_report(entry)
+            }, ensure_ascii=False))
+
+        return lines
+
     def mark_har_entries_submitted(self, har):
         if har is not None:
             for entry in har['log']['entries']:
@@ -459,6 +548,8 @@ class HarDumpAddOn:
         self.har_page_count = 0
 
         self.har = self.generate_new_har()
+        self.har_count += 1
+        self.reset_har_limits()
 
         if create_page:
             self.new_page(initial_page_ref, initial_page_title)
@@ -471,7 +562,95 @@ class HarDumpAddOn:
         if old_har is not None:
             for entry in old_har['log']['entries']:
                 if not self.har_entry_has_response(entry):
-                    self.har['log']['entries'].append(entry)
+                    self.add_har_entry(entry)
+
+    def set_har_limits(self, max_entries, max_bytes):
+        ctx.log.info('Limiting new hars to {} entries and {} bytes'.format(max_entries or 'unlimited', max_bytes or 'unlimited'))
+
+        self.har_max_entries = max_entries
+        self.har_max_bytes = max_bytes
+
+    def reset_har_limits(self):
+        self.max_entries = self.har_max_entries
+        self.max_bytes = self.har_max_bytes
+        self.evicted_entries = 0
+        self.evicted_bytes = 0
+        self.retained_bytes = 0
+        self.har_entry_sizes = {}
+
+        if self.is_har_bounded():
+            self.har['log'][EVICTED_ENTRIES_FIELD] = 0
+            self.har['log'][EVICTED_BYTES_FIELD] = 0
+
+    def is_har_bounded(self):
+        return self.max_entries > 0 or self.max_bytes > 0
+
+    def add_har_entry(self, har_entry):
+        self.har['log']['entries'].append(har_entry)
+
+        if self.is_har_bounded():
+            size = self.estimate_har_entry_size(har_entry)
+            self.har_entry_sizes[id(har_entry)] = size
+            self.retained_bytes += size
+            self.evict_oldest_har_entries()
+
+    def update_har_entry_size(self, har_entry):
+        key = id(har_entry)
+        if key not in self.har_entry_sizes:
+            return
+
+        size = self.estimate_har_entry_size(har_entry)
+        self.retained_bytes += size - self.har_entry_sizes[key]
+        self.har_entry_sizes[key] = size
+        self.evict_oldest_har_entries()
+
+    @staticmethod
+    def estimate_har_entry_size(har_entry):
+        # the size of the serialized entry is a cheap estimate of the memory it retains
+        return len(json.dumps(har_entry, ensure_ascii=False, default=str))
+
+    def evict_oldest_har_entries(self):
+        """
+            Evicts the oldest entries of a bounded HAR until it is within its limits, except for the most recent entry, and removes
+            the pages whose entries have all been evicted.
+        """
+        entries = self.har['log']['entries']
+
+        count = 0
+        evicted_bytes = 0
+        while len(entries) - count > 1 and (
+                (self.max_entries > 0 and len(entries) - count > self.max_entries) or
+                (self.max_bytes > 0 and self.retained_bytes - evicted_bytes > self.max_bytes)):
+            evicted_bytes += self.har_entry_sizes.pop(id(entries[count]), 0)
+            count += 1
+
+        if count == 0:
+            return
+
+        evicted_page_refs = {entry['pageref'] for entry in entries[:count]}
+        del entries[:count]
+
+        self.retained_bytes -= evicted_bytes
+        self.evicted_entries += count
+        self.evicted_bytes += evicted_bytes
+        self.har['log'][EVICTED_ENTRIES_FIELD] = self.evicted_entries
+        self.har['log'][EVICTED_BYTES_FIELD] = self.evicted_bytes
+
+        self.remove_pages_without_entries(evicted_page_refs)
+
+    def remove_pages_without_entries(self, page_refs):
+        pages = self.har['log']['pages']
+        entries = self.har['log']['entries']
+
+        # the most recent page and the current page may still get entries
+        if pages:
+            page_refs.discard(pages[-1]['id'])
+        if self.current_har_page is not None:
+            page_refs.discard(self.current_har_page['id'])
+
+        page_refs = {ref for ref in page_refs if not any(entry['pageref'] == ref for entry in entries)}
+        if page_refs:
+            self.har['log']['pages'] = [page for page in pages if page['id'] not in page_refs]
 
     def end_har(self):
         ctx.log.info('Ending current har...')
@@ -579,8 +758,8 @@ class HarDumpAddOn:
         har_entry['request'] = har_request
 
     def append_har_entry(self, har_entry):
-        har = self.get_or_create_har(DEFAULT_PAGE_REF, DEFAULT_PAGE_TITLE, True)
-        har['log']['entries'].append(har_entry)
+        self.get_or_create_har(DEFAULT_PAGE_REF, DEFAULT_PAGE_TITLE, True)
+        self.add_har_entry(har_entry)
 
     def request(self, flow):
         if 'AllowListFiltered' in flow.metadata or 'BlockListFiltered' in flow.metadata:
@@ -720,6 +899,8 @@ class HarDumpAddOn:
             har_entry["serverIPAddress"] = str(
                 flow.server_conn.ip_address[0])
 
+        self.update_har_entry_size(har_entry)
+
         ctx.log.debug('Populated har entry for response: {}, entry: {}'.format(flow.request.url, str(har_entry)))
 
     def calculate_timings(self, connect_time, flow, ssl_time):
@@ -0,0 +1,171 @@
+import json
+import threading
+import time
+
+import falcon
+
+# Must match the bucket layout of com.browserup.bup.proxy.metrics.LatencyHistogram
+SUB_BUCKET_BITS = 3
+SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS
+
+PHASES = ['DNS', 'CONNECT', 'TLS', 'SEND', 'WAIT', 'RECEIVE', 'TOTAL']
+
+COUNTERS = [
+    'CLIENT_BYTES_RECEIVED',
+    'CLIENT_BYTES_SENT',
+    'SERVER_BYTES_SENT',
+    'SERVER_BYTES_RECEIVED',
+    'CLIENT_CONNECTIONS',
+    'ACTIVE_CLIENT_CONNECTIONS',
+    'BLOCKED_REQUESTS',
+    'ALLOWLIST_REJECTED_REQUESTS',
+    'FILTER_EXCEPTIONS',
+]
+
+
+def bucket_index(value_nanos):
+    if value_nanos < SUB_BUCKET_COUNT:
+        return max(value_nanos, 0)
+
+    highest_bit = value_nanos.bit_length() - 1
+    return (highest_bit - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + \
+        ((value_nanos >> (highest_bit - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1))
+
+
+class MetricsResource:
+
+    def addon_path(self):
+        return "metrics"
+
+    def __init__(self, metrics_addon):
+        self.metrics_addon = metrics_addon
+
+    def on_get(self, req, resp, method_name):
+        getattr(self, "on_" + method_name)(req, resp)
+
+    def on_get_metrics(self, req, resp):
+        resp.status = falcon.HTTP_200
+        resp.content_type = falcon.MEDIA_JSON
+        resp.text = json.dumps(self.metrics_addon.get_metrics())
+
+
+class Histogram:
+
+    def __init__(self):
+        self.bucket_counts = []
+        self.sum_nanos = 0
+
+    def record(self, value_nanos):
+        value_nanos = max(int(value_nanos), 0)
+        index = bucket_index(value_nanos)
+        if index >= len(self.bucket_counts):
+            self.bucket_counts.extend([0] * (index + 1 - len(self.bucket_counts)))
+        self.bucket_counts[index] += 1
+        self.sum_nanos += value_nanos
+
+
+class MetricsAddOn:
+    """
+    Records the latencies of request phases and the proxy counters, using the same phases and counters as the
+    LittleProxy-based proxy. Byte counters count header fields and message bodies, since mitmproxy does not
+    report the bytes transferred on the wire. Filter exceptions are not counted.
+    """
+
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.histograms = {phase: Histogram() for phase in PHASES}
+        self.counters = {counter: 0 for counter in COUNTERS}
+        self.servers_seen = set()
+
+    def get_resource(self):
+        return MetricsResource(self)
+
+    def get_metrics(self):
+        with self.lock:
+            return {
+                "histograms": {
+                    phase: {
+                        "bucketCounts": list(histogram.bucket_counts),
+                        "sumNanos": histogram.sum_nanos
+                    } for phase, histogram in self.histograms.items()
+                },
+                "counters": dict(self.counters)
+            }
+
+    def record(self, phase, start, end):
+        if start is not None and end is not None:
+            self.histograms[phase].record(self.sec_to_nano(end - start))
+
+    def add(self, counter, value):
+        self.counters[counter] += value
+
+    # Client connection callbacks
+
+    def clientconnect(self, layer):
+        with self.lock:
+            self.add('CLIENT_CONNECTIONS', 1)
+            self.add('ACTIVE_CLIENT_CONNECTIONS', 1)
+
+    def clientdisconnect(self, layer):
+        with self.lock:
+            self.add('ACTIVE_CLIENT_CONNECTIONS', -1)
+
+    # TCP Callbacks
+
+    def tcp_resolving_server_address_started(self, flow):
+        flow.metadata['MetricsDnsStarted'] = time.time()
+
+    def tcp_resolving_server_address_finished(self, flow):
+        with self.lock:
+            self.record('DNS', flow.metadata.get('MetricsDnsStarted'), time.time())
+
+    # HTTP Callbacks
+
+    def response(self, flow):
+        with self.lock:
+            self.add('CLIENT_BYTES_RECEIVED', self.message_size(flow.request))
+            self.add('CLIENT_BYTES_SENT', self.message_size(flow.response))
+
+            if 'BlockListFiltered' in flow.metadata:
+                self.add('BLOCKED_REQUESTS', 1)
+                return
+
+            if 'AllowListFiltered' in flow.metadata:
+                self.add('ALLOWLIST_REJECTED_REQUESTS', 1)
+                return
+
+            self.add('SERVER_BYTES_SENT', self.message_size(flow.request))
+            self.add('SERVER_BYTES_RECEIVED', self.message_size(flow.response))
+
+            server_conn = flow.server_conn
+            if server_conn and server_conn not in self.servers_seen:
+                self.servers_seen.add(server_conn)
+                self.record('CONNECT', server_conn.timestamp_start, server_conn.timestamp_tcp_setup)
+                self.record('TLS', server_conn.timestamp_tcp_setup, server_conn.timestamp_tls_setup)
+
+            self.record('SEND', flow.request.timestamp_start, flow.request.timestamp_end)
+            self.record('WAIT', flow.request.timestamp_end, flow.response.timestamp_start)
+            self.record('RECEIVE', flow.response.timestamp_start, flow.response.timestamp_end)
+
+            if flow.request.method != 'CONNECT':
+                self.record('TOTAL', flow.request.timestamp_start, flow.response.timestamp_end)
+
+    def serverdisconnect(self, conn):
+        with self.lock:
+            self.servers_seen.discard(conn)
+
+    @staticmethod
+    def message_size(message):
+        if message is None:
+            return 0
+        headers_size = sum(len(k) + len(v) + 4 for k, v in message.headers.items(multi=True))
+        return headers_size + (len(message.raw_content) if message.raw_content else 0)
+
+    @staticmethod
+    def sec_to_nano(time_sec):
+        return int(time_sec * 1000000000)
+
+
+addons = [
+    MetricsAddOn()
+]
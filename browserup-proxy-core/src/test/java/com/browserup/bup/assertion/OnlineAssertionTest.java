@@ -0,0 +1,123 @@
+package com.browserup.bup.assertion;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.assertion.field.content.ContentContainsStringAssertion;
+import com.browserup.bup.assertion.field.status.StatusEqualsAssertion;
+import com.browserup.bup.assertion.model.AssertionResult;
+import com.browserup.bup.assertion.online.OnlineAssertion;
+import com.browserup.bup.assertion.online.OnlineAssertionRegistry;
+import com.browserup.bup.proxy.assertion.BaseAssertionsTest;
+import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarRequest;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OnlineAssertionTest extends BaseAssertionsTest {
+
+    @Test
+    void responseTimeIsAssertedAsEntriesComplete() throws IOException {
+        OnlineAssertionRegistry onlineAssertions = ((BrowserUpProxyServer) proxy).getOnlineAssertions();
+        onlineAssertions.register("fast", Pattern.compile(".*-url"),
+                new ResponseTimeLessThanOrEqualAssertion((long) TIME_DELTA_MILLISECONDS));
+
+        mockResponseForPathWithDelay("fast-url", 0);
+        mockResponseForPathWithDelay("slow-url", FAST_RESPONSE_DELAY);
+        mockResponseForPathWithDelay("ignored", FAST_RESPONSE_DELAY);
+
+        requestToMockedServer("fast-url");
+        requestToMockedServer("slow-url");
+        requestToMockedServer("ignored");
+
+        AssertionResult result = awaitResult(onlineAssertions, "fast", 2);
+
+        assertAssertionFailed(result);
+        assertThat("Expected only the failed entry in the result", result.getRequests(), hasSize(1));
+        assertEquals(mockedServerUrl + "/slow-url", result.getRequests().get(0).getUrl(), "Expected the slow entry to fail");
+
+        onlineAssertions.resetResults();
+        assertEquals("0 passed, 0 total", onlineAssertions.getResult("fast").getMessage(), "Expected results to be discarded");
+        assertAssertionHasNoEntries(onlineAssertions.getResult("fast"));
+    }
+
+    @Test
+    void contentIsAssertedWithoutCapturingItInHar() throws IOException {
+        OnlineAssertionRegistry onlineAssertions = ((BrowserUpProxyServer) proxy).getOnlineAssertions();
+        onlineAssertions.register("success", Pattern.compile(".*"), new ContentContainsStringAssertion(SUCCESSFUL_RESPONSE_BODY));
+
+        stubFor(get(urlEqualTo("/" + URL_PATH)).willReturn(ok().withHeader("Content-Type", "text/plain").withBody(SUCCESSFUL_RESPONSE_BODY)));
+
+        requestToMockedServer(URL_PATH);
+
+        assertAssertionPassed(awaitResult(onlineAssertions, "success", 1));
+        assertNull(proxy.getHar().getLog().getEntries().get(0).getResponse().getContent().getText(),
+                "Expected response content not to be captured in the HAR");
+    }
+
+    @Test
+    void shortCircuitedResponsesAreAsserted() throws IOException {
+        OnlineAssertionRegistry onlineAssertions = ((BrowserUpProxyServer) proxy).getOnlineAssertions();
+        onlineAssertions.register("ok", Pattern.compile(".*"), new StatusEqualsAssertion(200));
+
+        proxy.blocklistRequests(".*blocked.*", 404);
+
+        NewProxyServerTestUtil.toStringAndClose(clientToProxy.execute(new HttpGet(mockedServerUrl + "/blocked")).getEntity().getContent());
+
+        AssertionResult result = awaitResult(onlineAssertions, "ok", 1);
+        assertAssertionFailed(result);
+        assertEquals(mockedServerUrl + "/blocked", result.getRequests().get(0).getUrl(), "Expected the blocked entry to fail");
+    }
+
+    @Test
+    void failedConnectionsAreAsserted() throws IOException {
+        OnlineAssertionRegistry onlineAssertions = ((BrowserUpProxyServer) proxy).getOnlineAssertions();
+        onlineAssertions.register("ok", Pattern.compile(".*"), new StatusEqualsAssertion(200));
+
+        NewProxyServerTestUtil.toStringAndClose(clientToProxy.execute(new HttpGet("http://www.unresolvable.invalid/")).getEntity().getContent());
+
+        AssertionResult result = awaitResult(onlineAssertions, "ok", 1);
+        assertAssertionFailed(result);
+        assertEquals("http://www.unresolvable.invalid/", result.getRequests().get(0).getUrl(),
+                "Expected the entry of the unresolvable host to fail");
+    }
+
+    @Test
+    void entriesWithoutRequestUrlAreIgnored() {
+        OnlineAssertion assertion = new OnlineAssertion("ok", Pattern.compile(".*"), new StatusEqualsAssertion(200));
+
+        HarEntry entryWithoutRequest = mock(HarEntry.class);
+        when(entryWithoutRequest.getRequest()).thenReturn(null);
+
+        HarEntry entryWithoutUrl = new HarEntry();
+        entryWithoutUrl.setRequest(new HarRequest());
+
+        assertion.evaluate(entryWithoutRequest);
+        assertion.evaluate(entryWithoutUrl);
+
+        assertEquals("0 passed, 0 total", assertion.getResult().getMessage(), "Expected entries without a request URL not to be evaluated");
+    }
+
+    private static AssertionResult awaitResult(OnlineAssertionRegistry onlineAssertions, String name, int total) {
+        // entries are completed after the response has been sent to the client
+        String message = " passed, " + total + " total";
+        await().atMost(5, TimeUnit.SECONDS).until(() -> onlineAssertions.getResult(name).getMessage().endsWith(message));
+
+        return onlineAssertions.getResult(name);
+    }
+}
@@ -0,0 +1,95 @@
+package com.browserup.bup.filters;
+
+import com.browserup.bup.har.HarEntryCompletionListener;
+import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HttpConnectHarCaptureFilterTest {
+    private EmbeddedChannel clientChannel;
+    private CompletionRecordingEntryList entries;
+    private HttpConnectHarCaptureFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        clientChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter()) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("127.0.0.1", 54321);
+            }
+        };
+
+        entries = new CompletionRecordingEntryList();
+        Har har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(entries);
+
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "www.example.com:443");
+        request.headers().set(HttpHeaderNames.HOST, "www.example.com:443");
+        filter = new HttpConnectHarCaptureFilter(request, clientChannel.pipeline().firstContext(), har, "page_1");
+        filter.setModifiedHttpRequest(request);
+        filter.clientToProxyRequest(request);
+    }
+
+    @AfterEach
+    void tearDown() {
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testEntryOfFailedResolutionIsCompleted() {
+        filter.proxyToServerResolutionStarted("www.example.com:443");
+        filter.proxyToServerResolutionFailed("www.example.com:443");
+
+        assertCompleted();
+    }
+
+    @Test
+    void testEntryOfFailedConnectionIsCompleted() {
+        filter.proxyToServerConnectionStarted();
+        filter.proxyToServerConnectionFailed();
+
+        assertCompleted();
+    }
+
+    @Test
+    void testEntryOfTimedOutResponseIsCompleted() {
+        filter.proxyToServerRequestSending();
+        filter.serverToProxyResponseTimedOut();
+
+        assertCompleted();
+    }
+
+    private void assertCompleted() {
+        assertEquals(1, entries.size(), "Expected an entry for the failed CONNECT");
+        assertEquals(1, entries.completedEntries.size(), "Expected the entry list to be notified once that the entry is complete");
+        assertSame(entries.get(0), entries.completedEntries.get(0), "Expected the entry of the failed CONNECT to be completed");
+    }
+
+    private static class CompletionRecordingEntryList extends ArrayList<HarEntry> implements HarEntryCompletionListener {
+        private final List<HarEntry> completedEntries = new ArrayList<>();
+
+        @Override
+        public void entryCompleted(HarEntry entry) {
+            completedEntries.add(entry);
+        }
+    }
+}
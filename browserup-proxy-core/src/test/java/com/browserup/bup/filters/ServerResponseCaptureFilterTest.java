@@ -0,0 +1,184 @@
+package com.browserup.bup.filters;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerResponseCaptureFilterTest {
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog. The quick brown fox jumps over the lazy dog.";
+
+    private EmbeddedChannel clientChannel;
+    private ChannelHandlerContext ctx;
+
+    @BeforeEach
+    void setUp() {
+        clientChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ctx = clientChannel.pipeline().firstContext();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testCapturesChunkedResponse() {
+        ServerResponseCaptureFilter filter = createFilter(ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE);
+        byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuf[] chunks = sendResponse(filter, null, content, 10);
+
+        assertArrayEquals(content, filter.getFullResponseContents(), "Expected the entire response to be captured");
+        assertArrayEquals(content, filter.getRawResponseContents(), "Expected raw contents to match the full contents");
+        assertEquals(content.length, filter.getFullResponseContentsSize(), "Expected size of the entire response");
+        assertFalse(filter.isContentTruncated(), "Expected content not to be truncated");
+        assertReleased(chunks);
+    }
+
+    @Test
+    void testTruncatesResponseAtCaptureLimit() {
+        ServerResponseCaptureFilter filter = createFilter(15);
+        byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuf[] chunks = sendResponse(filter, null, content, 10);
+
+        assertArrayEquals(Arrays.copyOf(content, 15), filter.getFullResponseContents(), "Expected content to be truncated to the capture limit");
+        assertEquals(content.length, filter.getFullResponseContentsSize(), "Expected size to include content beyond the capture limit");
+        assertTrue(filter.isContentTruncated(), "Expected content to be marked as truncated");
+        assertReleased(chunks);
+    }
+
+    @Test
+    void testDecompressesGzipContentAsItArrives() throws IOException {
+        ServerResponseCaptureFilter filter = createFilter(ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE);
+        byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = gzip(content);
+
+        ByteBuf[] chunks = sendResponse(filter, HttpHeaderValues.GZIP.toString(), compressed, 7);
+
+        assertTrue(filter.isResponseCompressed(), "Expected response to be compressed");
+        assertTrue(filter.isDecompressionSuccessful(), "Expected decompression to succeed");
+        assertArrayEquals(content, filter.getFullResponseContents(), "Expected decompressed contents");
+        assertArrayEquals(compressed, filter.getRawResponseContents(), "Expected raw contents to remain compressed");
+        assertReleased(chunks);
+    }
+
+    @Test
+    void testTruncatesDecompressedGzipContent() throws IOException {
+        ServerResponseCaptureFilter filter = createFilter(20);
+        byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuf[] chunks = sendResponse(filter, HttpHeaderValues.GZIP.toString(), gzip(content), 7);
+
+        assertTrue(filter.isDecompressionSuccessful(), "Expected decompression to succeed");
+        assertArrayEquals(Arrays.copyOf(content, 20), filter.getFullResponseContents(), "Expected decompressed contents to be truncated");
+        assertEquals(content.length, filter.getFullResponseContentsSize(), "Expected size of the entire decompressed response");
+        assertTrue(filter.isContentTruncated(), "Expected content to be marked as truncated");
+        assertReleased(chunks);
+    }
+
+    @Test
+    void testReleasesContentWhenClientDisconnects() {
+        ServerResponseCaptureFilter filter = createFilter(ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE);
+
+        filter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        ByteBuf chunk = Unpooled.copiedBuffer(CONTENT, StandardCharsets.UTF_8);
+        filter.serverToProxyResponse(new DefaultHttpContent(chunk));
+
+        assertEquals(2, chunk.refCnt(), "Expected captured content to be retained");
+
+        clientChannel.close();
+
+        assertEquals(1, chunk.refCnt(), "Expected captured content to be released when the client disconnects");
+    }
+
+    @Test
+    void testStopCapturingReleasesContent() {
+        ServerResponseCaptureFilter filter = createFilter(ServerResponseCaptureFilter.UNLIMITED_CAPTURE_SIZE);
+
+        filter.serverToProxyResponse(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        ByteBuf firstChunk = Unpooled.copiedBuffer(CONTENT, StandardCharsets.UTF_8);
+        filter.serverToProxyResponse(new DefaultHttpContent(firstChunk));
+
+        filter.stopCapturing();
+        assertEquals(1, firstChunk.refCnt(), "Expected captured content to be released when capturing is stopped");
+
+        ByteBuf lastChunk = Unpooled.copiedBuffer(CONTENT, StandardCharsets.UTF_8);
+        filter.serverToProxyResponse(new DefaultLastHttpContent(lastChunk));
+
+        assertEquals(1, lastChunk.refCnt(), "Expected content received after capturing was stopped not to be retained");
+        assertEquals(0, filter.getFullResponseContents().length, "Expected no content to be captured");
+        assertEquals(2L * CONTENT.length(), filter.getFullResponseContentsSize(), "Expected the size of the entire response to be counted");
+    }
+
+    private ServerResponseCaptureFilter createFilter(int maxCaptureSize) {
+        return new ServerResponseCaptureFilter(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://localhost/"), ctx, true, maxCaptureSize);
+    }
+
+    /**
+     * Sends the content to the filter in chunks of chunkSize bytes, and returns the chunks so the caller can verify they were released.
+     */
+    private static ByteBuf[] sendResponse(ServerResponseCaptureFilter filter, String contentEncoding, byte[] content, int chunkSize) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        if (contentEncoding != null) {
+            response.headers().set(HttpHeaderNames.CONTENT_ENCODING, contentEncoding);
+        }
+        filter.serverToProxyResponse(response);
+
+        int chunkCount = (content.length + chunkSize - 1) / chunkSize;
+        ByteBuf[] chunks = new ByteBuf[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int offset = i * chunkSize;
+            chunks[i] = Unpooled.copiedBuffer(content, offset, Math.min(chunkSize, content.length - offset));
+
+            if (i < chunkCount - 1) {
+                filter.serverToProxyResponse(new DefaultHttpContent(chunks[i]));
+            } else {
+                filter.serverToProxyResponse(new DefaultLastHttpContent(chunks[i]));
+            }
+        }
+
+        return chunks;
+    }
+
+    private static void assertReleased(ByteBuf[] chunks) {
+        for (ByteBuf chunk : chunks) {
+            assertEquals(1, chunk.refCnt(), "Expected filter to release its references to the response content");
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+            gzipStream.write(content);
+        }
+
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,174 @@
+package com.browserup.bup.har;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.browserup.bup.BrowserUpProxyServer;
+
+import de.sstoehr.harreader.model.HarContent;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+import de.sstoehr.harreader.model.HarPage;
+import de.sstoehr.harreader.model.HarRequest;
+import de.sstoehr.harreader.model.HarResponse;
+
+class BoundedHarEntryListTest {
+    @Test
+    void testOldestEntriesAreEvictedWhenMaxEntriesIsExceeded() {
+        BoundedHarEntryList list = new BoundedHarEntryList(3, 0);
+
+        for (int i = 0; i < 10; i++) {
+            list.add(createEntry("page", "http://www.example.com/" + i));
+        }
+
+        assertEquals(List.of("http://www.example.com/7", "http://www.example.com/8", "http://www.example.com/9"), urls(list),
+                "Expected only the most recent entries to be kept");
+        assertEquals("http://www.example.com/7", list.get(0).getRequest().getUrl(), "Expected oldest retained entry at index 0");
+        assertEquals(7, list.getEvictedEntries(), "Expected evicted entries to be counted");
+        assertTrue(list.getEvictedBytes() > 0, "Expected evicted bytes to be counted");
+    }
+
+    @Test
+    void testOldestEntriesAreEvictedWhenCompletedEntryExceedsMaxBytes() {
+        HarEntry first = createEntry("page", "http://www.example.com/first");
+        HarEntry second = createEntry("page", "http://www.example.com/second");
+        long maxBytes = BoundedHarEntryList.estimateRetainedSize(first) + BoundedHarEntryList.estimateRetainedSize(second) + 1000;
+
+        BoundedHarEntryList list = new BoundedHarEntryList(0, maxBytes);
+        list.add(first);
+        list.add(second);
+        assertEquals(2, list.size(), "Expected entries within the size limit to be kept");
+
+        // the response content is captured after the entry was added
+        HarContent content = new HarContent();
+        content.setText("x".repeat(2000));
+        second.getResponse().setContent(content);
+        list.entryCompleted(second);
+
+        assertEquals(1, list.size(), "Expected the oldest entry to be evicted when the completed entry grew");
+        assertSame(second, list.get(0), "Expected the most recent entry to be kept, even though it exceeds the size limit");
+        assertEquals(BoundedHarEntryList.estimateRetainedSize(first), list.getEvictedBytes(), "Expected evicted bytes to be counted");
+        assertEquals(BoundedHarEntryList.estimateRetainedSize(second), list.getRetainedBytes(), "Expected retained bytes to be updated");
+
+        list.entryCompleted(first);
+        assertEquals(1, list.size(), "Expected completion of an evicted entry to be ignored");
+    }
+
+    @Test
+    void testPagesWithoutEntriesAreRemovedFromLog() {
+        HarLog log = new HarLog();
+        log.setPages(new CopyOnWriteArrayList<>(List.of(createPage("page 1"), createPage("page 2"), createPage("page 3"))));
+        BoundedHarEntryList list = new BoundedHarEntryList(2, 0, log);
+        log.setEntries(list);
+
+        assertEquals(0L, log.getAdditional().get(BoundedHarEntryList.EVICTED_ENTRIES_FIELD), "Expected eviction counter in log");
+
+        list.add(createEntry("page 1", "http://www.example.com/1"));
+        list.add(createEntry("page 2", "http://www.example.com/2"));
+        list.add(createEntry("page 2", "http://www.example.com/3"));
+
+        assertEquals(List.of("page 2", "page 3"), pageIds(log), "Expected page to be removed when its last entry was evicted");
+
+        list.add(createEntry("page 3", "http://www.example.com/4"));
+        list.add(createEntry("page 3", "http://www.example.com/5"));
+
+        assertEquals(List.of("page 3"), pageIds(log), "Expected page to be removed when its last entry was evicted");
+        assertEquals(3L, log.getAdditional().get(BoundedHarEntryList.EVICTED_ENTRIES_FIELD), "Expected evicted entries in log");
+        assertEquals(list.getEvictedBytes(), log.getAdditional().get(BoundedHarEntryList.EVICTED_BYTES_FIELD),
+                "Expected evicted bytes in log");
+    }
+
+    @Test
+    void testMostRecentPageIsNotRemoved() {
+        HarLog log = new HarLog();
+        log.setPages(new CopyOnWriteArrayList<>(List.of(createPage("page 1"))));
+        BoundedHarEntryList list = new BoundedHarEntryList(1, 0, log);
+        log.setEntries(list);
+
+        list.add(createEntry("page 1", "http://www.example.com/1"));
+        list.add(createEntry(null, "http://www.example.com/2"));
+
+        assertEquals(List.of("page 1"), pageIds(log), "Expected the most recent page to be kept");
+    }
+
+    @Test
+    void testIteratorIsSnapshot() {
+        BoundedHarEntryList list = new BoundedHarEntryList(2, 0);
+        list.add(createEntry("page", "http://www.example.com/1"));
+        list.add(createEntry("page", "http://www.example.com/2"));
+
+        List<String> urls = list.stream()
+                .peek(entry -> list.add(createEntry("page", "http://www.example.com/new")))
+                .map(entry -> entry.getRequest().getUrl())
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("http://www.example.com/1", "http://www.example.com/2"), urls,
+                "Expected the stream to see the entries as of its creation");
+    }
+
+    @Test
+    void testProxyHarIsBounded() {
+        BrowserUpProxyServer proxy = new BrowserUpProxyServer();
+        proxy.setHarLimits(5, 0);
+        proxy.newHar();
+
+        List<HarEntry> entries = proxy.getHar().getLog().getEntries();
+        assertTrue(entries instanceof BoundedHarEntryList, "Expected HAR entries to be bounded");
+        assertEquals(5, ((BoundedHarEntryList) entries).getMaxEntries(), "Expected entry limit of the proxy");
+
+        proxy.setHarLimits(0, 0);
+        proxy.newHar();
+
+        assertTrue(proxy.getHarStorage() instanceof InMemoryHarStorage, "Expected unbounded storage without limits");
+    }
+
+    @Test
+    void testRemovingProxyHarLimitsKeepsCustomStorage(@TempDir Path tempDir) {
+        BrowserUpProxyServer proxy = new BrowserUpProxyServer();
+        SpillingHarStorage storage = new SpillingHarStorage(tempDir.toFile());
+        proxy.setHarStorage(storage);
+
+        proxy.setHarLimits(0, 0);
+
+        assertSame(storage, proxy.getHarStorage(), "Expected custom storage to be kept when there are no limits to remove");
+    }
+
+    private static HarEntry createEntry(String pageref, String url) {
+        HarEntry entry = new HarEntry();
+        entry.setPageref(pageref);
+        entry.setStartedDateTime(new Date());
+
+        HarRequest request = new HarRequest();
+        request.setUrl(url);
+        entry.setRequest(request);
+        entry.setResponse(new HarResponse());
+
+        return entry;
+    }
+
+    private static HarPage createPage(String id) {
+        HarPage page = new HarPage();
+        page.setId(id);
+        page.setTitle(id);
+
+        return page;
+    }
+
+    private static List<String> urls(List<HarEntry> entries) {
+        return entries.stream().map(entry -> entry.getRequest().getUrl()).collect(Collectors.toList());
+    }
+
+    private static List<String> pageIds(HarLog log) {
+        return log.getPages().stream().map(HarPage::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,270 @@
+package com.browserup.bup.har;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.browserup.bup.util.HttpStatusClass;
+
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarRequest;
+import de.sstoehr.harreader.model.HarResponse;
+
+class HarEntryListTest {
+    @Test
+    void testAddAndGetAcrossChunks() {
+        HarEntryList list = new HarEntryList();
+        List<HarEntry> expected = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            HarEntry entry = new HarEntry();
+            entry.setPageref("page " + i);
+            list.add(entry);
+            expected.add(entry);
+        }
+
+        assertEquals(expected.size(), list.size(), "Expected list size to match the number of added entries");
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), list.get(i), "Expected entries to be returned in insertion order");
+        }
+        assertEquals(expected, list, "Expected list to be equal to an ArrayList with the same entries");
+        assertEquals(expected, list.stream().collect(Collectors.toList()), "Expected stream to return entries in insertion order");
+    }
+
+    @Test
+    void testIteratorIsSnapshot() {
+        HarEntryList list = new HarEntryList();
+        list.add(new HarEntry());
+        list.add(new HarEntry());
+
+        Iterator<HarEntry> iterator = list.iterator();
+        list.add(new HarEntry());
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+
+        assertEquals(2, count, "Expected iterator to ignore entries added after it was created");
+        assertEquals(3, list.size(), "Expected list to contain the entry added during iteration");
+    }
+
+    @Test
+    void testSetReplacesEntry() {
+        HarEntryList list = new HarEntryList();
+        HarEntry original = new HarEntry();
+        HarEntry replacement = new HarEntry();
+        list.add(original);
+
+        assertSame(original, list.set(0, replacement), "Expected set to return the replaced entry");
+        assertSame(replacement, list.get(0), "Expected set to replace the entry");
+    }
+
+    @Test
+    void testUnsupportedOperations() {
+        HarEntryList list = new HarEntryList();
+        list.add(new HarEntry());
+
+        assertThrows(NullPointerException.class, () -> list.add(null));
+        assertThrows(UnsupportedOperationException.class, () -> list.remove(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+    }
+
+    @Test
+    void testConcurrentAdds() throws Exception {
+        int writers = 8;
+        int readers = 2;
+        int entriesPerWriter = 20_000;
+
+        // the writer and sequence number of each entry, so that readers can verify the order of the entries they see
+        HarEntry[][] entries = new HarEntry[writers][entriesPerWriter];
+        Map<HarEntry, int[]> entryIds = new IdentityHashMap<>();
+        for (int w = 0; w < writers; w++) {
+            for (int i = 0; i < entriesPerWriter; i++) {
+                entries[w][i] = new HarEntry();
+                entryIds.put(entries[w][i], new int[]{w, i});
+            }
+        }
+
+        HarEntryList list = new HarEntryList();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writersDone = new CountDownLatch(writers);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                HarEntry[] writerEntries = entries[w];
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        for (HarEntry entry : writerEntries) {
+                            list.add(entry);
+                        }
+                    } finally {
+                        writersDone.countDown();
+                    }
+                    return null;
+                }));
+            }
+
+            for (int r = 0; r < readers; r++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<HarEntry> previousSnapshot = Collections.emptyList();
+                    boolean lastSnapshot = false;
+                    while (!lastSnapshot) {
+                        lastSnapshot = writersDone.getCount() == 0;
+
+                        List<HarEntry> snapshot = new ArrayList<>();
+                        list.iterator().forEachRemaining(snapshot::add);
+
+                        // readers iterating concurrently must never see a missing entry
+                        assertTrue(snapshot.size() >= previousSnapshot.size(),
+                                "Expected snapshot size never to decrease, but it decreased from " + previousSnapshot.size() + " to " + snapshot.size());
+                        for (int i = 0; i < previousSnapshot.size(); i++) {
+                            assertSame(previousSnapshot.get(i), snapshot.get(i), "Expected entry at index " + i + " not to move or change");
+                        }
+                        assertInsertionOrder(snapshot, entryIds, writers);
+
+                        previousSnapshot = snapshot;
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(writers * entriesPerWriter, list.size(), "Expected every concurrently added entry to be present");
+
+        List<HarEntry> finalEntries = new ArrayList<>(list);
+        assertEquals(writers * entriesPerWriter, finalEntries.size(), "Expected iteration to return every concurrently added entry");
+        assertInsertionOrder(finalEntries, entryIds, writers);
+
+        Set<HarEntry> distinctEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinctEntries.addAll(finalEntries);
+        assertEquals(writers * entriesPerWriter, distinctEntries.size(), "Expected no entry to be lost or duplicated");
+    }
+
+    /**
+     * Asserts that the entries are non-null and that the entries of each writer appear in the order the writer added them, without gaps.
+     */
+    private static void assertInsertionOrder(List<HarEntry> entries, Map<HarEntry, int[]> entryIds, int writers) {
+        int[] nextSequenceNumbers = new int[writers];
+        for (int i = 0; i < entries.size(); i++) {
+            HarEntry entry = entries.get(i);
+            assertNotNull(entry, "Expected no null entry at index " + i);
+
+            int[] id = entryIds.get(entry);
+            assertEquals(nextSequenceNumbers[id[0]], id[1], "Expected entries of writer " + id[0] + " in insertion order at index " + i);
+            nextSequenceNumbers[id[0]]++;
+        }
+    }
+
+    @Test
+    void testFindEntriesUsesIndexesAndIncludesUnindexedEntries() {
+        HarEntryList list = new HarEntryList();
+        HarEntry apiEntry = addEntry(list, "https://www.example.com/api/items?id=1", 200, 1000, true);
+        HarEntry otherHostEntry = addEntry(list, "https://www.example.org/api/items?id=1", 200, 2000, true);
+        HarEntry staticEntry = addEntry(list, "https://www.example.com/static/app.js", 404, 3000, true);
+        // entries that are still being captured have not been indexed yet
+        HarEntry inProgressEntry = addEntry(list, "https://www.example.com/api/items?id=2", 500, 4000, false);
+
+        Pattern apiPattern = Pattern.compile("^https?://www\\.example\\.com/api/.*");
+        assertEquals(List.of(apiEntry, inProgressEntry), list.findEntries(apiPattern),
+                "Expected indexed and unindexed entries matching the pattern to be found in list order");
+
+        assertEquals(List.of(apiEntry, otherHostEntry, staticEntry, inProgressEntry),
+                list.findEntries(Pattern.compile(".*www\\.example.*")),
+                "Expected entries to be found with a pattern that the indexes do not apply to");
+
+        assertEquals(List.of(staticEntry), list.findEntries(null, HttpStatusClass.CLIENT_ERROR),
+                "Expected entries to be found by status class");
+        assertEquals(List.of(inProgressEntry), list.findEntries(apiPattern, HttpStatusClass.SERVER_ERROR),
+                "Expected entries to be found by URL pattern and status class");
+    }
+
+    @Test
+    void testFindEntriesAfterSet() {
+        HarEntryList list = new HarEntryList();
+        addEntry(list, "https://www.example.com/api/items", 200, 1000, true);
+
+        HarEntry replacement = createEntry("https://www.example.org/api/items", 200, 1000);
+        list.set(0, replacement);
+
+        assertEquals(List.of(replacement), list.findEntries(Pattern.compile("https://www\\.example\\.org/api/items")),
+                "Expected the replacement entry to be found");
+        assertTrue(list.findEntries(Pattern.compile("https://www\\.example\\.com/api/items")).isEmpty(),
+                "Expected the replaced entry not to be found");
+    }
+
+    @Test
+    void testFindMostRecent() {
+        HarEntryList list = new HarEntryList();
+        addEntry(list, "https://www.example.com/api/items?id=1", 200, 1000, true);
+        HarEntry mostRecentApiEntry = addEntry(list, "https://www.example.com/api/items?id=2", 200, 3000, true);
+        // added after, but started before, the most recent entry
+        addEntry(list, "https://www.example.com/api/items?id=3", 200, 2000, true);
+        HarEntry mostRecentEntry = addEntry(list, "https://www.example.com/static/app.js", 200, 4000, true);
+        // started at the same time as the most recent entry, so the first of them is the most recent
+        addEntry(list, "https://www.example.com/api/items?id=4", 200, 3000, false);
+
+        assertEquals(Optional.of(mostRecentApiEntry), list.findMostRecent(Pattern.compile("https://www\\.example\\.com/api/.*")),
+                "Expected the matching entry with the latest start time to be found");
+        assertEquals(Optional.of(mostRecentEntry), list.findMostRecent(null),
+                "Expected the entry with the latest start time to be found");
+        assertEquals(Optional.empty(), list.findMostRecent(Pattern.compile("https://www\\.example\\.org/.*")),
+                "Expected no entry to be found when no URL matches");
+    }
+
+    private static HarEntry addEntry(HarEntryList list, String url, int status, long startedDateTime, boolean completed) {
+        HarEntry entry = createEntry(url, status, startedDateTime);
+        list.add(entry);
+        if (completed) {
+            list.entryCompleted(entry);
+        }
+
+        return entry;
+    }
+
+    private static HarEntry createEntry(String url, int status, long startedDateTime) {
+        HarRequest request = new HarRequest();
+        request.setUrl(url);
+
+        HarResponse response = new HarResponse();
+        response.setStatus(status);
+
+        HarEntry entry = new HarEntry();
+        entry.setStartedDateTime(new Date(startedDateTime));
+        entry.setRequest(request);
+        entry.setResponse(response);
+
+        return entry;
+    }
+}
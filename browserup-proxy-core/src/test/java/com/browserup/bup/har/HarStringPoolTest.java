@@ -0,0 +1,133 @@
+package com.browserup.bup.har;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.proxy.CaptureType;
+import com.browserup.bup.proxy.test.util.MockServerTest;
+import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
+
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarHeader;
+import io.netty.util.AsciiString;
+
+class HarStringPoolTest extends MockServerTest {
+    private BrowserUpProxyServer proxy;
+
+    @AfterEach
+    protected void tearDown() {
+        if (proxy != null && proxy.isStarted()) {
+            proxy.abort();
+        }
+    }
+
+    @Test
+    void testEqualCharSequencesAreDeduplicated() {
+        HarStringPool pool = new HarStringPool(16, 64);
+
+        String first = pool.intern(new AsciiString("application/json"));
+        String second = pool.intern(new StringBuilder("application/json"));
+        String third = pool.intern(new String("application/json"));
+
+        assertEquals("application/json", first, "Expected pooled string to have the same characters");
+        assertSame(first, second, "Expected equal character sequences to return the pooled string");
+        assertSame(first, third, "Expected equal strings to return the pooled string");
+        assertEquals(2, pool.getHits(), "Expected lookups of the pooled string to be counted as hits");
+        assertEquals(1, pool.getMisses(), "Expected the first lookup to be counted as a miss");
+        assertNull(pool.intern(null), "Expected null to be returned for null");
+    }
+
+    @Test
+    void testLongStringsAreNotPooled() {
+        HarStringPool pool = new HarStringPool(16, 4);
+
+        String first = pool.intern(new AsciiString("no-cache"));
+        String second = pool.intern(new AsciiString("no-cache"));
+
+        assertEquals("no-cache", second, "Expected a string with the same characters");
+        assertNotSame(first, second, "Expected strings longer than the maximum length not to be pooled");
+        assertEquals(0, pool.getMisses(), "Expected strings longer than the maximum length not to be counted");
+    }
+
+    @Test
+    void testPoolIsBounded() {
+        HarStringPool pool = new HarStringPool(100, 64);
+        assertEquals(128, pool.getCapacity(), "Expected capacity to be rounded up to a power of two");
+
+        for (int i = 0; i < 10_000; i++) {
+            pool.intern("value-" + i);
+        }
+
+        // a colliding string replaces the pooled string, and is then returned by following lookups
+        String value = pool.intern(new AsciiString("value-0"));
+        assertSame(value, pool.intern(new AsciiString("value-0")), "Expected the most recently added string to be pooled");
+
+        pool.clear();
+        assertNotSame(value, pool.intern(new AsciiString("value-0")), "Expected cleared pool to contain no strings");
+
+        assertThrows(IllegalArgumentException.class, () -> new HarStringPool(0, 64), "Expected capacity 0 to be rejected");
+    }
+
+    @Test
+    void testProxyDeduplicatesHeaders() throws Exception {
+        stubFor(get(urlEqualTo("/dedup")).willReturn(ok()
+                .withHeader("Content-Type", "application/json")
+                .withHeader("ETag", "\"5d8c72a5edda8d6a\"")
+                .withBody("success")));
+
+        HarStringPool pool = new HarStringPool(HarStringPool.DEFAULT_CAPACITY, HarStringPool.DEFAULT_MAX_STRING_LENGTH);
+
+        proxy = new BrowserUpProxyServer();
+        proxy.setHarCaptureTypes(CaptureType.getHeaderCaptureTypes());
+        proxy.setHarStringPool(pool);
+        proxy.start();
+        proxy.newHar();
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            for (int i = 0; i < 2; i++) {
+                String responseBody = NewProxyServerTestUtil.toStringAndClose(
+                        httpClient.execute(new HttpGet("http://localhost:" + mockServerPort + "/dedup")).getEntity().getContent());
+                assertEquals("success", responseBody, "Did not receive expected response from mock server");
+            }
+        }
+
+        Thread.sleep(500);
+        List<HarEntry> entries = proxy.getHar().getLog().getEntries();
+        assertEquals(2, entries.size(), "Expected both requests to be captured");
+
+        HarHeader first = responseHeader(entries.get(0), "Content-Type");
+        HarHeader second = responseHeader(entries.get(1), "Content-Type");
+        assertSame(first.getName(), second.getName(), "Expected header names of the entries to be deduplicated");
+        assertSame(first.getValue(), second.getValue(), "Expected header values of the entries to be deduplicated");
+        assertSame(entries.get(0).getResponse().getContent().getMimeType(), entries.get(1).getResponse().getContent().getMimeType(),
+                "Expected MIME types of the entries to be deduplicated");
+
+        HarHeader firstETag = responseHeader(entries.get(0), "ETag");
+        HarHeader secondETag = responseHeader(entries.get(1), "ETag");
+        assertSame(firstETag.getName(), secondETag.getName(), "Expected names of unpooled header values to be deduplicated");
+        assertEquals(firstETag.getValue(), secondETag.getValue(), "Expected the same ETag in both entries");
+        assertNotSame(firstETag.getValue(), secondETag.getValue(), "Expected ETag values not to be pooled, since they are usually unique");
+    }
+
+    private static HarHeader responseHeader(HarEntry entry, String name) {
+        return entry.getResponse().getHeaders().stream()
+                .filter(header -> header.getName().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Expected " + name + " header to be captured"));
+    }
+}
@@ -0,0 +1,155 @@
+package com.browserup.bup.har;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.browserup.harreader.filter.HarLogFilter;
+
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+import de.sstoehr.harreader.model.HarRequest;
+import de.sstoehr.harreader.model.HarResponse;
+
+class SpillingHarEntryListTest {
+    private static final int[] STATUSES = {200, 201, 204, 301, 304, 404, 500};
+
+    @TempDir
+    Path tmpDir;
+
+    @Test
+    void testCompletedEntriesAreReadBackFromSegment() {
+        // use a tiny region size, so that entries span several regions
+        SpillingHarEntryList list = new SpillingHarEntryList(tmpDir.resolve("entries.segment"), 64);
+
+        for (int i = 0; i < 100; i++) {
+            HarEntry entry = createEntry("page " + (i % 3), "http://www.example.com/" + i, i, STATUSES[i % STATUSES.length]);
+            list.add(entry);
+
+            assertSame(entry, list.get(i), "Expected entry to be kept in memory until it is completed");
+
+            list.entryCompleted(entry);
+
+            assertNotSame(entry, list.get(i), "Expected completed entry to be read from the segment");
+        }
+
+        assertEquals(100, list.size(), "Expected all entries to be in the list");
+        for (int i = 0; i < 100; i++) {
+            HarEntry entry = list.get(i);
+            assertEquals("http://www.example.com/" + i, entry.getRequest().getUrl(), "Expected URL of completed entry");
+            assertEquals(STATUSES[i % STATUSES.length], entry.getResponse().getStatus(), "Expected status of completed entry");
+            assertEquals(new Date(i * 1000L), entry.getStartedDateTime(), "Expected start time of completed entry");
+            assertEquals("page " + (i % 3), list.getSummary(i).getPageref(), "Expected pageref in entry summary");
+        }
+
+        list.close();
+    }
+
+    @Test
+    void testSelectAndFindMostRecentUseSummaries() {
+        SpillingHarEntryList list = new SpillingHarEntryList(tmpDir.resolve("entries.segment"));
+
+        HarEntry inProgress = createEntry("page", "http://www.example.com/latest", 30, 200);
+        HarEntry completed = createEntry("page", "http://www.example.com/earlier", 20, 404);
+        HarEntry otherPage = createEntry("other", "http://www.example.org/", 10, 200);
+
+        list.add(completed);
+        list.add(inProgress);
+        list.add(otherPage);
+        list.entryCompleted(completed);
+        list.entryCompleted(otherPage);
+
+        List<HarEntry> pageEntries = list.select(summary -> "page".equals(summary.getPageref()));
+        assertEquals(2, pageEntries.size(), "Expected both completed and in-progress entries to be selected");
+        assertEquals("http://www.example.com/earlier", pageEntries.get(0).getRequest().getUrl(), "Expected entries in list order");
+        assertSame(inProgress, pageEntries.get(1), "Expected in-progress entry to be returned from memory");
+
+        Optional<HarEntry> mostRecent = list.findMostRecent(summary -> summary.getStatus() == 200);
+        assertTrue(mostRecent.isPresent(), "Expected to find an entry");
+        assertSame(inProgress, mostRecent.get(), "Expected the most recent matching entry");
+
+        list.close();
+    }
+
+    @Test
+    void testHarLogFilterReadsThroughSpillingList() {
+        HarLog log = new HarLog();
+        SpillingHarEntryList list = new SpillingHarEntryList(tmpDir.resolve("entries.segment"));
+        log.setEntries(list);
+
+        for (int i = 0; i < 10; i++) {
+            HarEntry entry = createEntry("page", "http://abc.com?param=" + i, i, 200);
+            log.getEntries().add(entry);
+            list.entryCompleted(entry);
+        }
+
+        assertEquals(10, HarLogFilter.findEntries(log, Pattern.compile("http://abc\\.com\\?param=\\d")).size(),
+                "Expected to find all entries");
+        assertEquals("http://abc.com?param=9", HarLogFilter.findMostRecentEntry(log).get().getRequest().getUrl(),
+                "Expected to find the most recent entry");
+
+        list.close();
+    }
+
+    @Test
+    void testClosedListCannotBeRead() {
+        SpillingHarEntryList list = new SpillingHarEntryList(tmpDir.resolve("entries.segment"));
+
+        HarEntry entry = createEntry("page", "http://www.example.com/", 0, 200);
+        list.add(entry);
+        list.entryCompleted(entry);
+
+        list.close();
+
+        assertThrows(IllegalStateException.class, () -> list.get(0), "Expected completed entries to be unreadable after close");
+    }
+
+    @Test
+    void testStorageClosesRotatedSegments() {
+        SpillingHarStorage storage = new SpillingHarStorage(tmpDir.toFile());
+
+        List<HarEntry> firstList = storage.newEntryList();
+        List<HarEntry> secondList = storage.newEntryList();
+        for (List<HarEntry> list : List.of(firstList, secondList)) {
+            HarEntry entry = createEntry("page", "http://www.example.com/", 0, 200);
+            list.add(entry);
+            ((SpillingHarEntryList) list).entryCompleted(entry);
+        }
+
+        storage.newEntryList();
+
+        assertThrows(IllegalStateException.class, () -> firstList.get(0),
+                "Expected the segment of the HAR before the previous HAR to be closed");
+        assertEquals("http://www.example.com/", secondList.get(0).getRequest().getUrl(),
+                "Expected the segment of the previous HAR to remain readable");
+
+        ((SpillingHarEntryList) secondList).close();
+    }
+
+    private static HarEntry createEntry(String pageref, String url, int startedSeconds, int status) {
+        HarEntry entry = new HarEntry();
+        entry.setPageref(pageref);
+        entry.setStartedDateTime(new Date(startedSeconds * 1000L));
+
+        HarRequest request = new HarRequest();
+        request.setUrl(url);
+        entry.setRequest(request);
+
+        HarResponse response = new HarResponse();
+        response.setStatus(status);
+        entry.setResponse(response);
+
+        return entry;
+    }
+}
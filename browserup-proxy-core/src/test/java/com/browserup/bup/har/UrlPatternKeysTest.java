@@ -0,0 +1,52 @@
+package com.browserup.bup.har;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class UrlPatternKeysTest {
+    @Test
+    void testKeysOfAnchoredPatterns() {
+        UrlPatternKeys keys = UrlPatternKeys.of(Pattern.compile("^(http|https)://www\\.example\\.com/index\\.html$"));
+        assertEquals("www.example.com", keys.getHost(), "Expected host to be determined");
+        assertEquals("www.example.com/index.html", keys.getPathPrefix(), "Expected path prefix to be determined");
+
+        keys = UrlPatternKeys.of(Pattern.compile("https?://localhost:\\d+/api/items\\?id=.*"));
+        assertEquals("localhost", keys.getHost(), "Expected host to be determined when followed by a port pattern");
+        assertEquals("localhost/api", keys.getPathPrefix(),
+                "Expected path prefix to be determined when followed by a port pattern");
+
+        keys = UrlPatternKeys.of(Pattern.compile("http://www\\.example\\.com\\?q=.*"));
+        assertEquals("www.example.com/", keys.getPathPrefix(), "Expected path prefix with an empty segment for a URL without path");
+    }
+
+    @Test
+    void testKeysOfPatternsWithUnknownHostOrPath() {
+        UrlPatternKeys keys = UrlPatternKeys.of(Pattern.compile("https?://www\\.example\\.com/api.*"));
+        assertEquals("www.example.com", keys.getHost(), "Expected host to be determined");
+        assertNull(keys.getPathPrefix(), "Expected no path prefix when the first segment may continue");
+
+        assertNull(UrlPatternKeys.of(Pattern.compile("https?://www.example.com/.*")).getHost(),
+                "Expected no host when the host contains a wildcard");
+        assertNull(UrlPatternKeys.of(Pattern.compile("https?://www\\.example\\.com/a|https?://www\\.example\\.org/b")).getHost(),
+                "Expected no host when the pattern has a top-level alternation");
+        assertNull(UrlPatternKeys.of(Pattern.compile("https?://www\\.example\\.com/.*", Pattern.CASE_INSENSITIVE)).getHost(),
+                "Expected no host when the pattern has flags");
+        assertNull(UrlPatternKeys.of(Pattern.compile(".*example\\.com/.*")).getHost(),
+                "Expected no host when the pattern does not start with a scheme");
+    }
+
+    @Test
+    void testKeysOfUrls() {
+        assertEquals("www.example.com", UrlPatternKeys.hostOf("https://www.example.com:8443/api/items?id=1"),
+                "Expected host without port");
+        assertEquals("www.example.com/api", UrlPatternKeys.pathPrefixOf("https://www.example.com:8443/api/items?id=1"),
+                "Expected host and first path segment");
+        assertEquals("www.example.com/", UrlPatternKeys.pathPrefixOf("https://www.example.com?id=1"),
+                "Expected empty segment for a URL without path");
+        assertEquals("[::1]", UrlPatternKeys.hostOf("http://[::1]:8080/"), "Expected IPv6 host with brackets");
+    }
+}
@@ -0,0 +1,60 @@
+package com.browserup.bup.mitmproxy;
+
+import com.browserup.bup.mitmproxy.management.AddonsManagerClient;
+import com.browserup.bup.mitmproxy.management.ConfigurationBatch;
+import com.browserup.bup.proxy.BlocklistEntry;
+import com.browserup.bup.proxy.test.util.MockServerTest;
+import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.apache.commons.lang3.tuple.Pair.of;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConfigurationBatchTest extends MockServerTest {
+    private MitmProxyProcessManager mitmProxyManager;
+
+    @AfterEach
+    protected void tearDown() {
+        if (mitmProxyManager != null && mitmProxyManager.isRunning()) {
+            mitmProxyManager.stop();
+        }
+    }
+
+    @Test
+    void testBatchWithFailingOperationIsRolledBack() throws Exception {
+        stubFor(get(urlEqualTo("/resource")).willReturn(ok().withBody("not blocklisted")));
+
+        mitmProxyManager = new MitmProxyProcessManager();
+        mitmProxyManager.start(0);
+        AddonsManagerClient addonsManagerClient = new AddonsManagerClient(mitmProxyManager.getAddonsManagerApiPort());
+
+        // the second operation responds with a 400 status instead of raising an error
+        ConfigurationBatch batch = new ConfigurationBatch()
+                .addWithBody("blocklist", "set_block_list", List.of(new BlocklistEntry("http://localhost:" + mockServerPort + "/resource", 405)))
+                .add("har", "set_har_capture_types", List.of(of("captureTypes", "[NOT_A_CAPTURE_TYPE]")))
+                .add("har", "set_har_limits", List.of(of("maxEntries", "10"), of("maxBytes", "0")));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> addonsManagerClient.applyConfiguration(batch),
+                "Expected batch with an invalid operation to be rejected");
+        assertThat("Expected batch to be rejected with the status of the failed operation", e.getCause().getMessage(), containsString("status 400"));
+        assertThat("Expected rejection to identify the failed operation", e.getCause().getMessage(), containsString("\"index\": 1"));
+
+        try (CloseableHttpClient client = NewProxyServerTestUtil.getNewHttpClient(mitmProxyManager.getProxyPort())) {
+            CloseableHttpResponse response = client.execute(new HttpGet("http://localhost:" + mockServerPort + "/resource"));
+            assertEquals(200, response.getStatusLine().getStatusCode(), "Expected blocklist of the rejected batch to be rolled back");
+
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+            assertEquals("not blocklisted", responseBody, "Did not receive expected response from mock server");
+        }
+    }
+}
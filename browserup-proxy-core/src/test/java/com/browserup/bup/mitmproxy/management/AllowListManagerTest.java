@@ -0,0 +1,56 @@
+package com.browserup.bup.mitmproxy.management;
+
+import com.browserup.bup.mitmproxy.MitmProxyProcessManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AllowListManagerTest {
+    private AddonsManagerClient addonsManagerClient;
+    private AllowListManager allowListManager;
+
+    @BeforeEach
+    void setUp() {
+        addonsManagerClient = mock(AddonsManagerClient.class);
+        MitmProxyProcessManager mitmProxyManager = mock(MitmProxyProcessManager.class);
+        when(mitmProxyManager.isRunning()).thenReturn(true);
+
+        allowListManager = new AllowListManager(addonsManagerClient, mitmProxyManager);
+        allowListManager.allowlistRequests(List.of("http://first\\.com/.*"), 500);
+        clearInvocations(addonsManagerClient);
+    }
+
+    @Test
+    void testAppendedPatternsAreAdded() {
+        allowListManager.allowlistRequests(List.of("http://first\\.com/.*", "http://second\\.com/.*"), 500);
+
+        ArgumentCaptor<ConfigurationBatch> batch = ArgumentCaptor.forClass(ConfigurationBatch.class);
+        verify(addonsManagerClient).applyConfiguration(batch.capture());
+        List<ConfigurationBatch.Operation> operations = batch.getValue().getOperations();
+        assertEquals(1, operations.size(), "Expected a single operation");
+        assertEquals("add_allowlist_pattern", operations.get(0).getOperation(), "Expected the appended pattern to be added");
+        assertEquals(List.of(List.of("urlPattern", "http://second\\.com/.*")), operations.get(0).getParams(),
+                "Expected only the appended pattern to be sent");
+        verify(addonsManagerClient, never()).getRequestToAddonsManager(any(), any(), anyList(), any());
+    }
+
+    @Test
+    void testChangedStatusCodeReplacesAllowlist() {
+        allowListManager.allowlistRequests(List.of("http://first\\.com/.*"), 404);
+
+        verify(addonsManagerClient).getRequestToAddonsManager(eq("allowlist"), eq("allowlist_requests"), anyList(), eq(Void.class));
+        verify(addonsManagerClient, never()).applyConfiguration(any());
+    }
+}
@@ -0,0 +1,138 @@
+package com.browserup.bup.mitmproxy.management;
+
+import com.browserup.bup.mitmproxy.MitmProxyProcessManager;
+import com.browserup.bup.proxy.BlocklistEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlockListManagerTest {
+    private static final BlocklistEntry FIRST = new BlocklistEntry("http://first\\.com/.*", 404);
+    private static final BlocklistEntry SECOND = new BlocklistEntry("http://second\\.com/.*", 404, "GET");
+    private static final BlocklistEntry THIRD = new BlocklistEntry("http://third\\.com/.*", 500);
+    private static final BlocklistEntry FOURTH = new BlocklistEntry("http://fourth\\.com/.*", 500);
+
+    private AddonsManagerClient addonsManagerClient;
+    private BlockListManager blockListManager;
+
+    @BeforeEach
+    void setUp() {
+        addonsManagerClient = mock(AddonsManagerClient.class);
+        MitmProxyProcessManager mitmProxyManager = mock(MitmProxyProcessManager.class);
+        when(mitmProxyManager.isRunning()).thenReturn(true);
+
+        blockListManager = new BlockListManager(addonsManagerClient, mitmProxyManager);
+        blockListManager.setBlocklist(List.of(FIRST, SECOND, THIRD));
+        clearInvocations(addonsManagerClient);
+    }
+
+    @Test
+    void testAppendedEntriesAreAdded() {
+        blockListManager.setBlocklist(List.of(FIRST, SECOND, THIRD, FOURTH));
+
+        List<ConfigurationBatch.Operation> operations = appliedOperations();
+        assertEquals(1, operations.size(), "Expected a single operation");
+        assertEquals("add_block_list_entries", operations.get(0).getOperation(), "Expected appended entries to be added");
+        assertEquals(List.of(FOURTH), operations.get(0).getBody(), "Expected only the appended entry to be sent");
+    }
+
+    @Test
+    void testRemovedEntriesAreRemovedAndAppendedEntriesAdded() {
+        blockListManager.setBlocklist(List.of(SECOND, THIRD, FOURTH));
+
+        List<ConfigurationBatch.Operation> operations = appliedOperations();
+        assertEquals(List.of("remove_block_list_entries", "add_block_list_entries"),
+                operations.stream().map(ConfigurationBatch.Operation::getOperation).collect(Collectors.toList()),
+                "Expected removed entries to be removed before appended entries are added, in a single batch");
+        assertEquals(List.of(FIRST), operations.get(0).getBody(), "Expected only the removed entry to be sent");
+        assertEquals(List.of(FOURTH), operations.get(1).getBody(), "Expected only the appended entry to be sent");
+    }
+
+    @Test
+    void testReorderedEntriesReplaceBlocklist() {
+        blockListManager.setBlocklist(List.of(SECOND, FIRST, THIRD));
+
+        List<ConfigurationBatch.Operation> operations = appliedOperations();
+        assertEquals(1, operations.size(), "Expected a single operation");
+        assertEquals("set_block_list", operations.get(0).getOperation(), "Expected reordered entries to replace the blocklist");
+        assertEquals(List.of(SECOND, FIRST, THIRD), operations.get(0).getBody(), "Expected the complete blocklist to be sent");
+    }
+
+    @Test
+    void testEqualEntriesAreNotSent() {
+        blockListManager.setBlocklist(List.of(new BlocklistEntry("http://first\\.com/.*", 404),
+                new BlocklistEntry("http://second\\.com/.*", 404, "GET"), new BlocklistEntry("http://third\\.com/.*", 500)));
+
+        verify(addonsManagerClient, never()).applyConfiguration(any());
+    }
+
+    @Test
+    void testClearedBlocklistIsReplaced() {
+        blockListManager.clearBlockList();
+
+        List<ConfigurationBatch.Operation> operations = appliedOperations();
+        assertEquals("set_block_list", operations.get(0).getOperation(), "Expected the blocklist to be replaced");
+        assertEquals(Collections.emptyList(), operations.get(0).getBody(), "Expected an empty blocklist to be sent");
+        assertEquals(0, blockListManager.getBlocklist().size(), "Expected the blocklist to be empty");
+    }
+
+    @Test
+    void testFailedDifferenceIsReplacedByBlocklist() {
+        doThrow(new IllegalStateException("rejected")).doNothing().when(addonsManagerClient).applyConfiguration(any());
+
+        blockListManager.setBlocklist(List.of(FIRST, SECOND, THIRD, FOURTH));
+
+        List<List<ConfigurationBatch.Operation>> batches = appliedBatches(2);
+        assertEquals("add_block_list_entries", batches.get(0).get(0).getOperation(), "Expected the difference to be sent first");
+        assertEquals("set_block_list", batches.get(1).get(0).getOperation(), "Expected the blocklist to be replaced after a failure");
+        assertEquals(List.of(FIRST, SECOND, THIRD, FOURTH), batches.get(1).get(0).getBody(), "Expected the complete blocklist to be sent");
+        assertEquals(4, blockListManager.getBlocklist().size(), "Expected the new blocklist once it was applied");
+    }
+
+    @Test
+    void testBlocklistIsUnchangedIfPushFails() {
+        doThrow(new IllegalStateException("rejected")).when(addonsManagerClient).applyConfiguration(any());
+
+        assertThrows(IllegalStateException.class, () -> blockListManager.setBlocklist(List.of(FIRST, SECOND, THIRD, FOURTH)),
+                "Expected the failure to be reported");
+        assertEquals(List.of(FIRST, SECOND, THIRD), List.copyOf(blockListManager.getBlocklist()),
+                "Expected the blocklist to be unchanged when it was not applied");
+
+        doNothing().when(addonsManagerClient).applyConfiguration(any());
+        clearInvocations(addonsManagerClient);
+
+        blockListManager.setBlocklist(List.of(FIRST, SECOND, THIRD, FOURTH));
+
+        List<ConfigurationBatch.Operation> operations = appliedOperations();
+        assertEquals("set_block_list", operations.get(0).getOperation(),
+                "Expected the blocklist to be replaced, since the mitmproxy blocklist may have diverged");
+    }
+
+    private List<List<ConfigurationBatch.Operation>> appliedBatches(int count) {
+        ArgumentCaptor<ConfigurationBatch> batch = ArgumentCaptor.forClass(ConfigurationBatch.class);
+        verify(addonsManagerClient, times(count)).applyConfiguration(batch.capture());
+        return batch.getAllValues().stream().map(ConfigurationBatch::getOperations).collect(Collectors.toList());
+    }
+
+    private List<ConfigurationBatch.Operation> appliedOperations() {
+        ArgumentCaptor<ConfigurationBatch> batch = ArgumentCaptor.forClass(ConfigurationBatch.class);
+        verify(addonsManagerClient).applyConfiguration(batch.capture());
+        return batch.getValue().getOperations();
+    }
+}
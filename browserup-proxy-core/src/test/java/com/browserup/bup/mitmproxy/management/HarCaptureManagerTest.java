@@ -0,0 +1,151 @@
+package com.browserup.bup.mitmproxy.management;
+
+import com.browserup.bup.mitmproxy.MitmProxyProcessManager;
+import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarRequest;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HarCaptureManagerTest {
+    private AddonsManagerClient addonsManagerClient;
+    private HarCaptureManager harCaptureManager;
+
+    @BeforeEach
+    void setUp() {
+        addonsManagerClient = mock(AddonsManagerClient.class);
+        MitmProxyProcessManager mitmProxyManager = mock(MitmProxyProcessManager.class);
+        when(mitmProxyManager.isRunning()).thenReturn(true);
+
+        harCaptureManager = new HarCaptureManager(addonsManagerClient, mitmProxyManager);
+    }
+
+    @Test
+    void testEntriesAfterCursorAreReplaced() {
+        respondWith(
+                header("har-1", 0, 1),
+                entry(0, "http://www.example.com/complete", 200),
+                entry(1, "http://www.example.com/pending", 0));
+
+        Har har = harCaptureManager.getHar();
+        assertEquals(List.of("http://www.example.com/complete", "http://www.example.com/pending"), urls(har),
+                "Expected all entries of the first transfer");
+        verifyRequested(0, null);
+
+        respondWith(
+                header("har-1", 1, 3),
+                entry(1, "http://www.example.com/pending", 200),
+                entry(2, "http://www.example.com/new", 200));
+
+        Har updatedHar = harCaptureManager.getHar();
+        assertEquals(List.of("http://www.example.com/complete", "http://www.example.com/pending", "http://www.example.com/new"),
+                urls(updatedHar), "Expected the pending entry to be replaced and the new entry to be appended");
+        assertEquals(200, updatedHar.getLog().getEntries().get(1).getResponse().getStatus(), "Expected the updated pending entry");
+        assertEquals(1, updatedHar.getLog().getPages().size(), "Expected pages of the transferred HAR log");
+        assertNotSame(har.getLog().getEntries(), updatedHar.getLog().getEntries(), "Expected every HAR to have its own entries");
+        assertEquals(2, har.getLog().getEntries().size(), "Expected previously returned HAR to be unchanged");
+        verifyRequested(1, "har-1");
+    }
+
+    @Test
+    void testEntriesAreDiscardedWhenHarIsReplaced() {
+        respondWith(
+                header("har-1", 0, 1),
+                entry(0, "http://www.example.com/old", 200));
+        harCaptureManager.getHar();
+
+        respondWith(
+                header("har-2", 0, 0),
+                "{\"index\": 0, \"entry\": null}",
+                entry(1, "http://www.example.com/new", 0));
+
+        Har har = harCaptureManager.getHar();
+        assertEquals(List.of("http://www.example.com/new"), urls(har),
+                "Expected entries of the replaced HAR to be discarded and unreported entries to be skipped");
+    }
+
+    @Test
+    void testEntriesEvictedFromBoundedHarAreDropped() {
+        respondWith(
+                header("har-1", 0, 3, 0),
+                entry(0, "http://www.example.com/0", 200),
+                entry(1, "http://www.example.com/1", 200),
+                entry(2, "http://www.example.com/2", 200));
+        harCaptureManager.getHar();
+
+        respondWith(
+                header("har-1", 3, 5, 2),
+                entry(3, "http://www.example.com/3", 200),
+                entry(4, "http://www.example.com/4", 200));
+
+        Har har = harCaptureManager.getHar();
+        assertEquals(List.of("http://www.example.com/2", "http://www.example.com/3", "http://www.example.com/4"), urls(har),
+                "Expected evicted entries to be dropped and new entries to be appended");
+        verifyRequested(3, "har-1");
+
+        // more entries were evicted than were transferred since the previous call
+        respondWith(
+                header("har-1", 7, 8, 7),
+                entry(7, "http://www.example.com/7", 200));
+
+        har = harCaptureManager.getHar();
+        assertEquals(List.of("http://www.example.com/7"), urls(har), "Expected all previously transferred entries to be dropped");
+    }
+
+    @Test
+    void testNoHar() {
+        respondWith("{\"harId\": \"har-0\", \"exists\": false}");
+
+        assertNull(harCaptureManager.getHar(), "Expected no HAR when mitmproxy has no HAR");
+    }
+
+    private void respondWith(String... lines) {
+        String body = String.join("\n", lines);
+        when(addonsManagerClient.getStreamFromAddonsManager(eq("har"), eq("get_har_entries"), any()))
+                .thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void verifyRequested(int since, String previousHarId) {
+        verify(addonsManagerClient).getStreamFromAddonsManager("har", "get_har_entries",
+                List.of(Pair.of("harId", previousHarId), Pair.of("since", String.valueOf(since))));
+    }
+
+    private static String header(String harId, int since, int cursor) {
+        return header(harId, since, cursor, 0);
+    }
+
+    private static String header(String harId, int since, int cursor, int evicted) {
+        return "{\"harId\": \"" + harId + "\", \"exists\": true, \"since\": " + since + ", \"cursor\": " + cursor
+                + ", \"evicted\": " + evicted + ", \"log\": "
+                + "{\"version\": \"1.1\", \"creator\": {\"name\": \"BrowserUp Proxy\", \"version\": \"0.1\"}, "
+                + "\"pages\": [{\"id\": \"Default\", \"title\": \"Default\", \"startedDateTime\": \"2024-01-01T00:00:00+00:00\"}]}}";
+    }
+
+    private static String entry(int index, String url, int status) {
+        return "{\"index\": " + index + ", \"entry\": {\"pageref\": \"Default\", \"startedDateTime\": \"2024-01-01T00:00:00+00:00\", "
+                + "\"time\": 0, \"request\": {\"method\": \"GET\", \"url\": \"" + url + "\"}, "
+                + "\"response\": {\"status\": " + status + "}, \"cache\": {}, \"timings\": {}}}";
+    }
+
+    private static List<String> urls(Har har) {
+        return har.getLog().getEntries().stream()
+                .map(HarEntry::getRequest)
+                .map(HarRequest::getUrl)
+                .collect(Collectors.toList());
+    }
+}
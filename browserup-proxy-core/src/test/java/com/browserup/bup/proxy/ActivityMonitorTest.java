@@ -0,0 +1,100 @@
+package com.browserup.bup.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActivityMonitorTest {
+    @Test
+    void testRequestAccounting() {
+        ActivityMonitor monitor = new ActivityMonitor();
+
+        ActivityMonitor.Activity first = monitor.requestStarted("http://www.example.com/first", null);
+        ActivityMonitor.Activity second = monitor.requestStarted("http://www.example.com/second", null);
+        monitor.requestFinished(first);
+        monitor.requestFinished(first);
+
+        assertEquals(1, monitor.getActiveRequests(), "Expected finishing a request twice to be counted once");
+        assertEquals(2, monitor.getTotalRequests(), "Expected all started requests to be counted");
+
+        monitor.requestFinished(second);
+
+        assertEquals(0, monitor.getActiveRequests(), "Expected no active requests");
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testUntrackedRequestAccounting() {
+        ActivityMonitor monitor = new ActivityMonitor();
+        monitor.requestStarted();
+
+        assertEquals(1, monitor.getActiveRequests(), "Expected untracked request to be active");
+        assertTrue(monitor.waitForPageQuiescence("page_1", 100, 5000, TimeUnit.MILLISECONDS),
+                "Expected scoped waiter to ignore untracked requests");
+
+        CompletableFuture<Boolean> quiet = monitor.whenQuiet(null, 100, 5000, TimeUnit.MILLISECONDS);
+        assertFalse(quiet.isDone(), "Expected unscoped waiter to wait for the untracked request");
+
+        monitor.requestFinished();
+
+        assertTrue(quiet.join(), "Expected unscoped waiter to be completed once the untracked request finished");
+        assertEquals(0, monitor.getActiveRequests(), "Expected no active requests");
+        assertEquals(1, monitor.getTotalRequests(), "Expected untracked request to be counted");
+    }
+
+    @Test
+    void testWaiterCompletedWhenRequestFinishes() {
+        ActivityMonitor monitor = new ActivityMonitor();
+        ActivityMonitor.Activity activity = monitor.requestStarted("http://www.example.com/", null);
+
+        CompletableFuture<Boolean> quiet = monitor.whenQuiet(null, 100, 5000, TimeUnit.MILLISECONDS);
+
+        assertFalse(quiet.isDone(), "Expected waiter to wait for the active request");
+
+        long finished = System.nanoTime();
+        monitor.requestFinished(activity);
+
+        assertTrue(quiet.join(), "Expected waiter to be completed once the quiet period elapsed");
+        assertTrue(System.nanoTime() - finished >= TimeUnit.MILLISECONDS.toNanos(100), "Expected waiter to wait for the quiet period");
+    }
+
+    @Test
+    void testWaiterFailsAsSoonAsTimeoutCannotBeMet() {
+        ActivityMonitor monitor = new ActivityMonitor();
+        monitor.requestStarted("http://www.example.com/", null);
+
+        long start = System.nanoTime();
+        boolean quiet = monitor.waitForQuiescence(1000, 1200, TimeUnit.MILLISECONDS);
+        long wait = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertFalse(quiet, "Expected waiter to time out while the request is active");
+        assertTrue(wait < 1000, "Expected waiter to give up once the quiet period could no longer elapse. Waited for: " + wait + "ms");
+    }
+
+    @Test
+    void testScopedWaiters() {
+        ActivityMonitor monitor = new ActivityMonitor();
+        monitor.requestStarted("http://analytics.example.com/poll", "page_1");
+        ActivityMonitor.Activity activity = monitor.requestStarted("http://www.example.com/", "page_2");
+
+        CompletableFuture<Boolean> pageQuiet = monitor.whenQuiet(a -> "page_2".equals(a.getPageRef()), 100, 5000, TimeUnit.MILLISECONDS);
+        CompletableFuture<Boolean> unscopedQuiet = monitor.whenQuiet(null, 100, 5000, TimeUnit.MILLISECONDS);
+
+        monitor.requestFinished(activity);
+
+        assertTrue(pageQuiet.join(), "Expected page waiter to ignore requests of other pages");
+        assertTrue(monitor.waitForQuiescence(Pattern.compile("http://www\\.example\\.com/.*"), 100, 5000, TimeUnit.MILLISECONDS),
+                "Expected URL waiter to ignore requests to other URLs");
+        assertFalse(unscopedQuiet.isDone(), "Expected unscoped waiter to wait for all requests");
+
+        await().atMost(10, TimeUnit.SECONDS).until(unscopedQuiet::isDone);
+        assertFalse(unscopedQuiet.join(), "Expected unscoped waiter to time out");
+    }
+}
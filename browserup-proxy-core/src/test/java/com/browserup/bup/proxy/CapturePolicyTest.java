@@ -0,0 +1,373 @@
+package com.browserup.bup.proxy;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.filters.HarCaptureFilter;
+import com.browserup.bup.filters.ServerResponseCaptureFilter;
+import com.browserup.bup.proxy.test.util.MockServerTest;
+import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
+import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CapturePolicyTest extends MockServerTest {
+    private BrowserUpProxyServer proxy;
+
+    @AfterEach
+    protected void tearDown() {
+        if (proxy != null && proxy.isStarted()) {
+            proxy.abort();
+        }
+    }
+
+    @Test
+    void testRuleMatchesRequest() {
+        CaptureRule rule = CaptureRule.builder()
+                .host("*.example.com")
+                .urlPattern(".*/api/.*")
+                .method("POST")
+                .build();
+
+        assertTrue(rule.matchesRequest("www.example.com", "http://www.example.com/api/users", "POST"), "Expected request to match");
+        assertTrue(rule.matchesRequest("WWW.EXAMPLE.COM", "http://WWW.EXAMPLE.COM/api/users", "post"),
+                "Expected host and method to match ignoring case");
+        assertFalse(rule.matchesRequest("example.com", "http://example.com/api/users", "POST"),
+                "Expected wildcard host not to match the domain itself");
+        assertFalse(rule.matchesRequest("badexample.com", "http://badexample.com/api/users", "POST"),
+                "Expected wildcard host not to match another domain");
+        assertFalse(rule.matchesRequest("www.example.com", "http://www.example.com/index.html", "POST"),
+                "Expected URL pattern not to match");
+        assertFalse(rule.matchesRequest("www.example.com", "http://www.example.com/api/users", "GET"), "Expected method not to match");
+    }
+
+    @Test
+    void testRuleMatchesResponse() {
+        CaptureRule rule = CaptureRule.builder()
+                .mimeType("image/*")
+                .maxResponseSize(100)
+                .build();
+
+        assertTrue(rule.hasResponseConditions(), "Expected rule with MIME type to have response conditions");
+        assertTrue(rule.matchesResponse("image/png", 100), "Expected response to match");
+        assertTrue(rule.matchesResponse("IMAGE/svg+xml; charset=UTF-8", -1),
+                "Expected response of unknown length with MIME type parameters to match");
+        assertFalse(rule.matchesResponse("imagery/png", 10), "Expected wildcard MIME type not to match another type");
+        assertFalse(rule.matchesResponse(null, 10), "Expected response without Content-Type not to match");
+        assertFalse(rule.matchesResponse("image/png", 101), "Expected response larger than the maximum size not to match");
+
+        assertFalse(CaptureRule.builder().build().hasResponseConditions(), "Expected rule without conditions to have no response conditions");
+    }
+
+    @Test
+    void testRuleRejectsInvalidConditions() {
+        assertThrows(IllegalArgumentException.class, () -> CaptureRule.builder().sampleRate(0), "Expected sample rate 0 to be rejected");
+        assertThrows(IllegalArgumentException.class, () -> CaptureRule.builder().maxResponseSize(-1),
+                "Expected negative maximum response size to be rejected");
+        assertThrows(IllegalArgumentException.class, () -> CaptureRule.builder().host(""), "Expected empty host to be rejected");
+    }
+
+    @Test
+    void testFirstMatchingRuleDecides() {
+        CapturePolicy policy = new CapturePolicy();
+        policy.addRule(CaptureRule.builder()
+                .urlPattern(".*/api/.*")
+                .captureTypes(CaptureType.REQUEST_HEADERS)
+                .build());
+        policy.addRule(CaptureRule.builder()
+                .captureTypes(CaptureType.RESPONSE_HEADERS)
+                .build());
+
+        CaptureDecision apiDecision = policy.decide("www.example.com", "http://www.example.com/api/users", "GET",
+                EnumSet.of(CaptureType.RESPONSE_CONTENT));
+        assertEquals(EnumSet.of(CaptureType.REQUEST_HEADERS), apiDecision.getRequestCaptureTypes(), "Expected first rule to decide");
+        assertEquals(EnumSet.of(CaptureType.REQUEST_HEADERS), apiDecision.getResponseCaptureTypes("text/html", 10),
+                "Expected first rule to decide");
+        assertFalse(apiDecision.mayCaptureResponseContent(), "Expected response content not to be captured");
+
+        CaptureDecision otherDecision = policy.decide("www.example.com", "http://www.example.com/index.html", "GET",
+                EnumSet.of(CaptureType.RESPONSE_CONTENT));
+        assertEquals(EnumSet.of(CaptureType.RESPONSE_HEADERS), otherDecision.getRequestCaptureTypes(), "Expected second rule to decide");
+
+        policy.clearRules();
+        CaptureDecision defaultDecision = policy.decide("www.example.com", "http://www.example.com/index.html", "GET",
+                EnumSet.of(CaptureType.RESPONSE_CONTENT));
+        assertEquals(EnumSet.of(CaptureType.RESPONSE_CONTENT), defaultDecision.getResponseCaptureTypes("text/html", 10),
+                "Expected default capture types without rules");
+        assertEquals(-1, defaultDecision.getMaxResponseContentSize(), "Expected default capture types not to limit the content size");
+    }
+
+    @Test
+    void testSetRulesReplacesRules() {
+        CaptureRule headerRule = CaptureRule.builder()
+                .captureTypes(CaptureType.REQUEST_HEADERS)
+                .build();
+        CaptureRule contentRule = CaptureRule.builder()
+                .captureTypes(CaptureType.RESPONSE_CONTENT)
+                .build();
+
+        CapturePolicy policy = new CapturePolicy();
+        policy.addRule(headerRule);
+
+        List<CaptureRule> rulesBeforeReplacement = policy.getRules();
+
+        policy.setRules(List.of(contentRule));
+
+        assertEquals(List.of(contentRule), policy.getRules(), "Expected rules to be replaced");
+        assertEquals(List.of(headerRule), rulesBeforeReplacement, "Expected previously returned rules not to change");
+        assertThrows(UnsupportedOperationException.class, () -> policy.getRules().add(headerRule), "Expected rules to be unmodifiable");
+
+        CaptureDecision decision = policy.decide("www.example.com", "http://www.example.com/", "GET",
+                EnumSet.noneOf(CaptureType.class));
+        assertEquals(EnumSet.of(CaptureType.RESPONSE_CONTENT), decision.getRequestCaptureTypes(), "Expected replacement rule to decide");
+    }
+
+    @Test
+    void testResponseConditionsAreEvaluatedInOrder() {
+        CapturePolicy policy = new CapturePolicy();
+        policy.addRule(CaptureRule.builder()
+                .mimeType("application/json")
+                .maxResponseSize(1000)
+                .captureTypes(CaptureType.RESPONSE_CONTENT)
+                .build());
+        policy.addRule(CaptureRule.builder()
+                .mimeType("image/*")
+                .captureTypes(CaptureType.RESPONSE_HEADERS)
+                .build());
+
+        CaptureDecision decision = policy.decide("www.example.com", "http://www.example.com/data", "GET",
+                EnumSet.of(CaptureType.RESPONSE_COOKIES));
+
+        assertEquals(EnumSet.of(CaptureType.RESPONSE_CONTENT), decision.getRequestCaptureTypes(),
+                "Expected request capture types of the first matching rule");
+        assertEquals(EnumSet.of(CaptureType.RESPONSE_CONTENT), decision.getResponseCaptureTypes("application/json", 500),
+                "Expected first rule to match JSON response");
+        assertEquals(EnumSet.of(CaptureType.RESPONSE_HEADERS), decision.getResponseCaptureTypes("image/png", 500),
+                "Expected second rule to match image response");
+        assertEquals(EnumSet.of(CaptureType.RESPONSE_COOKIES), decision.getResponseCaptureTypes("application/json", 5000),
+                "Expected default capture types for a large JSON response");
+        assertTrue(decision.mayCaptureResponseContent(), "Expected response content to be captured depending on the response");
+        assertEquals(1000, decision.getMaxResponseContentSize(), "Expected content size to be limited by the rule");
+    }
+
+    @Test
+    void testSampledRule() {
+        CapturePolicy policy = new CapturePolicy();
+        policy.addRule(CaptureRule.builder()
+                .sampleRate(3)
+                .captureTypes(CaptureType.RESPONSE_HEADERS)
+                .build());
+
+        int sampled = 0;
+        for (int i = 0; i < 9; i++) {
+            CaptureDecision decision = policy.decide("www.example.com", "http://www.example.com/" + i, "GET", null);
+            if (decision.getRequestCaptureTypes().contains(CaptureType.RESPONSE_HEADERS)) {
+                sampled++;
+            }
+        }
+
+        assertEquals(3, sampled, "Expected one of every three requests to be sampled");
+    }
+
+    @Test
+    void testProxyCapturesContentOnlyForMatchingResponses() throws Exception {
+        stubFor(get(urlEqualTo("/api/data")).willReturn(ok().withHeader("Content-Type", "application/json").withBody("{\"success\":true}")));
+        stubFor(get(urlEqualTo("/index.html")).willReturn(ok().withHeader("Content-Type", "text/html").withBody("success")));
+
+        proxy = new BrowserUpProxyServer();
+        proxy.setHarCaptureTypes(EnumSet.noneOf(CaptureType.class));
+        proxy.getCapturePolicy().addRule(CaptureRule.builder()
+                .urlPattern(".*/api/.*")
+                .mimeType("application/json")
+                .captureTypes(CaptureType.RESPONSE_HEADERS, CaptureType.RESPONSE_CONTENT)
+                .build());
+        proxy.start();
+        proxy.newHar();
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            String apiResponse = NewProxyServerTestUtil.toStringAndClose(
+                    httpClient.execute(new HttpGet("http://localhost:" + mockServerPort + "/api/data")).getEntity().getContent());
+            assertEquals("{\"success\":true}", apiResponse, "Did not receive expected response from mock server");
+
+            String htmlResponse = NewProxyServerTestUtil.toStringAndClose(
+                    httpClient.execute(new HttpGet("http://localhost:" + mockServerPort + "/index.html")).getEntity().getContent());
+            assertEquals("success", htmlResponse, "Did not receive expected response from mock server");
+        }
+
+        Thread.sleep(500);
+        List<HarEntry> entries = proxy.getHar().getLog().getEntries();
+        assertEquals(2, entries.size(), "Expected both requests to be captured");
+
+        HarEntry apiEntry = entries.get(0);
+        assertEquals("{\"success\":true}", apiEntry.getResponse().getContent().getText(), "Expected JSON API response content to be captured");
+        assertFalse(apiEntry.getResponse().getHeaders().isEmpty(), "Expected JSON API response headers to be captured");
+
+        HarEntry htmlEntry = entries.get(1);
+        assertNull(htmlEntry.getResponse().getContent().getText(), "Expected HTML response content not to be captured");
+        assertTrue(htmlEntry.getResponse().getHeaders().isEmpty(), "Expected HTML response headers not to be captured");
+    }
+
+    @Test
+    void testContentOfNonMatchingResponseIsNotRetained() {
+        EmbeddedChannel clientChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter()) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("127.0.0.1", 54321);
+            }
+        };
+
+        CapturePolicy capturePolicy = new CapturePolicy();
+        capturePolicy.addRule(CaptureRule.builder()
+                .urlPattern(".*/api/.*")
+                .mimeType("application/json")
+                .captureTypes(CaptureType.RESPONSE_CONTENT)
+                .build());
+
+        Har har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(new ArrayList<>());
+
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/api/logo.png");
+        HarCaptureFilter filter = new HarCaptureFilter(request, clientChannel.pipeline().firstContext(), har, "page_1",
+                EnumSet.noneOf(CaptureType.class), new HarCaptureFilter.Options().setCapturePolicy(capturePolicy).setStringPool(null));
+        filter.clientToProxyRequest(request);
+
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "image/png");
+        filter.serverToProxyResponse(response);
+
+        ByteBuf chunk = Unpooled.copiedBuffer("not a JSON response", StandardCharsets.UTF_8);
+        filter.serverToProxyResponse(new DefaultHttpContent(chunk));
+        assertEquals(1, chunk.refCnt(), "Expected content of a response that no rule captures not to be retained");
+
+        ByteBuf lastChunk = Unpooled.copiedBuffer("not a JSON response", StandardCharsets.UTF_8);
+        filter.serverToProxyResponse(new DefaultLastHttpContent(lastChunk));
+        assertEquals(1, lastChunk.refCnt(), "Expected last content of a response that no rule captures not to be retained");
+
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testContentOfNonMatchingGzipResponseIsNotDecompressed() throws IOException {
+        EmbeddedChannel clientChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter()) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("127.0.0.1", 54321);
+            }
+        };
+
+        CapturePolicy capturePolicy = new CapturePolicy();
+        capturePolicy.addRule(CaptureRule.builder()
+                .urlPattern(".*/api/.*")
+                .mimeType("application/json")
+                .captureTypes(CaptureType.RESPONSE_CONTENT)
+                .build());
+
+        Har har = new Har();
+        har.setLog(new HarLog());
+        har.getLog().setEntries(new ArrayList<>());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+            gzipStream.write("<html><body>not a JSON response</body></html>".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] content = compressed.toByteArray();
+
+        RecordingAppender appender = new RecordingAppender();
+        appender.start();
+        Logger harCaptureLogger = (Logger) LogManager.getLogger(HarCaptureFilter.class);
+        Logger responseCaptureLogger = (Logger) LogManager.getLogger(ServerResponseCaptureFilter.class);
+        harCaptureLogger.addAppender(appender);
+        responseCaptureLogger.addAppender(appender);
+
+        try {
+            HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://www.example.com/api/index.html");
+            HarCaptureFilter filter = new HarCaptureFilter(request, clientChannel.pipeline().firstContext(), har, "page_1",
+                    EnumSet.noneOf(CaptureType.class), new HarCaptureFilter.Options().setCapturePolicy(capturePolicy).setStringPool(null));
+            filter.clientToProxyRequest(request);
+
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/html");
+            response.headers().set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+            filter.serverToProxyResponse(response);
+
+            filter.serverToProxyResponse(new DefaultHttpContent(Unpooled.copiedBuffer(content, 0, 10)));
+            filter.serverToProxyResponse(new DefaultLastHttpContent(Unpooled.copiedBuffer(content, 10, content.length - 10)));
+        } finally {
+            harCaptureLogger.removeAppender(appender);
+            responseCaptureLogger.removeAppender(appender);
+            appender.stop();
+            clientChannel.finishAndReleaseAll();
+        }
+
+        assertTrue(appender.getEvents().isEmpty(), "Expected nothing to be logged for a gzip response that no rule captures, but found: "
+                + appender.getEvents());
+
+        HarEntry entry = har.getLog().getEntries().get(0);
+        assertNull(entry.getResponse().getContent().getText(), "Expected content of a response that no rule captures not to be decompressed");
+        assertEquals(Long.valueOf(content.length), entry.getResponse().getBodySize(), "Expected the size of the compressed response to be counted");
+    }
+
+    /**
+     * Records the messages logged to the loggers it is added to.
+     */
+    private static class RecordingAppender extends AbstractAppender {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        RecordingAppender() {
+            super("recording", null, null, true, Property.EMPTY_ARRAY);
+        }
+
+        @Override
+        public void append(LogEvent event) {
+            events.add(event.getLevel() + " " + event.getMessage().getFormattedMessage());
+        }
+
+        List<String> getEvents() {
+            return events;
+        }
+    }
+}
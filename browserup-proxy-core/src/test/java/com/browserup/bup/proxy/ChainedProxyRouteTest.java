@@ -0,0 +1,106 @@
+package com.browserup.bup.proxy;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.proxy.test.util.MockServerTest;
+import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
+import de.sstoehr.harreader.model.HarEntry;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.littleshoot.proxy.HttpProxyServer;
+import org.littleshoot.proxy.impl.DefaultHttpProxyServer;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Verifies the route recorded in the <code>_chainedProxy</code> and <code>_nonProxyHost</code> fields of HAR entries. "localhost" is
+ * routed through the upstream proxy, and "127.0.0.1", which reaches the same mock server, is a non-proxy host.
+ */
+class ChainedProxyRouteTest extends MockServerTest {
+    private BrowserUpProxyServer proxy;
+
+    private HttpProxyServer upstreamProxy;
+
+    private String upstreamProxyAddress;
+
+    @BeforeEach
+    void setUp() {
+        stubFor(get(urlEqualTo("/route")).willReturn(ok().withBody("success")));
+
+        upstreamProxy = DefaultHttpProxyServer.bootstrap()
+                .withPort(0)
+                .start();
+        upstreamProxyAddress = upstreamProxy.getListenAddress().getHostString() + ":" + upstreamProxy.getListenAddress().getPort();
+
+        proxy = new BrowserUpProxyServer();
+        proxy.setChainedProxy(upstreamProxy.getListenAddress());
+        proxy.setChainedProxyNonProxyHosts(Collections.singletonList("127.0.0.1"));
+        proxy.setTrustAllServers(true);
+        proxy.start();
+        proxy.newHar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (proxy != null && proxy.isStarted()) {
+            proxy.abort();
+        }
+
+        if (upstreamProxy != null) {
+            upstreamProxy.abort();
+        }
+    }
+
+    @Test
+    void testRouteOfProxiedHost() throws Exception {
+        Map<String, Object> fields = requestAndGetAdditionalFields("http://localhost:" + mockServerPort + "/route");
+
+        assertEquals(upstreamProxyAddress, fields.get("_chainedProxy"), "Expected request to be routed through the upstream proxy");
+        assertFalse(fields.containsKey("_nonProxyHost"), "Expected no non-proxy host for a proxied request");
+    }
+
+    @Test
+    void testRouteOfNonProxyHost() throws Exception {
+        Map<String, Object> fields = requestAndGetAdditionalFields("http://127.0.0.1:" + mockServerPort + "/route");
+
+        assertEquals("DIRECT", fields.get("_chainedProxy"), "Expected request to a non-proxy host to be routed directly");
+        assertEquals("127.0.0.1", fields.get("_nonProxyHost"), "Expected the matching non-proxy host");
+    }
+
+    @Test
+    void testRouteOfHttpsRequests() throws Exception {
+        // the URI of a MITM'd HTTPS request is only the path, so the route must be decided on the host of the connection
+        Map<String, Object> nonProxyFields = requestAndGetAdditionalFields("https://127.0.0.1:" + mockServerHttpsPort + "/route");
+
+        assertEquals("DIRECT", nonProxyFields.get("_chainedProxy"), "Expected HTTPS request to a non-proxy host to be routed directly");
+        assertEquals("127.0.0.1", nonProxyFields.get("_nonProxyHost"), "Expected the matching non-proxy host of the HTTPS request");
+
+        proxy.newHar();
+        Map<String, Object> proxiedFields = requestAndGetAdditionalFields("https://localhost:" + mockServerHttpsPort + "/route");
+
+        assertEquals(upstreamProxyAddress, proxiedFields.get("_chainedProxy"), "Expected HTTPS request to be routed through the upstream proxy");
+        assertFalse(proxiedFields.containsKey("_nonProxyHost"), "Expected no non-proxy host for a proxied HTTPS request");
+    }
+
+    private Map<String, Object> requestAndGetAdditionalFields(String url) throws Exception {
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(httpClient.execute(new HttpGet(url)).getEntity().getContent());
+            assertEquals("success", responseBody, "Did not receive expected response from mock server");
+        }
+
+        Thread.sleep(500);
+        HarEntry entry = proxy.getHar().getLog().getEntries().get(0);
+
+        return entry.getAdditional();
+    }
+}
@@ -1,10 +1,27 @@
 package com.browserup.bup.proxy;
 
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
 import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.filters.AddHeadersFilter;
+import com.browserup.bup.filters.AllowlistFilter;
+import com.browserup.bup.filters.AutoBasicAuthFilter;
+import com.browserup.bup.filters.BlocklistFilter;
+import com.browserup.bup.filters.BrowserUpHttpFilterChain;
+import com.browserup.bup.filters.LatencyFilter;
+import com.browserup.bup.filters.RewriteUrlFilter;
+import com.browserup.bup.filters.WebSocketHandshakeFilter;
 import com.browserup.bup.proxy.test.util.MockServerTest;
 import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -15,8 +32,11 @@ import org.junit.jupiter.api.Test;
 import org.littleshoot.proxy.HttpFilters;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 import org.littleshoot.proxy.HttpFiltersSourceAdapter;
+import org.mockito.MockedConstruction;
+import org.mockito.Mockito;
 
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
@@ -28,6 +48,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mockConstruction;
 
 /**
  * Tests for the {@link com.browserup.bup.filters.BrowserUpHttpFilterChain}.
@@ -221,6 +242,121 @@ class FilterChainTest extends MockServerTest {
         verify(1, getRequestedFor(urlEqualTo(stubUrl)));
     }
 
+    @Test
+    void testInheritedFilterMethodIsInvoked() throws Exception {
+        // tests that a filter method overridden in a superclass of the filter, rather than in the filter itself, is still invoked
+
+        String stubUrl = "/testinheritedfiltermethod";
+        stubFor(get(urlEqualTo(stubUrl)).willReturn(ok().withBody("success")));
+
+        proxy = new BrowserUpProxyServer();
+
+        final AtomicBoolean proxyToClientResponse = new AtomicBoolean();
+
+        proxy.addHttpFilterFactory(new HttpFiltersSourceAdapter() {
+            @Override
+            public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
+                return new InheritingFilter(originalRequest, proxyToClientResponse);
+            }
+        });
+
+        proxy.start();
+
+        String requestUrl = "http://localhost:" + mockServerPort + stubUrl;
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            CloseableHttpResponse response = httpClient.execute(new HttpGet(requestUrl));
+            assertEquals(200, response.getStatusLine().getStatusCode(), "Did not receive HTTP 200 from mock server");
+
+            String responseBody = NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+            assertEquals("success", responseBody, "Did not receive expected response from mock server");
+        }
+
+        assertTrue(proxyToClientResponse.get(), "Expected filter method inherited from a superclass to be invoked");
+
+        verify(1, getRequestedFor(urlEqualTo(stubUrl)));
+    }
+
+    @Test
+    void testInactiveFiltersAreNeverInvoked() {
+        // built-in filters whose feature is not configured must not be instantiated, so they cannot be invoked for any callback
+        proxy = new BrowserUpProxyServer();
+        proxy.start();
+
+        EmbeddedChannel clientChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter()) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("127.0.0.1", 54321);
+            }
+        };
+        ChannelHandlerContext ctx = clientChannel.pipeline().firstContext();
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "http://localhost/inactive");
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+
+        try (MockedConstruction<BlocklistFilter> blocklistFilters = mockConstruction(BlocklistFilter.class);
+             MockedConstruction<AllowlistFilter> allowlistFilters = mockConstruction(AllowlistFilter.class);
+             MockedConstruction<LatencyFilter> latencyFilters = mockConstruction(LatencyFilter.class);
+             MockedConstruction<RewriteUrlFilter> rewriteUrlFilters = mockConstruction(RewriteUrlFilter.class);
+             MockedConstruction<AutoBasicAuthFilter> autoBasicAuthFilters = mockConstruction(AutoBasicAuthFilter.class);
+             MockedConstruction<WebSocketHandshakeFilter> webSocketHandshakeFilters = mockConstruction(WebSocketHandshakeFilter.class);
+             MockedConstruction<AddHeadersFilter> addHeadersFilters = mockConstruction(AddHeadersFilter.class)) {
+            invokeFilterChain(request, response, ctx);
+
+            assertTrue(blocklistFilters.constructed().isEmpty(), "Expected no blocklist filter without a blocklist");
+            assertTrue(allowlistFilters.constructed().isEmpty(), "Expected no allowlist filter while the allowlist is disabled");
+            assertTrue(latencyFilters.constructed().isEmpty(), "Expected no latency filter without latency");
+            assertTrue(rewriteUrlFilters.constructed().isEmpty(), "Expected no rewrite filter without rewrite rules");
+            assertTrue(autoBasicAuthFilters.constructed().isEmpty(), "Expected no basic auth filter without credentials");
+            assertTrue(webSocketHandshakeFilters.constructed().isEmpty(), "Expected no websocket filter for a request that is not an upgrade");
+            assertTrue(addHeadersFilters.constructed().isEmpty(), "Expected no header filter without additional headers");
+
+            // the same filter is instantiated and invoked once its feature is configured
+            proxy.addHeader("X-Filter-Chain-Test", "active");
+            invokeFilterChain(request, response, ctx);
+
+            assertEquals(1, addHeadersFilters.constructed().size(), "Expected a header filter once a header was added");
+            Mockito.verify(addHeadersFilters.constructed().get(0)).clientToProxyRequest(request);
+        } finally {
+            clientChannel.finishAndReleaseAll();
+        }
+    }
+
+    private void invokeFilterChain(FullHttpRequest request, FullHttpResponse response, ChannelHandlerContext ctx) {
+        BrowserUpHttpFilterChain filterChain = new BrowserUpHttpFilterChain(proxy, request, ctx);
+        filterChain.clientToProxyRequest(request);
+        filterChain.proxyToServerRequest(request);
+        filterChain.serverToProxyResponse(response);
+        filterChain.proxyToClientResponse(response);
+    }
+
+    /**
+     * An HttpFilters implementation that records calls to proxyToClientResponse.
+     */
+    public static class RecordingFilter extends HttpFiltersAdapter {
+        private final AtomicBoolean proxyToClientResponse;
+
+        public RecordingFilter(HttpRequest originalRequest, AtomicBoolean proxyToClientResponse) {
+            super(originalRequest);
+
+            this.proxyToClientResponse = proxyToClientResponse;
+        }
+
+        @Override
+        public HttpObject proxyToClientResponse(HttpObject httpObject) {
+            proxyToClientResponse.set(true);
+            return super.proxyToClientResponse(httpObject);
+        }
+    }
+
+    /**
+     * An HttpFilters implementation that does not override any filter methods itself.
+     */
+    public static class InheritingFilter extends RecordingFilter {
+        public InheritingFilter(HttpRequest originalRequest, AtomicBoolean proxyToClientResponse) {
+            super(originalRequest, proxyToClientResponse);
+        }
+    }
+
     /**
      * An HttpFilters implementation that throws an exception from every filter method.
      */
@@ -0,0 +1,107 @@
+package com.browserup.bup.proxy;
+
+import com.browserup.bup.BrowserUpProxy;
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.proxy.metrics.ProxyCounter;
+import com.browserup.bup.proxy.metrics.ProxyMetrics;
+import com.browserup.bup.proxy.metrics.RequestPhase;
+import com.browserup.bup.proxy.test.util.MockServerTest;
+import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MetricsTest extends MockServerTest {
+    private BrowserUpProxy proxy;
+
+    @AfterEach
+    protected void tearDown() {
+        if (proxy != null && proxy.isStarted()) {
+            proxy.abort();
+        }
+    }
+
+    @Test
+    void testMetricsAreRecordedWithoutHarCapture() throws IOException {
+        stubFor(get(urlEqualTo("/metrics")).willReturn(ok().withBody("success").withFixedDelay(100)));
+
+        proxy = new BrowserUpProxyServer() {
+            @Override
+            protected void addHarCaptureFilter() {
+                // metrics must not depend on HAR capture
+            }
+        };
+        proxy.start();
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            CloseableHttpResponse response = httpClient.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + "/metrics"));
+            assertEquals(200, response.getStatusLine().getStatusCode(), "Did not receive response from mock server");
+            assertEquals("success", NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent()),
+                    "Did not receive expected response from mock server");
+        }
+
+        ProxyMetrics metrics = proxy.getMetrics();
+
+        // the total time is recorded after the response is sent to the client
+        await().atMost(5, TimeUnit.SECONDS).until(() -> metrics.getHistogram(RequestPhase.TOTAL).getCount() == 1);
+
+        assertEquals(1, metrics.getHistogram(RequestPhase.CONNECT).getCount(), "Expected connect time of the new connection");
+        assertEquals(0, metrics.getHistogram(RequestPhase.TLS).getCount(), "Expected no TLS handshake for an HTTP request");
+        assertEquals(1, metrics.getHistogram(RequestPhase.SEND).getCount(), "Expected send time of the request");
+        assertEquals(1, metrics.getHistogram(RequestPhase.WAIT).getCount(), "Expected wait time of the request");
+        assertEquals(1, metrics.getHistogram(RequestPhase.RECEIVE).getCount(), "Expected receive time of the request");
+        assertThat("Expected wait time to include the response delay", metrics.getHistogram(RequestPhase.WAIT).getSumNanos(),
+                greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100)));
+
+        assertThat("Expected bytes received from the client", metrics.get(ProxyCounter.CLIENT_BYTES_RECEIVED), greaterThan(0L));
+        assertThat("Expected bytes sent to the client", metrics.get(ProxyCounter.CLIENT_BYTES_SENT), greaterThan(0L));
+        assertThat("Expected bytes sent to the server", metrics.get(ProxyCounter.SERVER_BYTES_SENT), greaterThan(0L));
+        assertThat("Expected bytes received from the server", metrics.get(ProxyCounter.SERVER_BYTES_RECEIVED), greaterThan(0L));
+        assertEquals(1, metrics.get(ProxyCounter.CLIENT_CONNECTIONS), "Expected one client connection");
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> metrics.get(ProxyCounter.ACTIVE_CLIENT_CONNECTIONS) == 0);
+    }
+
+    @Test
+    void testBlockedAndRejectedRequestsAreCounted() throws IOException {
+        proxy = new BrowserUpProxyServer();
+        proxy.start();
+
+        proxy.blocklistRequests("http://www\\.blocklisted\\.domain/.*", 405);
+
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            CloseableHttpResponse response = httpClient.execute(new HttpGet("http://www.blocklisted.domain/someresource"));
+            assertEquals(405, response.getStatusLine().getStatusCode(), "Did not receive blocklisted status code in response");
+            NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+
+            proxy.allowlistRequests(Collections.singletonList("http://www\\.allowlisted\\.domain/.*"), 500);
+
+            response = httpClient.execute(new HttpGet("http://www.other.domain/someresource"));
+            assertEquals(500, response.getStatusLine().getStatusCode(), "Did not receive allowlist status code in response");
+            NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent());
+        }
+
+        ProxyMetrics metrics = proxy.getMetrics();
+        assertEquals(1, metrics.get(ProxyCounter.BLOCKED_REQUESTS), "Expected the blocklisted request to be counted");
+        assertEquals(1, metrics.get(ProxyCounter.ALLOWLIST_REJECTED_REQUESTS), "Expected the rejected request to be counted");
+        assertEquals(0, metrics.getHistogram(RequestPhase.CONNECT).getCount(), "Expected no connections to servers");
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> metrics.getHistogram(RequestPhase.TOTAL).getCount() == 2);
+    }
+}
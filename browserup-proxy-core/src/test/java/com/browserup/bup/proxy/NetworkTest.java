@@ -8,8 +8,14 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.jupiter.api.Test;
+import org.littleshoot.proxy.impl.ThreadPoolConfiguration;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -83,4 +89,70 @@ class NetworkTest extends MockServerTest {
 
         verify(1, getRequestedFor(urlEqualTo(url)));
     }
+
+    @Test
+    void testLatencyRuleOverridesDefaultLatency() throws IOException {
+        stubFor(get(urlEqualTo("/latency/slow")).willReturn(ok()));
+        stubFor(get(urlEqualTo("/latency/fast")).willReturn(ok()));
+
+        BrowserUpProxyServer proxy = new BrowserUpProxyServer();
+        proxy.addLatencyRule(LatencyRule.forUrlPattern(".*/latency/slow", 2, TimeUnit.SECONDS));
+        proxy.start();
+
+        try (CloseableHttpClient client = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            long start = System.nanoTime();
+            HttpResponse response = client.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + "/latency/slow"));
+            long stop = System.nanoTime();
+
+            assertEquals(200, response.getStatusLine().getStatusCode(), "Expected to receive an HTTP 200 from the upstream server");
+            assertTrue(TimeUnit.SECONDS.convert(stop - start, TimeUnit.NANOSECONDS) >= 2, "Expected latency to be at least 2 seconds for matching URL. Total time was: " + TimeUnit.MILLISECONDS.convert(stop - start, TimeUnit.NANOSECONDS) + "ms");
+
+            start = System.nanoTime();
+            response = client.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + "/latency/fast"));
+            stop = System.nanoTime();
+
+            assertEquals(200, response.getStatusLine().getStatusCode(), "Expected to receive an HTTP 200 from the upstream server");
+            assertTrue(TimeUnit.SECONDS.convert(stop - start, TimeUnit.NANOSECONDS) < 2, "Expected no latency for non-matching URL. Total time was: " + TimeUnit.MILLISECONDS.convert(stop - start, TimeUnit.NANOSECONDS) + "ms");
+        } finally {
+            proxy.abort();
+        }
+    }
+
+    @Test
+    void testLatencyDoesNotBlockConcurrentResponses() throws Exception {
+        String url = "/latency/concurrent";
+        stubFor(get(urlEqualTo(url)).willReturn(ok()));
+
+        BrowserUpProxyServer proxy = new BrowserUpProxyServer();
+        proxy.setThreadPoolConfiguration(new ThreadPoolConfiguration().withClientToProxyWorkerThreads(1).withProxyToServerWorkerThreads(1));
+        proxy.setLatency(1, TimeUnit.SECONDS);
+        proxy.start();
+
+        int requests = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            long start = System.nanoTime();
+
+            List<Future<Integer>> responses = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                responses.add(executor.submit(() -> {
+                    try (CloseableHttpClient client = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+                        return client.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + url)).getStatusLine().getStatusCode();
+                    }
+                }));
+            }
+
+            for (Future<Integer> response : responses) {
+                assertEquals(200, (int) response.get(), "Expected to receive an HTTP 200 from the upstream server");
+            }
+
+            long stop = System.nanoTime();
+
+            // with a single worker thread, blocking latency would take at least 10 seconds
+            assertTrue(TimeUnit.SECONDS.convert(stop - start, TimeUnit.NANOSECONDS) < 5, "Expected delayed responses to be sent concurrently. Total time was: " + TimeUnit.MILLISECONDS.convert(stop - start, TimeUnit.NANOSECONDS) + "ms");
+        } finally {
+            executor.shutdownNow();
+            proxy.abort();
+        }
+    }
 }
@@ -0,0 +1,77 @@
+package com.browserup.bup.proxy;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NonProxyHostMatcherTest {
+    @Test
+    void testExactAndLeadingWildcardHosts() {
+        NonProxyHostMatcher matcher = NonProxyHostMatcher.compile(List.of(" localhost ", "*.example.com", "*.internal.example.com", ""));
+
+        assertEquals("localhost", matcher.findMatchingNonProxyHost("localhost"), "Expected exact match of a trimmed host");
+        assertEquals("localhost", matcher.findMatchingNonProxyHost("LocalHost"), "Expected host to be matched case-insensitively");
+        assertEquals("*.example.com", matcher.findMatchingNonProxyHost("www.example.com"), "Expected suffix match");
+        assertEquals("*.internal.example.com", matcher.findMatchingNonProxyHost("a.b.internal.example.com"),
+                "Expected the longest matching suffix");
+        assertNull(matcher.findMatchingNonProxyHost("example.com"), "Expected no match without the leading dot");
+        assertNull(matcher.findMatchingNonProxyHost("foo-example.com"), "Expected dots to be matched literally");
+        assertEquals(List.of("localhost", "*.example.com", "*.internal.example.com"), matcher.getNonProxyHosts(),
+                "Expected blank non-proxy hosts to be ignored");
+    }
+
+    @Test
+    void testOtherWildcardPatterns() {
+        NonProxyHostMatcher matcher = NonProxyHostMatcher.compile(List.of("192.168.*", "*internal*", "build-*.ci.*.net"));
+
+        assertTrue(matcher.matches("192.168.0.10"), "Expected prefix match");
+        assertFalse(matcher.matches("10.192.168.1"), "Expected no prefix match");
+        assertTrue(matcher.matches("wiki.internal.corp"), "Expected infix match");
+        assertTrue(matcher.matches("build-42.ci.eu.net"), "Expected match with several wildcards");
+        assertFalse(matcher.matches("build-42.ci.net"), "Expected no match when a literal part is missing");
+        assertFalse(matcher.matches("www.example.com"), "Expected no match");
+    }
+
+    @Test
+    void testMatchAll() {
+        NonProxyHostMatcher matcher = NonProxyHostMatcher.compile(List.of("*"));
+
+        assertTrue(matcher.matches("www.example.com"), "Expected wildcard to match every host");
+        assertFalse(NonProxyHostMatcher.compile(null).matches("www.example.com"), "Expected no match without non-proxy hosts");
+    }
+
+    @Test
+    void testChainedProxyRoute() {
+        AtomicReference<InetSocketAddress> upstreamProxy = new AtomicReference<>();
+        ChainedProxyRouter router = new ChainedProxyRouter(upstreamProxy::get);
+        router.setNonProxyHosts(List.of("*.example.com"));
+
+        assertNull(router.route(request("http://www.example.com/")), "Expected no route without an upstream proxy");
+
+        upstreamProxy.set(InetSocketAddress.createUnresolved("upstream", 3128));
+
+        ChainedProxyRoute direct = router.route(request("http://www.example.com:8080/index.html"));
+        assertTrue(direct.isDirect(), "Expected non-proxy host to be connected to directly");
+        assertEquals("*.example.com", direct.getNonProxyHost(), "Expected the matching non-proxy host");
+        assertEquals("DIRECT", direct.toString(), "Expected direct route description");
+
+        ChainedProxyRoute proxied = router.route(request("www.example.org:443"));
+        assertFalse(proxied.isDirect(), "Expected other hosts to be routed through the upstream proxy");
+        assertEquals("www.example.org", proxied.getHost(), "Expected host of the HTTP CONNECT without port");
+        assertEquals("upstream:3128", proxied.toString(), "Expected upstream proxy route description");
+    }
+
+    private static DefaultHttpRequest request(String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+}
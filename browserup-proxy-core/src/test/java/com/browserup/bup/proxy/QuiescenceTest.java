@@ -15,6 +15,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
@@ -307,4 +308,64 @@ class QuiescenceTest extends NewProxyServerTest {
         assertEquals(200, firstResponseStatusCode.get(), "Expected successful response from server on first request");
         assertFalse(secondRequestCompleted.get(), "Did not expect second request to complete");
     }
+
+    @Test
+    void testWaitForQuiescenceIgnoresRequestsNotMatchingPattern() throws InterruptedException {
+        String url = "/quiescencelongpoll";
+
+        stubFor(get(urlEqualTo(url)).willReturn(ok().withFixedDelay((int) TimeUnit.MINUTES.toMillis(1))));
+
+        new Thread(() -> {
+            try (CloseableHttpClient client = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+                client.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + "/quiescencelongpoll"));
+            } catch (IOException e) {
+                // ignore any exceptions -- we don't expect this call to complete
+            }
+        }).start();
+
+        // wait for the request to start before waiting for quiescence
+        Thread.sleep(1000);
+
+        assertFalse(proxy.waitForQuiescence(1, 3, TimeUnit.SECONDS), "Expected unscoped waitForQuiescence to wait for the long poll");
+
+        long start = System.nanoTime();
+        boolean waitSuccessful = proxy.waitForQuiescence(Pattern.compile(".*/quiescence(?!longpoll).*"), 1, 3, TimeUnit.SECONDS);
+        long wait = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        assertTrue(waitSuccessful, "Expected scoped waitForQuiescence to ignore the long poll");
+        assertTrue(wait < 2000, "Expected time to wait for quiescence to be at most the quiet period. Waited for: " + wait + "ms");
+
+        verify(1, getRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    void testWaitForCurrentPageQuiescenceIgnoresRequestsOfPreviousPage() throws InterruptedException {
+        String url = "/quiescencepreviouspage";
+
+        stubFor(get(urlEqualTo(url)).willReturn(ok().withFixedDelay((int) TimeUnit.MINUTES.toMillis(1))));
+
+        proxy.newHar("first page");
+
+        new Thread(() -> {
+            try (CloseableHttpClient client = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+                client.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + "/quiescencepreviouspage"));
+            } catch (IOException e) {
+                // ignore any exceptions -- we don't expect this call to complete
+            }
+        }).start();
+
+        // wait for the request to start before waiting for quiescence
+        Thread.sleep(1000);
+
+        assertFalse(proxy.waitForCurrentPageQuiescence(1, 3, TimeUnit.SECONDS),
+                "Expected waitForCurrentPageQuiescence to wait for the request of the current page");
+
+        proxy.newPage("second page");
+
+        boolean waitSuccessful = proxy.waitForCurrentPageQuiescence(1, 3, TimeUnit.SECONDS);
+
+        assertTrue(waitSuccessful, "Expected waitForCurrentPageQuiescence to ignore the request of the previous page");
+
+        verify(1, getRequestedFor(urlEqualTo(url)));
+    }
 }
@@ -0,0 +1,93 @@
+package com.browserup.bup.proxy;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.client.ClientUtil;
+import com.browserup.bup.proxy.test.util.MockServerTest;
+import com.browserup.bup.proxy.test.util.NewProxyServerTestUtil;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.littleshoot.proxy.impl.ServerGroup;
+
+import java.io.IOException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SharedServerGroupTest extends MockServerTest {
+    private ServerGroup serverGroup;
+
+    @BeforeEach
+    void setUpServerGroup() {
+        serverGroup = ClientUtil.createSharedServerGroup();
+    }
+
+    @AfterEach
+    void tearDownServerGroup() {
+        serverGroup.shutdown(false);
+    }
+
+    @Test
+    void testStoppingProxyDoesNotStopSharedServerGroup() throws IOException {
+        stubFor(get(urlEqualTo("/shared")).willReturn(ok().withBody("success")));
+
+        BrowserUpProxyServer first = startProxy();
+        BrowserUpProxyServer second = startProxy();
+
+        assertSuccessfulRequest(first);
+        assertSuccessfulRequest(second);
+
+        first.stop();
+
+        assertFalse(serverGroup.isStopped(), "Expected shared server group to keep running when one of its proxies stops");
+        assertSuccessfulRequest(second);
+        assertThrows(IOException.class, () -> assertSuccessfulRequest(first), "Expected stopped proxy to refuse connections");
+
+        second.abort();
+
+        assertFalse(serverGroup.isStopped(), "Expected shared server group to keep running when its last proxy stops");
+
+        BrowserUpProxyServer third = startProxy();
+        try {
+            assertSuccessfulRequest(third);
+        } finally {
+            third.stop();
+        }
+    }
+
+    @Test
+    void testServerGroupCannotBeSetAfterStart() {
+        BrowserUpProxyServer proxy = startProxy();
+        try {
+            assertThrows(IllegalStateException.class, () -> proxy.setServerGroup(serverGroup),
+                    "Expected server group of a started proxy to be immutable");
+        } finally {
+            proxy.stop();
+        }
+    }
+
+    private BrowserUpProxyServer startProxy() {
+        BrowserUpProxyServer proxy = new BrowserUpProxyServer();
+        proxy.setServerGroup(serverGroup);
+        proxy.start();
+
+        return proxy;
+    }
+
+    private void assertSuccessfulRequest(BrowserUpProxyServer proxy) throws IOException {
+        try (CloseableHttpClient httpClient = NewProxyServerTestUtil.getNewHttpClient(proxy.getPort())) {
+            CloseableHttpResponse response = httpClient.execute(new HttpGet("http://127.0.0.1:" + mockServerPort + "/shared"));
+            assertEquals(200, response.getStatusLine().getStatusCode(), "Did not receive response from mock server");
+            assertEquals("success", NewProxyServerTestUtil.toStringAndClose(response.getEntity().getContent()),
+                    "Did not receive expected response from mock server");
+        }
+    }
+}
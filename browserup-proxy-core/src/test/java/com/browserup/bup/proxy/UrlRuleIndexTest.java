@@ -0,0 +1,117 @@
+package com.browserup.bup.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlRuleIndexTest {
+    @Test
+    void testIndexMatchesSameRulesAsRegularExpressions() {
+        List<Pattern> patterns = compile(
+                "http://www\\.blocklisted\\.domain/.*",
+                "https?://([^/]*\\.)?doubleclick\\.net/.*",
+                ".*\\.png",
+                "http://a\\.com/x|http://b\\.com/.*",
+                "(?i)HTTP://CASE\\.com/.*",
+                "http://ab?c\\.com/.*",
+                "http://[a-z]+\\.example\\.org/.*",
+                "https?://.*");
+
+        List<String> urls = Arrays.asList(
+                "http://www.blocklisted.domain/page",
+                "https://ad.doubleclick.net/pixel",
+                "https://doubleclick.net/pixel",
+                "http://www.example.com/image.png",
+                "http://b.com/anything",
+                "http://case.com/lowercase",
+                "http://ac.com/",
+                "http://www.example.org/",
+                "https://www.example.com/",
+                "ftp://unmatched/");
+
+        UrlRuleIndex<Pattern> index = UrlRuleIndex.compile(patterns, Function.identity());
+
+        for (String url : urls) {
+            for (int fromIndex = 0; fromIndex < patterns.size(); fromIndex++) {
+                int expected = -1;
+                for (int i = fromIndex; i < patterns.size(); i++) {
+                    if (patterns.get(i).matcher(url).matches()) {
+                        expected = i;
+                        break;
+                    }
+                }
+
+                assertEquals(expected, index.indexOf(url, null, fromIndex),
+                        "Expected index to find the same rule as matching each pattern in order for URL " + url + " from index " + fromIndex);
+            }
+        }
+    }
+
+    @Test
+    void testHttpMethodMatching() {
+        BlocklistEntry getOrPost = new BlocklistEntry("http://example\\.com/.*", 403, "GET|POST");
+        BlocklistEntry regexMethod = new BlocklistEntry("http://example\\.com/.*", 404, "P.*");
+        BlocklistEntry anyMethod = new BlocklistEntry("http://example\\.com/.*", 405);
+
+        UrlRuleIndex<BlocklistEntry> index = UrlRuleIndex.compile(Arrays.asList(getOrPost, regexMethod, anyMethod),
+                BlocklistEntry::getUrlPattern, BlocklistEntry::getHttpMethodPattern);
+
+        String url = "http://example.com/page";
+
+        assertSame(getOrPost, index.findFirst(url, "GET"), "Expected rule with literal method names to match GET");
+        assertSame(regexMethod, index.findFirst(url, "PUT"), "Expected rule with method regular expression to match PUT");
+        assertSame(anyMethod, index.findFirst(url, "DELETE"), "Expected rule without method pattern to match DELETE");
+        assertSame(anyMethod, index.findFirst(url, null), "Expected only rules without method pattern to match when method is null");
+        assertNull(index.findFirst("http://example.org/", "GET"), "Expected no rule to match a different URL");
+    }
+
+    @Test
+    void testWithRulesReplacesRules() {
+        UrlRuleIndex<RewriteRule> index = UrlRuleIndex.compile(Collections.<RewriteRule>emptyList(), RewriteRule::getPattern);
+        assertTrue(index.isEmpty(), "Expected empty index");
+
+        RewriteRule rule = new RewriteRule("http://www\\.yahoo\\.com/(.*)", "http://www.google.com/$1");
+        UrlRuleIndex<RewriteRule> newIndex = index.withRules(Collections.singletonList(rule));
+
+        assertTrue(index.isEmpty(), "Expected original index to be unchanged");
+        assertSame(rule, newIndex.findFirst("http://www.yahoo.com/search", null), "Expected new index to match the new rule");
+    }
+
+    @Test
+    void testIndexIsCompiledOnFirstMatch() {
+        AtomicInteger compiledPatterns = new AtomicInteger();
+        UrlRuleIndex<Pattern> index = UrlRuleIndex.compile(Collections.<Pattern>emptyList(), pattern -> {
+            compiledPatterns.incrementAndGet();
+            return pattern;
+        });
+
+        List<Pattern> patterns = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            patterns.add(Pattern.compile("http://www" + i + "\\.example\\.com/.*"));
+            index = index.withRules(patterns);
+        }
+
+        assertEquals(0, compiledPatterns.get(), "Expected index not to be compiled before it is used to match a URL");
+
+        assertSame(patterns.get(42), index.findFirst("http://www42.example.com/", null), "Expected index to match the appended rule");
+        index.findFirst("http://www99.example.com/", null);
+
+        assertEquals(100, compiledPatterns.get(), "Expected index to be compiled once when it is first used to match a URL");
+    }
+
+    private static List<Pattern> compile(String... patterns) {
+        return Arrays.stream(patterns).map(Pattern::compile).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,172 @@
+package com.browserup.bup.proxy.dns;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AbstractHostNameRemapperTest {
+    private AbstractHostNameRemapper remapper;
+
+    @BeforeEach
+    void setUp() {
+        remapper = new AbstractHostNameRemapper() {
+            @Override
+            public Collection<InetAddress> resolveRemapped(String remappedHost) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void clearDNSCache() {
+            }
+
+            @Override
+            public void setPositiveDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+            }
+
+            @Override
+            public void setNegativeDNSCacheTimeout(int timeout, TimeUnit timeUnit) {
+            }
+        };
+    }
+
+    @Test
+    void testWildcardRemapping() {
+        remapper.remapHost("*.staging.example.com", "127.0.0.1");
+
+        assertEquals("127.0.0.1", remapper.applyRemapping("api.staging.example.com"), "Expected subdomain to be remapped");
+        assertEquals("127.0.0.1", remapper.applyRemapping("v1.api.staging.example.com"), "Expected nested subdomain to be remapped");
+        assertEquals("staging.example.com", remapper.applyRemapping("staging.example.com"),
+                "Expected the domain of the wildcard pattern not to be remapped");
+        assertEquals("api.example.com", remapper.applyRemapping("api.example.com"), "Expected other hosts not to be remapped");
+    }
+
+    @Test
+    void testExactRemappingTakesPrecedenceOverWildcardRemapping() {
+        remapper.remapHost("*.example.com", "10.0.0.1");
+        remapper.remapHost("*.staging.example.com", "127.0.0.1");
+        remapper.remapHost("www.staging.example.com", "127.0.0.2");
+
+        assertEquals("127.0.0.2", remapper.applyRemapping("www.staging.example.com"), "Expected exact remapping to be applied");
+        assertEquals("127.0.0.1", remapper.applyRemapping("api.staging.example.com"), "Expected longest wildcard remapping to be applied");
+        assertEquals("10.0.0.1", remapper.applyRemapping("www.example.com"), "Expected shorter wildcard remapping to be applied");
+    }
+
+    @Test
+    void testGetOriginalHostnames() {
+        remapper.remapHost("www.example.com", "127.0.0.1");
+        remapper.remapHost("*.staging.example.com", "127.0.0.1");
+        remapper.remapHost("www.example.org", "127.0.0.2");
+
+        assertThat("Expected original hosts in the order in which they were remapped", remapper.getOriginalHostnames("127.0.0.1"),
+                contains("www.example.com", "*.staging.example.com"));
+
+        remapper.remapHost("www.example.com", "127.0.0.2");
+
+        assertThat("Expected the remapped host to be removed from its previous remapped host",
+                remapper.getOriginalHostnames("127.0.0.1"), contains("*.staging.example.com"));
+        assertThat("Expected the remapped host to be added after the existing remappings",
+                remapper.getOriginalHostnames("127.0.0.2"), contains("www.example.org", "www.example.com"));
+
+        remapper.removeHostRemapping("*.staging.example.com");
+
+        assertThat("Expected no original hosts after the remapping was removed", remapper.getOriginalHostnames("127.0.0.1"), empty());
+    }
+
+    @Test
+    void testRemapHostsReplacesRemappings() {
+        remapper.remapHost("www.example.com", "127.0.0.1");
+        remapper.remapHost("api.example.com", "127.0.0.1");
+        remapper.remapHost("*.example.org", "127.0.0.2");
+
+        Map<String, String> remappings = new LinkedHashMap<>();
+        remappings.put("cdn.example.com", "127.0.0.3");
+        remappings.put("api.example.com", "127.0.0.1");
+        remappings.put("*.example.org", "127.0.0.4");
+        remapper.remapHosts(remappings);
+
+        assertEquals(ImmutableList.copyOf(remappings.entrySet()), ImmutableList.copyOf(remapper.getHostRemappings().entrySet()),
+                "Expected the remappings in the order of the specified map");
+        assertEquals("www.example.com", remapper.applyRemapping("www.example.com"), "Expected unspecified remapping to be removed");
+        assertEquals("127.0.0.4", remapper.applyRemapping("www.example.org"), "Expected wildcard remapping to be replaced");
+        assertThat("Expected the original hosts of the removed remapping to be removed", remapper.getOriginalHostnames("127.0.0.2"),
+                empty());
+    }
+
+    @Test
+    void testRemapHostsAppliesRemappingsInSpecifiedOrder() {
+        remapper.remapHost("www.example.com", "127.0.0.1");
+        remapper.remapHost("api.example.com", "127.0.0.1");
+        remapper.remapHost("cdn.example.com", "127.0.0.1");
+        remapper.remapHost("img.example.com", "127.0.0.1");
+
+        Map<String, String> remappings = new LinkedHashMap<>();
+        remappings.put("www.example.com", "127.0.0.1");
+        remappings.put("cdn.example.com", "127.0.0.1");
+        remappings.put("new.example.com", "127.0.0.1");
+        remappings.put("api.example.com", "127.0.0.1");
+        remapper.remapHosts(remappings);
+
+        assertEquals(ImmutableList.copyOf(remappings.keySet()), ImmutableList.copyOf(remapper.getHostRemappings().keySet()),
+                "Expected moved and added remappings in the order of the specified map");
+        assertThat("Expected original hosts in the order of the specified map", remapper.getOriginalHostnames("127.0.0.1"),
+                contains("www.example.com", "cdn.example.com", "new.example.com", "api.example.com"));
+
+        remappings.remove("cdn.example.com");
+        remappings.put("img.example.com", "127.0.0.1");
+        remapper.remapHosts(remappings);
+
+        assertEquals(ImmutableList.copyOf(remappings.keySet()), ImmutableList.copyOf(remapper.getHostRemappings().keySet()),
+                "Expected the remappings in the order of the specified map after removing and appending remappings");
+    }
+
+    @Test
+    void testClearHostRemappings() {
+        remapper.remapHost("www.example.com", "127.0.0.1");
+        remapper.remapHost("*.example.org", "127.0.0.1");
+
+        remapper.clearHostRemappings();
+
+        assertEquals(Collections.emptyMap(), remapper.getHostRemappings(), "Expected no remappings after clearing remappings");
+        assertEquals("www.example.org", remapper.applyRemapping("www.example.org"), "Expected wildcard remapping to be cleared");
+        assertThat("Expected no original hosts after clearing remappings", remapper.getOriginalHostnames("127.0.0.1"), empty());
+    }
+
+    @Test
+    void testBulkRemappingIsAppliedAtomically() throws InterruptedException {
+        Map<String, String> firstRemappings = new LinkedHashMap<>();
+        Map<String, String> secondRemappings = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            firstRemappings.put("host" + i + ".example.com", "127.0.0.1");
+            secondRemappings.put("host" + i + ".example.com", "127.0.0.2");
+        }
+
+        remapper.remapHosts(firstRemappings);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                remapper.remapHosts(i % 2 == 0 ? secondRemappings : firstRemappings);
+            }
+        });
+        writer.start();
+
+        while (writer.isAlive()) {
+            Collection<String> originalHostnames = remapper.getOriginalHostnames("127.0.0.1");
+            assertEquals(0, originalHostnames.size() % 1000, "Expected all or none of the hosts to be remapped to 127.0.0.1");
+        }
+        writer.join();
+
+        assertEquals("127.0.0.1", remapper.applyRemapping("host999.example.com"), "Expected the last remappings to be applied");
+    }
+}
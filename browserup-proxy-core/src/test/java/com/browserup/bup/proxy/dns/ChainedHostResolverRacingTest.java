@@ -0,0 +1,173 @@
+package com.browserup.bup.proxy.dns;
+
+import com.browserup.bup.proxy.test.util.TestConstants;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChainedHostResolverRacingTest {
+    @Test
+    void testRacingReturnsFirstNonEmptyResult() {
+        AdvancedHostResolver slowResolver = mock(AdvancedHostResolver.class);
+        AdvancedHostResolver fastResolver = mock(AdvancedHostResolver.class);
+
+        doAnswer(invocation -> {
+            Thread.sleep(2000);
+            return TestConstants.addressOnesList;
+        }).when(slowResolver).resolve("www.example.test");
+        when(fastResolver.resolve("www.example.test")).thenReturn(TestConstants.addressTwosList);
+
+        ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(slowResolver, fastResolver), true);
+
+        long start = System.nanoTime();
+        Collection<InetAddress> results = chainResolver.resolve("www.example.test");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat("Expected the result of the fast resolver", results, contains(TestConstants.addressTwos));
+        assertThat("Expected the lookup not to wait for the slow resolver", elapsedMs, lessThan(1500L));
+    }
+
+    @Test
+    void testRacingIgnoresEmptyResults() {
+        AdvancedHostResolver emptyResolver = mock(AdvancedHostResolver.class);
+        AdvancedHostResolver failingResolver = mock(AdvancedHostResolver.class);
+        AdvancedHostResolver slowResolver = mock(AdvancedHostResolver.class);
+
+        when(emptyResolver.resolve("www.example.test")).thenReturn(Collections.emptyList());
+        when(failingResolver.resolve("www.example.test")).thenThrow(new IllegalStateException("resolver failure"));
+        doAnswer(invocation -> {
+            Thread.sleep(200);
+            return TestConstants.addressOnesList;
+        }).when(slowResolver).resolve("www.example.test");
+
+        ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(emptyResolver, failingResolver, slowResolver), true);
+
+        Collection<InetAddress> results = chainResolver.resolve("www.example.test");
+        assertThat("Expected the only non-empty result", results, contains(TestConstants.addressOnes));
+    }
+
+    @Test
+    void testRacingReturnsEmptyResultsWhenNoResolverResolves() {
+        AdvancedHostResolver firstResolver = mock(AdvancedHostResolver.class);
+        AdvancedHostResolver secondResolver = mock(AdvancedHostResolver.class);
+
+        when(firstResolver.resolve("www.example.test")).thenReturn(Collections.emptyList());
+        when(secondResolver.resolve("www.example.test")).thenReturn(Collections.emptyList());
+
+        ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(firstResolver, secondResolver), true);
+
+        assertThat("Expected empty results when no resolver returned addresses", chainResolver.resolve("www.example.test"), empty());
+    }
+
+    @Test
+    void testSetRacing() {
+        ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(mock(AdvancedHostResolver.class)));
+        assertFalse(chainResolver.isRacing(), "Expected racing to be disabled by default");
+
+        chainResolver.setRacing(true);
+        assertTrue(chainResolver.isRacing(), "Expected racing to be enabled");
+    }
+
+    @Test
+    void testStatisticsCountLookups() {
+        AdvancedHostResolver firstResolver = mock(AdvancedHostResolver.class);
+        AdvancedHostResolver secondResolver = mock(AdvancedHostResolver.class);
+
+        when(firstResolver.resolve("1.1.1.1")).thenReturn(TestConstants.addressOnesList);
+        when(firstResolver.resolve("2.2.2.2")).thenReturn(Collections.emptyList());
+        when(secondResolver.resolve("2.2.2.2")).thenReturn(TestConstants.addressTwosList);
+        when(firstResolver.resolve("failure")).thenThrow(new IllegalStateException("resolver failure"));
+
+        ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(firstResolver, secondResolver));
+
+        chainResolver.resolve("1.1.1.1");
+        chainResolver.resolve("2.2.2.2");
+        assertThrows(IllegalStateException.class, () -> chainResolver.resolve("failure"),
+                "Expected the exception of the resolver to be thrown when not racing");
+
+        ResolverStatistics firstStatistics = chainResolver.getStatistics().get(0);
+        assertEquals(firstResolver, firstStatistics.getResolver(), "Expected statistics in resolver order");
+        assertEquals(3, firstStatistics.getLookups(), "Expected three lookups using the first resolver");
+        assertEquals(1, firstStatistics.getHits(), "Expected one hit of the first resolver");
+        assertEquals(1, firstStatistics.getMisses(), "Expected one miss of the first resolver");
+        assertEquals(1, firstStatistics.getFailures(), "Expected one failure of the first resolver");
+
+        ResolverStatistics secondStatistics = chainResolver.getStatistics().get(1);
+        assertEquals(1, secondStatistics.getLookups(), "Expected the second resolver to be queried only after a miss");
+        assertEquals(1, secondStatistics.getHits(), "Expected one hit of the second resolver");
+    }
+
+    @Test
+    void testWritesDuringLookupAreAppliedToAllResolvers() throws InterruptedException, UnknownHostException {
+        AdvancedHostResolver firstResolver = new NativeResolver();
+        AdvancedHostResolver secondResolver = new NativeResolver();
+        ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(firstResolver, secondResolver));
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                chainResolver.remapHost("www.example.test", "127.0.0." + (i % 2 + 1));
+            }
+        });
+        writer.start();
+
+        while (writer.isAlive()) {
+            chainResolver.resolve("www.example.test");
+        }
+        writer.join();
+
+        assertEquals(firstResolver.getHostRemappings(), secondResolver.getHostRemappings(),
+                "Expected both resolvers to have the same remappings");
+        assertThat("Expected the last remapping to be applied", chainResolver.resolve("www.example.test"),
+                contains(InetAddress.getByName("127.0.0.2")));
+    }
+
+    @Test
+    void testLookupInterruptedByWriteIsRepeated() {
+        AtomicInteger firstResolverRemappings = new AtomicInteger();
+        AtomicInteger firstResolverLookups = new AtomicInteger();
+        AdvancedHostResolver firstResolver = mock(AdvancedHostResolver.class);
+        AdvancedHostResolver secondResolver = mock(AdvancedHostResolver.class);
+        ChainedHostResolver chainResolver = new ChainedHostResolver(ImmutableList.of(firstResolver, secondResolver));
+
+        doAnswer(invocation -> firstResolverRemappings.incrementAndGet()).when(firstResolver).remapHost("www.example.test", "1.1.1.1");
+        // the first resolver only resolves the host after both remappings, so a result of the second resolver is only consistent
+        // if it was returned before the first remapping
+        doAnswer(invocation -> {
+            Collection<InetAddress> results = firstResolverRemappings.get() < 2 ? Collections.emptyList() : TestConstants.addressOnesList;
+
+            // remap the host after the first resolver was queried and before the second resolver is queried, in the first two lookups
+            if (firstResolverLookups.incrementAndGet() <= 2) {
+                Thread writer = new Thread(() -> chainResolver.remapHost("www.example.test", "1.1.1.1"));
+                writer.start();
+                writer.join();
+            }
+
+            return results;
+        }).when(firstResolver).resolve("www.example.test");
+        when(secondResolver.resolve("www.example.test")).thenReturn(TestConstants.addressTwosList);
+
+        Collection<InetAddress> results = chainResolver.resolve("www.example.test");
+
+        assertThat("Expected the result of the resolvers after the remappings", results, contains(TestConstants.addressOnes));
+        assertEquals(3, firstResolverLookups.get(),
+                "Expected both interrupted lookups to be repeated, the last one while holding off write methods");
+    }
+}
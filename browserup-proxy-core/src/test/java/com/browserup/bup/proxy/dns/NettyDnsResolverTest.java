@@ -0,0 +1,146 @@
+package com.browserup.bup.proxy.dns;
+
+import com.browserup.bup.proxy.test.util.TestConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NettyDnsResolverTest {
+    private StubDnsServer dnsServer;
+
+    private NettyDnsResolver resolver;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        dnsServer = new StubDnsServer();
+        resolver = new NettyDnsResolver(Collections.singletonList(dnsServer.getAddress()), 2000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (resolver != null) {
+            resolver.close();
+        }
+
+        if (dnsServer != null) {
+            dnsServer.close();
+        }
+    }
+
+    @Test
+    void testResolveCachesAddresses() {
+        dnsServer.addHost("www.example.test", TestConstants.addressOnes, 60);
+
+        Collection<InetAddress> addresses = resolver.resolve("www.example.test");
+        assertThat("Expected resolver to return the address of the host", addresses, contains(TestConstants.addressOnes));
+
+        addresses = resolver.resolve("www.example.test");
+        assertThat("Expected resolver to return the cached address of the host", addresses, contains(TestConstants.addressOnes));
+        assertEquals(1, dnsServer.getQueryCount("www.example.test"), "Expected the second lookup to be served from the cache");
+    }
+
+    @Test
+    void testCachedAddressesExpireWithTtl() throws InterruptedException {
+        dnsServer.addHost("www.example.test", TestConstants.addressOnes, 1);
+
+        resolver.resolve("www.example.test");
+        dnsServer.addHost("www.example.test", TestConstants.addressTwos, 1);
+
+        Thread.sleep(1200);
+
+        Collection<InetAddress> addresses = resolver.resolve("www.example.test");
+        assertThat("Expected resolver to return the new address of the host after the TTL expired", addresses,
+                contains(TestConstants.addressTwos));
+        assertEquals(2, dnsServer.getQueryCount("www.example.test"), "Expected the host to be queried again after the TTL expired");
+    }
+
+    @Test
+    void testPositiveCacheTimeoutLimitsTtl() throws InterruptedException {
+        dnsServer.addHost("www.example.test", TestConstants.addressOnes, 3600);
+        resolver.setPositiveDNSCacheTimeout(1, TimeUnit.SECONDS);
+
+        resolver.resolve("www.example.test");
+        Thread.sleep(1200);
+        resolver.resolve("www.example.test");
+
+        assertEquals(2, dnsServer.getQueryCount("www.example.test"), "Expected the positive cache timeout to limit the TTL");
+    }
+
+    @Test
+    void testFailedLookupsAreCached() {
+        Collection<InetAddress> addresses = resolver.resolve("unknown.example.test");
+        assertThat("Expected resolver to return no addresses for an unknown host", addresses, empty());
+
+        dnsServer.addHost("unknown.example.test", TestConstants.addressOnes, 60);
+
+        addresses = resolver.resolve("unknown.example.test");
+        assertThat("Expected resolver to return the cached failed lookup", addresses, empty());
+        assertEquals(1, dnsServer.getQueryCount("unknown.example.test"), "Expected the failed lookup to be served from the cache");
+    }
+
+    @Test
+    void testNegativeCacheTimeoutZeroDisablesNegativeCaching() {
+        resolver.setNegativeDNSCacheTimeout(0, TimeUnit.SECONDS);
+
+        resolver.resolve("unknown.example.test");
+        dnsServer.addHost("unknown.example.test", TestConstants.addressOnes, 60);
+
+        Collection<InetAddress> addresses = resolver.resolve("unknown.example.test");
+        assertThat("Expected resolver to query the host again when negative caching is disabled", addresses,
+                contains(TestConstants.addressOnes));
+    }
+
+    @Test
+    void testClearDNSCache() {
+        dnsServer.addHost("www.example.test", TestConstants.addressOnes, 60);
+
+        resolver.resolve("www.example.test");
+        dnsServer.addHost("www.example.test", TestConstants.addressTwos, 60);
+        resolver.clearDNSCache();
+
+        Collection<InetAddress> addresses = resolver.resolve("www.example.test");
+        assertThat("Expected resolver to query the host again after the cache was cleared", addresses,
+                contains(TestConstants.addressTwos));
+    }
+
+    @Test
+    void testRemapHost() {
+        dnsServer.addHost("www.example.test", TestConstants.addressOnes, 60);
+        resolver.remapHost("www.remapped.test", "www.example.test");
+
+        Collection<InetAddress> addresses = resolver.resolve("www.remapped.test");
+        assertThat("Expected resolver to resolve the remapped host", addresses, contains(TestConstants.addressOnes));
+        assertThat("Expected resolver to return the original hostname of the remapped host",
+                resolver.getOriginalHostnames("www.example.test"), contains("www.remapped.test"));
+    }
+
+    @Test
+    void testConcurrentLookupsAreCoalesced() {
+        dnsServer.addHost("www.example.test", TestConstants.addressOnes, 60);
+        dnsServer.setResponseDelay(300, TimeUnit.MILLISECONDS);
+
+        List<CompletableFuture<List<InetAddress>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lookups.add(resolver.resolveAsync("www.example.test"));
+        }
+
+        for (CompletableFuture<List<InetAddress>> lookup : lookups) {
+            assertThat("Expected every lookup to return the address of the host", lookup.join(), contains(TestConstants.addressOnes));
+        }
+
+        assertEquals(1, dnsServer.getQueryCount("www.example.test"), "Expected concurrent lookups to send a single query");
+    }
+}
@@ -0,0 +1,135 @@
+package com.browserup.bup.proxy.dns;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.dns.DatagramDnsQuery;
+import io.netty.handler.codec.dns.DatagramDnsQueryDecoder;
+import io.netty.handler.codec.dns.DatagramDnsResponse;
+import io.netty.handler.codec.dns.DatagramDnsResponseEncoder;
+import io.netty.handler.codec.dns.DefaultDnsRawRecord;
+import io.netty.handler.codec.dns.DnsQuestion;
+import io.netty.handler.codec.dns.DnsRecordType;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.handler.codec.dns.DnsSection;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A DNS server on a local UDP port that answers A queries for the hosts it was told about, and NXDOMAIN for any other host.
+ * Queries for other record types are answered without records. Counts the A queries it receives for each host.
+ */
+class StubDnsServer implements Closeable {
+    private final EventLoopGroup group = new MultiThreadIoEventLoopGroup(1, NioIoHandler.newFactory());
+
+    private final Channel channel;
+
+    private final Map<String, HostRecord> hosts = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> queryCounts = new ConcurrentHashMap<>();
+
+    private volatile long responseDelayMs;
+
+    StubDnsServer() throws InterruptedException {
+        channel = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .handler(new ChannelInitializer<NioDatagramChannel>() {
+                    @Override
+                    protected void initChannel(NioDatagramChannel ch) {
+                        ch.pipeline().addLast(new DatagramDnsQueryDecoder(), new DatagramDnsResponseEncoder(), new QueryHandler());
+                    }
+                })
+                .bind(InetAddress.getLoopbackAddress(), 0)
+                .sync()
+                .channel();
+    }
+
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress) channel.localAddress();
+    }
+
+    /**
+     * Answers A queries for the host with the address, with the specified TTL.
+     */
+    void addHost(String host, InetAddress address, int ttlSeconds) {
+        hosts.put(host, new HostRecord(address, ttlSeconds));
+    }
+
+    /**
+     * Delays every response, e.g. to keep several lookups of the same host in flight.
+     */
+    void setResponseDelay(long delay, TimeUnit timeUnit) {
+        responseDelayMs = timeUnit.toMillis(delay);
+    }
+
+    /**
+     * Returns the number of A queries received for the host.
+     */
+    int getQueryCount(String host) {
+        AtomicInteger count = queryCounts.get(host);
+        return count != null ? count.get() : 0;
+    }
+
+    @Override
+    public void close() {
+        channel.close().syncUninterruptibly();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    private class QueryHandler extends SimpleChannelInboundHandler<DatagramDnsQuery> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramDnsQuery query) {
+            DnsQuestion question = query.recordAt(DnsSection.QUESTION);
+            String host = question.name().endsWith(".") ? question.name().substring(0, question.name().length() - 1) : question.name();
+            HostRecord record = hosts.get(host);
+
+            DatagramDnsResponse response = new DatagramDnsResponse(query.recipient(), query.sender(), query.id());
+            response.setAuthoritativeAnswer(true);
+            response.addRecord(DnsSection.QUESTION, question);
+
+            if (record == null) {
+                response.setCode(DnsResponseCode.NXDOMAIN);
+            }
+
+            if (question.type() == DnsRecordType.A) {
+                queryCounts.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+
+                if (record != null) {
+                    response.addRecord(DnsSection.ANSWER, new DefaultDnsRawRecord(question.name(), DnsRecordType.A, record.ttlSeconds,
+                            Unpooled.wrappedBuffer(record.address.getAddress())));
+                }
+            }
+
+            long delay = responseDelayMs;
+            if (delay > 0) {
+                ctx.executor().schedule(() -> ctx.writeAndFlush(response), delay, TimeUnit.MILLISECONDS);
+            } else {
+                ctx.writeAndFlush(response);
+            }
+        }
+    }
+
+    private static class HostRecord {
+        final InetAddress address;
+        final int ttlSeconds;
+
+        HostRecord(InetAddress address, int ttlSeconds) {
+            this.address = address;
+            this.ttlSeconds = ttlSeconds;
+        }
+    }
+}
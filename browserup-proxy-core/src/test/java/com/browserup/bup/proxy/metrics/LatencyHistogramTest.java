@@ -0,0 +1,111 @@
+package com.browserup.bup.proxy.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    @Test
+    void testBucketLayout() {
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, LatencyHistogram.bucketIndex(i), "Expected values below 16 to have a bucket of their own");
+        }
+
+        assertEquals(488, LatencyHistogram.BUCKET_COUNT, "Expected 8 sub-buckets for each power of two");
+
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+            long lowestValue = LatencyHistogram.lowestEquivalentValue(bucket);
+            long highestValue = LatencyHistogram.highestEquivalentValue(bucket);
+
+            assertEquals(bucket, LatencyHistogram.bucketIndex(lowestValue), "Expected lowest value of bucket " + bucket + " in the bucket");
+            assertEquals(bucket, LatencyHistogram.bucketIndex(highestValue), "Expected highest value of bucket " + bucket + " in the bucket");
+            assertTrue(highestValue - lowestValue <= lowestValue / 8, "Expected bucket " + bucket + " to be at most 12.5% wide");
+        }
+    }
+
+    @Test
+    void testRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(5, TimeUnit.MILLISECONDS);
+        histogram.record(10, TimeUnit.MILLISECONDS);
+        histogram.record(-1);
+
+        assertEquals(3, histogram.getCount(), "Expected all recorded latencies to be counted");
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(15), histogram.getSumNanos(), "Expected negative latency to be recorded as 0");
+        assertEquals(1, histogram.getBucketCounts()[0], "Expected negative latency to be recorded in the first bucket");
+    }
+
+    @Test
+    void testValueAtPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50), "Expected 0 when no latencies were recorded");
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(1), histogram.getValueAtPercentile(0));
+        assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(50), histogram.getValueAtPercentile(50));
+        assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(99), histogram.getValueAtPercentile(99));
+        assertWithinBucket(TimeUnit.MILLISECONDS.toNanos(100), histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testAddBucketCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+
+        long[] bucketCounts = new long[LatencyHistogram.bucketIndex(1000) + 1];
+        bucketCounts[LatencyHistogram.bucketIndex(1000)] = 2;
+        bucketCounts[3] = 1;
+        histogram.add(bucketCounts, 2003);
+
+        assertEquals(4, histogram.getCount(), "Expected added bucket counts to be counted");
+        assertEquals(3003, histogram.getSumNanos(), "Expected added sum to be included");
+        assertEquals(3, histogram.getBucketCounts()[LatencyHistogram.bucketIndex(1000)], "Expected added bucket counts in their bucket");
+
+        assertThrows(IllegalArgumentException.class, () -> histogram.add(new long[LatencyHistogram.BUCKET_COUNT + 1], 0),
+                "Expected bucket counts of a different layout to be rejected");
+    }
+
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    histogram.record(j);
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long bucketTotal = 0;
+        for (long bucketCount : histogram.getBucketCounts()) {
+            bucketTotal += bucketCount;
+        }
+
+        assertEquals(40000, histogram.getCount(), "Expected all concurrently recorded latencies to be counted");
+        assertEquals(40000, bucketTotal, "Expected all concurrently recorded latencies to be in the buckets");
+    }
+
+    private static void assertWithinBucket(long expectedValue, long actualValue) {
+        assertThat("Expected value at percentile to be in the bucket of " + expectedValue, actualValue,
+                allOf(greaterThanOrEqualTo(expectedValue), lessThanOrEqualTo(expectedValue + expectedValue / 8)));
+    }
+}
@@ -0,0 +1,53 @@
+package com.browserup.bup.proxy.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+
+class PrometheusMetricsWriterTest {
+    @Test
+    void testHistogramBuckets() {
+        ProxyMetrics metrics = new ProxyMetrics();
+        metrics.recordLatency(RequestPhase.WAIT, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordLatency(RequestPhase.WAIT, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.recordLatency(RequestPhase.WAIT, TimeUnit.SECONDS.toNanos(90));
+
+        String text = PrometheusMetricsWriter.write(metrics);
+
+        assertThat("Expected histogram type", text, containsString("# TYPE browserup_proxy_request_phase_seconds histogram\n"));
+        assertThat("Expected no latencies in lower buckets", text,
+                containsString("browserup_proxy_request_phase_seconds_bucket{phase=\"wait\",le=\"0.0025\"} 0\n"));
+        assertThat("Expected cumulative bucket counts", text,
+                containsString("browserup_proxy_request_phase_seconds_bucket{phase=\"wait\",le=\"0.005\"} 1\n"));
+        assertThat("Expected cumulative bucket counts", text,
+                containsString("browserup_proxy_request_phase_seconds_bucket{phase=\"wait\",le=\"60.0\"} 2\n"));
+        assertThat("Expected all latencies in the +Inf bucket", text,
+                containsString("browserup_proxy_request_phase_seconds_bucket{phase=\"wait\",le=\"+Inf\"} 3\n"));
+        assertThat("Expected count of latencies", text,
+                containsString("browserup_proxy_request_phase_seconds_count{phase=\"wait\"} 3\n"));
+        assertThat("Expected sum of latencies in seconds", text,
+                containsString("browserup_proxy_request_phase_seconds_sum{phase=\"wait\"} 90.023\n"));
+        assertThat("Expected empty histograms of other phases", text,
+                containsString("browserup_proxy_request_phase_seconds_count{phase=\"dns\"} 0\n"));
+    }
+
+    @Test
+    void testCounters() {
+        ProxyMetrics metrics = new ProxyMetrics();
+        metrics.add(ProxyCounter.CLIENT_BYTES_RECEIVED, 1024);
+        metrics.increment(ProxyCounter.ACTIVE_CLIENT_CONNECTIONS);
+        metrics.increment(ProxyCounter.ACTIVE_CLIENT_CONNECTIONS);
+        metrics.decrement(ProxyCounter.ACTIVE_CLIENT_CONNECTIONS);
+
+        String text = PrometheusMetricsWriter.write(metrics);
+
+        assertThat("Expected counter type", text, containsString("# TYPE browserup_proxy_client_bytes_received_total counter\n"));
+        assertThat("Expected counter value", text, containsString("browserup_proxy_client_bytes_received_total 1024\n"));
+        assertThat("Expected gauge type", text, containsString("# TYPE browserup_proxy_active_client_connections gauge\n"));
+        assertThat("Expected gauge value", text, containsString("browserup_proxy_active_client_connections 1\n"));
+        assertThat("Expected zero counters to be written", text, containsString("browserup_proxy_filter_exceptions_total 0\n"));
+    }
+}
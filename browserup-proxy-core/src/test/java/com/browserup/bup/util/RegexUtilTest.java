@@ -0,0 +1,35 @@
+package com.browserup.bup.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RegexUtilTest {
+    @Test
+    void testRequiredLiteral() {
+        assertEquals("://www.example.com/", RegexUtil.requiredLiteral(Pattern.compile("https?://www\\.example\\.com/.*")),
+                "Expected literal following an optional character");
+        assertEquals("doubleclick.net/", RegexUtil.requiredLiteral(Pattern.compile("https?://([^/]*\\.)?doubleclick\\.net/.*")),
+                "Expected literal following an optional group");
+        assertEquals("http://q.com/", RegexUtil.requiredLiteral(Pattern.compile("\\Qhttp://q.com/\\E.*")),
+                "Expected quoted literal");
+        assertEquals("http://www.", RegexUtil.requiredLiteral(Pattern.compile("http://www\\.\\d+\\.com/.*")),
+                "Expected literal preceding an escape sequence");
+        assertEquals("http://x", RegexUtil.requiredLiteral(Pattern.compile("http://x\\x41y\\.com/.*")),
+                "Expected hexadecimal escape and the characters following it to be skipped");
+    }
+
+    @Test
+    void testUnindexablePatterns() {
+        assertNull(RegexUtil.requiredLiteral(Pattern.compile("http://a\\.com/.*|http://b\\.com/.*")),
+                "Expected no literal for a pattern with a top-level alternation");
+        assertNull(RegexUtil.requiredLiteral(Pattern.compile("(?i)http://example\\.com/.*")),
+                "Expected no literal for a case-insensitive pattern");
+        assertNull(RegexUtil.requiredLiteral(Pattern.compile("http://example\\.com/.*", Pattern.CASE_INSENSITIVE)),
+                "Expected no literal for a pattern compiled with flags");
+        assertNull(RegexUtil.requiredLiteral(Pattern.compile(".*")), "Expected no literal for a pattern without literals");
+    }
+}
@@ -1,6 +1,7 @@
 package com.browserup.bup.mitm;
 
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -16,4 +17,15 @@ public interface CertificateInfoGenerator {
      * @return CertificateInfo to be used to create an X509Certificate for the specified hostnames
      */
     CertificateInfo generate(List<String> hostnames, X509Certificate originalCertificate);
+
+    /**
+     * Returns the hostnames that the certificate impersonating the specified host should be generated for. Hosts that return the
+     * same hostnames share a single impersonated certificate. The default implementation returns only the host itself.
+     *
+     * @param hostname the hostname being impersonated
+     * @return hostnames to pass to {@link #generate(List, X509Certificate)}, which may include wildcards
+     */
+    default List<String> getCertificateHostnames(String hostname) {
+        return Collections.singletonList(hostname);
+    }
 }
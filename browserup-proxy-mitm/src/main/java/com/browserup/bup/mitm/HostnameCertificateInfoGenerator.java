@@ -1,13 +1,22 @@
 package com.browserup.bup.mitm;
 
+import com.google.common.net.InetAddresses;
+import com.google.common.net.InternetDomainName;
+
 import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * A {@link CertificateInfoGenerator} that uses only a hostname to populate a new {@link CertificateInfo}. The
  * values in the upstream server's original X.509 certificate will be ignored.
+ * <p>
+ * In wildcard mode, hosts are impersonated using a wildcard certificate for their parent domain (e.g. "*.cdn.example.com" for
+ * "img1.cdn.example.com"), so all sibling subdomains share a single certificate. Wildcards are never created directly below a public
+ * suffix (e.g. "*.co.uk"), since clients reject such certificates; hosts directly below a public suffix, IP addresses, and single-label
+ * hostnames are impersonated individually.
  */
 public class HostnameCertificateInfoGenerator implements CertificateInfoGenerator {
     /**
@@ -21,6 +30,60 @@ public class HostnameCertificateInfoGenerator implements CertificateInfoGenerato
      */
     private static final String DEFAULT_IMPERSONATED_CERT_ORG_UNIT = "LittleProxy MITM";
 
+    private final boolean wildcard;
+
+    /**
+     * Creates a generator that impersonates each host with its own certificate.
+     */
+    public HostnameCertificateInfoGenerator() {
+        this(false);
+    }
+
+    /**
+     * Creates a generator that optionally impersonates hosts using wildcard certificates for their parent domains.
+     * @param wildcard true to generate wildcard certificates shared by all subdomains of a parent domain
+     */
+    public HostnameCertificateInfoGenerator(boolean wildcard) {
+        this.wildcard = wildcard;
+    }
+
+    @Override
+    public List<String> getCertificateHostnames(String hostname) {
+        if (!wildcard) {
+            return Collections.singletonList(hostname);
+        }
+
+        String wildcardHostname = getWildcardHostname(hostname);
+
+        return Collections.singletonList(wildcardHostname != null ? wildcardHostname : hostname);
+    }
+
+    /**
+     * Returns the wildcard hostname covering the specified hostname (e.g. "*.example.com" for "www.example.com"), or null if the
+     * hostname cannot be covered by a wildcard certificate.
+     * @param hostname hostname to impersonate
+     * @return wildcard hostname for the hostname's parent domain, or null
+     */
+    static String getWildcardHostname(String hostname) {
+        if (hostname == null || InetAddresses.isInetAddress(hostname) || !InternetDomainName.isValid(hostname)) {
+            return null;
+        }
+
+        InternetDomainName domainName = InternetDomainName.from(hostname);
+        if (!domainName.hasParent()) {
+            return null;
+        }
+
+        InternetDomainName parent = domainName.parent();
+
+        // a wildcard must cover at least two labels, and may not cover every domain under a public suffix
+        if (parent.parts().size() < 2 || parent.isPublicSuffix()) {
+            return null;
+        }
+
+        return "*." + parent;
+    }
+
     @Override
     public CertificateInfo generate(List<String> hostnames, X509Certificate originalCertificate) {
         if (hostnames == null || hostnames.size() < 1) {
@@ -0,0 +1,372 @@
+package com.browserup.bup.mitm;
+
+import com.browserup.bup.mitm.exception.ImportException;
+import com.browserup.bup.mitm.exception.KeyStoreAccessException;
+import com.browserup.bup.mitm.tools.DefaultSecurityProviderTool;
+import com.browserup.bup.mitm.tools.SecurityProviderTool;
+import com.browserup.bup.mitm.util.KeyStoreUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent store for impersonated server certificates and their private keys, which allows impersonated certificates to be reused
+ * across proxy restarts. The certificates are stored in a PKCS12 KeyStore file, protected by a password derived from the private key of
+ * the CA root certificate that signed them, so the file can only be read using the same CA.
+ * <p>
+ * The file is read when a certificate is first requested, rather than when the store is created. Stored certificates are not returned
+ * (and will be replaced when a new certificate is stored) if they were not signed by the current CA root certificate, are not yet valid,
+ * or expire within the renewal period. If the file cannot be read with the current CA (e.g. because the CA has changed), it is replaced
+ * by a new, empty store.
+ * <p>
+ * This class is thread-safe. New certificates are available from {@link #get(String, CertificateAndKey)} immediately, and are written to
+ * the file in the background by a writer thread, which writes all certificates stored since its last write at once, so storing
+ * certificates never waits for the file to be written. Use {@link #flush()} to wait until the stored certificates have been written.
+ */
+public class ImpersonatedCertificateStore {
+    private static final Logger log = LoggerFactory.getLogger(ImpersonatedCertificateStore.class);
+
+    private static final String KEYSTORE_TYPE = "PKCS12";
+
+    /**
+     * Default period before a stored certificate's expiration during which the certificate will be regenerated.
+     */
+    public static final Duration DEFAULT_RENEWAL_PERIOD = Duration.ofDays(7);
+
+    private final File file;
+
+    private final Duration renewalPeriod;
+
+    private SecurityProviderTool securityProviderTool = new DefaultSecurityProviderTool();
+
+    /**
+     * The CA root certificate that the current {@link #keyStore} was loaded for. Null until the file has been read.
+     */
+    private X509Certificate caRootCertificate;
+
+    private KeyStore keyStore;
+
+    private String password;
+
+    /**
+     * The KeyStore that is written to the file. It is only modified by the writer thread, so it can be written without holding the
+     * lock on this store. Replaced, together with {@link #keyStore}, when the CA root certificate changes.
+     */
+    private PersistentKeyStore persistentKeyStore;
+
+    /**
+     * Certificates stored since the last write, in the order they were stored.
+     */
+    private final Queue<PendingEntry> pendingEntries = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+    /**
+     * Writes the file. The thread is not a daemon thread, so pending certificates are written before the JVM exits normally; it stops
+     * shortly after the last write.
+     */
+    private final ThreadPoolExecutor writer;
+
+    /**
+     * Creates a store that persists impersonated certificates to the specified file, using the {@link #DEFAULT_RENEWAL_PERIOD}.
+     * @param file KeyStore file to load certificates from and save certificates to. The file does not need to exist.
+     */
+    public ImpersonatedCertificateStore(File file) {
+        this(file, DEFAULT_RENEWAL_PERIOD);
+    }
+
+    /**
+     * Creates a store that persists impersonated certificates to the specified file.
+     * @param file KeyStore file to load certificates from and save certificates to. The file does not need to exist.
+     * @param renewalPeriod period before a stored certificate expires during which it will be regenerated
+     */
+    public ImpersonatedCertificateStore(File file, Duration renewalPeriod) {
+        if (file == null) {
+            throw new IllegalArgumentException("Certificate store file cannot be null");
+        }
+
+        if (renewalPeriod == null || renewalPeriod.isNegative()) {
+            throw new IllegalArgumentException("Renewal period cannot be null or negative");
+        }
+
+        this.file = file;
+        this.renewalPeriod = renewalPeriod;
+
+        this.writer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("impersonated-certificate-store-%d")
+                        .build());
+        this.writer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Override the default {@link SecurityProviderTool} used to load and save the KeyStore.
+     * @param securityProviderTool securityProviderTool
+     * @return ImpersonatedCertificateStore
+     */
+    public ImpersonatedCertificateStore certificateTool(SecurityProviderTool securityProviderTool) {
+        this.securityProviderTool = securityProviderTool;
+        return this;
+    }
+
+    /**
+     * Returns the stored certificate and private key for the specified key, if a valid certificate signed by the specified CA is stored.
+     *
+     * @param key key the certificate was stored under, such as the hostnames in the certificate
+     * @param caRootCertificateAndKey CA root certificate and private key that must have signed the stored certificate
+     * @return the stored certificate and private key, or null if no valid certificate is stored
+     */
+    public synchronized CertificateAndKey get(String key, CertificateAndKey caRootCertificateAndKey) {
+        ensureLoaded(caRootCertificateAndKey);
+
+        String alias = toAlias(key);
+
+        try {
+            if (!keyStore.isKeyEntry(alias)) {
+                return null;
+            }
+
+            Certificate[] chain = keyStore.getCertificateChain(alias);
+            Key privateKey = keyStore.getKey(alias, password.toCharArray());
+            if (chain == null || chain.length == 0 || !(chain[0] instanceof X509Certificate) || !(privateKey instanceof PrivateKey)) {
+                return null;
+            }
+
+            X509Certificate certificate = (X509Certificate) chain[0];
+            if (!isUsable(certificate)) {
+                log.debug("Stored impersonated certificate for {} is expiring or was not signed by the current CA; it will be regenerated", key);
+
+                return null;
+            }
+
+            return new CertificateAndKey(certificate, (PrivateKey) privateKey);
+        } catch (GeneralSecurityException e) {
+            log.warn("Unable to read impersonated certificate for {} from certificate store: {}", key, file, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Stores the certificate and private key under the specified key. The store is saved to disk in the background.
+     *
+     * @param key key to store the certificate under, such as the hostnames in the certificate
+     * @param certificateAndKey impersonated certificate and private key
+     * @param caRootCertificateAndKey CA root certificate and private key that signed the certificate
+     */
+    public void put(String key, CertificateAndKey certificateAndKey, CertificateAndKey caRootCertificateAndKey) {
+        String alias = toAlias(key);
+        PendingEntry pendingEntry;
+
+        synchronized (this) {
+            ensureLoaded(caRootCertificateAndKey);
+
+            Certificate[] chain = {certificateAndKey.getCertificate(), caRootCertificate};
+            try {
+                keyStore.setKeyEntry(alias, certificateAndKey.getPrivateKey(), password.toCharArray(), chain);
+            } catch (GeneralSecurityException e) {
+                throw new KeyStoreAccessException("Unable to add impersonated certificate for " + key + " to certificate store", e);
+            }
+
+            pendingEntry = new PendingEntry(persistentKeyStore, alias, certificateAndKey.getPrivateKey(), chain);
+        }
+
+        pendingEntries.add(pendingEntry);
+
+        if (writeScheduled.compareAndSet(false, true)) {
+            writer.execute(this::writePendingEntries);
+        }
+    }
+
+    /**
+     * Waits until all certificates stored before this call have been written to the file.
+     */
+    public void flush() {
+        try {
+            writer.submit(this::writePendingEntries).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Unable to save certificate store: {}", file, e.getCause());
+        }
+    }
+
+    /**
+     * Adds the pending certificates to their persistent KeyStores and writes the file once. Only runs on the writer thread.
+     */
+    private void writePendingEntries() {
+        // clear the flag first, so certificates stored while the file is written schedule another write
+        writeScheduled.set(false);
+
+        PersistentKeyStore lastModified = null;
+        PendingEntry pendingEntry;
+        while ((pendingEntry = pendingEntries.poll()) != null) {
+            PersistentKeyStore target = pendingEntry.persistentKeyStore;
+            try {
+                target.keyStore.setKeyEntry(pendingEntry.alias, pendingEntry.privateKey, target.password.toCharArray(), pendingEntry.chain);
+                lastModified = target;
+            } catch (GeneralSecurityException e) {
+                log.warn("Unable to add impersonated certificate {} to certificate store: {}", pendingEntry.alias, file, e);
+            }
+        }
+
+        // certificates of a previous CA root certificate are not written once certificates of the current CA have been stored
+        if (lastModified != null) {
+            save(lastModified);
+        }
+    }
+
+    private void ensureLoaded(CertificateAndKey caRootCertificateAndKey) {
+        X509Certificate currentCaRootCertificate = caRootCertificateAndKey.getCertificate();
+        if (keyStore != null && currentCaRootCertificate.equals(caRootCertificate)) {
+            return;
+        }
+
+        caRootCertificate = currentCaRootCertificate;
+        password = derivePassword(caRootCertificateAndKey);
+
+        keyStore = loadKeyStore();
+        persistentKeyStore = new PersistentKeyStore(loadKeyStore(), password);
+    }
+
+    private KeyStore loadKeyStore() {
+        if (file.isFile()) {
+            try {
+                KeyStore loadedKeyStore = securityProviderTool.loadKeyStore(file, KEYSTORE_TYPE, password);
+
+                log.debug("Loaded {} impersonated certificates from certificate store: {}", loadedKeyStore.size(), file);
+
+                return loadedKeyStore;
+            } catch (ImportException | KeyStoreAccessException | GeneralSecurityException e) {
+                // most likely the store was created with a different CA. the store will be replaced when the next certificate is saved.
+                log.info("Unable to load certificate store {} using the current CA root certificate. Impersonated certificates will be regenerated.", file, e);
+            }
+        }
+
+        return KeyStoreUtil.createEmptyKeyStore(KEYSTORE_TYPE, null);
+    }
+
+    private boolean isUsable(X509Certificate certificate) {
+        Instant now = Instant.now();
+
+        try {
+            certificate.checkValidity(Date.from(now));
+            certificate.checkValidity(Date.from(now.plus(renewalPeriod)));
+
+            if (!certificate.getIssuerX500Principal().equals(caRootCertificate.getSubjectX500Principal())) {
+                return false;
+            }
+
+            certificate.verify(caRootCertificate.getPublicKey());
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the KeyStore to a temporary file and moves it over the store file, so a partially-written store is never read.
+     */
+    private void save(PersistentKeyStore persistentKeyStore) {
+        Path storePath = file.toPath().toAbsolutePath();
+        Path tempFile = null;
+        try {
+            Path directory = storePath.getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+
+            tempFile = Files.createTempFile(directory, storePath.getFileName().toString(), ".tmp");
+            securityProviderTool.saveKeyStore(tempFile.toFile(), persistentKeyStore.keyStore, persistentKeyStore.password);
+
+            Files.move(tempFile, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+        } catch (IOException | KeyStoreAccessException e) {
+            log.warn("Unable to save certificate store: {}", file, e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    log.warn("Unable to delete temporary certificate store file: {}", tempFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Derives the store password from the CA private key (or, if the private key cannot be encoded, from the CA certificate), so that
+     * only the CA that signed the stored certificates can read them.
+     */
+    private static String derivePassword(CertificateAndKey caRootCertificateAndKey) {
+        byte[] secret = caRootCertificateAndKey.getPrivateKey() != null ? caRootCertificateAndKey.getPrivateKey().getEncoded() : null;
+        try {
+            if (secret == null) {
+                secret = caRootCertificateAndKey.getCertificate().getEncoded();
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update("browserup-impersonated-certificate-store".getBytes(StandardCharsets.UTF_8));
+
+            return Base64.getEncoder().encodeToString(digest.digest(secret));
+        } catch (GeneralSecurityException e) {
+            throw new KeyStoreAccessException("Unable to derive certificate store password from CA root certificate", e);
+        }
+    }
+
+    private static String toAlias(String key) {
+        // PKCS12 aliases are case-insensitive
+        return key.toLowerCase(Locale.US);
+    }
+
+    private static class PersistentKeyStore {
+        private final KeyStore keyStore;
+        private final String password;
+
+        private PersistentKeyStore(KeyStore keyStore, String password) {
+            this.keyStore = keyStore;
+            this.password = password;
+        }
+    }
+
+    private static class PendingEntry {
+        private final PersistentKeyStore persistentKeyStore;
+        private final String alias;
+        private final PrivateKey privateKey;
+        private final Certificate[] chain;
+
+        private PendingEntry(PersistentKeyStore persistentKeyStore, String alias, PrivateKey privateKey, Certificate[] chain) {
+            this.persistentKeyStore = persistentKeyStore;
+            this.alias = alias;
+            this.privateKey = privateKey;
+            this.chain = chain;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.browserup.bup.mitm.keys;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A bounded reservoir of key pairs that are generated in the background by a {@link KeyGenerator}, so that key pair generation
+ * does not delay the caller. The reservoir is filled lazily: no key pairs are generated until the first call to {@link #poll()}
+ * or {@link #fill()}. Each key pair is handed out at most once.
+ */
+public class KeyPairReservoir {
+    private static final Logger log = LoggerFactory.getLogger(KeyPairReservoir.class);
+
+    private final KeyGenerator keyGenerator;
+
+    private final BlockingQueue<KeyPair> keyPairs;
+
+    private final Executor executor;
+
+    /**
+     * True while a refill task is queued or running, to avoid submitting more than one refill task at a time.
+     */
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * Creates a new reservoir that holds up to capacity key pairs, generated by keyGenerator on the executor.
+     *
+     * @param keyGenerator generator used to create key pairs
+     * @param capacity maximum number of pre-generated key pairs
+     * @param executor executor that generates key pairs in the background
+     */
+    public KeyPairReservoir(KeyGenerator keyGenerator, int capacity, Executor executor) {
+        if (keyGenerator == null) {
+            throw new IllegalArgumentException("Key generator cannot be null");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Key pair reservoir capacity must be at least 1");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+
+        this.keyGenerator = keyGenerator;
+        this.keyPairs = new ArrayBlockingQueue<>(capacity);
+        this.executor = executor;
+    }
+
+    /**
+     * Removes a pre-generated key pair from the reservoir, and starts refilling the reservoir in the background.
+     *
+     * @return a pre-generated key pair, or null if the reservoir is empty
+     */
+    public KeyPair poll() {
+        KeyPair keyPair = keyPairs.poll();
+
+        fill();
+
+        return keyPair;
+    }
+
+    /**
+     * Starts filling the reservoir in the background, if it is not full and is not already being filled.
+     */
+    public void fill() {
+        if (keyPairs.remainingCapacity() == 0 || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::refill);
+        } catch (RejectedExecutionException e) {
+            refilling.set(false);
+
+            log.warn("Unable to generate key pairs in the background", e);
+        }
+    }
+
+    /**
+     * @return the number of pre-generated key pairs currently in the reservoir
+     */
+    public int size() {
+        return keyPairs.size();
+    }
+
+    private void refill() {
+        boolean failed = false;
+        try {
+            while (keyPairs.remainingCapacity() > 0 && keyPairs.offer(keyGenerator.generate())) {
+                // keep generating until the reservoir is full
+            }
+        } catch (RuntimeException e) {
+            failed = true;
+
+            log.warn("Error generating key pair in the background using key generator: {}", keyGenerator, e);
+        } finally {
+            refilling.set(false);
+        }
+
+        // a key pair may have been taken after the reservoir was last found to be full, but before refilling was reset.
+        // after a failure, wait for the next poll() to try again, rather than retrying a broken key generator indefinitely.
+        if (!failed) {
+            fill();
+        }
+    }
+}
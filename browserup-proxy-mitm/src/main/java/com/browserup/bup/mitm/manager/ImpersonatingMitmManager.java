@@ -5,6 +5,7 @@ import com.google.common.base.Suppliers;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.ssl.SslContext;
@@ -15,12 +16,14 @@ import com.browserup.bup.mitm.CertificateAndKeySource;
 import com.browserup.bup.mitm.CertificateInfo;
 import com.browserup.bup.mitm.CertificateInfoGenerator;
 import com.browserup.bup.mitm.HostnameCertificateInfoGenerator;
+import com.browserup.bup.mitm.ImpersonatedCertificateStore;
 import com.browserup.bup.mitm.RootCertificateGenerator;
 import com.browserup.bup.mitm.TrustSource;
 import com.browserup.bup.mitm.exception.MitmException;
 import com.browserup.bup.mitm.exception.SslContextInitializationException;
 import com.browserup.bup.mitm.keys.ECKeyGenerator;
 import com.browserup.bup.mitm.keys.KeyGenerator;
+import com.browserup.bup.mitm.keys.KeyPairReservoir;
 import com.browserup.bup.mitm.keys.RSAKeyGenerator;
 import com.browserup.bup.mitm.stats.CertificateGenerationStatistics;
 import com.browserup.bup.mitm.tools.DefaultSecurityProviderTool;
@@ -40,20 +43,43 @@ import javax.net.ssl.SSLSession;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * An {@link MitmManager} that will create SSLEngines for clients that present impersonated certificates for upstream servers. The impersonated
  * certificates will be signed using the certificate and private key specified in an {@link #rootCertificateSource}. The impersonated server
  * certificates will be created by the {@link #securityProviderTool} based on the {@link CertificateInfo} returned by the {@link #certificateInfoGenerator}.
+ * <p>
+ * Impersonated certificates are generated at most once per hostname at a time: connections to a hostname whose certificate is being
+ * generated wait for that certificate rather than generating their own. To keep key pair generation off the connecting thread, server key
+ * pairs can be pre-generated in the background (see {@link Builder#serverKeyPairReservoirSize(int)}), and certificates for known hostnames
+ * can be generated before the first connection to them (see {@link #preWarm(Collection)}).
  */
 public class ImpersonatingMitmManager implements MitmManager {
     private static final Logger log = LoggerFactory.getLogger(ImpersonatingMitmManager.class);
 
+    /**
+     * Maximum number of background tasks waiting for a thread of the {@link #BACKGROUND_EXECUTOR}. Each reservoir queues at most one
+     * refill task at a time, so the limit is mostly reached by pre-warming many hostnames at once.
+     */
+    private static final int MAX_QUEUED_BACKGROUND_TASKS = 1024;
+
+    /**
+     * Executor for background key pair generation and certificate pre-warming, shared by all ImpersonatingMitmManagers. The threads are
+     * daemon threads, and are stopped when they have been idle for a short time. Tasks that exceed the bounded queue are rejected.
+     */
+    private static final ExecutorService BACKGROUND_EXECUTOR = createBackgroundExecutor();
+
     /**
      * Cipher suites allowed on proxy connections to upstream servers.
      */
@@ -76,7 +102,8 @@ public class ImpersonatingMitmManager implements MitmManager {
 
     /**
      * Cache for impersonating netty SslContexts. SslContexts can be safely reused, so caching the impersonating contexts avoids
-     * repeatedly re-impersonating upstream servers.
+     * repeatedly re-impersonating upstream servers. The cache is keyed by the hostnames in the impersonated certificate, so hosts that
+     * share a wildcard certificate share a single SslContext.
      */
     private final Cache<String, SslContext> sslContextCache;
 
@@ -85,6 +112,12 @@ public class ImpersonatingMitmManager implements MitmManager {
      */
     private final KeyGenerator serverKeyGenerator;
 
+    /**
+     * Reservoir of server key pairs generated in the background by the {@link #serverKeyGenerator}. Null if key pairs are only
+     * generated when a certificate is created.
+     */
+    private final KeyPairReservoir serverKeyPairReservoir;
+
     /**
      * The source of the CA's {@link CertificateAndKey} that will be used to sign generated server certificates.
      */
@@ -113,6 +146,12 @@ public class ImpersonatingMitmManager implements MitmManager {
      */
     private final SecurityProviderTool securityProviderTool;
 
+    /**
+     * Persistent store of impersonated certificates, which allows certificates to be reused across restarts. Null if impersonated
+     * certificates are only cached in memory.
+     */
+    private final ImpersonatedCertificateStore certificateStore;
+
     /**
      * The CA root root certificate used to sign generated server certificates. {@link CertificateAndKeySource#load()}
      * is only called once to retrieve the CA root certificate, which will be used to impersonate all server certificates.
@@ -153,6 +192,48 @@ public class ImpersonatingMitmManager implements MitmManager {
                                     CertificateInfoGenerator certificateInfoGenerator,
                                     Collection<String> serverCipherSuites,
                                     Collection<String> clientCipherSuites) {
+        this(rootCertificateSource,
+                serverKeyGenerator,
+                serverMessageDigest,
+                trustSource,
+                sslContextCacheConcurrencyLevel,
+                cacheExpirationIntervalMs,
+                securityProviderTool,
+                certificateInfoGenerator,
+                serverCipherSuites,
+                clientCipherSuites,
+                0,
+                null);
+    }
+
+    /**
+     * Creates a new ImpersonatingMitmManager. In general, use {@link ImpersonatingMitmManager.Builder}
+     * to construct new instances.
+     * @param cacheExpirationIntervalMs cacheExpirationIntervalMs
+     * @param certificateInfoGenerator certificateInfoGenerator
+     * @param clientCipherSuites clientCipherSuites
+     * @param rootCertificateSource rootCertificateSource
+     * @param securityProviderTool securityProviderTool
+     * @param serverCipherSuites serverCipherSuites
+     * @param serverKeyGenerator serverKeyGenerator
+     * @param serverMessageDigest serverMessageDigest
+     * @param sslContextCacheConcurrencyLevel sslContextCacheConcurrencyLevel
+     * @param trustSource trustSource
+     * @param serverKeyPairReservoirSize number of server key pairs to generate in the background, or 0 to generate key pairs only when needed
+     * @param certificateStore persistent store of impersonated certificates, or null to keep impersonated certificates only in memory
+     */
+    public ImpersonatingMitmManager(CertificateAndKeySource rootCertificateSource,
+                                    KeyGenerator serverKeyGenerator,
+                                    String serverMessageDigest,
+                                    TrustSource trustSource,
+                                    int sslContextCacheConcurrencyLevel,
+                                    long cacheExpirationIntervalMs,
+                                    SecurityProviderTool securityProviderTool,
+                                    CertificateInfoGenerator certificateInfoGenerator,
+                                    Collection<String> serverCipherSuites,
+                                    Collection<String> clientCipherSuites,
+                                    int serverKeyPairReservoirSize,
+                                    ImpersonatedCertificateStore certificateStore) {
         if (rootCertificateSource == null) {
             throw new IllegalArgumentException("CA root certificate source cannot be null");
         }
@@ -181,6 +262,16 @@ public class ImpersonatingMitmManager implements MitmManager {
 
         this.serverKeyGenerator = serverKeyGenerator;
 
+        if (serverKeyPairReservoirSize < 0) {
+            throw new IllegalArgumentException("Server key pair reservoir size cannot be negative");
+        }
+
+        if (serverKeyPairReservoirSize > 0) {
+            this.serverKeyPairReservoir = new KeyPairReservoir(serverKeyGenerator, serverKeyPairReservoirSize, BACKGROUND_EXECUTOR);
+        } else {
+            this.serverKeyPairReservoir = null;
+        }
+
         this.sslContextCache = CacheBuilder.newBuilder()
                 .concurrencyLevel(sslContextCacheConcurrencyLevel)
                 .expireAfterAccess(cacheExpirationIntervalMs, TimeUnit.MILLISECONDS)
@@ -188,6 +279,8 @@ public class ImpersonatingMitmManager implements MitmManager {
 
         this.securityProviderTool = securityProviderTool;
 
+        this.certificateStore = certificateStore;
+
         this.certificateInfoGenerator = certificateInfoGenerator;
 
         this.serverCipherSuites = ImmutableList.copyOf(serverCipherSuites);
@@ -237,60 +330,117 @@ public class ImpersonatingMitmManager implements MitmManager {
         }
     }
 
+    /**
+     * Generates impersonated certificates for the specified hostnames in the background, so that the first connections to those
+     * hostnames do not wait for certificate generation. Since the upstream servers have not been contacted yet, the certificates are
+     * generated without the upstream servers' original certificates. Hostnames that are already cached are not regenerated. If too many
+     * certificates are waiting to be generated in the background, the remaining hostnames are not pre-warmed.
+     *
+     * @param hostnames hostnames to impersonate
+     * @return a future that completes when all of the certificates have been generated, or have failed to generate
+     */
+    public CompletableFuture<Void> preWarm(Collection<String> hostnames) {
+        if (serverKeyPairReservoir != null) {
+            serverKeyPairReservoir.fill();
+        }
+
+        List<CompletableFuture<?>> certificates = new ArrayList<>(hostnames.size());
+        for (String hostname : hostnames) {
+            CompletableFuture<Void> certificate;
+            try {
+                certificate = CompletableFuture.runAsync(() -> getHostnameImpersonatingSslContext(hostname, null), BACKGROUND_EXECUTOR);
+            } catch (RejectedExecutionException e) {
+                log.warn("Too many impersonated certificates are waiting to be generated in the background, not pre-warming {} of {} hosts",
+                        hostnames.size() - certificates.size(), hostnames.size());
+                break;
+            }
+
+            certificates.add(certificate.exceptionally(e -> {
+                log.warn("Unable to pre-warm impersonated certificate for host: {}", hostname, e);
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(certificates.toArray(new CompletableFuture<?>[0]));
+    }
+
     /**
      * Retrieves an SSLContext that impersonates the specified hostname. If an impersonating SSLContext has already been
      * created for this hostname and is stored in the cache, it will be reused. Otherwise, a certificate will be created
-     * which impersonates the specified hostname.
+     * which impersonates the specified hostname. If a certificate for the hostname is already being created by another
+     * thread, this method waits for that certificate instead of creating another one.
      *
      * @param hostnameToImpersonate the hostname for which the impersonated SSLContext is being requested
-     * @param sslSession the upstream server SSLSession
+     * @param sslSession the upstream server SSLSession, or null if the upstream server has not been contacted
      * @return SSLContext which will present an impersonated certificate
      */
     private SslContext getHostnameImpersonatingSslContext(final String hostnameToImpersonate, final SSLSession sslSession) {
+        // hosts covered by the same (e.g. wildcard) certificate share a cache entry
+        final List<String> certificateHostnames = certificateInfoGenerator.getCertificateHostnames(hostnameToImpersonate);
+        String cacheKey = certificateHostnames.size() == 1 ? certificateHostnames.get(0) : String.join(",", certificateHostnames);
+
         try {
-            return sslContextCache.get(hostnameToImpersonate,
-                    () -> createImpersonatingSslContext(sslSession, hostnameToImpersonate));
+            return sslContextCache.get(cacheKey,
+                    () -> createImpersonatingSslContext(sslSession, certificateHostnames, cacheKey));
         } catch (ExecutionException e) {
             throw new SslContextInitializationException("An error occurred while impersonating the remote host: " + hostnameToImpersonate, e);
         }
-
-        //TODO: generate wildcard certificates, rather than one certificate per host, to reduce the number of certs generated
     }
 
     /**
      * Creates an SSLContext that will present an impersonated certificate for the specified hostname to the client.
-     * This is a convenience method for {@link #createImpersonatingSslContext(CertificateInfo)} that generates the
-     * {@link CertificateInfo} from the specified hostname using the {@link #certificateInfoGenerator}.
+     * The certificate is loaded from the {@link #certificateStore} if possible; otherwise a new certificate is generated using the
+     * {@link CertificateInfo} created from the specified hostnames by the {@link #certificateInfoGenerator}.
      *
-     * @param sslSession sslSession between the proxy and the upstream server
-     * @param hostnameToImpersonate hostname (supplied by the client's HTTP CONNECT) that will be impersonated
-     * @return an SSLContext presenting a certificate matching the hostnameToImpersonate
+     * @param sslSession sslSession between the proxy and the upstream server, or null when pre-warming
+     * @param certificateHostnames hostnames for the certificate impersonating the host supplied by the client's HTTP CONNECT
+     * @param storeKey key of the certificate in the {@link #certificateStore}
+     * @return an SSLContext presenting a certificate matching the certificateHostnames
      */
-    private SslContext createImpersonatingSslContext(SSLSession sslSession, String hostnameToImpersonate) {
+    private SslContext createImpersonatingSslContext(SSLSession sslSession, List<String> certificateHostnames, String storeKey) {
+        if (certificateStore != null) {
+            CertificateAndKey storedCertificateAndKey = certificateStore.get(storeKey, rootCertificate.get());
+            if (storedCertificateAndKey != null) {
+                statistics.storedCertificateReused();
+
+                log.debug("Reusing stored impersonated certificate for {}", storeKey);
+
+                return createImpersonatingSslContext(storedCertificateAndKey);
+            }
+        }
+
         // get the upstream server's certificate so the certificateInfoGenerator can (optionally) use it to construct a forged certificate
-        X509Certificate originalCertificate = SslUtil.getServerCertificate(sslSession);
+        X509Certificate originalCertificate = sslSession != null ? SslUtil.getServerCertificate(sslSession) : null;
 
         // get the CertificateInfo that will be used to populate the impersonated X509Certificate
-        CertificateInfo certificateInfo = certificateInfoGenerator.generate(Collections.singletonList(hostnameToImpersonate), originalCertificate);
+        CertificateInfo certificateInfo = certificateInfoGenerator.generate(certificateHostnames, originalCertificate);
 
-        SslContext sslContext = createImpersonatingSslContext(certificateInfo);
+        CertificateAndKey impersonatedCertificateAndKey = createImpersonatedCertificate(certificateInfo);
 
-        return sslContext;
+        if (certificateStore != null) {
+            try {
+                certificateStore.put(storeKey, impersonatedCertificateAndKey, rootCertificate.get());
+            } catch (RuntimeException e) {
+                log.warn("Unable to store impersonated certificate for {}", storeKey, e);
+            }
+        }
+
+        return createImpersonatingSslContext(impersonatedCertificateAndKey);
     }
 
     /**
-     * Generates an {@link SslContext} using an impersonated certificate containing the information in the specified
-     * certificateInfo.
+     * Generates an impersonated certificate containing the information in the specified certificateInfo, signed by the
+     * CA root certificate.
      *
      * @param certificateInfo certificate information to impersonate
-     * @return an SslContext that will present the impersonated certificate to the client
+     * @return the impersonated certificate and its private key
      */
-    private SslContext createImpersonatingSslContext(CertificateInfo certificateInfo) {
+    private CertificateAndKey createImpersonatedCertificate(CertificateInfo certificateInfo) {
         long impersonationStart = System.currentTimeMillis();
 
         // generate a public and private key pair for the forged certificate. the SslContext will send the impersonated certificate to clients
         // to impersonate the real upstream server, and will use the private key to encrypt the channel.
-        KeyPair serverKeyPair = serverKeyGenerator.generate();
+        KeyPair serverKeyPair = getServerKeyPair();
 
         // get the CA root certificate and private key that will be used to sign the forged certificate
         X509Certificate caRootCertificate = rootCertificate.get().getCertificate();
@@ -317,24 +467,65 @@ public class ImpersonatingMitmManager implements MitmManager {
                 serverKeyPair,
                 serverCertificateMessageDigest);
 
-        X509Certificate[] certChain = {impersonatedCertificateAndKey.getCertificate(), caRootCertificate};
-        SslContext sslContext;
+        long impersonationFinish = System.currentTimeMillis();
+
+        statistics.certificateCreated(impersonationStart, impersonationFinish);
+
+        log.debug("Impersonated certificate for {} in {}ms", certificateInfo.getCommonName(), impersonationFinish - impersonationStart);
+
+        return impersonatedCertificateAndKey;
+    }
+
+    /**
+     * Creates an {@link SslContext} that presents the specified impersonated certificate, and the CA root certificate that signed it,
+     * to the client.
+     *
+     * @param impersonatedCertificateAndKey impersonated certificate and private key
+     * @return an SslContext that will present the impersonated certificate to the client
+     */
+    private SslContext createImpersonatingSslContext(CertificateAndKey impersonatedCertificateAndKey) {
+        X509Certificate[] certChain = {impersonatedCertificateAndKey.getCertificate(), rootCertificate.get().getCertificate()};
         try {
-            sslContext = SslContextBuilder.forServer(impersonatedCertificateAndKey.getPrivateKey(), certChain)
+            return SslContextBuilder.forServer(impersonatedCertificateAndKey.getPrivateKey(), certChain)
                     .ciphers(clientCipherSuites, SupportedCipherSuiteFilter.INSTANCE)
                     .build();
-
         } catch (SSLException e) {
             throw new MitmException("Error creating SslContext for connection to client using impersonated certificate and private key", e);
         }
+    }
 
-        long impersonationFinish = System.currentTimeMillis();
+    /**
+     * Returns a key pair for a new server certificate, taken from the {@link #serverKeyPairReservoir} if possible.
+     */
+    private KeyPair getServerKeyPair() {
+        if (serverKeyPairReservoir == null) {
+            return serverKeyGenerator.generate();
+        }
 
-        statistics.certificateCreated(impersonationStart, impersonationFinish);
+        KeyPair serverKeyPair = serverKeyPairReservoir.poll();
+        if (serverKeyPair != null) {
+            statistics.keyPairReservoirHit();
 
-        log.debug("Impersonated certificate for {} in {}ms", certificateInfo.getCommonName(), impersonationFinish - impersonationStart);
+            return serverKeyPair;
+        }
+
+        statistics.keyPairReservoirMiss();
+
+        return serverKeyGenerator.generate();
+    }
 
-        return sslContext;
+    private static ExecutorService createBackgroundExecutor() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_BACKGROUND_TASKS),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("impersonation-certificate-%d")
+                        .setDaemon(true)
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
     }
 
     /**
@@ -371,6 +562,12 @@ public class ImpersonatingMitmManager implements MitmManager {
      * A Builder for {@link ImpersonatingMitmManager}s. Initialized with suitable default values suitable for most purposes.
      */
     public static class Builder {
+        /**
+         * Default number of server key pairs generated in the background. Key pairs are only generated when needed by default, since
+         * pre-generated key pairs use CPU time and memory even if no certificates are impersonated.
+         */
+        public static final int DEFAULT_SERVER_KEY_PAIR_RESERVOIR_SIZE = 0;
+
         private CertificateAndKeySource rootCertificateSource = RootCertificateGenerator.builder().build();
 
         private KeyGenerator serverKeyGenerator = new RSAKeyGenerator();
@@ -384,12 +581,20 @@ public class ImpersonatingMitmManager implements MitmManager {
 
         private SecurityProviderTool securityProviderTool = new DefaultSecurityProviderTool();
 
-        private CertificateInfoGenerator certificateInfoGenerator = new HostnameCertificateInfoGenerator();
+        private CertificateInfoGenerator certificateInfoGenerator;
+
+        private boolean wildcardCertificates;
 
         private Collection<String> serverCiphers;
 
         private Collection<String> clientCiphers;
 
+        private int serverKeyPairReservoirSize = DEFAULT_SERVER_KEY_PAIR_RESERVOIR_SIZE;
+
+        private Collection<String> preWarmHostnames = Collections.emptyList();
+
+        private ImpersonatedCertificateStore certificateStore;
+
         /**
          * The source of the CA root certificate that will be used to sign the impersonated server certificates. Custom
          * certificates can be used by supplying an implementation of {@link CertificateAndKeySource}, such as
@@ -479,7 +684,8 @@ public class ImpersonatingMitmManager implements MitmManager {
 
         /**
          * The {@link CertificateInfoGenerator} that will populate {@link CertificateInfo} objects containing certificate data for
-         * forced X509Certificates.
+         * forced X509Certificates. Defaults to a {@link HostnameCertificateInfoGenerator}. Cannot be combined with
+         * {@link #wildcardCertificates(boolean)}.
          * @return Builder
          * @param certificateInfoGenerator certificateInfoGenerator
          */
@@ -488,6 +694,19 @@ public class ImpersonatingMitmManager implements MitmManager {
             return this;
         }
 
+        /**
+         * When true, hosts are impersonated using wildcard certificates for their parent domains, so that all subdomains of a
+         * domain share a single certificate. Applies to the default {@link HostnameCertificateInfoGenerator}, so it cannot be combined
+         * with a {@link CertificateInfoGenerator} set with {@link #certificateInfoGenerator(CertificateInfoGenerator)}; use
+         * {@link HostnameCertificateInfoGenerator#HostnameCertificateInfoGenerator(boolean)} there instead.
+         * @return Builder
+         * @param wildcardCertificates wildcardCertificates
+         */
+        public Builder wildcardCertificates(boolean wildcardCertificates) {
+            this.wildcardCertificates = wildcardCertificates;
+            return this;
+        }
+
         /**
          * The cipher suites allowed on connections to upstream servers. Cipher suite names should be specified in Java
          * format, rather than OpenSSL format (e.g., TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384), even when using OpenSSL.
@@ -522,6 +741,41 @@ public class ImpersonatingMitmManager implements MitmManager {
             return this;
         }
 
+        /**
+         * The number of server key pairs to generate in the background, so that creating an impersonated certificate does
+         * not need to wait for key pair generation. Key pairs are not generated until the first certificate is needed, or until
+         * certificates are pre-warmed. Set to 0 to generate key pairs only when a certificate is created. Defaults to
+         * {@value #DEFAULT_SERVER_KEY_PAIR_RESERVOIR_SIZE}, so the reservoir must be enabled explicitly, e.g. with a size of 4.
+         * @return Builder
+         * @param serverKeyPairReservoirSize serverKeyPairReservoirSize
+         */
+        public Builder serverKeyPairReservoirSize(int serverKeyPairReservoirSize) {
+            this.serverKeyPairReservoirSize = serverKeyPairReservoirSize;
+            return this;
+        }
+
+        /**
+         * Hostnames whose impersonated certificates will be generated in the background as soon as the ImpersonatingMitmManager
+         * is built. See {@link ImpersonatingMitmManager#preWarm(Collection)}.
+         * @return Builder
+         * @param preWarmHostnames preWarmHostnames
+         */
+        public Builder preWarmHostnames(Collection<String> preWarmHostnames) {
+            this.preWarmHostnames = preWarmHostnames != null ? ImmutableList.copyOf(preWarmHostnames) : Collections.emptyList();
+            return this;
+        }
+
+        /**
+         * A persistent store for impersonated certificates, which allows certificates to be reused after the proxy is restarted,
+         * as long as the same CA root certificate is used. By default, impersonated certificates are only cached in memory.
+         * @return Builder
+         * @param certificateStore certificateStore
+         */
+        public Builder certificateStore(ImpersonatedCertificateStore certificateStore) {
+            this.certificateStore = certificateStore;
+            return this;
+        }
+
         public ImpersonatingMitmManager build() {
             if (clientCiphers == null) {
                 clientCiphers = SslUtil.getDefaultCipherList();
@@ -531,7 +785,11 @@ public class ImpersonatingMitmManager implements MitmManager {
                 serverCiphers = SslUtil.getDefaultCipherList();
             }
 
-            return new ImpersonatingMitmManager(
+            if (certificateInfoGenerator != null && wildcardCertificates) {
+                throw new IllegalStateException("Wildcard certificates cannot be combined with a custom CertificateInfoGenerator");
+            }
+
+            ImpersonatingMitmManager mitmManager = new ImpersonatingMitmManager(
                     rootCertificateSource,
                     serverKeyGenerator,
                     serverMessageDigest,
@@ -539,10 +797,18 @@ public class ImpersonatingMitmManager implements MitmManager {
                     cacheConcurrencyLevel,
                     cacheExpirationIntervalMs,
                     securityProviderTool,
-                    certificateInfoGenerator,
+                    certificateInfoGenerator != null ? certificateInfoGenerator : new HostnameCertificateInfoGenerator(wildcardCertificates),
                     serverCiphers,
-                    clientCiphers
+                    clientCiphers,
+                    serverKeyPairReservoirSize,
+                    certificateStore
             );
+
+            if (!preWarmHostnames.isEmpty()) {
+                mitmManager.preWarm(preWarmHostnames);
+            }
+
+            return mitmManager;
         }
     }
 }
@@ -1,30 +1,70 @@
 package com.browserup.bup.mitm.stats;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Tracks basic certificate generation statistics.
  */
 public class CertificateGenerationStatistics {
+    /**
+     * The number of most-recent certificate generation times used to calculate percentiles.
+     */
+    private static final int GENERATION_TIME_SAMPLES = 1024;
+
     private AtomicLong certificateGenerationTimeMs = new AtomicLong();
     private AtomicInteger certificatesGenerated = new AtomicInteger();
 
     private AtomicLong firstCertificateGeneratedTimestamp = new AtomicLong();
 
+    /**
+     * Ring buffer of the most recent certificate generation times, indexed by the number of certificates generated.
+     */
+    private final AtomicLongArray generationTimeSamplesMs = new AtomicLongArray(GENERATION_TIME_SAMPLES);
+
+    private final AtomicLong keyPairReservoirHits = new AtomicLong();
+    private final AtomicLong keyPairReservoirMisses = new AtomicLong();
+
+    private final AtomicLong storedCertificatesReused = new AtomicLong();
+
     /**
      * Records a certificate generation that started at startTimeMs and completed at finishTimeMs.
      * @param startTimeMs startTimeMs
      * @param finishTimeMs finishTimeMs
      */
     public void certificateCreated(long startTimeMs, long finishTimeMs) {
-        certificatesGenerated.incrementAndGet();
+        int generated = certificatesGenerated.getAndIncrement();
         certificateGenerationTimeMs.addAndGet(finishTimeMs - startTimeMs);
 
+        generationTimeSamplesMs.set(generated % GENERATION_TIME_SAMPLES, finishTimeMs - startTimeMs);
+
         // record the timestamp of the first certificate generation
         firstCertificateGeneratedTimestamp.compareAndSet(0L, System.currentTimeMillis());
     }
 
+    /**
+     * Records a certificate generation that used a pre-generated key pair from the key pair reservoir.
+     */
+    public void keyPairReservoirHit() {
+        keyPairReservoirHits.incrementAndGet();
+    }
+
+    /**
+     * Records a certificate generation that had to generate a key pair because the key pair reservoir was empty.
+     */
+    public void keyPairReservoirMiss() {
+        keyPairReservoirMisses.incrementAndGet();
+    }
+
+    /**
+     * Records an impersonated certificate that was loaded from the persistent certificate store instead of being generated.
+     */
+    public void storedCertificateReused() {
+        storedCertificatesReused.incrementAndGet();
+    }
+
     /**
      * Returns the total number of certificates created.
      * @return CertificatesGenerated
@@ -53,6 +93,60 @@ public class CertificateGenerationStatistics {
         }
     }
 
+    /**
+     * Returns the specified percentile of the certificate generation times, in ms, using the nearest-rank method. The percentile
+     * is calculated over the most recent 1024 certificates generated, and is approximate while certificates are being generated
+     * concurrently.
+     * @param percentile percentile to return, between 0 (exclusive) and 100 (inclusive), e.g. 99 for the 99th percentile
+     * @return the certificate generation time percentile, or 0 if no certificates have been generated
+     */
+    public long getCertificateGenerationTimePercentileMs(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be greater than 0 and less than or equal to 100");
+        }
+
+        int sampleCount = Math.min(certificatesGenerated.get(), GENERATION_TIME_SAMPLES);
+        if (sampleCount == 0) {
+            return 0L;
+        }
+
+        long[] samples = new long[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            samples[i] = generationTimeSamplesMs.get(i);
+        }
+
+        Arrays.sort(samples);
+
+        int rank = (int) Math.ceil(percentile / 100 * sampleCount);
+
+        return samples[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns the number of certificates generated using a pre-generated key pair from the key pair reservoir.
+     * @return KeyPairReservoirHits
+     */
+    public long getKeyPairReservoirHits() {
+        return keyPairReservoirHits.get();
+    }
+
+    /**
+     * Returns the number of certificates generated with a newly-generated key pair because the key pair reservoir was empty.
+     * Always 0 when the key pair reservoir is disabled.
+     * @return KeyPairReservoirMisses
+     */
+    public long getKeyPairReservoirMisses() {
+        return keyPairReservoirMisses.get();
+    }
+
+    /**
+     * Returns the number of impersonated certificates loaded from the persistent certificate store instead of being generated.
+     * @return StoredCertificatesReused
+     */
+    public long getStoredCertificatesReused() {
+        return storedCertificatesReused.get();
+    }
+
     /**
      * Returns the timestamp (ms since epoch) when the first certificate was generated, or 0 if none have been generated.
      * @return firstCertificateGeneratedTimestamp
@@ -0,0 +1,43 @@
+package com.browserup.bup.mitm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HostnameCertificateInfoGeneratorTest {
+    @Test
+    void testWildcardModeFoldsSubdomains() {
+        HostnameCertificateInfoGenerator generator = new HostnameCertificateInfoGenerator(true);
+
+        assertEquals(Collections.singletonList("*.cdn.example.com"), generator.getCertificateHostnames("img1.cdn.example.com"),
+                "Expected subdomain to be folded into a wildcard for its parent domain");
+        assertEquals(Collections.singletonList("*.cdn.example.com"), generator.getCertificateHostnames("img2.cdn.example.com"),
+                "Expected sibling subdomains to share a wildcard");
+        assertEquals(Collections.singletonList("*.example.co.uk"), generator.getCertificateHostnames("www.example.co.uk"),
+                "Expected subdomain of a domain under a multi-label public suffix to be folded");
+    }
+
+    @Test
+    void testWildcardModeDoesNotCoverPublicSuffix() {
+        HostnameCertificateInfoGenerator generator = new HostnameCertificateInfoGenerator(true);
+
+        assertEquals(Collections.singletonList("example.com"), generator.getCertificateHostnames("example.com"),
+                "Expected domain directly under a public suffix not to be folded");
+        assertEquals(Collections.singletonList("example.co.uk"), generator.getCertificateHostnames("example.co.uk"),
+                "Expected domain directly under a multi-label public suffix not to be folded");
+        assertEquals(Collections.singletonList("localhost"), generator.getCertificateHostnames("localhost"),
+                "Expected single-label hostname not to be folded");
+        assertEquals(Collections.singletonList("127.0.0.1"), generator.getCertificateHostnames("127.0.0.1"),
+                "Expected IP address not to be folded");
+    }
+
+    @Test
+    void testDefaultModeDoesNotFold() {
+        HostnameCertificateInfoGenerator generator = new HostnameCertificateInfoGenerator();
+
+        assertEquals(Collections.singletonList("img1.cdn.example.com"), generator.getCertificateHostnames("img1.cdn.example.com"),
+                "Expected hostname to be impersonated individually when wildcard mode is disabled");
+    }
+}
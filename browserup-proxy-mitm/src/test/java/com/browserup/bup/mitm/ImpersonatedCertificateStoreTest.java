@@ -0,0 +1,75 @@
+package com.browserup.bup.mitm;
+
+import com.browserup.bup.mitm.keys.ECKeyGenerator;
+import com.browserup.bup.mitm.tools.DefaultSecurityProviderTool;
+import com.browserup.bup.mitm.util.MitmConstants;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImpersonatedCertificateStoreTest {
+    @TempDir
+    Path tmpDir;
+
+    @Test
+    void testCertificatesStoredDuringWriteAreWrittenTogether() throws InterruptedException {
+        CertificateAndKey caRootCertificateAndKey = RootCertificateGenerator.builder().build().load();
+        CertificateAndKey certificateAndKey = new DefaultSecurityProviderTool().createServerCertificate(
+                new HostnameCertificateInfoGenerator().generate(Collections.singletonList("www.example.com"), null),
+                caRootCertificateAndKey.getCertificate(),
+                caRootCertificateAndKey.getPrivateKey(),
+                new ECKeyGenerator().generate(),
+                MitmConstants.DEFAULT_MESSAGE_DIGEST);
+        File storeFile = tmpDir.resolve("impersonated-certificates.p12").toFile();
+
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        AtomicInteger writes = new AtomicInteger();
+
+        ImpersonatedCertificateStore store = new ImpersonatedCertificateStore(storeFile).certificateTool(new DefaultSecurityProviderTool() {
+            @Override
+            public void saveKeyStore(File file, KeyStore keyStore, String keystorePassword) {
+                if (writes.incrementAndGet() == 1) {
+                    firstWriteStarted.countDown();
+                    try {
+                        releaseFirstWrite.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                super.saveKeyStore(file, keyStore, keystorePassword);
+            }
+        });
+
+        store.put("host0", certificateAndKey, caRootCertificateAndKey);
+        assertTrue(firstWriteStarted.await(10, TimeUnit.SECONDS), "Expected the first certificate to be written in the background");
+
+        // the writer is blocked, so these certificates must not wait for the file to be written
+        for (int i = 1; i < 20; i++) {
+            store.put("host" + i, certificateAndKey, caRootCertificateAndKey);
+            assertNotNull(store.get("host" + i, caRootCertificateAndKey), "Expected stored certificate to be available before it is written");
+        }
+
+        releaseFirstWrite.countDown();
+        store.flush();
+
+        assertEquals(2, writes.get(), "Expected the certificates stored during the first write to be written together");
+
+        ImpersonatedCertificateStore reloadedStore = new ImpersonatedCertificateStore(storeFile);
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(reloadedStore.get("host" + i, caRootCertificateAndKey), "Expected certificate to be written to the file: host" + i);
+        }
+    }
+}
@@ -8,17 +8,28 @@ import com.browserup.bup.mitm.keys.ECKeyGenerator;
 import com.browserup.bup.mitm.keys.RSAKeyGenerator;
 import com.browserup.bup.mitm.manager.ImpersonatingMitmManager;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 class ImpersonatingMitmManagerTest {
     private final SSLSession mockSession = mock(SSLSession.class);
 
+    @TempDir
+    Path tmpDir;
+
     @Test
     void testCreateDefaultServerEngine() {
         ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder().build();
@@ -51,4 +62,113 @@ class ImpersonatingMitmManagerTest {
         SSLEngine clientSslEngine = mitmManager.clientSslEngineFor(request, mockSession);
         assertNotNull(clientSslEngine);
     }
+
+    @Test
+    void testPreWarmedCertificateIsReused() throws Exception {
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .serverKeyPairReservoirSize(4)
+                .build();
+
+        mitmManager.preWarm(Arrays.asList("test.connection", "other.connection")).get(30, TimeUnit.SECONDS);
+
+        assertEquals(2, mitmManager.getStatistics().getCertificatesGenerated(), "Expected a certificate to be generated for each pre-warmed host");
+
+        when(mockSession.getPeerHost()).thenReturn("hostname");
+
+        HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://test.connection");
+        SSLEngine clientSslEngine = mitmManager.clientSslEngineFor(request, mockSession);
+        assertNotNull(clientSslEngine);
+
+        assertEquals(2, mitmManager.getStatistics().getCertificatesGenerated(), "Expected pre-warmed certificate to be reused");
+        assertEquals(2, mitmManager.getStatistics().getKeyPairReservoirHits() + mitmManager.getStatistics().getKeyPairReservoirMisses(),
+                "Expected each generated certificate to take its key pair from the reservoir or record a miss");
+        assertTrue(mitmManager.getStatistics().getCertificateGenerationTimePercentileMs(100)
+                >= mitmManager.getStatistics().getCertificateGenerationTimePercentileMs(50), "Expected maximum to be at least the median");
+    }
+
+    @Test
+    void testWildcardCertificateIsSharedBySubdomains() {
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .wildcardCertificates(true)
+                .build();
+
+        when(mockSession.getPeerHost()).thenReturn("hostname");
+
+        for (String host : Arrays.asList("img1.cdn.example.com", "img2.cdn.example.com", "img3.cdn.example.com")) {
+            HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://" + host);
+            assertNotNull(mitmManager.clientSslEngineFor(request, mockSession));
+        }
+
+        assertEquals(1, mitmManager.getStatistics().getCertificatesGenerated(), "Expected subdomains to share one wildcard certificate");
+    }
+
+    @Test
+    void testWildcardCertificatesCannotBeCombinedWithCustomGenerator() {
+        ImpersonatingMitmManager.Builder builder = ImpersonatingMitmManager.builder()
+                .certificateInfoGenerator(new HostnameCertificateInfoGenerator())
+                .wildcardCertificates(true);
+
+        assertThrows(IllegalStateException.class, builder::build,
+                "Expected wildcard certificates not to silently replace or be replaced by a custom certificate info generator");
+    }
+
+    @Test
+    void testStoredCertificateIsReusedAfterRestart() {
+        RootCertificateGenerator rootCertificateGenerator = RootCertificateGenerator.builder().build();
+        File storeFile = tmpDir.resolve("impersonated-certificates.p12").toFile();
+
+        when(mockSession.getPeerHost()).thenReturn("hostname");
+
+        HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://test.connection");
+
+        ImpersonatedCertificateStore certificateStore = new ImpersonatedCertificateStore(storeFile);
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .rootCertificateSource(rootCertificateGenerator)
+                .serverKeyGenerator(new ECKeyGenerator())
+                .certificateStore(certificateStore)
+                .build();
+        assertNotNull(mitmManager.clientSslEngineFor(request, mockSession));
+
+        assertEquals(1, mitmManager.getStatistics().getCertificatesGenerated(), "Expected a certificate to be generated on first use");
+        certificateStore.flush();
+        assertTrue(storeFile.isFile(), "Expected certificate store file to be written");
+
+        ImpersonatingMitmManager restartedMitmManager = ImpersonatingMitmManager.builder()
+                .rootCertificateSource(rootCertificateGenerator)
+                .serverKeyGenerator(new ECKeyGenerator())
+                .certificateStore(new ImpersonatedCertificateStore(storeFile))
+                .build();
+        assertNotNull(restartedMitmManager.clientSslEngineFor(request, mockSession));
+
+        assertEquals(0, restartedMitmManager.getStatistics().getCertificatesGenerated(), "Expected stored certificate to be reused");
+        assertEquals(1, restartedMitmManager.getStatistics().getStoredCertificatesReused(), "Expected stored certificate to be reused");
+    }
+
+    @Test
+    void testStoredCertificateIsIgnoredForDifferentCa() {
+        File storeFile = tmpDir.resolve("impersonated-certificates.p12").toFile();
+
+        when(mockSession.getPeerHost()).thenReturn("hostname");
+
+        HttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.CONNECT, "https://test.connection");
+
+        ImpersonatedCertificateStore certificateStore = new ImpersonatedCertificateStore(storeFile);
+        ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .certificateStore(certificateStore)
+                .build();
+        assertNotNull(mitmManager.clientSslEngineFor(request, mockSession));
+        certificateStore.flush();
+
+        ImpersonatingMitmManager otherCaMitmManager = ImpersonatingMitmManager.builder()
+                .serverKeyGenerator(new ECKeyGenerator())
+                .certificateStore(new ImpersonatedCertificateStore(storeFile))
+                .build();
+        assertNotNull(otherCaMitmManager.clientSslEngineFor(request, mockSession));
+
+        assertEquals(1, otherCaMitmManager.getStatistics().getCertificatesGenerated(),
+                "Expected certificate stored for a different CA to be regenerated");
+    }
 }
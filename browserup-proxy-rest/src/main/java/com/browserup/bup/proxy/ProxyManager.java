@@ -1,6 +1,7 @@
 package com.browserup.bup.proxy;
 
 import com.browserup.bup.BrowserUpProxyServer;
+import com.browserup.bup.client.ClientUtil;
 import com.browserup.bup.exception.ProxyExistsException;
 import com.browserup.bup.exception.ProxyPortsExhaustedException;
 import com.browserup.bup.proxy.auth.AuthType;
@@ -11,6 +12,7 @@ import com.google.common.cache.RemovalListener;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import org.littleshoot.proxy.impl.ServerGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +43,12 @@ public class ProxyManager {
     private final Cache<Integer, BrowserUpProxyServer> proxyCache;
     private final ConcurrentMap<Integer, BrowserUpProxyServer> proxies;
 
+    /**
+     * The server group providing the Netty event loops of all proxies created by this ProxyManager, if they share event loops. Null if
+     * every proxy creates its own.
+     */
+    private final ServerGroup serverGroup;
+
     /**
      * Interval at which expired proxy checks will actively clean up expired proxies. Proxies may still be cleaned up when accessing the
      * proxies map.
@@ -90,6 +98,19 @@ public class ProxyManager {
 
     @Inject
     public ProxyManager(@Named("minPort") Integer minPort, @Named("maxPort") Integer maxPort, final @Named("ttl") Integer ttl) {
+        this(minPort, maxPort, ttl, false);
+    }
+
+    /**
+     * Creates a ProxyManager that optionally starts all of its proxies on one shared set of Netty event loops, instead of creating
+     * event loops for every proxy. The shared event loops keep running when proxies are stopped, until {@link #shutdown()} is called.
+     *
+     * @param minPort lowest port to start proxies on
+     * @param maxPort highest port to start proxies on
+     * @param ttl number of seconds without activity after which proxies are stopped, or 0 to never stop them
+     * @param shareEventLoops true to start all proxies on shared event loops
+     */
+    public ProxyManager(Integer minPort, Integer maxPort, final Integer ttl, boolean shareEventLoops) {
         this.minPort = minPort;
         this.maxPort = maxPort;
         this.lastPort = maxPort;
@@ -122,6 +143,8 @@ public class ProxyManager {
             // nothing to timeout, so no Cache
             this.proxyCache = null;
         }
+
+        this.serverGroup = shareEventLoops ? ClientUtil.createSharedServerGroup() : null;
     }
 
     public BrowserUpProxyServer create(String upstreamHttpProxy, String proxyUsername, String proxyPassword, Integer port, String bindAddr, String serverBindAddr, boolean useEcc, boolean trustAllServers) {
@@ -137,6 +160,10 @@ public class ProxyManager {
         LOG.debug("Instantiate ProxyServer...");
         BrowserUpProxyServer proxy = new BrowserUpProxyServer();
 
+        if (serverGroup != null) {
+            proxy.setServerGroup(serverGroup);
+        }
+
         if (useEcc) {
             LOG.info("Using Elliptic Curve Cryptography for certificate impersonation");
 
@@ -283,4 +310,21 @@ public class ProxyManager {
         }
     }
 
+    /**
+     * Stops all proxies created by this ProxyManager, and shuts down their shared event loops, if any.
+     */
+    public void shutdown() {
+        for (Integer port : proxies.keySet()) {
+            try {
+                delete(port);
+            } catch (RuntimeException e) {
+                LOG.warn("Error while stopping proxy on port {}", port, e);
+            }
+        }
+
+        if (serverGroup != null) {
+            serverGroup.shutdown(true);
+        }
+    }
+
 }
@@ -5,10 +5,12 @@ import com.browserup.bup.exception.ProxyExistsException;
 import com.browserup.bup.exception.ProxyPortsExhaustedException;
 import com.browserup.bup.exception.UnsupportedCharsetException;
 import com.browserup.bup.filters.JavascriptRequestResponseFilter;
+import com.browserup.bup.har.BoundedHarEntryList;
 import com.browserup.bup.mitmproxy.MitmProxyProcessManager.MitmProxyLoggingLevel;
 import com.browserup.bup.proxy.CaptureType;
 import com.browserup.bup.proxy.MitmProxyManager;
 import com.browserup.bup.proxy.auth.AuthType;
+import com.browserup.bup.proxy.metrics.PrometheusMetricsWriter;
 import com.browserup.bup.util.BrowserUpHttpUtil;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -148,10 +150,40 @@ public class ProxyResource {
             return Reply.saying().notFound();
         }
 
+        int since = 0;
+        String sinceParam = request.param("since");
+        if (sinceParam != null) {
+            try {
+                since = Integer.parseInt(sinceParam);
+            } catch (NumberFormatException e) {
+                since = -1;
+            }
+            if (since < 0) {
+                LOG.warn("Invalid since value");
+                return Reply.saying().badRequest();
+            }
+        }
+
         boolean cleanHar = "true".equals(request.param("cleanHar"));
         Har har = proxy.getHar(cleanHar);
+        if (har == null) {
+            return Reply.with(har).as(Json.class);
+        }
+
+        boolean gzip = acceptsGzip(request.header("Accept-Encoding"));
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Vary", "Accept-Encoding");
+        if (gzip) {
+            headers.put("Content-Encoding", "gzip");
+        }
 
-        return Reply.with(har).as(Json.class);
+        // since counts the entries evicted from a bounded HAR, so that clients can keep polling while old entries are evicted
+        Object evictedEntries = har.getLog().getAdditional().get(BoundedHarEntryList.EVICTED_ENTRIES_FIELD);
+        if (evictedEntries instanceof Number) {
+            since = (int) Math.max(since - ((Number) evictedEntries).longValue(), 0);
+        }
+
+        return Reply.with(new StreamingHar(har, since, gzip)).headers(headers).as(StreamingHarTransport.class);
     }
 
     @Put
@@ -164,6 +196,22 @@ public class ProxyResource {
             return Reply.saying().notFound();
         }
 
+        String maxEntriesParam = request.param("maxEntries");
+        String maxBytesParam = request.param("maxBytes");
+        // the limits of the proxy are only changed if they are specified, so that they apply to all HARs of the proxy
+        if (StringUtils.isNotEmpty(maxEntriesParam) || StringUtils.isNotEmpty(maxBytesParam)) {
+            int maxEntries;
+            long maxBytes;
+            try {
+                maxEntries = Math.toIntExact(parseHarLimit(maxEntriesParam));
+                maxBytes = parseHarLimit(maxBytesParam);
+            } catch (NumberFormatException | ArithmeticException e) {
+                LOG.warn("Invalid HAR limits", e);
+                return Reply.saying().badRequest();
+            }
+            proxy.setHarLimits(maxEntries, maxBytes);
+        }
+
         String initialPageRef = request.param("initialPageRef");
         String initialPageTitle = request.param("initialPageTitle");
         Har oldHar = proxy.newHar(initialPageRef, initialPageTitle);
@@ -592,6 +640,19 @@ public class ProxyResource {
         return Reply.saying().ok();
     }
 
+    @Get
+    @At("/:port/metrics")
+    public Reply<?> getMetrics(@Named("port") int port) {
+        LOG.info("GET /{}/metrics", port);
+        MitmProxyServer proxy = proxyManager.get(port);
+        if (proxy == null) {
+            return Reply.saying().notFound();
+        }
+
+        String metrics = PrometheusMetricsWriter.write(proxy.getMetrics());
+        return Reply.with(metrics).as(Text.class).type(PrometheusMetricsWriter.CONTENT_TYPE);
+    }
+
     @Put
     @At("/:port/rewrite")
     public Reply<?> rewriteUrl(@Named("port") int port, Request request) {
@@ -627,6 +688,41 @@ public class ProxyResource {
         return Reply.saying().badRequest();
     }
 
+    private static long parseHarLimit(String limit) {
+        if (StringUtils.isEmpty(limit)) {
+            return 0;
+        }
+
+        long value = Long.parseLong(limit);
+        if (value < 0) {
+            throw new NumberFormatException("HAR limit cannot be negative: " + limit);
+        }
+
+        return value;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String coding : acceptEncoding.split(",")) {
+            String[] codingAndParams = coding.split(";");
+            if (!"gzip".equalsIgnoreCase(codingAndParams[0].trim())) {
+                continue;
+            }
+
+            for (int i = 1; i < codingAndParams.length; i++) {
+                String param = codingAndParams[i].replace(" ", "");
+                if (param.matches("(?i)q=0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     private int parseResponseCode(String response) {
         int responseCode = 200;
         if (response != null) {
@@ -0,0 +1,40 @@
+package com.browserup.bup.proxy.bricks;
+
+import de.sstoehr.harreader.model.Har;
+
+/**
+ * A HAR to be written to the response by {@link StreamingHarTransport}, optionally limited to the entries starting at a given
+ * index and optionally gzip-compressed.
+ */
+public class StreamingHar {
+    private final Har har;
+    private final int firstEntryIndex;
+    private final boolean gzip;
+
+    /**
+     * @param har             the HAR to write
+     * @param firstEntryIndex index of the first entry to write; entries before it are omitted. Pages are always written in full.
+     * @param gzip            true to gzip-compress the JSON document
+     */
+    public StreamingHar(Har har, int firstEntryIndex, boolean gzip) {
+        if (firstEntryIndex < 0) {
+            throw new IllegalArgumentException("First entry index cannot be negative: " + firstEntryIndex);
+        }
+
+        this.har = har;
+        this.firstEntryIndex = firstEntryIndex;
+        this.gzip = gzip;
+    }
+
+    public Har getHar() {
+        return har;
+    }
+
+    public int getFirstEntryIndex() {
+        return firstEntryIndex;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+}
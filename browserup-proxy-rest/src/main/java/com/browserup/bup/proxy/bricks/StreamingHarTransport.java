@@ -0,0 +1,128 @@
+package com.browserup.bup.proxy.bricks;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.sitebricks.client.Transport;
+import de.sstoehr.harreader.model.Har;
+import de.sstoehr.harreader.model.HarEntry;
+import de.sstoehr.harreader.model.HarLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a {@link StreamingHar} to the response as JSON, one entry at a time, so that the serialized HAR is never held in memory.
+ * The HAR and log properties other than the entries are written first, followed by the entries.
+ */
+@Singleton
+public class StreamingHarTransport implements Transport {
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Serializes the HAR and log properties, without the log and the entries that are written separately.
+     */
+    private final ObjectMapper shallowObjectMapper;
+
+    private final ObjectWriter entryWriter;
+
+    @Inject
+    public StreamingHarTransport(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.shallowObjectMapper = objectMapper.copy()
+                .addMixIn(Har.class, WithoutLog.class)
+                .addMixIn(HarLog.class, WithoutEntries.class);
+        // flushing after every entry would send each entry in its own chunk
+        this.entryWriter = objectMapper.writerFor(HarEntry.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Override
+    public <T> T in(InputStream in, Class<T> type) {
+        throw new UnsupportedOperationException("Streaming HAR transport can only write HARs");
+    }
+
+    @Override
+    public <T> T in(InputStream in, TypeLiteral<T> type) {
+        throw new UnsupportedOperationException("Streaming HAR transport can only write HARs");
+    }
+
+    @Override
+    public <T> void out(OutputStream out, Class<T> type, T data) throws IOException {
+        if (!(data instanceof StreamingHar)) {
+            throw new IllegalArgumentException("Streaming HAR transport can only write " + StreamingHar.class.getSimpleName());
+        }
+
+        StreamingHar streamingHar = (StreamingHar) data;
+        if (streamingHar.isGzip()) {
+            GZIPOutputStream gzipStream = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            write(gzipStream, streamingHar);
+            gzipStream.finish();
+        } else {
+            write(out, streamingHar);
+        }
+    }
+
+    @Override
+    public String contentType() {
+        return "application/json";
+    }
+
+    private void write(OutputStream out, StreamingHar streamingHar) throws IOException {
+        Har har = streamingHar.getHar();
+        HarLog log = har.getLog();
+
+        // the servlet container closes the response stream
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartObject();
+            writeProperties(generator, har);
+
+            generator.writeFieldName("log");
+            generator.writeStartObject();
+            writeProperties(generator, log);
+
+            generator.writeArrayFieldStart("entries");
+            List<HarEntry> entries = log.getEntries() != null ? log.getEntries() : Collections.emptyList();
+            // entries added while the HAR is being written are left for the next request
+            int entryCount = entries.size();
+            for (int i = streamingHar.getFirstEntryIndex(); i < entryCount; i++) {
+                entryWriter.writeValue(generator, entries.get(i));
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeProperties(JsonGenerator generator, Object value) throws IOException {
+        ObjectNode properties = shallowObjectMapper.valueToTree(value);
+        for (Map.Entry<String, JsonNode> property : properties.properties()) {
+            generator.writeFieldName(property.getKey());
+            generator.writeTree(property.getValue());
+        }
+    }
+
+    @JsonIgnoreProperties("log")
+    private abstract static class WithoutLog {
+    }
+
+    @JsonIgnoreProperties("entries")
+    private abstract static class WithoutEntries {
+    }
+}
@@ -0,0 +1,90 @@
+package com.browserup.bup.proxy;
+
+import com.browserup.bup.BrowserUpProxyServer;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedEventLoopProxyManagerTest {
+    private WireMockServer mockServer;
+    private ProxyManager proxyManager;
+
+    @BeforeEach
+    void setUp() {
+        mockServer = new WireMockServer(options().port(0));
+        mockServer.start();
+        mockServer.stubFor(get(urlEqualTo("/shared")).willReturn(ok().withBody("success")));
+
+        int minPort = new Random().nextInt(50000) + 10000;
+        proxyManager = new ProxyManager(minPort, minPort + 100, 0, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        proxyManager.shutdown();
+        mockServer.stop();
+    }
+
+    @Test
+    void testStoppingManagedProxyDoesNotStopOtherProxies() throws IOException {
+        BrowserUpProxyServer first = proxyManager.create();
+        BrowserUpProxyServer second = proxyManager.create();
+        BrowserUpProxyServer third = proxyManager.create();
+
+        assertSuccessfulRequest(first);
+        assertSuccessfulRequest(second);
+        assertSuccessfulRequest(third);
+
+        proxyManager.delete(first.getPort());
+
+        assertTrue(first.isStopped(), "Expected deleted proxy to be stopped");
+        assertThrows(IOException.class, () -> assertSuccessfulRequest(first), "Expected stopped proxy to refuse connections");
+        assertSuccessfulRequest(second);
+        assertSuccessfulRequest(third);
+
+        BrowserUpProxyServer fourth = proxyManager.create();
+        assertSuccessfulRequest(fourth);
+    }
+
+    @Test
+    void testShutdownStopsManagedProxies() {
+        BrowserUpProxyServer proxy = proxyManager.create();
+
+        proxyManager.shutdown();
+
+        assertTrue(proxy.isStopped(), "Expected proxy to be stopped when its ProxyManager shuts down");
+        assertTrue(proxyManager.get().isEmpty(), "Expected ProxyManager to manage no proxies after it shuts down");
+    }
+
+    private void assertSuccessfulRequest(BrowserUpProxyServer proxy) throws IOException {
+        Proxy httpProxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress("127.0.0.1", proxy.getPort()));
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + mockServer.port() + "/shared").openConnection(httpProxy);
+        try {
+            assertEquals(200, connection.getResponseCode(), "Did not receive response from mock server");
+            try (InputStream content = connection.getInputStream()) {
+                assertEquals("success", new String(content.readAllBytes(), StandardCharsets.UTF_8),
+                        "Did not receive expected response from mock server");
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -7,9 +7,14 @@ import de.sstoehr.harreader.model.HarPage;
 import de.sstoehr.harreader.model.HarCookie;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -81,6 +86,62 @@ class ValidateHarRestTest extends BaseRestTest {
         verify(1, getRequestedFor(urlEqualTo("/" + urlToCatch)));
     }
 
+    @Test
+    void sinceReturnsOnlyNewEntriesTest() throws Exception {
+        String responseBody = "";
+
+        mockTargetServerResponse("first", responseBody);
+        mockTargetServerResponse("second", responseBody);
+
+        proxyManager.get().iterator().next().newHar();
+
+        requestToTargetServer("first", responseBody);
+
+        HttpURLConnection conn1 = sendGetToProxyServer("/proxy/" + proxy.getPort() + "/" + getUrlPath());
+        Har har1 = new ObjectMapper().readValue(readResponseBody(conn1), Har.class);
+        int entryCount = har1.getLog().getEntries().size();
+        assertTrue(entryCount > 0, "Expected captured queries in har");
+        conn1.disconnect();
+
+        requestToTargetServer("second", responseBody);
+
+        HttpURLConnection conn2 = sendGetToProxyServer("/proxy/" + proxy.getPort() + "/" + getUrlPath(),
+                toStringMap("since", entryCount));
+        Har har2 = new ObjectMapper().readValue(readResponseBody(conn2), Har.class);
+        assertEquals(1, har2.getLog().getEntries().size(), "Expected only the entry captured after the first request");
+        assertTrue(har2.getLog().getEntries().get(0).getRequest().getUrl().endsWith("/second"),
+                "Expected the entry of the second query");
+        assertEquals(har1.getLog().getPages().size(), har2.getLog().getPages().size(), "Expected all pages in har");
+        conn2.disconnect();
+    }
+
+    @Test
+    void invalidSinceTest() throws Exception {
+        HttpURLConnection conn = sendGetToProxyServer("/proxy/" + proxy.getPort() + "/" + getUrlPath(),
+                toStringMap("since", "-1"));
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, conn.getResponseCode(), "Expected negative since to be rejected");
+        conn.disconnect();
+    }
+
+    @Test
+    void gzipEncodedHarTest() throws Exception {
+        String urlToCatch = "test";
+        String responseBody = "";
+
+        mockTargetServerResponse(urlToCatch, responseBody);
+
+        proxyManager.get().iterator().next().newHar();
+
+        requestToTargetServer(urlToCatch, responseBody);
+
+        HttpURLConnection conn = sendGetToProxyServer("/proxy/" + proxy.getPort() + "/" + getUrlPath());
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals("gzip", conn.getHeaderField("Content-Encoding"), "Expected gzip-encoded har");
+        Har har = new ObjectMapper().readValue(readGzipResponseBody(conn), Har.class);
+        assertTrue(har.getLog().getEntries().size() > 0, "Expected captured queries in har");
+        conn.disconnect();
+    }
+
     @Test
     void validateHarForRequestWithEmptyContentAndMimeType() throws Exception {
         String urlToCatch = "test";
@@ -149,6 +210,12 @@ class ValidateHarRestTest extends BaseRestTest {
         verify(1, getRequestedFor(urlEqualTo("/" + urlToCatch)));
     }
 
+    private static String readGzipResponseBody(HttpURLConnection conn) throws IOException {
+        try (InputStream is = new GZIPInputStream(conn.getInputStream())) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
     @Override
     protected void mockTargetServerResponse(String url, String responseBody) {
         stubFor(get(urlEqualTo("/" + url)).willReturn(